@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.loadTest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates input files for the {@link com.code42.inputAnalysis.FileProcessor}
+ * of any size: a mix of numbers and non-numeric strings, one per line.
+ * Create one with a {@link Builder}:
+ * <pre>
+ *   DataGenerator generator = DataGenerator.builder()
+ *                                          .seed(42)
+ *                                          .numericFraction(0.8)
+ *                                          .distinctStrings(10000)
+ *                                          .build();
+ *   generator.generate(Paths.get("data.txt"), 4L * 1024 * 1024 * 1024);
+ * </pre>
+ *
+ * The output depends only on the settings and the size, so the same
+ * generator always writes the same file.
+ *
+ * Strings are drawn uniformly from a fixed set of distinct strings (the
+ * cardinality), each made of lowercase letters so that none of them is a
+ * number.  Numbers have a random sign, a random number of digits (up to
+ * the magnitude), and a random number of decimal places (up to the
+ * limit).
+ */
+public final class DataGenerator
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The number of bytes written at a time.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * The longest line that can be generated (a sign, the digits, the
+     * decimal point, and the newline).
+     */
+    private static final int MAX_LINE_LENGTH = 64;
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The seed of the random number generator.
+     */
+    private final long seed;
+
+    /**
+     * The fraction of the lines that are numbers.
+     */
+    private final double numericFraction;
+
+    /**
+     * The number of distinct strings.
+     */
+    private final int distinctStrings;
+
+    /**
+     * The length of the shortest string.
+     */
+    private final int minStringLength;
+
+    /**
+     * The length of the longest string.
+     */
+    private final int maxStringLength;
+
+    /**
+     * The most digits a number can have before its decimal point.
+     */
+    private final int maxDigits;
+
+    /**
+     * The most digits a number can have after its decimal point.
+     */
+    private final int maxDecimalPlaces;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor (private).  Use a {@link Builder}.
+     *
+     * @param builder  the settings
+     */
+    private DataGenerator(Builder builder)
+    {
+        this.seed = builder.seed;
+        this.numericFraction = builder.numericFraction;
+        this.distinctStrings = builder.distinctStrings;
+        this.minStringLength = builder.minStringLength;
+        this.maxStringLength = builder.maxStringLength;
+        this.maxDigits = builder.maxDigits;
+        this.maxDecimalPlaces = builder.maxDecimalPlaces;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * @return  a builder for a generator
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+
+    /**
+     * Writes lines to a file until it holds at least the given number of
+     * bytes.  Any existing file is replaced.
+     *
+     * @param file  the file to write
+     * @param size  the (minimum) size of the file, in bytes
+     * @return  the number of lines written
+     * @throws IOException  if the file could not be written
+     */
+    public long generate(Path file, long size) throws IOException
+    {
+        Random random = new Random(seed);
+        byte[][] strings = generateStrings(random);
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count = 0;
+        long written = 0;
+        long lineCount = 0;
+        try( OutputStream output = Files.newOutputStream(file) )
+        {
+            while(written + count < size)
+            {
+                if(count > buffer.length - MAX_LINE_LENGTH)
+                {
+                    output.write(buffer, 0, count);
+                    written += count;
+                    count = 0;
+                }
+
+                if(strings.length == 0 || random.nextDouble() < numericFraction)
+                {
+                    count = writeNumber(random, buffer, count);
+                }
+                else
+                {
+                    byte[] string = strings[random.nextInt(strings.length)];
+                    System.arraycopy(string, 0, buffer, count, string.length);
+                    count += string.length;
+                }
+                buffer[count++] = '\n';
+                lineCount++;
+            }
+            output.write(buffer, 0, count);
+        }
+        return lineCount;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Generates the distinct strings.  Each starts with its index, written
+     * in letters and padded to the same width, so that they are all
+     * different.  This can make a string longer than the longest length
+     * when there are very many of them.
+     *
+     * @param random  the random number generator
+     * @return  the strings, as ASCII bytes
+     */
+    private byte[][] generateStrings(Random random)
+    {
+        int width = 1;
+        for(long limit = 26; limit < distinctStrings; limit *= 26)
+        {
+            width++;
+        }
+
+        byte[][] strings = new byte[distinctStrings][];
+        for(int k = 0; k < distinctStrings; k++)
+        {
+            StringBuilder string = new StringBuilder();
+            int index = k;
+            for(int digit = 0; digit < width; digit++)
+            {
+                string.append((char) ('a' + index % 26));
+                index /= 26;
+            }
+
+            int length = minStringLength +
+                         random.nextInt(maxStringLength - minStringLength + 1);
+            while(string.length() < length)
+            {
+                string.append((char) ('a' + random.nextInt(26)));
+            }
+            strings[k] = string.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+        return strings;
+    }
+
+
+    /**
+     * Writes a random number.
+     *
+     * @param random  the random number generator
+     * @param buffer  the buffer to write it to
+     * @param offset  where to write it
+     * @return  the offset just past the number
+     */
+    private int writeNumber(Random random, byte[] buffer, int offset)
+    {
+        if(random.nextBoolean())
+        {
+            buffer[offset++] = '-';
+        }
+
+        // No leading zeros, except for a lone 0.
+        int digits = 1 + random.nextInt(maxDigits);
+        buffer[offset++] = (byte) ('0' + ((digits == 1) ? random.nextInt(10)
+                                                         : 1 + random.nextInt(9)));
+        for(int k = 1; k < digits; k++)
+        {
+            buffer[offset++] = (byte) ('0' + random.nextInt(10));
+        }
+
+        int decimalPlaces = random.nextInt(maxDecimalPlaces + 1);
+        if(decimalPlaces > 0)
+        {
+            buffer[offset++] = '.';
+            for(int k = 0; k < decimalPlaces; k++)
+            {
+                buffer[offset++] = (byte) ('0' + random.nextInt(10));
+            }
+        }
+        return offset;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Classes
+    //--------------------------------------------------------------------
+    /**
+     * Builds a {@link DataGenerator}.
+     */
+    public static final class Builder
+    {
+        /**
+         * The seed of the random number generator.
+         */
+        private long seed = 0;
+
+        /**
+         * The fraction of the lines that are numbers.
+         */
+        private double numericFraction = 0.5;
+
+        /**
+         * The number of distinct strings.
+         */
+        private int distinctStrings = 1000;
+
+        /**
+         * The length of the shortest string.
+         */
+        private int minStringLength = 4;
+
+        /**
+         * The length of the longest string.
+         */
+        private int maxStringLength = 16;
+
+        /**
+         * The most digits a number can have before its decimal point.
+         */
+        private int maxDigits = 9;
+
+        /**
+         * The most digits a number can have after its decimal point.
+         */
+        private int maxDecimalPlaces = 2;
+
+        /**
+         * Constructor (private).  Use {@link DataGenerator#builder()}.
+         */
+        private Builder()
+        {
+        }
+
+        /**
+         * @param seed  the seed of the random number generator
+         * @return  this builder
+         */
+        public Builder seed(long seed)
+        {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param numericFraction  the fraction of the lines (from 0 to 1)
+         *                         that are numbers
+         * @return  this builder
+         */
+        public Builder numericFraction(double numericFraction)
+        {
+            this.numericFraction = numericFraction;
+            return this;
+        }
+
+        /**
+         * @param distinctStrings  the number of distinct strings
+         * @return  this builder
+         */
+        public Builder distinctStrings(int distinctStrings)
+        {
+            this.distinctStrings = distinctStrings;
+            return this;
+        }
+
+        /**
+         * @param minLength  the length of the shortest string
+         * @param maxLength  the length of the longest string
+         * @return  this builder
+         */
+        public Builder stringLength(int minLength, int maxLength)
+        {
+            this.minStringLength = minLength;
+            this.maxStringLength = maxLength;
+            return this;
+        }
+
+        /**
+         * @param maxDigits  the most digits a number can have before its
+         *                   decimal point
+         * @return  this builder
+         */
+        public Builder maxDigits(int maxDigits)
+        {
+            this.maxDigits = maxDigits;
+            return this;
+        }
+
+        /**
+         * @param maxDecimalPlaces  the most digits a number can have after
+         *                          its decimal point
+         * @return  this builder
+         */
+        public Builder maxDecimalPlaces(int maxDecimalPlaces)
+        {
+            this.maxDecimalPlaces = maxDecimalPlaces;
+            return this;
+        }
+
+        /**
+         * @return  the generator
+         * @throws IllegalArgumentException  if a setting is out of range or
+         *              a line could be longer than
+         *              {@link DataGenerator#MAX_LINE_LENGTH}
+         */
+        public DataGenerator build()
+        {
+            if(numericFraction < 0 || numericFraction > 1)
+            {
+                throw new IllegalArgumentException("The numeric fraction must " +
+                                                   "be from 0 to 1 (" +
+                                                   numericFraction + ").");
+            }
+            if(distinctStrings < 0 ||
+               minStringLength < 1 ||
+               minStringLength > maxStringLength ||
+               maxStringLength >= MAX_LINE_LENGTH)
+            {
+                throw new IllegalArgumentException("Invalid string settings (" +
+                                                   distinctStrings + " of " +
+                                                   minStringLength + " to " +
+                                                   maxStringLength + ").");
+            }
+            if(maxDigits < 1 ||
+               maxDecimalPlaces < 0 ||
+               maxDigits + maxDecimalPlaces + 3 > MAX_LINE_LENGTH)
+            {
+                throw new IllegalArgumentException("Invalid number settings (" +
+                                                   maxDigits + " digits, " +
+                                                   maxDecimalPlaces +
+                                                   " decimal places).");
+            }
+            return new DataGenerator(this);
+        }
+    }
+}
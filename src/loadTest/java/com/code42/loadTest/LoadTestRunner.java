@@ -0,0 +1,547 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.loadTest;
+
+import com.code42.inputAnalysis.FileAnalyzer;
+import com.code42.inputAnalysis.FileProcessor;
+import com.code42.output.OutputFormat;
+import com.code42.output.RecordWriter;
+import com.code42.scanning.FileScanner;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs the load tests: generates a large input file and a large directory
+ * tree (or reuses ones generated by an earlier run with the same
+ * settings), then repeatedly runs the {@link FileProcessor}, the
+ * {@link FileAnalyzer}, and the {@link FileScanner} against them.  The
+ * FileAnalyzer is run once for each read size given, so that read sizes
+ * (including the one chosen per file) can be compared on the same input.
+ * Each run appends one "run" record to the results file with these fields:
+ * <ul>
+ *   <li>benchmark -- FileProcessor, FileAnalyzer(read=&lt;size&gt;), or
+ *       FileScanner</li>
+ *   <li>iteration -- the run's number (the first runs include warm-up)</li>
+ *   <li>startTime -- when the run started</li>
+ *   <li>seed -- the seed the inputs were generated from</li>
+ *   <li>inputBytes -- the size of the file, or of the files in the tree</li>
+ *   <li>inputItems -- the numbers in the file, or the files in the tree</li>
+ *   <li>elapsedMillis -- the length of the run</li>
+ *   <li>bytesPerSecond, itemsPerSecond -- the throughput</li>
+ *   <li>peakHeapBytes -- the most heap used (see {@link RunMonitor})</li>
+ *   <li>gcCount, gcPauseMillis, maxGcPauseMillis -- the collections</li>
+ * </ul>
+ *
+ * Run it with the "loadTest" Gradle task, or directly:
+ * <pre>
+ *   java com.code42.loadTest.LoadTestRunner --work-dir &lt;dir&gt; --results &lt;file&gt; [options]
+ * </pre>
+ * See {@link #printUsage()} for the options.
+ */
+public class LoadTestRunner
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The directory that holds the generated inputs.
+     */
+    private static final String WORK_DIR_OPTION = "--work-dir";
+
+    /**
+     * The file the results are appended to.
+     */
+    private static final String RESULTS_OPTION = "--results";
+
+    /**
+     * The format of the results file.
+     */
+    private static final String FORMAT_OPTION = "--format";
+
+    /**
+     * The seed the inputs are generated from.
+     */
+    private static final String SEED_OPTION = "--seed";
+
+    /**
+     * The number of times to run each benchmark.
+     */
+    private static final String ITERATIONS_OPTION = "--iterations";
+
+    /**
+     * The size of the input file (with an optional k, m, or g suffix).
+     */
+    private static final String DATA_SIZE_OPTION = "--data-size";
+
+    /**
+     * The fraction of the lines of the input file that are numbers.
+     */
+    private static final String NUMERIC_FRACTION_OPTION = "--numeric-fraction";
+
+    /**
+     * The number of distinct strings in the input file.
+     */
+    private static final String DISTINCT_STRINGS_OPTION = "--distinct-strings";
+
+    /**
+     * The most digits of the numbers in the input file.
+     */
+    private static final String MAX_DIGITS_OPTION = "--max-digits";
+
+    /**
+     * The number of levels of subdirectories in the tree.
+     */
+    private static final String TREE_DEPTH_OPTION = "--tree-depth";
+
+    /**
+     * The number of subdirectories of each directory in the tree.
+     */
+    private static final String FAN_OUT_OPTION = "--fan-out";
+
+    /**
+     * The number of files in each directory of the tree.
+     */
+    private static final String FILES_PER_DIRECTORY_OPTION = "--files-per-directory";
+
+    /**
+     * The size of the largest file in the tree.
+     */
+    private static final String MAX_FILE_SIZE_OPTION = "--max-file-size";
+
+    /**
+     * The read sizes to run the {@link FileAnalyzer} with.
+     */
+    private static final String READ_SIZES_OPTION = "--read-sizes";
+
+    /**
+     * The read size that has a size chosen for each file.
+     */
+    private static final String AUTO_READ_SIZE = "auto";
+
+    /**
+     * The suffix of inputs that are still being generated.
+     */
+    private static final String INCOMPLETE_SUFFIX = ".incomplete";
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * Runs the load tests.  Exits with status 1 if they could not be run.
+     *
+     * @param args  the options (see {@link #printUsage()})
+     */
+    public static void main(String args[])
+    {
+        Map<String, String> options;
+        try
+        {
+            options = parseOptions(args);
+        }
+        catch(IllegalArgumentException e)
+        {
+            System.err.println("ERROR: " + e.getMessage() + "\n");
+            printUsage();
+            System.exit(1);
+            return;
+        }
+
+        try
+        {
+            run(options);
+        }
+        catch(IOException | RuntimeException e)
+        {
+            System.err.println("Error encountered running the load tests.  " +
+                                       "Error details below:\n");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Generates (or finds) the inputs and runs each benchmark.
+     *
+     * @param options  the options, by name
+     * @throws IOException  if the inputs could not be generated or read, or
+     *              the results could not be written
+     */
+    private static void run(Map<String, String> options) throws IOException
+    {
+        Path workDir = Paths.get(options.get(WORK_DIR_OPTION));
+        Path results = Paths.get(options.get(RESULTS_OPTION));
+        OutputFormat format = OutputFormat.fromName(
+                options.getOrDefault(FORMAT_OPTION, "json"));
+        long seed = Long.parseLong(options.getOrDefault(SEED_OPTION, "1"));
+        int iterations = Integer.parseInt(
+                options.getOrDefault(ITERATIONS_OPTION, "3"));
+        String[] readSizes = options.getOrDefault(READ_SIZES_OPTION, "64k,auto")
+                                    .split(",");
+
+        long dataSize = parseSize(options.getOrDefault(DATA_SIZE_OPTION, "256m"));
+        DataGenerator dataGenerator =
+                DataGenerator.builder()
+                             .seed(seed)
+                             .numericFraction(Double.parseDouble(
+                                     options.getOrDefault(NUMERIC_FRACTION_OPTION, "0.5")))
+                             .distinctStrings(Integer.parseInt(
+                                     options.getOrDefault(DISTINCT_STRINGS_OPTION, "10000")))
+                             .maxDigits(Integer.parseInt(
+                                     options.getOrDefault(MAX_DIGITS_OPTION, "9")))
+                             .build();
+
+        int depth = Integer.parseInt(options.getOrDefault(TREE_DEPTH_OPTION, "4"));
+        int fanOut = Integer.parseInt(options.getOrDefault(FAN_OUT_OPTION, "6"));
+        int filesPerDirectory = Integer.parseInt(
+                options.getOrDefault(FILES_PER_DIRECTORY_OPTION, "20"));
+        long maxFileSize = parseSize(options.getOrDefault(MAX_FILE_SIZE_OPTION, "16m"));
+        TreeGenerator treeGenerator = TreeGenerator.builder()
+                                                   .seed(seed)
+                                                   .depth(depth)
+                                                   .fanOut(fanOut)
+                                                   .filesPerDirectory(filesPerDirectory)
+                                                   .fileSize(0, maxFileSize)
+                                                   .build();
+
+        // The names hold every setting, so a different setting never
+        // reuses an old input.
+        Files.createDirectories(workDir);
+        Path data = workDir.resolve(String.join("-", "data",
+                                                Long.toString(seed),
+                                                Long.toString(dataSize),
+                                                options.getOrDefault(NUMERIC_FRACTION_OPTION, "0.5"),
+                                                options.getOrDefault(DISTINCT_STRINGS_OPTION, "10000"),
+                                                options.getOrDefault(MAX_DIGITS_OPTION, "9")) +
+                                    ".txt");
+        Path tree = workDir.resolve(String.join("-", "tree",
+                                                Long.toString(seed),
+                                                Integer.toString(depth),
+                                                Integer.toString(fanOut),
+                                                Integer.toString(filesPerDirectory),
+                                                Long.toString(maxFileSize)));
+        if(!Files.exists(data))
+        {
+            System.out.println("Generating " + data + "...");
+            Path incomplete = incompletePath(data);
+            dataGenerator.generate(incomplete, dataSize);
+            move(incomplete, data);
+        }
+        if(!Files.exists(tree))
+        {
+            System.out.println("Generating " + tree + "...");
+            Path incomplete = incompletePath(tree);
+            deleteRecursively(incomplete);
+            treeGenerator.generate(incomplete);
+            move(incomplete, tree);
+        }
+
+        if(results.toAbsolutePath().getParent() != null)
+        {
+            Files.createDirectories(results.toAbsolutePath().getParent());
+        }
+        RunMonitor monitor = new RunMonitor();
+        try( RecordWriter writer =
+                     format.newWriter(new FileOutputStream(results.toFile(), true)) )
+        {
+            for(int iteration = 1; iteration <= iterations; iteration++)
+            {
+                Instant startTime = Instant.now();
+                monitor.start();
+                FileProcessor processor = new FileProcessor(data.toFile());
+                monitor.stop();
+                writeRun(writer, "FileProcessor", iteration, startTime, seed,
+                         Files.size(data), processor.getCountOfNumbers(),
+                         monitor);
+
+                for(String readSize : readSizes)
+                {
+                    FileAnalyzer analyzer = new FileAnalyzer(null,
+                                                             null,
+                                                             parseReadSize(readSize));
+                    startTime = Instant.now();
+                    monitor.start();
+                    processor = analyzer.analyze(data.toFile());
+                    monitor.stop();
+                    writeRun(writer, "FileAnalyzer(read=" + readSize.trim() + ")",
+                             iteration, startTime, seed, Files.size(data),
+                             processor.getCountOfNumbers(), monitor);
+                }
+
+                startTime = Instant.now();
+                monitor.start();
+                FileScanner.ScanResult scan = FileScanner.scan(tree.toString());
+                monitor.stop();
+                writeRun(writer, "FileScanner", iteration, startTime, seed,
+                         scan.getTotalBytes(), scan.getNumFiles(), monitor);
+                writer.flush();
+            }
+        }
+        System.out.println("Results appended to " + results + ".");
+    }
+
+
+    /**
+     * Writes the record of a run, and prints a summary of it.
+     *
+     * @param writer  where to write the record
+     * @param benchmark  what was run
+     * @param iteration  the run's number
+     * @param startTime  when the run started
+     * @param seed  the seed the inputs were generated from
+     * @param inputBytes  the size of the input
+     * @param inputItems  the number of numbers or files in the input
+     * @param monitor  the measurements of the run
+     * @throws IOException  if the record could not be written
+     */
+    private static void writeRun(RecordWriter writer,
+                                 String benchmark,
+                                 int iteration,
+                                 Instant startTime,
+                                 long seed,
+                                 long inputBytes,
+                                 long inputItems,
+                                 RunMonitor monitor) throws IOException
+    {
+        long elapsedNanos = Math.max(1, monitor.getElapsedNanos());
+        long bytesPerSecond = (long) (inputBytes * 1e9 / elapsedNanos);
+        long itemsPerSecond = (long) (inputItems * 1e9 / elapsedNanos);
+
+        writer.beginRecord("run");
+        writer.field("benchmark", benchmark);
+        writer.field("iteration", iteration);
+        writer.field("startTime", startTime.toString());
+        writer.field("seed", seed);
+        writer.field("inputBytes", inputBytes);
+        writer.field("inputItems", inputItems);
+        writer.field("elapsedMillis", elapsedNanos / 1000000);
+        writer.field("bytesPerSecond", bytesPerSecond);
+        writer.field("itemsPerSecond", itemsPerSecond);
+        writer.field("peakHeapBytes", monitor.getPeakHeapBytes());
+        writer.field("gcCount", monitor.getCollections());
+        writer.field("gcPauseMillis", monitor.getCollectionMillis());
+        writer.field("maxGcPauseMillis", monitor.getLongestCollectionMillis());
+        writer.endRecord();
+
+        System.out.printf("%-24s #%d: %,d ms, %,.1f MB/s, %,d items/s, " +
+                                  "peak heap %,d MB, %d GCs (%d ms)%n",
+                          benchmark,
+                          iteration,
+                          elapsedNanos / 1000000,
+                          bytesPerSecond / (1024.0 * 1024.0),
+                          itemsPerSecond,
+                          monitor.getPeakHeapBytes() / (1024 * 1024),
+                          monitor.getCollections(),
+                          monitor.getCollectionMillis());
+    }
+
+
+    /**
+     * Parses the command-line options, each of which is a name followed by
+     * a value.
+     *
+     * @param args  the command-line arguments
+     * @return  the options, by name
+     * @throws IllegalArgumentException  if an option is unknown or has no
+     *              value, or a required option is missing
+     */
+    private static Map<String, String> parseOptions(String args[])
+    {
+        Map<String, String> options = new HashMap<>();
+        for(int k = 0; k < args.length; k += 2)
+        {
+            switch(args[k])
+            {
+                case WORK_DIR_OPTION:
+                case RESULTS_OPTION:
+                case FORMAT_OPTION:
+                case SEED_OPTION:
+                case ITERATIONS_OPTION:
+                case DATA_SIZE_OPTION:
+                case NUMERIC_FRACTION_OPTION:
+                case DISTINCT_STRINGS_OPTION:
+                case MAX_DIGITS_OPTION:
+                case TREE_DEPTH_OPTION:
+                case FAN_OUT_OPTION:
+                case FILES_PER_DIRECTORY_OPTION:
+                case MAX_FILE_SIZE_OPTION:
+                case READ_SIZES_OPTION:
+                    if(k + 1 >= args.length)
+                    {
+                        throw new IllegalArgumentException(args[k] +
+                                                           " needs a value.");
+                    }
+                    options.put(args[k], args[k + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option \"" +
+                                                       args[k] + "\".");
+            }
+        }
+
+        if(!options.containsKey(WORK_DIR_OPTION) ||
+           !options.containsKey(RESULTS_OPTION))
+        {
+            throw new IllegalArgumentException(WORK_DIR_OPTION + " and " +
+                                               RESULTS_OPTION +
+                                               " are required.");
+        }
+        return options;
+    }
+
+
+    /**
+     * @param size  a size in bytes, with an optional k, m, or g suffix
+     * @return  the number of bytes
+     * @throws NumberFormatException  if the size is not a number
+     */
+    private static long parseSize(String size)
+    {
+        // Each suffix is another factor of 1024.
+        int suffix = "kmg".indexOf(Character.toLowerCase(size.charAt(size.length() - 1)));
+        long multiplier = 1;
+        if(suffix >= 0)
+        {
+            multiplier = 1L << (10 * (suffix + 1));
+            size = size.substring(0, size.length() - 1);
+        }
+        return Long.parseLong(size) * multiplier;
+    }
+
+
+    /**
+     * @param readSize  a read size (see {@link #parseSize(String)}), or
+     *                  "auto"
+     * @return  the number of bytes, or {@link FileAnalyzer#AUTO_READ_SIZE}
+     * @throws NumberFormatException  if the size is not a number
+     */
+    private static int parseReadSize(String readSize)
+    {
+        readSize = readSize.trim();
+        if(AUTO_READ_SIZE.equalsIgnoreCase(readSize))
+        {
+            return FileAnalyzer.AUTO_READ_SIZE;
+        }
+        return (int) parseSize(readSize);
+    }
+
+
+    /**
+     * @param input  the path of a generated input
+     * @return  where to generate it before it is complete
+     */
+    private static Path incompletePath(Path input)
+    {
+        return input.resolveSibling(input.getFileName() + INCOMPLETE_SUFFIX);
+    }
+
+
+    /**
+     * Moves a completely generated input into place, atomically if
+     * possible.
+     *
+     * @param source  the input
+     * @param target  its final path
+     * @throws IOException  if it could not be moved
+     */
+    private static void move(Path source, Path target) throws IOException
+    {
+        try
+        {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(source, target);
+        }
+    }
+
+
+    /**
+     * Deletes a directory and everything in it, if it exists.
+     *
+     * @param directory  the directory to delete
+     * @throws IOException  if it could not be deleted
+     */
+    private static void deleteRecursively(Path directory) throws IOException
+    {
+        if(!Files.exists(directory))
+        {
+            return;
+        }
+
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                                             BasicFileAttributes attributes)
+                    throws IOException
+            {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir,
+                                                      IOException e)
+                    throws IOException
+            {
+                if(e != null)
+                {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+
+    /**
+     * Prints the usage information to standard error.
+     */
+    private static void printUsage()
+    {
+        System.err.println(
+                "Usage: java com.code42.loadTest.LoadTestRunner " +
+                        WORK_DIR_OPTION + " <dir> " + RESULTS_OPTION + " <file> [options]\n" +
+                "  " + WORK_DIR_OPTION + " <dir>  where the generated inputs are kept (and reused)\n" +
+                "  " + RESULTS_OPTION + " <file>  the file the results are appended to\n" +
+                "  " + FORMAT_OPTION + " <json|csv>  the format of the results (json)\n" +
+                "  " + SEED_OPTION + " <n>  the seed the inputs are generated from (1)\n" +
+                "  " + ITERATIONS_OPTION + " <n>  the number of times to run each benchmark (3)\n" +
+                "  " + DATA_SIZE_OPTION + " <size>  the size of the input file, e.g. 4g (256m)\n" +
+                "  " + NUMERIC_FRACTION_OPTION + " <0..1>  the fraction of lines that are numbers (0.5)\n" +
+                "  " + DISTINCT_STRINGS_OPTION + " <n>  the number of distinct strings (10000)\n" +
+                "  " + MAX_DIGITS_OPTION + " <n>  the most digits in a number (9)\n" +
+                "  " + TREE_DEPTH_OPTION + " <n>  the levels of subdirectories in the tree (4)\n" +
+                "  " + FAN_OUT_OPTION + " <n>  the subdirectories of each directory (6)\n" +
+                "  " + FILES_PER_DIRECTORY_OPTION + " <n>  the files in each directory (20)\n" +
+                "  " + MAX_FILE_SIZE_OPTION + " <size>  the size of the largest file (16m)\n" +
+                "  " + READ_SIZES_OPTION + " <size,...>  the read sizes to run the FileAnalyzer with;\n" +
+                "      auto chooses one for the file (64k,auto)");
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.loadTest;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures one run of a load test: how long it took, the most heap it
+ * used, and the garbage collection pauses during it.
+ *
+ * The peak heap is the sum of the peaks of the heap's memory pools, which
+ * may have peaked at different times, so it is an upper bound.  The pauses
+ * are taken from the collectors' notifications; where those are not
+ * available, only the total collection time is known and the longest
+ * pause is reported as -1.
+ */
+final class RunMonitor implements NotificationListener
+{
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The collectors that send notifications we are listening to.
+     */
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+    /**
+     * The JVM's uptime (in ms) when the run started.  Collections that
+     * started earlier are not counted.
+     */
+    private long startUptimeMillis = Long.MAX_VALUE;
+
+    /**
+     * The time (from {@link System#nanoTime()}) the run started.
+     */
+    private long startNanos;
+
+    /**
+     * The time the run ended.
+     */
+    private long endNanos;
+
+    /**
+     * The number of collections at the start of the run (for collectors
+     * that do not send notifications).
+     */
+    private long startCollections;
+
+    /**
+     * The total collection time at the start of the run, in ms.
+     */
+    private long startCollectionMillis;
+
+    /**
+     * The number of collections during the run.
+     */
+    private long collections;
+
+    /**
+     * The total time of the collections during the run, in ms.
+     */
+    private long collectionMillis;
+
+    /**
+     * The longest collection during the run, in ms, or -1 if unknown.
+     */
+    private long longestCollectionMillis;
+
+    /**
+     * The most heap used during the run, in bytes.
+     */
+    private long peakHeapBytes;
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * Records a collection.  Called by the collectors.
+     *
+     * @param notification  the notification
+     * @param handback  not used
+     */
+    @Override
+    public synchronized void handleNotification(Notification notification,
+                                                Object handback)
+    {
+        if(!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+                    .equals(notification.getType()))
+        {
+            return;
+        }
+
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from(
+                        (CompositeData) notification.getUserData());
+        if(info.getGcInfo().getStartTime() < startUptimeMillis)
+        {
+            // The collection before the run.
+            return;
+        }
+        long duration = info.getGcInfo().getDuration();
+        collections++;
+        collectionMillis += duration;
+        if(longestCollectionMillis >= 0)
+        {
+            longestCollectionMillis = Math.max(longestCollectionMillis, duration);
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Package API
+    //--------------------------------------------------------------------
+    /**
+     * Starts measuring.  Collects garbage first so that the last run's
+     * garbage is not counted against this one.
+     */
+    void start()
+    {
+        System.gc();
+
+        synchronized(this)
+        {
+            startUptimeMillis = Long.MAX_VALUE;
+            collections = 0;
+            collectionMillis = 0;
+            longestCollectionMillis = 0;
+        }
+        startCollections = 0;
+        startCollectionMillis = 0;
+        for(GarbageCollectorMXBean collector :
+                ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            if(collector instanceof NotificationEmitter)
+            {
+                NotificationEmitter emitter = (NotificationEmitter) collector;
+                emitter.addNotificationListener(this, null, null);
+                emitters.add(emitter);
+            }
+            else
+            {
+                startCollections += Math.max(0, collector.getCollectionCount());
+                startCollectionMillis += Math.max(0, collector.getCollectionTime());
+            }
+        }
+
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if(pool.getType() == MemoryType.HEAP)
+            {
+                pool.resetPeakUsage();
+            }
+        }
+        synchronized(this)
+        {
+            startUptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        }
+        startNanos = System.nanoTime();
+    }
+
+
+    /**
+     * Stops measuring.
+     */
+    void stop()
+    {
+        endNanos = System.nanoTime();
+
+        peakHeapBytes = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if(pool.getType() == MemoryType.HEAP)
+            {
+                peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        long endCollections = 0;
+        long endCollectionMillis = 0;
+        for(GarbageCollectorMXBean collector :
+                ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            if(!(collector instanceof NotificationEmitter))
+            {
+                endCollections += Math.max(0, collector.getCollectionCount());
+                endCollectionMillis += Math.max(0, collector.getCollectionTime());
+            }
+        }
+        synchronized(this)
+        {
+            if(endCollections > startCollections)
+            {
+                collections += endCollections - startCollections;
+                collectionMillis += endCollectionMillis - startCollectionMillis;
+                longestCollectionMillis = -1;
+            }
+        }
+
+        for(NotificationEmitter emitter : emitters)
+        {
+            try
+            {
+                emitter.removeNotificationListener(this);
+            }
+            catch(ListenerNotFoundException e)
+            {
+                // Nothing to remove.
+            }
+        }
+        emitters.clear();
+    }
+
+
+    /**
+     * @return  the length of the run, in ns
+     */
+    long getElapsedNanos()
+    {
+        return endNanos - startNanos;
+    }
+
+
+    /**
+     * @return  the most heap used during the run, in bytes
+     */
+    long getPeakHeapBytes()
+    {
+        return peakHeapBytes;
+    }
+
+
+    /**
+     * @return  the number of collections during the run
+     */
+    synchronized long getCollections()
+    {
+        return collections;
+    }
+
+
+    /**
+     * @return  the total time of the collections during the run, in ms
+     */
+    synchronized long getCollectionMillis()
+    {
+        return collectionMillis;
+    }
+
+
+    /**
+     * @return  the longest collection during the run, in ms, or -1 if it
+     *          is not known
+     */
+    synchronized long getLongestCollectionMillis()
+    {
+        return longestCollectionMillis;
+    }
+}
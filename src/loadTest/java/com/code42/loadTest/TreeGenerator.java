@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.loadTest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates directory trees for the {@link com.code42.scanning.FileScanner}.
+ * Create one with a {@link Builder}:
+ * <pre>
+ *   TreeGenerator generator = TreeGenerator.builder()
+ *                                          .seed(42)
+ *                                          .depth(4)
+ *                                          .fanOut(8)
+ *                                          .filesPerDirectory(50)
+ *                                          .fileSize(0, 64 * 1024 * 1024)
+ *                                          .build();
+ *   generator.generate(Paths.get("tree"));
+ * </pre>
+ *
+ * Every directory above the deepest level has fanOut subdirectories, and
+ * every directory (including the root) holds filesPerDirectory files.  The
+ * file sizes are log-uniform between the smallest and largest size, so
+ * there are as many files of a few KB as of a few MB, as in most real
+ * trees.  The same generator always creates the same tree.
+ *
+ * By default, the files are sparse (their size is set without writing
+ * their contents), which makes even very large trees quick to create and
+ * cheap to store.  The scanner only looks at sizes, so this does not
+ * change what it reports.
+ */
+public final class TreeGenerator
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The number of bytes written at a time when contents are written.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The seed of the random number generator.
+     */
+    private final long seed;
+
+    /**
+     * The number of levels of subdirectories.
+     */
+    private final int depth;
+
+    /**
+     * The number of subdirectories of each directory.
+     */
+    private final int fanOut;
+
+    /**
+     * The number of files in each directory.
+     */
+    private final int filesPerDirectory;
+
+    /**
+     * The size (in bytes) of the smallest file.
+     */
+    private final long minFileSize;
+
+    /**
+     * The size (in bytes) of the largest file.
+     */
+    private final long maxFileSize;
+
+    /**
+     * True if the files' contents are not written.
+     */
+    private final boolean sparse;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor (private).  Use a {@link Builder}.
+     *
+     * @param builder  the settings
+     */
+    private TreeGenerator(Builder builder)
+    {
+        this.seed = builder.seed;
+        this.depth = builder.depth;
+        this.fanOut = builder.fanOut;
+        this.filesPerDirectory = builder.filesPerDirectory;
+        this.minFileSize = builder.minFileSize;
+        this.maxFileSize = builder.maxFileSize;
+        this.sparse = builder.sparse;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * @return  a builder for a generator
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+
+    /**
+     * Creates the tree.
+     *
+     * @param root  the directory to create the tree in.  It is created if
+     *              it does not exist.
+     * @return  the total size (in bytes) of the files created
+     * @throws IOException  if the tree could not be created
+     */
+    public long generate(Path root) throws IOException
+    {
+        Files.createDirectories(root);
+        return generate(root, 0, new Random(seed), new byte[BUFFER_SIZE]);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Fills a directory and creates its subdirectories.
+     *
+     * @param directory  the directory
+     * @param level  the directory's depth below the root
+     * @param random  the random number generator
+     * @param buffer  the (zeroed) bytes to write the contents with
+     * @return  the total size of the files created
+     * @throws IOException  if a file or directory could not be created
+     */
+    private long generate(Path directory,
+                          int level,
+                          Random random,
+                          byte[] buffer) throws IOException
+    {
+        long totalBytes = 0;
+        for(int k = 0; k < filesPerDirectory; k++)
+        {
+            long size = nextFileSize(random);
+            createFile(directory.resolve("file" + k + ".dat"), size, buffer);
+            totalBytes += size;
+        }
+
+        if(level < depth)
+        {
+            for(int k = 0; k < fanOut; k++)
+            {
+                Path subdirectory = Files.createDirectory(directory.resolve("dir" + k));
+                totalBytes += generate(subdirectory, level + 1, random, buffer);
+            }
+        }
+        return totalBytes;
+    }
+
+
+    /**
+     * @param random  the random number generator
+     * @return  a file size, log-uniform between the smallest and largest
+     *          sizes
+     */
+    private long nextFileSize(Random random)
+    {
+        double low = Math.log(minFileSize + 1);
+        double high = Math.log(maxFileSize + 1);
+        long size = Math.round(Math.exp(low + random.nextDouble() * (high - low))) - 1;
+        return Math.max(minFileSize, Math.min(maxFileSize, size));
+    }
+
+
+    /**
+     * Creates a file of the given size.
+     *
+     * @param file  the file to create
+     * @param size  its size, in bytes
+     * @param buffer  the (zeroed) bytes to write the contents with
+     * @throws IOException  if the file could not be created
+     */
+    private void createFile(Path file, long size, byte[] buffer)
+            throws IOException
+    {
+        if(sparse)
+        {
+            try( RandomAccessFile output = new RandomAccessFile(file.toFile(), "rw") )
+            {
+                output.setLength(size);
+            }
+            return;
+        }
+
+        try( OutputStream output = Files.newOutputStream(file) )
+        {
+            for(long remaining = size; remaining > 0; )
+            {
+                int count = (int) Math.min(buffer.length, remaining);
+                output.write(buffer, 0, count);
+                remaining -= count;
+            }
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Classes
+    //--------------------------------------------------------------------
+    /**
+     * Builds a {@link TreeGenerator}.
+     */
+    public static final class Builder
+    {
+        /**
+         * The seed of the random number generator.
+         */
+        private long seed = 0;
+
+        /**
+         * The number of levels of subdirectories.
+         */
+        private int depth = 3;
+
+        /**
+         * The number of subdirectories of each directory.
+         */
+        private int fanOut = 4;
+
+        /**
+         * The number of files in each directory.
+         */
+        private int filesPerDirectory = 10;
+
+        /**
+         * The size (in bytes) of the smallest file.
+         */
+        private long minFileSize = 0;
+
+        /**
+         * The size (in bytes) of the largest file.
+         */
+        private long maxFileSize = 1024 * 1024;
+
+        /**
+         * True if the files' contents are not written.
+         */
+        private boolean sparse = true;
+
+        /**
+         * Constructor (private).  Use {@link TreeGenerator#builder()}.
+         */
+        private Builder()
+        {
+        }
+
+        /**
+         * @param seed  the seed of the random number generator
+         * @return  this builder
+         */
+        public Builder seed(long seed)
+        {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param depth  the number of levels of subdirectories
+         * @return  this builder
+         */
+        public Builder depth(int depth)
+        {
+            this.depth = depth;
+            return this;
+        }
+
+        /**
+         * @param fanOut  the number of subdirectories of each directory
+         * @return  this builder
+         */
+        public Builder fanOut(int fanOut)
+        {
+            this.fanOut = fanOut;
+            return this;
+        }
+
+        /**
+         * @param filesPerDirectory  the number of files in each directory
+         * @return  this builder
+         */
+        public Builder filesPerDirectory(int filesPerDirectory)
+        {
+            this.filesPerDirectory = filesPerDirectory;
+            return this;
+        }
+
+        /**
+         * @param minSize  the size (in bytes) of the smallest file
+         * @param maxSize  the size (in bytes) of the largest file
+         * @return  this builder
+         */
+        public Builder fileSize(long minSize, long maxSize)
+        {
+            this.minFileSize = minSize;
+            this.maxFileSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param sparse  true to only set the files' sizes, false to write
+         *                their contents (zeros)
+         * @return  this builder
+         */
+        public Builder sparse(boolean sparse)
+        {
+            this.sparse = sparse;
+            return this;
+        }
+
+        /**
+         * @return  the generator
+         * @throws IllegalArgumentException  if a setting is out of range
+         */
+        public TreeGenerator build()
+        {
+            if(depth < 0 || fanOut < 0 || filesPerDirectory < 0)
+            {
+                throw new IllegalArgumentException("Invalid tree shape (depth " +
+                                                   depth + ", fan-out " +
+                                                   fanOut + ", " +
+                                                   filesPerDirectory +
+                                                   " files per directory).");
+            }
+            if(minFileSize < 0 || minFileSize > maxFileSize)
+            {
+                throw new IllegalArgumentException("Invalid file sizes (" +
+                                                   minFileSize + " to " +
+                                                   maxFileSize + ").");
+            }
+            return new TreeGenerator(this);
+        }
+    }
+}
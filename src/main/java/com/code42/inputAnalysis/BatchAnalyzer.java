@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Analyzes a stream of requests in a single, long-running JVM, so the cost
+ * of starting the JVM and warming up the JIT is paid once rather than once
+ * per file.
+ *
+ * Each request is one line of text: the path of the file to analyze,
+ * optionally followed by strings to look for, all separated by tabs.  Each
+ * request produces exactly one result line, in the same order the requests
+ * were read:
+ * <pre>
+ *   &lt;request#&gt; TAB OK TAB &lt;path&gt; TAB &lt;sum&gt; TAB &lt;countOfNumbers&gt; [TAB &lt;string&gt;=&lt;true|false&gt;]...
+ *   &lt;request#&gt; TAB ERROR TAB &lt;path&gt; TAB &lt;error message&gt;
+ * </pre>
+ * Blank request lines are ignored.  The files are analyzed on a fixed pool
+ * of worker threads, each of which reuses its own {@link FileAnalyzer} (and
+ * so its read buffer and number arrays) from one file to the next.
+ */
+public class BatchAnalyzer
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The separator between fields in requests and results.
+     */
+    private static final String FIELD_SEPARATOR = "\t";
+
+    /**
+     * Marks the end of the requests for the thread writing the results.
+     */
+    private static final PendingResult END_OF_REQUESTS =
+            new PendingResult(0, null, CompletableFuture.completedFuture(null));
+
+    /**
+     * The number of results that may be waiting to be written per worker
+     * before we stop reading requests.
+     */
+    private static final int PENDING_RESULTS_PER_WORKER = 4;
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The number of worker threads.
+     */
+    private final int workerCount;
+
+    /**
+     * The charset to read the files with.
+     */
+    private final Charset charset;
+
+    /**
+     * The totals across all requests, used for the summary.
+     */
+    private final ProcessorStatistics statistics = new ProcessorStatistics();
+
+    /**
+     * The number of requests that failed.
+     */
+    private final AtomicInteger failureCount = new AtomicInteger();
+
+    /**
+     * Each worker's analyzer, reused for every file it processes.
+     */
+    private final ThreadLocal<FileAnalyzer> analyzers;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor
+     *
+     * @param workerCount  the number of files to analyze at once
+     * @param charset  the charset to read the files with.  If null, the
+     *                 platform's default charset is used.
+     * @throws IllegalArgumentException  if workerCount is not positive
+     */
+    public BatchAnalyzer(int workerCount, Charset charset)
+    {
+        if(workerCount < 1)
+        {
+            throw new IllegalArgumentException("There must be at least one " +
+                                               "worker (" + workerCount + ").");
+        }
+        this.workerCount = workerCount;
+        this.charset = (charset == null) ? Charset.defaultCharset() : charset;
+        this.analyzers = ThreadLocal.withInitial(
+                () -> new FileAnalyzer(this.charset, statistics));
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * Reads requests until the end of the input, writing one result per
+     * request.  When the input ends, waits for the outstanding requests to
+     * finish and writes a throughput summary.
+     *
+     * @param requests  the source of the requests
+     * @param results  where to write the results
+     * @param summary  where to write the throughput summary
+     * @throws IOException  if the requests could not be read
+     * @throws InterruptedException  if interrupted while waiting for the
+     *          requests to finish
+     */
+    public void run(BufferedReader requests,
+                    PrintStream results,
+                    PrintStream summary)
+            throws IOException, InterruptedException
+    {
+        long start = System.nanoTime();
+        int requestCount = 0;
+
+        ExecutorService workers = Executors.newFixedThreadPool(
+                workerCount, new DaemonThreadFactory("batch-worker"));
+
+        // The results are queued in request order and written by their own
+        // thread, so a slow request never stops us from reading more.  The
+        // queue is bounded so we cannot run arbitrarily far ahead.
+        BlockingQueue<PendingResult> pending = new ArrayBlockingQueue<>(
+                workerCount * PENDING_RESULTS_PER_WORKER);
+        Thread writer = new Thread(() -> writeResults(pending, results),
+                                   "batch-writer");
+        writer.start();
+
+        try
+        {
+            String request;
+            while((request = requests.readLine()) != null)
+            {
+                if(request.trim().isEmpty())
+                {
+                    continue;
+                }
+
+                requestCount++;
+                int requestNumber = requestCount;
+                String[] fields = request.split(FIELD_SEPARATOR, -1);
+                pending.put(new PendingResult(
+                        requestNumber,
+                        fields[0],
+                        workers.submit(() -> analyze(requestNumber, fields))));
+            }
+        }
+        finally
+        {
+            pending.put(END_OF_REQUESTS);
+            writer.join();
+            workers.shutdown();
+        }
+
+        writeSummary(summary, requestCount, System.nanoTime() - start);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Analyzes a single request.  This runs on a worker thread.
+     *
+     * @param requestNumber  the (1-based) position of the request
+     * @param fields  the path followed by the strings to look for
+     * @return  the result line for the request
+     */
+    private String analyze(int requestNumber, String[] fields)
+    {
+        String path = fields[0];
+
+        FileProcessor processor;
+        try
+        {
+            processor = analyzers.get().analyze(new File(path));
+        }
+        catch(IOException | RuntimeException | Error e)
+        {
+            // Even an Error gets its own record, so that the results stay
+            // in step with the requests.
+            return errorRecord(requestNumber, path, e);
+        }
+
+        StringBuilder result = new StringBuilder();
+        result.append(requestNumber).append(FIELD_SEPARATOR)
+              .append("OK").append(FIELD_SEPARATOR)
+              .append(path).append(FIELD_SEPARATOR)
+              .append(processor.getTotal()).append(FIELD_SEPARATOR)
+              .append(processor.getCountOfNumbers());
+        for(int k = 1; k < fields.length; k++)
+        {
+            result.append(FIELD_SEPARATOR)
+                  .append(fields[k]).append('=')
+                  .append(processor.contains(fields[k]));
+        }
+        return result.toString();
+    }
+
+
+    /**
+     * Builds the result line for a request that failed, and counts the
+     * failure.
+     *
+     * @param requestNumber  the (1-based) position of the request
+     * @param path  the path of the file
+     * @param error  why the request failed
+     * @return  the result line for the request
+     */
+    private String errorRecord(int requestNumber, String path, Throwable error)
+    {
+        failureCount.incrementAndGet();
+        return requestNumber + FIELD_SEPARATOR +
+               "ERROR" + FIELD_SEPARATOR +
+               path + FIELD_SEPARATOR +
+               error;
+    }
+
+
+    /**
+     * Writes the results in request order until the end marker is seen.
+     * This runs on its own thread.
+     *
+     * @param pending  the results, in request order
+     * @param results  where to write the results
+     */
+    private void writeResults(BlockingQueue<PendingResult> pending,
+                              PrintStream results)
+    {
+        try
+        {
+            PendingResult pendingResult;
+            while((pendingResult = pending.take()) != END_OF_REQUESTS)
+            {
+                // The workers turn every failure into an ERROR result, so
+                // get() only throws if something is badly wrong.
+                try
+                {
+                    results.println(pendingResult.result.get());
+                }
+                catch(ExecutionException e)
+                {
+                    results.println(errorRecord(pendingResult.requestNumber,
+                                                pendingResult.path,
+                                                e.getCause()));
+                }
+                results.flush();
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Writes the throughput summary.
+     *
+     * @param summary  where to write the summary
+     * @param requestCount  the number of requests read
+     * @param elapsedNanos  the time taken to process all of the requests
+     */
+    private void writeSummary(PrintStream summary,
+                              int requestCount,
+                              long elapsedNanos)
+    {
+        double seconds = elapsedNanos / 1e9;
+        summary.format("Requests: %d (%d failed)\n",
+                       requestCount, failureCount.get());
+        summary.format("Elapsed time (s): %.3f\n", seconds);
+        summary.format("Requests per second: %.2f\n",
+                       (seconds > 0) ? requestCount / seconds : 0.0);
+        summary.format("Bytes read: %d\n", statistics.getBytesRead());
+        summary.format("Lines read: %d\n", statistics.getLinesRead());
+        summary.format("Lines per second (per worker): %.0f\n",
+                       statistics.getLinesPerSecond());
+        summary.flush();
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Classes
+    //--------------------------------------------------------------------
+    /**
+     * A request's result that may not be ready yet, along with what is
+     * needed to report it as an error if it cannot be had.
+     */
+    private static final class PendingResult
+    {
+        /**
+         * The (1-based) position of the request.
+         */
+        final int requestNumber;
+
+        /**
+         * The path of the file.
+         */
+        final String path;
+
+        /**
+         * The result line for the request.
+         */
+        final Future<String> result;
+
+        /**
+         * Constructor
+         *
+         * @param requestNumber  the (1-based) position of the request
+         * @param path  the path of the file
+         * @param result  the result line for the request
+         */
+        PendingResult(int requestNumber, String path, Future<String> result)
+        {
+            this.requestNumber = requestNumber;
+            this.path = path;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,517 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Opens input files, transparently decompressing them if they are
+ * compressed.  The format is detected from the first few bytes of the file
+ * (not the file name), so a plain text file is always read as-is.
+ *
+ * Compressed files are decompressed on a background thread and handed to
+ * the reader through a {@link PipelinedInputStream}, so decompression and
+ * line parsing overlap.  Gzip files made of independent, self-describing
+ * members (BGZF, as written by bgzip) have each member inflated in parallel.
+ * Other gzip files (including plain concatenated members) are decompressed
+ * in order on the background thread, since the only way to find where one
+ * of their members ends is to inflate it.
+ */
+final class CompressedInput
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The magic number at the start of every gzip member.
+     */
+    private static final int GZIP_MAGIC_1 = 0x1F;
+    private static final int GZIP_MAGIC_2 = 0x8B;
+
+    /**
+     * The magic number at the start of a zstd frame (stored little-endian).
+     */
+    private static final int ZSTD_MAGIC = 0xFD2FB528;
+
+    /**
+     * The gzip header flag indicating an extra field is present.
+     */
+    private static final int GZIP_FLAG_EXTRA = 0x04;
+
+    /**
+     * The number of bytes to read and decompress at a time.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The number of chunks the decompressor may run ahead of the parser.
+     */
+    private static final int RING_CAPACITY = 8;
+
+    /**
+     * The size of the fixed part of a BGZF member header, up to and
+     * including the block size.
+     */
+    private static final int BGZF_HEADER_SIZE = 18;
+
+    /**
+     * The size of the gzip member trailer (CRC-32 and length).
+     */
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    /**
+     * The most bytes a BGZF member can decompress to.
+     */
+    private static final int BGZF_MAX_DATA_SIZE = 64 * 1024;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor (private).
+     *
+     * This is a utility class, so it should not be instantiated.
+     */
+    private CompressedInput()
+    {
+        // Nothing needed here.
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * Opens a file for reading, decompressing it if it is compressed.
+     *
+     * @param file  the file to open
+     * @return  a stream of the file's (decompressed) contents.  The caller
+     *          must close it.
+     * @throws java.io.FileNotFoundException  if the file does not exist or
+     *          is a directory
+     * @throws IOException  if the file is compressed in a format we cannot
+     *          read or it could not be read
+     */
+    static InputStream open(File file) throws IOException
+    {
+        return open(new FileInputStream(file), file.getName());
+    }
+
+
+    /**
+     * Opens a stream for reading, decompressing it if it is compressed.
+     *
+     * @param raw  the stream to read.  It is closed when the returned
+     *             stream is closed (or if this fails).
+     * @param name  the name of the stream (for errors and naming threads)
+     * @return  a stream of the (decompressed) contents.  The caller must
+     *          close it.
+     * @throws IOException  if the stream is compressed in a format we
+     *          cannot read or it could not be read
+     */
+    static InputStream open(InputStream raw, String name) throws IOException
+    {
+        BufferedInputStream input = new BufferedInputStream(raw, CHUNK_SIZE);
+        try
+        {
+            // Peek at the first few bytes to see what we have.  A stream
+            // (unlike a file) may hand them over a few at a time.
+            byte[] magic = new byte[4];
+            input.mark(magic.length);
+            int count = readFully(input, magic);
+            input.reset();
+
+            if(count >= 2 &&
+               (magic[0] & 0xFF) == GZIP_MAGIC_1 &&
+               (magic[1] & 0xFF) == GZIP_MAGIC_2)
+            {
+                return openGzip(input, name);
+            }
+
+            if(count == 4 && littleEndianInt(magic, 0) == ZSTD_MAGIC)
+            {
+                throw new ZipException("zstd-compressed input is not " +
+                                       "supported: " + name);
+            }
+
+            return input;
+        }
+        catch(IOException | RuntimeException e)
+        {
+            input.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Checks whether a file starts with the magic number of a compressed
+     * format that {@link #open(File)} recognizes.
+     *
+     * @param file  the file to check
+     * @return  true if the file is gzip- or zstd-compressed
+     * @throws IOException  if the file could not be read
+     */
+    static boolean isCompressed(File file) throws IOException
+    {
+        byte[] magic = new byte[4];
+        int count;
+        try( InputStream input = new FileInputStream(file) )
+        {
+            count = readFully(input, magic);
+        }
+
+        return (count >= 2 &&
+                (magic[0] & 0xFF) == GZIP_MAGIC_1 &&
+                (magic[1] & 0xFF) == GZIP_MAGIC_2) ||
+               (count == 4 && littleEndianInt(magic, 0) == ZSTD_MAGIC);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Starts decompressing a gzip stream in the background.
+     *
+     * @param input  the compressed stream, positioned at the first member
+     * @param name  the name of the file (for naming the threads)
+     * @return  a stream of the decompressed bytes
+     */
+    private static InputStream openGzip(BufferedInputStream input, String name)
+    {
+        PipelinedInputStream output = new PipelinedInputStream(RING_CAPACITY);
+        output.start(new Thread(() -> decompress(input, output),
+                                "gzip-reader-" + name));
+        return output;
+    }
+
+
+    /**
+     * Decompresses the gzip stream into the pipeline.  This runs on the
+     * background thread.  BGZF members are inflated on a thread pool until
+     * we find a member that is not BGZF; the rest of the stream is inflated
+     * in order on this thread.
+     *
+     * @param input  the compressed stream, positioned at the first member
+     * @param output  the pipeline to fill
+     */
+    private static void decompress(BufferedInputStream input,
+                                   PipelinedInputStream output)
+    {
+        ExecutorService inflaters = null;
+        boolean interrupted = false;
+        try
+        {
+            byte[] header = new byte[BGZF_HEADER_SIZE];
+            while(true)
+            {
+                input.mark(header.length);
+                int count = readFully(input, header);
+                if(count == 0)
+                {
+                    // A clean end after the last member.
+                    break;
+                }
+
+                int blockSize = (count == header.length) ?
+                                bgzfBlockSize(header) : -1;
+                if(blockSize < 0)
+                {
+                    // Not BGZF, so we have no choice but to go in order.
+                    input.reset();
+                    inflateSequentially(input, output);
+                    break;
+                }
+                if(blockSize < BGZF_HEADER_SIZE + GZIP_TRAILER_SIZE)
+                {
+                    // Too small to hold its own header and trailer.
+                    throw new ZipException("Invalid BGZF block size (" +
+                                           blockSize + ").");
+                }
+
+                if(inflaters == null)
+                {
+                    inflaters = Executors.newFixedThreadPool(
+                            Runtime.getRuntime().availableProcessors(),
+                            new DaemonThreadFactory(Thread.currentThread().getName()));
+                }
+
+                // Read the rest of the member and hand it off.
+                byte[] member = new byte[blockSize];
+                System.arraycopy(header, 0, member, 0, header.length);
+                if(readFully(input, member, header.length,
+                             blockSize - header.length) != blockSize - header.length)
+                {
+                    throw new EOFException("Unexpected end of gzip member.");
+                }
+                output.put(inflaters.submit(() -> inflateBgzfMember(member)));
+            }
+
+            output.finish();
+        }
+        catch(InterruptedException e)
+        {
+            // The reader closed the stream.  Just stop.
+            interrupted = true;
+        }
+        catch(IOException | RuntimeException | Error e)
+        {
+            // Pass everything on (even an OutOfMemoryError), or the reader
+            // would wait forever for the next chunk.
+            try
+            {
+                output.fail(e);
+            }
+            catch(InterruptedException closed)
+            {
+                // The reader closed the stream, so no one will see it.
+            }
+        }
+        finally
+        {
+            // Let queued members finish unless the reader has gone away;
+            // the reader is still waiting on them.
+            if(inflaters != null)
+            {
+                if(interrupted)
+                {
+                    inflaters.shutdownNow();
+                }
+                else
+                {
+                    inflaters.shutdown();
+                }
+            }
+            try
+            {
+                input.close();
+            }
+            catch(IOException e)
+            {
+                // Nothing more we can do.
+            }
+        }
+    }
+
+
+    /**
+     * Inflates the rest of a gzip stream in order, handling any number of
+     * concatenated members.
+     *
+     * @param input  the compressed stream, positioned at a member header
+     * @param output  the pipeline to fill
+     * @throws IOException  if the stream is not valid gzip
+     * @throws InterruptedException  if the reader closed the stream
+     */
+    private static void inflateSequentially(InputStream input,
+                                            PipelinedInputStream output)
+            throws IOException, InterruptedException
+    {
+        GZIPInputStream gzip = new GZIPInputStream(input, CHUNK_SIZE);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int count;
+        int filled = 0;
+        while((count = gzip.read(chunk, filled, chunk.length - filled)) != -1)
+        {
+            filled += count;
+            if(filled == chunk.length)
+            {
+                output.put(chunk);
+                chunk = new byte[CHUNK_SIZE];
+                filled = 0;
+            }
+        }
+        if(filled > 0)
+        {
+            byte[] last = new byte[filled];
+            System.arraycopy(chunk, 0, last, 0, filled);
+            output.put(last);
+        }
+    }
+
+
+    /**
+     * Gets the total size of a BGZF member from its header.
+     *
+     * A BGZF member is a gzip member with an extra field whose first
+     * subfield is "BC", holding the size of the whole member.  Knowing the
+     * size up front is what lets us hand members to other threads without
+     * inflating them first.
+     *
+     * @param header  the first {@value #BGZF_HEADER_SIZE} bytes of a member
+     * @return  the size of the member (in bytes) or -1 if it is not a BGZF
+     *          member
+     */
+    private static int bgzfBlockSize(byte[] header)
+    {
+        boolean isBgzf = (header[0] & 0xFF) == GZIP_MAGIC_1 &&
+                         (header[1] & 0xFF) == GZIP_MAGIC_2 &&
+                         header[2] == 8 &&
+                         (header[3] & 0xFF) == GZIP_FLAG_EXTRA &&
+                         littleEndianShort(header, 10) == 6 &&
+                         header[12] == 'B' &&
+                         header[13] == 'C' &&
+                         littleEndianShort(header, 14) == 2;
+        if(!isBgzf)
+        {
+            return -1;
+        }
+        return littleEndianShort(header, 16) + 1;
+    }
+
+
+    /**
+     * Inflates a single BGZF member and checks it against its trailer.
+     * This runs on the thread pool.
+     *
+     * @param member  the whole member, header to trailer
+     * @return  the decompressed bytes
+     * @throws IOException  if the member is corrupt
+     */
+    private static byte[] inflateBgzfMember(byte[] member) throws IOException
+    {
+        int trailer = member.length - GZIP_TRAILER_SIZE;
+        int dataStart = BGZF_HEADER_SIZE;
+        if(trailer < dataStart)
+        {
+            throw new ZipException("Invalid BGZF block size.");
+        }
+
+        long expectedCrc = littleEndianInt(member, trailer) & 0xFFFFFFFFL;
+        int size = littleEndianInt(member, trailer + 4);
+        if(size < 0 || size > BGZF_MAX_DATA_SIZE)
+        {
+            // Don't let a corrupt trailer make us allocate up to 2GB.
+            throw new ZipException("Corrupt BGZF block (invalid size " +
+                                   (size & 0xFFFFFFFFL) + ").");
+        }
+        byte[] data = new byte[size];
+
+        Inflater inflater = new Inflater(true);
+        try
+        {
+            inflater.setInput(member, dataStart, trailer - dataStart);
+            int inflated = 0;
+            while(inflated < size && !inflater.finished())
+            {
+                int count = inflater.inflate(data, inflated, size - inflated);
+                if(count == 0 && (inflater.needsInput() ||
+                                  inflater.needsDictionary()))
+                {
+                    break;
+                }
+                inflated += count;
+            }
+            if(inflated != size)
+            {
+                throw new ZipException("Corrupt BGZF block (wrong size).");
+            }
+        }
+        catch(DataFormatException e)
+        {
+            throw new ZipException("Corrupt BGZF block: " + e.getMessage());
+        }
+        finally
+        {
+            inflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, size);
+        if(crc.getValue() != expectedCrc)
+        {
+            throw new ZipException("Corrupt BGZF block (bad CRC).");
+        }
+        return data;
+    }
+
+
+    /**
+     * Reads as many bytes as possible into the buffer.
+     *
+     * @param input  the stream to read
+     * @param buffer  the buffer to fill
+     * @return  the number of bytes read (less than the length of the buffer
+     *          only at the end of the stream)
+     * @throws IOException  if the stream could not be read
+     */
+    private static int readFully(InputStream input, byte[] buffer)
+            throws IOException
+    {
+        return readFully(input, buffer, 0, buffer.length);
+    }
+
+
+    /**
+     * Reads as many bytes as possible into part of the buffer.
+     *
+     * @param input  the stream to read
+     * @param buffer  the buffer to fill
+     * @param offset  the index to start filling at
+     * @param length  the number of bytes to read
+     * @return  the number of bytes read (less than length only at the end of
+     *          the stream)
+     * @throws IOException  if the stream could not be read
+     */
+    private static int readFully(InputStream input,
+                                 byte[] buffer,
+                                 int offset,
+                                 int length) throws IOException
+    {
+        int total = 0;
+        while(total < length)
+        {
+            int count = input.read(buffer, offset + total, length - total);
+            if(count == -1)
+            {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+
+    /**
+     * @param bytes  the array to read from
+     * @param offset  the index of the low byte
+     * @return  the unsigned 16-bit little-endian value at the offset
+     */
+    private static int littleEndianShort(byte[] bytes, int offset)
+    {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+    }
+
+
+    /**
+     * @param bytes  the array to read from
+     * @param offset  the index of the low byte
+     * @return  the 32-bit little-endian value at the offset
+     */
+    private static int littleEndianInt(byte[] bytes, int offset)
+    {
+        return littleEndianShort(bytes, offset) |
+               (littleEndianShort(bytes, offset + 2) << 16);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes the threads of our thread pools.  The threads are daemons, so a
+ * pool (or a stream) that is never shut down never keeps the JVM alive on
+ * its own, and are named after the pool and numbered from 1.
+ */
+final class DaemonThreadFactory implements ThreadFactory
+{
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The prefix for the thread names.
+     */
+    private final String prefix;
+
+    /**
+     * The number of threads made so far.
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor
+     *
+     * @param prefix  the prefix for the thread names
+     */
+    DaemonThreadFactory(String prefix)
+    {
+        this.prefix = prefix;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  ThreadFactory
+    //--------------------------------------------------------------------
+    @Override
+    public Thread newThread(Runnable task)
+    {
+        Thread thread = new Thread(task, prefix + "-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import java.math.BigDecimal;
+
+/**
+ * Sums decimal numbers exactly.  The result is equal (in both value and
+ * scale) to adding the numbers, one at a time, to a BigDecimal 0.
+ *
+ * Adding each number to a BigDecimal allocates a new BigDecimal, and the
+ * cost of the addition grows with the scale and magnitude of the sum.  Most
+ * numbers have few digits, so this keeps a long for each scale from 0 to
+ * {@link #MAX_FAST_SCALE} and adds each number's unscaled value to the long
+ * for its scale.  Only when a long would overflow, or a number does not fit
+ * (a negative or large scale, or more than 18 digits), is a BigDecimal
+ * used.
+ *
+ * Accumulators can be {@link #add(DecimalAccumulator) merged}, so the parts
+ * of a file can be summed separately (and in parallel) and combined.
+ *
+ * This class is not thread-safe.
+ */
+final class DecimalAccumulator
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The largest scale that has its own long.
+     */
+    static final int MAX_FAST_SCALE = 18;
+
+    /**
+     * The most digits an unscaled value can have and still fit in a long.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The sum of the unscaled values of the numbers of each scale.
+     */
+    private final long[] unscaledSums = new long[MAX_FAST_SCALE + 1];
+
+    /**
+     * The sum of everything that did not fit in the longs, or null if
+     * everything did.
+     */
+    private BigDecimal overflow = null;
+
+    /**
+     * The largest scale added (and at least 0, the scale of the initial
+     * sum).  This is the scale of the sum.
+     */
+    private int maxScale = 0;
+
+    /**
+     * The sum, or null if it has changed since it was last computed.
+     */
+    private BigDecimal cachedSum = BigDecimal.ZERO;
+
+
+    //--------------------------------------------------------------------
+    //  Package API
+    //--------------------------------------------------------------------
+    /**
+     * Adds a number to the sum.
+     *
+     * @param value  the number to add
+     */
+    void add(BigDecimal value)
+    {
+        int scale = value.scale();
+        if(scale == 0 && value.precision() <= MAX_LONG_DIGITS)
+        {
+            // A compact BigDecimal gives its value without allocating.
+            add(value.longValue(), 0);
+        }
+        else if(scale > 0 &&
+                scale <= MAX_FAST_SCALE &&
+                value.precision() <= MAX_LONG_DIGITS)
+        {
+            add(value.unscaledValue().longValue(), scale);
+        }
+        else
+        {
+            addOverflow(value);
+        }
+    }
+
+
+    /**
+     * Adds a number, given as unscaled value * 10^-scale, to the sum.  This
+     * never allocates when the scale is from 0 to {@link #MAX_FAST_SCALE}.
+     *
+     * @param unscaledValue  the number's unscaled value
+     * @param scale  the number's scale
+     */
+    void add(long unscaledValue, int scale)
+    {
+        if(scale < 0 || scale > MAX_FAST_SCALE)
+        {
+            addOverflow(BigDecimal.valueOf(unscaledValue, scale));
+            return;
+        }
+
+        long current = unscaledSums[scale];
+        long result = current + unscaledValue;
+
+        // The addition overflowed if both operands have a different sign
+        // than the result.
+        if(((current ^ result) & (unscaledValue ^ result)) < 0)
+        {
+            addOverflow(BigDecimal.valueOf(current, scale));
+            result = unscaledValue;
+        }
+        unscaledSums[scale] = result;
+
+        if(scale > maxScale)
+        {
+            maxScale = scale;
+        }
+        cachedSum = null;
+    }
+
+
+    /**
+     * Adds the sum of another accumulator to this sum.
+     *
+     * @param other  the accumulator to add.  It is not changed.
+     */
+    void add(DecimalAccumulator other)
+    {
+        for(int scale = 0; scale <= MAX_FAST_SCALE; scale++)
+        {
+            if(other.unscaledSums[scale] != 0)
+            {
+                add(other.unscaledSums[scale], scale);
+            }
+        }
+        if(other.overflow != null)
+        {
+            addOverflow(other.overflow);
+        }
+        if(other.maxScale > maxScale)
+        {
+            maxScale = other.maxScale;
+        }
+        cachedSum = null;
+    }
+
+
+    /**
+     * @return  the sum of the numbers added.  Its scale is the largest
+     *          scale of the numbers added (or 0), as if they had been added
+     *          to a BigDecimal 0.
+     */
+    BigDecimal toBigDecimal()
+    {
+        if(null == cachedSum)
+        {
+            BigDecimal sum = (null == overflow) ? BigDecimal.ZERO : overflow;
+            for(int scale = 0; scale <= MAX_FAST_SCALE; scale++)
+            {
+                if(unscaledSums[scale] != 0)
+                {
+                    sum = sum.add(BigDecimal.valueOf(unscaledSums[scale],
+                                                     scale));
+                }
+            }
+
+            // Every part's scale is at most maxScale, so this is exact.
+            cachedSum = sum.setScale(maxScale);
+        }
+        return cachedSum;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Adds a number that does not fit in the longs to the sum.
+     *
+     * @param value  the number to add
+     */
+    private void addOverflow(BigDecimal value)
+    {
+        overflow = (null == overflow) ? value : overflow.add(value);
+        if(value.scale() > maxScale)
+        {
+            maxScale = value.scale();
+        }
+        cachedSum = null;
+    }
+}
@@ -0,0 +1,592 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Analyzes every matching file under a directory tree on a fixed pool of
+ * worker threads, giving the statistics of each file and of all of the
+ * files combined.
+ *
+ * The files are scheduled largest first, so a big file found late in the
+ * walk does not leave the other workers idle at the end.  Uncompressed
+ * files larger than the chunk size are split into chunks of about that
+ * size (each ending on a line break) so that one huge file can be analyzed
+ * by several workers at once.  Files are only split when they are read with
+ * an ASCII-compatible charset, where a line break is always a single '\n'
+ * byte.
+ */
+public class DirectoryAnalyzer
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The files analyzed if no pattern is given.
+     */
+    public static final String DEFAULT_GLOB = "*.txt";
+
+    /**
+     * The size (in bytes) above which a file is split into chunks if no
+     * chunk size is given.
+     */
+    public static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The number of bytes read at a time when looking for the line break
+     * that ends a chunk.
+     */
+    private static final int BOUNDARY_READ_SIZE = 8 * 1024;
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The number of worker threads.
+     */
+    private final int workerCount;
+
+    /**
+     * The charset to read the files with.
+     */
+    private final Charset charset;
+
+    /**
+     * The size (in bytes) above which a file is split into chunks.
+     */
+    private final long chunkSize;
+
+    /**
+     * Each worker's analyzer, reused for every chunk it processes.
+     */
+    private final ThreadLocal<FileAnalyzer> analyzers;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor
+     *
+     * @param workerCount  the number of files (or chunks) to analyze at once
+     * @param charset  the charset to read the files with.  If null, the
+     *                 platform's default charset is used.
+     * @throws IllegalArgumentException  if workerCount is not positive
+     */
+    public DirectoryAnalyzer(int workerCount, Charset charset)
+    {
+        this(workerCount, charset, DEFAULT_CHUNK_SIZE);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param workerCount  the number of files (or chunks) to analyze at once
+     * @param charset  the charset to read the files with.  If null, the
+     *                 platform's default charset is used.
+     * @param chunkSize  the size (in bytes) above which a file is split
+     *                   into chunks
+     * @throws IllegalArgumentException  if workerCount or chunkSize is not
+     *          positive
+     */
+    public DirectoryAnalyzer(int workerCount, Charset charset, long chunkSize)
+    {
+        if(workerCount < 1)
+        {
+            throw new IllegalArgumentException("There must be at least one " +
+                                               "worker (" + workerCount + ").");
+        }
+        if(chunkSize < 1)
+        {
+            throw new IllegalArgumentException("The chunk size must be " +
+                                               "positive (" + chunkSize + ").");
+        }
+        this.workerCount = workerCount;
+        this.charset = (charset == null) ? Charset.defaultCharset() : charset;
+        this.chunkSize = chunkSize;
+        this.analyzers = ThreadLocal.withInitial(
+                () -> new FileAnalyzer(this.charset, null));
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * Analyzes every regular file under the root whose name matches the
+     * pattern.  Symbolic links are not followed (as in the
+     * {@link com.code42.scanning.FileScanner}), so a file outside the tree
+     * is never analyzed and a file inside it is never counted twice.  A
+     * file that cannot be read, or a directory that cannot be listed, does
+     * not stop the rest of the tree from being analyzed; its error is
+     * recorded in the result instead.
+     *
+     * @param root  the directory (or file) to analyze
+     * @param glob  the pattern the file names must match (for example,
+     *              "*.txt"), in the syntax of
+     *              {@link java.nio.file.FileSystem#getPathMatcher(String)}
+     * @return  the statistics of each file and of all of the files combined
+     * @throws IOException  if the root could not be read
+     * @throws InterruptedException  if interrupted while waiting for the
+     *          files to be analyzed
+     */
+    public Result analyze(Path root, String glob)
+            throws IOException, InterruptedException
+    {
+        PathMatcher matcher = root.getFileSystem()
+                                  .getPathMatcher("glob:" + glob);
+
+        // Find the files and split them into chunks.
+        SortedMap<Path, Exception> errors = new TreeMap<>();
+        SortedMap<Path, List<WorkUnit>> filesToAnalyze = new TreeMap<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(Path path,
+                                             BasicFileAttributes attributes)
+            {
+                // The attributes are the link's own, so links are skipped.
+                if(attributes.isRegularFile() &&
+                   matcher.matches(path.getFileName()))
+                {
+                    try
+                    {
+                        filesToAnalyze.put(path, split(path));
+                    }
+                    catch(IOException e)
+                    {
+                        errors.put(path, e);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException e)
+                    throws IOException
+            {
+                if(path.equals(root))
+                {
+                    // There is nothing to analyze.
+                    throw e;
+                }
+                errors.put(path, e);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory,
+                                                      IOException e)
+            {
+                // The directory could not be listed in full; keep what
+                // was found.
+                if(e != null)
+                {
+                    errors.put(directory, e);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // Schedule the largest pieces of work first.  The units are
+        // independent, so no worker ever waits on another.
+        List<WorkUnit> schedule = new ArrayList<>();
+        filesToAnalyze.values().forEach(schedule::addAll);
+        schedule.sort(Comparator.comparingLong(WorkUnit::length).reversed());
+
+        ExecutorService workers = Executors.newFixedThreadPool(
+                workerCount, new DaemonThreadFactory("directory-worker"));
+        SortedMap<Path, FileProcessor> files = new TreeMap<>();
+        try
+        {
+            for(WorkUnit unit : schedule)
+            {
+                unit.result = workers.submit(() -> analyze(unit));
+            }
+            workers.shutdown();
+
+            // Put the chunks of each file back together.
+            for(SortedMap.Entry<Path, List<WorkUnit>> file
+                    : filesToAnalyze.entrySet())
+            {
+                Path path = file.getKey();
+                try
+                {
+                    List<FileProcessor> parts = new ArrayList<>();
+                    for(WorkUnit unit : file.getValue())
+                    {
+                        parts.add(unit.result.get());
+                    }
+                    files.put(path, (parts.size() == 1)
+                            ? parts.get(0)
+                            : FileProcessor.merge(nameOf(path), parts));
+                }
+                catch(ExecutionException e)
+                {
+                    errors.put(path, asException(e.getCause()));
+                }
+            }
+        }
+        finally
+        {
+            // Only has an effect if we were interrupted.
+            workers.shutdownNow();
+        }
+
+        FileProcessor summary = FileProcessor.merge(nameOf(root),
+                                                    files.values());
+        return new Result(files, errors, summary);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Splits a file into the units of work needed to analyze it.
+     *
+     * @param path  the file to split
+     * @return  the units, in the order they appear in the file
+     * @throws IOException  if the file could not be read
+     */
+    private List<WorkUnit> split(Path path) throws IOException
+    {
+        long size = Files.size(path);
+        if(size <= chunkSize ||
+           !LineReader.isAsciiCompatible(charset) ||
+           CompressedInput.isCompressed(path.toFile()))
+        {
+            return Collections.singletonList(new WorkUnit(path, 0, size, false));
+        }
+
+        List<WorkUnit> units = new ArrayList<>();
+        try( FileChannel channel = FileChannel.open(path,
+                                                    StandardOpenOption.READ) )
+        {
+            long start = 0;
+            while(start < size)
+            {
+                long end = (size - start <= chunkSize)
+                        ? size
+                        : nextLineStart(channel, start + chunkSize, size);
+                units.add(new WorkUnit(path, start, end, true));
+                start = end;
+            }
+        }
+        return units;
+    }
+
+
+    /**
+     * Finds the start of the first line after a position.
+     *
+     * @param channel  the file
+     * @param position  where to start looking
+     * @param size  the size of the file
+     * @return  the position just after the next '\n', or the size of the
+     *          file if there is none
+     * @throws IOException  if the file could not be read
+     */
+    private static long nextLineStart(FileChannel channel,
+                                      long position,
+                                      long size) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_READ_SIZE);
+        while(position < size)
+        {
+            buffer.clear();
+            int count = channel.read(buffer, position);
+            if(count <= 0)
+            {
+                break;
+            }
+            for(int k = 0; k < count; k++)
+            {
+                if(buffer.get(k) == '\n')
+                {
+                    return position + k + 1;
+                }
+            }
+            position += count;
+        }
+        return size;
+    }
+
+
+    /**
+     * Analyzes a single unit of work.  This runs on a worker thread.
+     *
+     * @param unit  the file or chunk to analyze
+     * @return  the statistics of the file or chunk
+     * @throws IOException  if the file could not be read
+     */
+    private FileProcessor analyze(WorkUnit unit) throws IOException
+    {
+        if(!unit.isChunk)
+        {
+            return analyzers.get().analyze(unit.path.toFile());
+        }
+
+        FileChannel channel = FileChannel.open(unit.path,
+                                               StandardOpenOption.READ);
+        return analyzers.get().analyze(nameOf(unit.path),
+                                       new ChunkInputStream(channel,
+                                                            unit.start,
+                                                            unit.end));
+    }
+
+
+    /**
+     * @param path  a path
+     * @return  the name of the file or directory the path refers to
+     */
+    private static String nameOf(Path path)
+    {
+        Path name = path.getFileName();
+        return (name == null) ? path.toString() : name.toString();
+    }
+
+
+    /**
+     * @param cause  the reason a unit of work failed
+     * @return  the cause, if it is an exception
+     * @throws Error  if the cause is an error
+     */
+    private static Exception asException(Throwable cause)
+    {
+        if(cause instanceof Error)
+        {
+            throw (Error) cause;
+        }
+        return (Exception) cause;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Classes
+    //--------------------------------------------------------------------
+    /**
+     * The statistics of the analyzed files.
+     */
+    public static final class Result
+    {
+        /**
+         * The statistics of each file that was analyzed.
+         */
+        private final SortedMap<Path, FileProcessor> files;
+
+        /**
+         * The error for each file that could not be analyzed, and each
+         * directory that could not be listed.
+         */
+        private final SortedMap<Path, Exception> errors;
+
+        /**
+         * The statistics of all of the analyzed files combined.
+         */
+        private final FileProcessor summary;
+
+        /**
+         * Constructor
+         *
+         * @param files  the statistics of each file
+         * @param errors  the error for each file or directory that failed
+         * @param summary  the combined statistics
+         */
+        private Result(SortedMap<Path, FileProcessor> files,
+                       SortedMap<Path, Exception> errors,
+                       FileProcessor summary)
+        {
+            this.files = Collections.unmodifiableSortedMap(files);
+            this.errors = Collections.unmodifiableSortedMap(errors);
+            this.summary = summary;
+        }
+
+        /**
+         * @return  the statistics of each file that was analyzed, by path
+         */
+        public SortedMap<Path, FileProcessor> getFiles()
+        {
+            return files;
+        }
+
+        /**
+         * @return  the error for each file that could not be analyzed, and
+         *          each directory that could not be listed, by path
+         */
+        public SortedMap<Path, Exception> getErrors()
+        {
+            return errors;
+        }
+
+        /**
+         * @return  the statistics of all of the analyzed files, as if their
+         *          lines had been read from a single file named after the
+         *          root
+         */
+        public FileProcessor getSummary()
+        {
+            return summary;
+        }
+    }
+
+
+    /**
+     * A file, or a chunk of one, to analyze.
+     */
+    private static final class WorkUnit
+    {
+        /**
+         * The file.
+         */
+        final Path path;
+
+        /**
+         * The position of the first byte of the chunk.
+         */
+        final long start;
+
+        /**
+         * The position just after the last byte of the chunk.
+         */
+        final long end;
+
+        /**
+         * True if this is a chunk of a larger file, false if it is the
+         * whole file.
+         */
+        final boolean isChunk;
+
+        /**
+         * The statistics of the chunk, once it is scheduled.
+         */
+        Future<FileProcessor> result = null;
+
+        /**
+         * Constructor
+         *
+         * @param path  the file
+         * @param start  the position of the first byte of the chunk
+         * @param end  the position just after the last byte of the chunk
+         * @param isChunk  true if this is only part of the file
+         */
+        WorkUnit(Path path, long start, long end, boolean isChunk)
+        {
+            this.path = path;
+            this.start = start;
+            this.end = end;
+            this.isChunk = isChunk;
+        }
+
+        /**
+         * @return  the size of the chunk (in bytes)
+         */
+        long length()
+        {
+            return end - start;
+        }
+    }
+
+
+    /**
+     * Reads a range of bytes from a file.
+     */
+    private static final class ChunkInputStream extends InputStream
+    {
+        /**
+         * The file.
+         */
+        private final FileChannel channel;
+
+        /**
+         * The position of the next byte to read.
+         */
+        private long position;
+
+        /**
+         * The position just after the last byte to read.
+         */
+        private final long end;
+
+        /**
+         * Constructor
+         *
+         * @param channel  the file.  It is closed when the stream is.
+         * @param start  the position of the first byte to read
+         * @param end  the position just after the last byte to read
+         */
+        ChunkInputStream(FileChannel channel, long start, long end)
+        {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] single = new byte[1];
+            return (read(single, 0, 1) == -1) ? -1 : (single[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+                throws IOException
+        {
+            if(length == 0)
+            {
+                return 0;
+            }
+            if(position >= end)
+            {
+                return -1;
+            }
+
+            int count = (int) Math.min(length, end - position);
+            count = channel.read(ByteBuffer.wrap(buffer, offset, count),
+                                 position);
+            if(count > 0)
+            {
+                position += count;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+    }
+}
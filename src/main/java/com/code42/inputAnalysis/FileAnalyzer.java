@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Analyzes file after file, reusing the same read buffer and number
+ * arrays, so that analyzing thousands of files back to back does not
+ * allocate them over and over.  Each file gives the same
+ * {@link FileProcessor} that {@link FileProcessor#FileProcessor(File,
+ * Charset, ProcessorMetrics)} would.
+ *
+ * Lines that are plain decimal numbers (an optional sign, then at most 18
+ * digits with an optional decimal point) are parsed straight from the read
+ * buffer into longs, so these lines allocate nothing: no String, no
+ * BigDecimal, and no growth of the number array once it is large enough.
+ * The only allocation that grows with the number of numbers is the copy of
+ * the numbers (8 bytes each) that the result keeps.  Other lines are parsed
+ * as {@link FileProcessor} parses them.
+ *
+ * Files are read a fixed number of bytes at a time, or, with
+ * {@link #AUTO_READ_SIZE}, a number chosen for each file from its size and
+ * the device it is on (see {@link ReadSizes}).  The buffer only ever grows,
+ * so it is as large as the largest read so far.
+ *
+ * This class is not thread-safe.  Give each thread its own.
+ */
+public final class FileAnalyzer
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The most digits a number can have and still be parsed into a long.
+     */
+    private static final int MAX_FAST_DIGITS = 18;
+
+    /**
+     * The number of numbers to make room for at first.
+     */
+    private static final int INITIAL_NUMBER_CAPACITY = 1024;
+
+    /**
+     * The read size that has a size chosen for each file.
+     */
+    public static final int AUTO_READ_SIZE = ReadSizes.AUTO;
+
+    /**
+     * The read size that has {@link ReadSizes#configured()} read for each
+     * file.
+     */
+    private static final int CONFIGURED_READ_SIZE = -1;
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The charset to read the files with.
+     */
+    private final Charset charset;
+
+    /**
+     * The listener to report metrics to, or null if metrics are disabled.
+     */
+    private final ProcessorMetrics metrics;
+
+    /**
+     * The number of bytes to read at a time, {@link #AUTO_READ_SIZE}, or
+     * {@link #CONFIGURED_READ_SIZE}.
+     */
+    private final int readSize;
+
+    /**
+     * The buffer the files are read into.
+     */
+    private byte[] buffer = new byte[0];
+
+    /**
+     * The numbers of the current file that were parsed into longs.
+     */
+    private final ScaledLongList numbers =
+            new ScaledLongList(INITIAL_NUMBER_CAPACITY);
+
+    /**
+     * The numbers of the current file that did not fit in {@link #numbers}.
+     */
+    private final List<BigDecimal> otherNumbers = new ArrayList<>();
+
+    /**
+     * Takes the lines that are plain numbers before they are decoded.
+     */
+    private final LineReader.RawLineHandler rawLineHandler = this::handleRawLine;
+
+    /**
+     * Takes all other lines.
+     */
+    private final Consumer<String> lineHandler = this::processLine;
+
+    /**
+     * The number of distinct strings in the last file, used to size the
+     * table for the next one.
+     */
+    private int expectedStringCount = 0;
+
+    /**
+     * The sum of the numbers of the current file.
+     */
+    private DecimalAccumulator sum;
+
+    /**
+     * The strings of the current file and the number of times each
+     * appeared.
+     */
+    private Map<String, Integer> nonNumericStrings;
+
+    /**
+     * The number of lines in the current file.
+     */
+    private int lineCount;
+
+    /**
+     * The number of lines in the current file that were not numbers.
+     */
+    private int parseFailureCount;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor.  The files are read with the platform's default charset
+     * and no metrics are gathered.
+     */
+    public FileAnalyzer()
+    {
+        this(null, null);
+    }
+
+
+    /**
+     * Constructor.  The files are read as many bytes at a time as the
+     * {@value ReadSizes#READ_SIZE_PROPERTY} system property says (by
+     * default, {@value LineReader#DEFAULT_BUFFER_SIZE}).  The property is
+     * read as each file is opened, so a long-lived analyzer picks up a
+     * change with its next file.
+     *
+     * @param charset  the charset to read the files with.  If null, the
+     *                 platform's default charset is used.
+     * @param metrics  the listener to report metrics to.  If null, no
+     *                 metrics are gathered.
+     */
+    public FileAnalyzer(Charset charset, ProcessorMetrics metrics)
+    {
+        this.charset = (null == charset) ? Charset.defaultCharset() : charset;
+        this.metrics = metrics;
+        this.readSize = CONFIGURED_READ_SIZE;
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param charset  the charset to read the files with.  If null, the
+     *                 platform's default charset is used.
+     * @param metrics  the listener to report metrics to.  If null, no
+     *                 metrics are gathered.
+     * @param readSize  the number of bytes to read at a time, or
+     *                  {@link #AUTO_READ_SIZE} to choose it for each file
+     * @throws IllegalArgumentException  if the read size is not
+     *              {@link #AUTO_READ_SIZE} and is outside
+     *              {@value ReadSizes#MIN_READ_SIZE} to
+     *              {@value ReadSizes#MAX_READ_SIZE} bytes
+     */
+    public FileAnalyzer(Charset charset, ProcessorMetrics metrics, int readSize)
+    {
+        this.charset = (null == charset) ? Charset.defaultCharset() : charset;
+        this.metrics = metrics;
+        this.readSize = ReadSizes.check(readSize);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * Reads in a file and parses it.  Compressed files are decompressed on
+     * the fly.
+     *
+     * @param file  the file to read in and parse
+     * @return  the statistics of the file
+     * @throws java.nio.file.NoSuchFileException  if the file is null
+     * @throws java.io.FileNotFoundException  if there is no file on the
+     *              filesystem with the given name.
+     * @throws IOException  if there was some other error occurred when
+     *              opening/reading the specified file.
+     * @throws IllegalArgumentException  if the read size comes from the
+     *              {@value ReadSizes#READ_SIZE_PROPERTY} system property,
+     *              and it is not valid
+     */
+    public FileProcessor analyze(File file) throws IOException
+    {
+        File checkedFile = FileProcessor.checkFile(file);
+        ensureBuffer(ReadSizes.forFile(checkedFile, currentReadSize()));
+        return analyze(checkedFile.getName(), CompressedInput.open(checkedFile));
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Package API
+    //--------------------------------------------------------------------
+    /**
+     * Reads in and parses the lines of a stream.
+     *
+     * @param fileName  the name of the file the stream comes from
+     * @param input  the stream to read.  It is closed before this returns.
+     * @return  the statistics of the stream
+     * @throws IOException  if the stream could not be read
+     * @throws IllegalArgumentException  if the read size comes from the
+     *              system property, and it is not valid
+     */
+    FileProcessor analyze(String fileName, InputStream input) throws IOException
+    {
+        int size;
+        try
+        {
+            size = currentReadSize();
+        }
+        catch(IllegalArgumentException e)
+        {
+            input.close();
+            throw e;
+        }
+        ensureBuffer((size == AUTO_READ_SIZE) ? LineReader.DEFAULT_BUFFER_SIZE
+                                              : size);
+        numbers.clear();
+        otherNumbers.clear();
+        sum = new DecimalAccumulator();
+        nonNumericStrings = new HashMap<>(Math.max(16,
+                                                   expectedStringCount * 4 / 3 + 1));
+        lineCount = 0;
+        parseFailureCount = 0;
+
+        try( LineReader reader = new LineReader(input, charset, buffer) )
+        {
+            long parseStart = (metrics != null) ? System.nanoTime() : 0;
+            reader.forEachLine(rawLineHandler, lineHandler);
+
+            // The result keeps its own copy; our arrays are reused.
+            List<BigDecimal> resultNumbers;
+            if(otherNumbers.isEmpty())
+            {
+                resultNumbers = numbers.copy();
+            }
+            else
+            {
+                resultNumbers = new ArrayList<>(numbers.size() +
+                                                otherNumbers.size());
+                resultNumbers.addAll(numbers);
+                resultNumbers.addAll(otherNumbers);
+            }
+            expectedStringCount = nonNumericStrings.size();
+
+            return new FileProcessor(fileName,
+                                     resultNumbers,
+                                     sum,
+                                     nonNumericStrings,
+                                     lineCount,
+                                     parseFailureCount,
+                                     reader.getMalformedLineCount(),
+                                     metrics,
+                                     parseStart,
+                                     reader.getBytesRead());
+        }
+        finally
+        {
+            // Don't hold on to the last file's strings.
+            nonNumericStrings = null;
+            sum = null;
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * @return  the number of bytes to read at a time, or
+     *          {@link #AUTO_READ_SIZE}
+     * @throws IllegalArgumentException  if the read size comes from the
+     *          system property, and it is not valid
+     */
+    private int currentReadSize()
+    {
+        return (readSize == CONFIGURED_READ_SIZE) ? ReadSizes.configured()
+                                                  : readSize;
+    }
+
+
+    /**
+     * Makes sure the read buffer holds at least the given number of bytes.
+     *
+     * @param size  the number of bytes to read at a time
+     */
+    private void ensureBuffer(int size)
+    {
+        if(buffer.length < size)
+        {
+            buffer = new byte[size];
+        }
+    }
+
+
+    /**
+     * Parses a line straight from the read buffer if it is a plain decimal
+     * number: an optional sign, then at most {@link #MAX_FAST_DIGITS}
+     * digits with at most one decimal point among them.  Every such line is
+     * a number that {@link BigDecimal#BigDecimal(String)} gives the same
+     * unscaled value and scale for.
+     *
+     * @param bytes  the array holding the line, which is all ASCII
+     * @param offset  the index of the first byte of the line
+     * @param length  the number of bytes in the line
+     * @return  true if the line was a plain number (and has been counted)
+     */
+    private boolean handleRawLine(byte[] bytes, int offset, int length)
+    {
+        int end = offset + length;
+        int k = offset;
+        boolean negative = false;
+        if(k < end && (bytes[k] == '-' || bytes[k] == '+'))
+        {
+            negative = (bytes[k] == '-');
+            k++;
+        }
+
+        long unscaledValue = 0;
+        int digits = 0;
+        int scale = -1;
+        for(; k < end; k++)
+        {
+            byte b = bytes[k];
+            if(b >= '0' && b <= '9')
+            {
+                if(++digits > MAX_FAST_DIGITS)
+                {
+                    return false;
+                }
+                unscaledValue = unscaledValue * 10 + (b - '0');
+                if(scale >= 0)
+                {
+                    scale++;
+                }
+            }
+            else if(b == '.' && scale < 0)
+            {
+                scale = 0;
+            }
+            else
+            {
+                // Exponents, spaces, and anything else take the slow path.
+                return false;
+            }
+        }
+        if(digits == 0)
+        {
+            return false;
+        }
+
+        if(negative)
+        {
+            unscaledValue = -unscaledValue;
+        }
+        scale = Math.max(scale, 0);
+
+        lineCount++;
+        sum.add(unscaledValue, scale);
+        if(!numbers.add(unscaledValue, scale))
+        {
+            otherNumbers.add(BigDecimal.valueOf(unscaledValue, scale));
+        }
+        return true;
+    }
+
+
+    /**
+     * Processes a line that is not a plain decimal number, the same way
+     * {@link FileProcessor} does.
+     *
+     * @param line  the line (without the newline characters)
+     */
+    private void processLine(String line)
+    {
+        lineCount++;
+        try
+        {
+            BigDecimal numberValue = new BigDecimal(line);
+            otherNumbers.add(numberValue);
+            sum.add(numberValue);
+        }
+        catch(NumberFormatException e)
+        {
+            parseFailureCount++;
+            nonNumericStrings.merge(line, 1, Integer::sum);
+        }
+    }
+}
@@ -8,25 +8,54 @@
  */
 package com.code42.inputAnalysis;
 
+import com.code42.output.RecordWriter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.FileReader;
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
 
 /**
  * This class defines an immutable object that parses a specified file and
  * stores the information it memory.  This object allows the caller to
  * interrogate the parser about the contents of the file.
+ *
+ * Gzip-compressed files are detected and decompressed on the fly, giving the
+ * same results as the uncompressed file.
+ *
+ * Input that is not in a file (a stream, a channel, lines that have already
+ * been read, or bytes that arrive a buffer at a time, such as off the
+ * network) can be processed with a {@link Builder}, giving the same
+ * statistics as the same bytes in a file:
+ * <pre>
+ *   FileProcessor processor = FileProcessor.builder()
+ *                                          .name("socket")
+ *                                          .charset(StandardCharsets.UTF_8)
+ *                                          .build(socket.getInputStream());
+ * </pre>
  */
 public final class FileProcessor
 {
@@ -36,13 +65,13 @@ public final class FileProcessor
     /**
      * The precision of the decimals to use when printing numbers.
      */
-    private static final int DECIMAL_PRECISION = 2;
+    static final int DECIMAL_PRECISION = 2;
 
     /**
      * We will always round up if the digit to the right of the precision
      * digit is 5 or more.  We will round down otherwise.
      */
-    private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+    static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
 
 
     //--------------------------------------------------------------------
@@ -71,6 +100,13 @@ public final class FileProcessor
      * slower than using a Double, but it gives us some added robustness and
      * it keeps the types consistent within the file.  BigDecimals also
      * have better rounding support, so there is some added benefit there.
+     *
+     * Statistics made by a {@link FileAnalyzer} hold a {@link ScaledLongList}
+     * here instead.  It cannot be added to or set, and can only be sorted
+     * in the natural order ({@code sort(null)}), so only statistics that
+     * start out with an ArrayList (those parsed here, and the empty ones
+     * {@link #merge} fills) may be added to.  Anything else may only read
+     * the list and sort it with {@link Collections#sort(List)}.
      */
     private List<BigDecimal> numbers = new ArrayList<>();
 
@@ -79,9 +115,10 @@ public final class FileProcessor
      * It is plausible that the sum of all numbers within the input file are
      * greater than Double.MAX_VALUE, so we use BigDecimal to give us some
      * protection.  Also, BigDecimal provides us with a nice way of rounding
-     * values.
+     * values.  The accumulator keeps the common case (numbers with few
+     * digits) in longs, but its sum is exactly the BigDecimal sum.
      */
-    private BigDecimal sum = BigDecimal.valueOf(0);
+    private final DecimalAccumulator sum = new DecimalAccumulator();
 
     /**
      * Need to store the strings and the number of occurrences in the file.
@@ -90,6 +127,23 @@ public final class FileProcessor
      */
     private Map<String, Integer> nonNumericStrings = new HashMap<>();
 
+    /**
+     * The number of lines that could not be parsed as a number.  Only used
+     * for reporting metrics.
+     */
+    private int parseFailureCount = 0;
+
+    /**
+     * The number of lines that contained bytes that were not valid in the
+     * file's charset.
+     */
+    private int malformedLineCount = 0;
+
+    /**
+     * The listener to report metrics to, or null if metrics are disabled.
+     */
+    private ProcessorMetrics metrics = null;
+
 
 
     //--------------------------------------------------------------------
@@ -109,105 +163,367 @@ public final class FileProcessor
      */
     public FileProcessor(File file) throws IOException
     {
-        if(null == file)
+        this(file, Charset.defaultCharset(), null);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * Reads in and parses a given text file exactly as
+     * {@link #FileProcessor(File)} does, reporting the time spent in each
+     * phase to the given listener.
+     *
+     * @param file  the file to read in and parse
+     * @param metrics  the listener to report metrics to.  If null, no
+     *                 metrics are gathered.
+     * @throws NoSuchFileException  if the file name is null
+     * @throws java.io.FileNotFoundException  if there is no file on the
+     *              filesystem with the given name.
+     * @throws IOException  if there was some other error occurred when
+     *              opening/reading the specified file.
+     */
+    public FileProcessor(File file, ProcessorMetrics metrics)
+            throws IOException
+    {
+        this(file, Charset.defaultCharset(), metrics);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * Reads in and parses a given text file that is encoded with the given
+     * charset.  Lines that are not valid in the charset are still parsed
+     * (with the bad input replaced), but they are counted; see
+     * {@link #getMalformedLineCount()}.
+     *
+     * @param file  the file to read in and parse
+     * @param charset  the charset the file is encoded with.  If null, the
+     *                 platform's default charset is used.
+     * @throws NoSuchFileException  if the file name is null
+     * @throws java.io.FileNotFoundException  if there is no file on the
+     *              filesystem with the given name.
+     * @throws IOException  if there was some other error occurred when
+     *              opening/reading the specified file.
+     */
+    public FileProcessor(File file, Charset charset) throws IOException
+    {
+        this(file, charset, null);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * Reads in and parses a given text file that is encoded with the given
+     * charset, reporting the time spent in each phase to the given listener.
+     * The file is read {@value LineReader#DEFAULT_BUFFER_SIZE} bytes at a
+     * time unless the {@value ReadSizes#READ_SIZE_PROPERTY} system property
+     * says otherwise (see {@link ReadSizes}).
+     *
+     * @param file  the file to read in and parse
+     * @param charset  the charset the file is encoded with.  If null, the
+     *                 platform's default charset is used.
+     * @param metrics  the listener to report metrics to.  If null, no
+     *                 metrics are gathered.
+     * @throws NoSuchFileException  if the file name is null
+     * @throws java.io.FileNotFoundException  if there is no file on the
+     *              filesystem with the given name.
+     * @throws IOException  if there was some other error occurred when
+     *              opening/reading the specified file.
+     * @throws IllegalArgumentException  if the
+     *              {@value ReadSizes#READ_SIZE_PROPERTY} system property is
+     *              set, and is not a valid read size
+     */
+    public FileProcessor(File file, Charset charset, ProcessorMetrics metrics)
+            throws IOException
+    {
+        this(file,
+             charset,
+             metrics,
+             new byte[ReadSizes.forFile(checkFile(file),
+                                         ReadSizes.configured())]);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * Reads in and parses a given text file using the given read buffer.
+     * This lets callers that process many files in a row (such as
+     * {@link BatchAnalyzer}) reuse one buffer rather than allocating a new
+     * one per file.
+     *
+     * @param file  the file to read in and parse
+     * @param charset  the charset the file is encoded with.  If null, the
+     *                 platform's default charset is used.
+     * @param metrics  the listener to report metrics to.  If null, no
+     *                 metrics are gathered.
+     * @param buffer  the buffer to read the file into.  It must not be used
+     *                by anything else until this returns.
+     * @throws NoSuchFileException  if the file name is null
+     * @throws java.io.FileNotFoundException  if there is no file on the
+     *              filesystem with the given name.
+     * @throws IOException  if there was some other error occurred when
+     *              opening/reading the specified file.
+     */
+    FileProcessor(File file,
+                  Charset charset,
+                  ProcessorMetrics metrics,
+                  byte[] buffer) throws IOException
+    {
+        // Compressed files are decompressed on the fly.
+        this(checkFile(file).getName(),
+             CompressedInput.open(file),
+             charset,
+             metrics,
+             buffer);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * Reads in and parses the lines of a stream.  This lets callers parse
+     * part of a file (such as {@link DirectoryAnalyzer} does for very large
+     * files) and {@link #merge(String, Collection) merge} the parts later.
+     *
+     * @param fileName  the name of the file the stream comes from
+     * @param input  the stream to read.  It is closed before this returns.
+     * @param charset  the charset the stream is encoded with.  If null, the
+     *                 platform's default charset is used.
+     * @param metrics  the listener to report metrics to.  If null, no
+     *                 metrics are gathered.
+     * @param buffer  the buffer to read the stream into.  It must not be
+     *                used by anything else until this returns.
+     * @throws IOException  if the stream could not be read
+     */
+    FileProcessor(String fileName,
+                  InputStream input,
+                  Charset charset,
+                  ProcessorMetrics metrics,
+                  byte[] buffer) throws IOException
+    {
+        if(null == charset)
         {
-            // No file to process.  Throw an exception.
-            throw new NoSuchFileException("The file name cannot be null.");
+            charset = Charset.defaultCharset();
         }
 
-        // Using a BufferedReader here handles multiple newline formats.
-        try( BufferedReader reader = new BufferedReader(new FileReader(file)) )
-        {
-            fileName = file.getName();
+        this.metrics = metrics;
 
-            reader.lines().forEach(this::processLine);
+        // The LineReader handles the same newline formats as a
+        // BufferedReader, but splits ASCII-compatible input on the raw bytes.
+        try( LineReader reader = new LineReader(input, charset, buffer) )
+        {
+            this.fileName = fileName;
 
-            // Sort the list of numbers now so we don't have to do it every
-            // time we want the median.
-            Collections.sort(numbers);
+            long parseStart = (metrics != null) ? System.nanoTime() : 0;
+            reader.forEachLine(this::processLine);
+            malformedLineCount = reader.getMalformedLineCount();
+            finishParsing(parseStart, reader.getBytesRead());
         }
     }
 
-    //--------------------------------------------------------------------
-    //  Public API
-    //--------------------------------------------------------------------
+
     /**
-     * Gets the sum of all the numbers that appeared in the file.
+     * Constructor (private).
      *
-     * @return the sum of all the numbers in the file.  If the sum is too
-     *         large/small to be represented as a double, it will be returned
-     *         as +/- infinity respectively.
+     * Parses lines that have already been read (and decoded).  Use
+     * {@link Builder#build(Stream)}.
+     *
+     * @param fileName  the name to give the statistics
+     * @param lines  the lines to parse
+     * @param metrics  the listener to report metrics to.  If null, no
+     *                 metrics are gathered.
      */
-    public double getTotal()
+    private FileProcessor(String fileName,
+                          Stream<String> lines,
+                          ProcessorMetrics metrics)
     {
-        return sum.setScale(DECIMAL_PRECISION,
-                            ROUNDING_MODE)
-                  .doubleValue();
+        this.fileName = fileName;
+        this.metrics = metrics;
+
+        long parseStart = (metrics != null) ? System.nanoTime() : 0;
+        lines.forEachOrdered(this::processLine);
+
+        // The lines were never bytes as far as we know.
+        finishParsing(parseStart, 0);
     }
 
 
     /**
-     * Gets the quantity of lines in the file that contained numbers
+     * Constructor (private).
      *
-     * @return  the count of how many numbers were read from the source file
+     * Creates the statistics of an empty file.  Used when merging.
+     *
+     * @param fileName  the name to give the statistics
      */
-    public int getCountOfNumbers()
+    private FileProcessor(String fileName)
     {
-        return numbers.size();
+        this.fileName = fileName;
     }
 
 
-    // TODO -- verify requirement: Do we also look for numbers?  I'm assuming
-    // no.
     /**
-     * Checks if the file contained the non-numeric string.
+     * Constructor
      *
-     * @param src  the string to find in the list of strings for the file.
+     * Takes the statistics that a {@link FileAnalyzer} gathered.  This
+     * takes ownership of the numbers and strings.
      *
-     * @return  true if the file contains the provided string.  This will
-     *          return false if src is parsable as a number or if it contains
-     *          newline characters.
+     * @param fileName  the name of the file
+     * @param numbers  the numbers in the file, in any order
+     * @param sum  the sum of the numbers
+     * @param nonNumericStrings  the strings in the file and the number of
+     *                           times each appeared
+     * @param lineCount  the number of lines in the file
+     * @param parseFailureCount  the number of lines that were not numbers
+     * @param malformedLineCount  the number of lines containing malformed
+     *                            input
+     * @param metrics  the listener to report metrics to.  If null, no
+     *                 metrics are gathered.
+     * @param parseStart  the time (from {@link System#nanoTime()}) parsing
+     *                    started, if metrics are being gathered
+     * @param bytesRead  the number of bytes the lines were read from
      */
-    public boolean contains(String src)
+    FileProcessor(String fileName,
+                  List<BigDecimal> numbers,
+                  DecimalAccumulator sum,
+                  Map<String, Integer> nonNumericStrings,
+                  int lineCount,
+                  int parseFailureCount,
+                  int malformedLineCount,
+                  ProcessorMetrics metrics,
+                  long parseStart,
+                  long bytesRead)
     {
-        if(null == src)
+        this.fileName = fileName;
+        this.numbers = numbers;
+        this.sum.add(sum);
+        this.nonNumericStrings = nonNumericStrings;
+        this.lineCount = lineCount;
+        this.parseFailureCount = parseFailureCount;
+        this.malformedLineCount = malformedLineCount;
+        this.metrics = metrics;
+        finishParsing(parseStart, bytesRead);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Package API
+    //--------------------------------------------------------------------
+    /**
+     * Combines the statistics of several files (or several parts of one
+     * file) as if their lines had all been read from a single file.
+     *
+     * @param fileName  the name to give the combined statistics
+     * @param parts  the statistics to combine
+     * @return  the combined statistics
+     */
+    static FileProcessor merge(String fileName,
+                               Collection<FileProcessor> parts)
+    {
+        FileProcessor merged = new FileProcessor(fileName);
+
+        // The parts' lists may not be added to (see numbers), but the empty
+        // statistics start out with an ArrayList.
+        assert merged.numbers instanceof ArrayList;
+        for(FileProcessor part : parts)
         {
-            return false;
+            merged.lineCount += part.lineCount;
+            merged.numbers.addAll(part.numbers);
+            merged.sum.add(part.sum);
+            merged.parseFailureCount += part.parseFailureCount;
+            merged.malformedLineCount += part.malformedLineCount;
+            part.nonNumericStrings.forEach(
+                    (key, count) -> merged.nonNumericStrings.merge(key,
+                                                                   count,
+                                                                   Integer::sum));
         }
-        return nonNumericStrings.containsKey(src);
+
+        // Each part's numbers are already sorted, and the sort takes
+        // advantage of the sorted runs.
+        Collections.sort(merged.numbers);
+        return merged;
     }
 
 
     /**
-     * Prints out the file's statistics to standard out as specified by
-     * {@link #toString()}.
+     * Formats statistics in the format of {@link #toString()}.  This lets
+     * other analyzers (such as {@link WindowedAnalyzer}) report in exactly
+     * the same format.  This holds the whole report in memory; use
+     * {@link #writeReport} to stream it instead.
+     *
+     * @param sum  the sum of the numbers
+     * @param numberCount  the number of lines that were numbers
+     * @param average  the (rounded) average of the numbers, or null if
+     *                 there are none
+     * @param median  the (rounded) median of the numbers, or null if there
+     *                are none
+     * @param lineCount  the number of lines
+     * @param strings  the non-numeric strings and the number of times each
+     *                 appeared
+     * @return  the formatted statistics
+     * @throws UncheckedIOException  if the strings had to be sorted on disk
+     *          and the temporary files could not be written or read
      */
-    public void printFileStatistics()
+    static String formatReport(BigDecimal sum,
+                               int numberCount,
+                               BigDecimal average,
+                               BigDecimal median,
+                               int lineCount,
+                               Map<String, Integer> strings)
     {
-        System.out.print(toString());
+        StringBuilder outputString = new StringBuilder();
+        try
+        {
+            writeReport(outputString,
+                        sum,
+                        numberCount,
+                        average,
+                        median,
+                        lineCount,
+                        strings);
+        }
+        catch(IOException e)
+        {
+            // A StringBuilder never fails, so the sort did.
+            throw new UncheckedIOException(e);
+        }
+        return outputString.toString();
     }
 
 
     /**
-     * Formats the statistics of the file as a string.  This contains the
-     * following:
-     * <ul>
-     *     <li>the name of the file</li>
-     *     <li>the sum of the numbers</li>
-     *     <li>the average of the numbers (if any numbers are present)</li>
-     *     <li>the median of the numbers (if any numbers are present)</li>
-     *     <li>the percent of lines in the file containing numbers</li>
-     *     <li>a reverse-alphabetical, distinct list of strings found in the
-     *          file with number of times that string appeared</li>
-     * </ul>
+     * Writes statistics in the format of {@link #toString()}, a line at a
+     * time, so that only the strings (and not the report) need to fit in
+     * memory.  When the strings are sorted on disk (see
+     * {@link ReportSorter}), each is written as the sorted runs are merged.
      *
-     * @return  a formatted (pretty-print) string containing the statistics of
-     *          the file
+     * @param output  where to write the statistics
+     * @param sum  the sum of the numbers
+     * @param numberCount  the number of lines that were numbers
+     * @param average  the (rounded) average of the numbers, or null if
+     *                 there are none
+     * @param median  the (rounded) median of the numbers, or null if there
+     *                are none
+     * @param lineCount  the number of lines
+     * @param strings  the non-numeric strings and the number of times each
+     *                 appeared
+     * @throws IOException  if the statistics could not be written, or the
+     *          strings had to be sorted on disk and the temporary files
+     *          could not be written or read
      */
-    public String toString()
+    static void writeReport(Appendable output,
+                            BigDecimal sum,
+                            int numberCount,
+                            BigDecimal average,
+                            BigDecimal median,
+                            int lineCount,
+                            Map<String, Integer> strings) throws IOException
     {
-        StringBuilder outputString = new StringBuilder();
-        Formatter formatter = new Formatter(outputString);
+        // Don't close the formatter; that would close the output.
+        Formatter formatter = new Formatter(output);
 
 //        // TODO -- Verify that this is acceptable.
 //        // Output the filename so we have an easier time debugging.
@@ -225,7 +541,7 @@ public final class FileProcessor
         formatter.format(labelFormat, "Sum of Numbers", sum);
 
         // If there are no numbers, we can't find the average or median.
-        if(numbers.size() == 0)
+        if(numberCount == 0)
         {
             // TODO -- What should be emitted if there are no numbers?
             formatter.format("  Average of Numbers: UNDEFINED\n");
@@ -237,18 +553,18 @@ public final class FileProcessor
             // Average
             formatter.format(labelFormat,
                              "Average of Numbers",
-                             getArithmeticMean());
+                             average);
 
             // Median
             formatter.format(labelFormat,
                              "Median of Numbers",
-                             getMedian());
+                             median);
         }
 
         // Percentages
         if(lineCount > 0)
         {
-            double percentNumbers = (numbers.size() * 100.0) / lineCount;
+            double percentNumbers = (numberCount * 100.0) / lineCount;
             formatter.format(labelFormat,
                              "Percent of lines that are numbers",
                              percentNumbers);
@@ -262,37 +578,353 @@ public final class FileProcessor
         // Print strings in reverse order (S
 
         formatter.format("  Non-numeric strings in file (with count):");
-        String[] keys = nonNumericStrings.keySet().toArray(new String[0]);
-        if(keys.length == 0)
+        if(strings.isEmpty())
         {
             formatter.format(" NONE\n");
         }
         else
         {
             formatter.format("\n");
+            checkFormatter(formatter);
 
-            // StackOverflow had a nicer way of reversing the string array
-            // (using an existing comparator), so I'm using that:
-            // http://stackoverflow.com/questions/13779643/sorting-an-array-of-strings-in-reverse-alphabetical-order-in-java#13780089)
             // Performance: O(n lg n) to sort the keys, O(n) to print them.
-            Arrays.sort(keys,
-                        Collections.reverseOrder(String.CASE_INSENSITIVE_ORDER));
-
-            for(String key : keys)
+            // Very large tables are sorted on disk (see ReportSorter).
+            ReportSorter.forEachSorted(strings, (key, count) ->
             {
-                Integer count = nonNumericStrings.get(key);
                 formatter.format("    %s:%d\n", key, count);
-            }
+                checkFormatter(formatter);
+            });
         }
+        checkFormatter(formatter);
+    }
 
 
-        return outputString.toString();
+    /**
+     * Writes a report to standard out without holding all of it in memory.
+     *
+     * @param report  writes the report
+     * @throws UncheckedIOException  if the report could not be written
+     */
+    static void printReport(Report report)
+    {
+        // Buffer it ourselves: System.out flushes at every newline.  Don't
+        // close it; that would close System.out.
+        Writer output = new BufferedWriter(new OutputStreamWriter(System.out));
+        try
+        {
+            report.writeTo(output);
+            output.flush();
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * @param sum  the sum of the numbers
+     * @param count  the number of numbers (which must not be 0)
+     * @return  the average of the numbers, rounded for output
+     */
+    static BigDecimal averageOf(BigDecimal sum, int count)
+    {
+        return sum.divide(BigDecimal.valueOf(count),
+                          DECIMAL_PRECISION,
+                          ROUNDING_MODE);
+    }
+
+
+    /**
+     * @param low  the lower of the two middle numbers (of an even number of
+     *             numbers)
+     * @param high  the higher of the two middle numbers
+     * @return  the median (the average of the two), rounded for output
+     */
+    static BigDecimal medianOf(BigDecimal low, BigDecimal high)
+    {
+        return high.add(low)
+                   .divide(BigDecimal.valueOf(2),
+                           DECIMAL_PRECISION,
+                           ROUNDING_MODE);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * @return  a builder for processing input that is not in a file
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+
+    /**
+     * Gets the sum of all the numbers that appeared in the file.
+     *
+     * @return the sum of all the numbers in the file.  If the sum is too
+     *         large/small to be represented as a double, it will be returned
+     *         as +/- infinity respectively.
+     */
+    public double getTotal()
+    {
+        return sum.toBigDecimal()
+                  .setScale(DECIMAL_PRECISION,
+                            ROUNDING_MODE)
+                  .doubleValue();
+    }
+
+
+    /**
+     * Gets the quantity of lines in the file that contained numbers
+     *
+     * @return  the count of how many numbers were read from the source file
+     */
+    public int getCountOfNumbers()
+    {
+        return numbers.size();
+    }
+
+
+    /**
+     * Gets the quantity of lines in the file that contained bytes that were
+     * not valid in the file's charset.  These lines are still counted, but
+     * the invalid bytes are replaced with the charset's replacement string.
+     *
+     * @return  the count of lines containing malformed input
+     */
+    public int getMalformedLineCount()
+    {
+        return malformedLineCount;
+    }
+
+
+    // TODO -- verify requirement: Do we also look for numbers?  I'm assuming
+    // no.
+    /**
+     * Checks if the file contained the non-numeric string.
+     *
+     * @param src  the string to find in the list of strings for the file.
+     *
+     * @return  true if the file contains the provided string.  This will
+     *          return false if src is parsable as a number or if it contains
+     *          newline characters.
+     */
+    public boolean contains(String src)
+    {
+        if(null == src)
+        {
+            return false;
+        }
+        return nonNumericStrings.containsKey(src);
+    }
+
+
+    /**
+     * Prints out the file's statistics to standard out as specified by
+     * {@link #toString()}.  The statistics are written as they are
+     * formatted, so a report with very many strings is never held in
+     * memory all at once.
+     *
+     * @throws UncheckedIOException  if the statistics could not be written,
+     *          or the strings had to be sorted on disk and the temporary
+     *          files could not be written or read
+     */
+    public void printFileStatistics()
+    {
+        printReport(this::writeFileStatistics);
+    }
+
+
+    /**
+     * Writes the file's statistics as specified by {@link #toString()},
+     * without holding all of them in memory.
+     *
+     * @param output  where to write the statistics
+     * @throws IOException  if the statistics could not be written, or the
+     *          strings had to be sorted on disk and the temporary files
+     *          could not be written or read
+     */
+    public void writeFileStatistics(Appendable output) throws IOException
+    {
+        long renderStart = (metrics != null) ? System.nanoTime() : 0;
+
+        writeReport(output,
+                    sum.toBigDecimal(),
+                    numbers.size(),
+                    getArithmeticMean(),
+                    getMedian(),
+                    lineCount,
+                    nonNumericStrings);
+
+        if(metrics != null)
+        {
+            metrics.reportRendered(fileName, System.nanoTime() - renderStart);
+        }
+    }
+
+
+    /**
+     * Formats the statistics of the file as a string.  This contains the
+     * following:
+     * <ul>
+     *     <li>the name of the file</li>
+     *     <li>the sum of the numbers</li>
+     *     <li>the average of the numbers (if any numbers are present)</li>
+     *     <li>the median of the numbers (if any numbers are present)</li>
+     *     <li>the percent of lines in the file containing numbers</li>
+     *     <li>a reverse-alphabetical, distinct list of strings found in the
+     *          file with number of times that string appeared</li>
+     * </ul>
+     *
+     * @return  a formatted (pretty-print) string containing the statistics of
+     *          the file
+     * @throws UncheckedIOException  if the strings had to be sorted on disk
+     *          and the temporary files could not be written or read
+     */
+    public String toString()
+    {
+        long renderStart = (metrics != null) ? System.nanoTime() : 0;
+
+        String report = formatReport(sum.toBigDecimal(),
+                                     numbers.size(),
+                                     getArithmeticMean(),
+                                     getMedian(),
+                                     lineCount,
+                                     nonNumericStrings);
+
+        if(metrics != null)
+        {
+            metrics.reportRendered(fileName, System.nanoTime() - renderStart);
+        }
+
+        return report;
+    }
+
+
+    /**
+     * Writes the file's statistics as machine-readable records.  This
+     * writes one "file" record with the fields
+     * <ol>
+     *     <li>name -- the name of the file</li>
+     *     <li>lines -- the number of lines in the file</li>
+     *     <li>numbers -- the number of lines that were numbers</li>
+     *     <li>malformedLines -- the number of lines with input that was
+     *          not valid in the file's charset</li>
+     *     <li>sum -- the sum of the numbers</li>
+     *     <li>average -- the average of the numbers (null if there are
+     *          none)</li>
+     *     <li>median -- the median of the numbers (null if there are
+     *          none)</li>
+     *     <li>percentNumbers -- the percent of lines that are numbers (null
+     *          if there are no lines)</li>
+     *     <li>distinctStrings -- the number of distinct non-numeric
+     *          strings</li>
+     * </ol>
+     * followed by one "string" record (with the fields file, value, and
+     * count) for each non-numeric string, in the same order as
+     * {@link #toString()}.  All decimals are rounded as in
+     * {@link #toString()}.
+     *
+     * @param writer  where to write the records.  This is not flushed.
+     * @throws IOException  if the records could not be written
+     */
+    public void writeRecords(RecordWriter writer) throws IOException
+    {
+        Double percentNumbers = null;
+        if(lineCount > 0)
+        {
+            percentNumbers = (numbers.size() * 100.0) / lineCount;
+        }
+
+        writer.beginRecord("file");
+        writer.field("name", fileName);
+        writer.field("lines", lineCount);
+        writer.field("numbers", numbers.size());
+        writer.field("malformedLines", malformedLineCount);
+        writer.field("sum", round(sum.toBigDecimal()));
+        writer.field("average", getArithmeticMean());
+        writer.field("median", getMedian());
+        writer.field("percentNumbers",
+                     (percentNumbers == null) ? null
+                                              : round(BigDecimal.valueOf(percentNumbers)));
+        writer.field("distinctStrings", nonNumericStrings.size());
+        writer.endRecord();
+
+        ReportSorter.forEachSorted(nonNumericStrings, (key, count) ->
+        {
+            writer.beginRecord("string");
+            writer.field("file", fileName);
+            writer.field("value", key);
+            writer.field("count", count);
+            writer.endRecord();
+        });
     }
 
 
     //--------------------------------------------------------------------
     //  Helper Methods
     //--------------------------------------------------------------------
+    /**
+     * @param file  the file to check
+     * @return  the file
+     * @throws NoSuchFileException  if the file is null
+     */
+    static File checkFile(File file) throws NoSuchFileException
+    {
+        if(null == file)
+        {
+            // No file to process.  Throw an exception.
+            throw new NoSuchFileException("The file name cannot be null.");
+        }
+        return file;
+    }
+
+
+    /**
+     * Sorts the numbers once all the lines have been parsed, and reports
+     * the metrics (if any).
+     *
+     * @param parseStart  the time (from {@link System#nanoTime()}) parsing
+     *                    started, if metrics are being gathered
+     * @param bytesRead  the number of bytes the lines were read from
+     */
+    private void finishParsing(long parseStart, long bytesRead)
+    {
+        // Sort the list of numbers now so we don't have to do it every
+        // time we want the median.
+        long sortStart = (metrics != null) ? System.nanoTime() : 0;
+        Collections.sort(numbers);
+
+        if(metrics != null)
+        {
+            long sortEnd = System.nanoTime();
+            metrics.fileProcessed(fileName,
+                                  bytesRead,
+                                  lineCount,
+                                  numbers.size(),
+                                  parseFailureCount,
+                                  sortStart - parseStart,
+                                  sortEnd - sortStart);
+        }
+    }
+
+
+    /**
+     * Rounds a number for output.
+     *
+     * @param value  the number to round
+     * @return  the number, rounded to the output precision
+     */
+    static BigDecimal round(BigDecimal value)
+    {
+        return value.setScale(DECIMAL_PRECISION, ROUNDING_MODE);
+    }
+
+
     /**
      * Processes a single line in the file.  If it is parsable into a number,
      * the number is added to the numbers list.  Otherwise, it is added to the
@@ -314,11 +946,12 @@ public final class FileProcessor
             BigDecimal numberValue = new BigDecimal(line);
 
             numbers.add(numberValue);
-            sum = sum.add(numberValue);
+            sum.add(numberValue);
         }
         catch(NumberFormatException e)
         {
             // else line is a string.
+            parseFailureCount++;
 
             // If the line is present in the mapping, add 1 to the count.
             // Otherwise, add it with a count (value) of 1.
@@ -341,10 +974,7 @@ public final class FileProcessor
             return null;
         }
 
-        BigDecimal quantity = BigDecimal.valueOf(numbers.size());
-        return sum.divide(quantity,
-                          DECIMAL_PRECISION,
-                          ROUNDING_MODE);
+        return averageOf(sum.toBigDecimal(), numbers.size());
     }
 
 
@@ -374,8 +1004,7 @@ public final class FileProcessor
             median = numbers.get(medianPosition);
 
             // Round the median
-            median = median.setScale(DECIMAL_PRECISION,
-                                     ROUNDING_MODE);
+            median = round(median);
         }
         else  // There is an even number of elements
         {
@@ -387,12 +1016,406 @@ public final class FileProcessor
             // (because the size is non-zero and even).
             BigDecimal medianLow = numbers.get(medianPosition - 1);
 
-            median = medianHigh.add(medianLow)
-                               .divide(BigDecimal.valueOf(2),
-                                       DECIMAL_PRECISION,
-                                       ROUNDING_MODE);
+            median = medianOf(medianLow, medianHigh);
         }
 
         return median;
     }
+
+
+    /**
+     * Formatters keep (rather than throw) the errors of their output.
+     *
+     * @param formatter  the formatter to check
+     * @throws IOException  if the formatter's output has failed
+     */
+    private static void checkFormatter(Formatter formatter) throws IOException
+    {
+        IOException error = formatter.ioException();
+        if(error != null)
+        {
+            throw error;
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Interfaces
+    //--------------------------------------------------------------------
+    /**
+     * Writes a report.
+     */
+    interface Report
+    {
+        /**
+         * @param output  where to write the report
+         * @throws IOException  if the report could not be written
+         */
+        void writeTo(Appendable output) throws IOException;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Classes
+    //--------------------------------------------------------------------
+    /**
+     * Builds {@link FileProcessor}s from input that is not in a file.  Each
+     * kind of input is parsed as it is read, so the input never needs to
+     * be held in memory (or written to disk) in full.  As with files,
+     * gzip-compressed bytes are detected and decompressed.
+     */
+    public static final class Builder
+    {
+        /**
+         * The name to give the statistics.
+         */
+        private String name = "";
+
+        /**
+         * The charset the input is encoded with, or null for the
+         * platform's default.
+         */
+        private Charset charset = null;
+
+        /**
+         * The listener to report metrics to, or null.
+         */
+        private ProcessorMetrics metrics = null;
+
+        /**
+         * The number of buffers a {@link Feed} holds before its writer has
+         * to wait for the parser.
+         */
+        private int feedCapacity = 8;
+
+        /**
+         * Constructor (private).  Use {@link FileProcessor#builder()}.
+         */
+        private Builder()
+        {
+            // Nothing needed here.
+        }
+
+        /**
+         * @param name  the name to give the statistics (reported to the
+         *              metrics and written in the records)
+         * @return  this builder
+         */
+        public Builder name(String name)
+        {
+            this.name = (null == name) ? "" : name;
+            return this;
+        }
+
+        /**
+         * @param charset  the charset the input is encoded with.  If null,
+         *                 the platform's default charset is used.
+         * @return  this builder
+         */
+        public Builder charset(Charset charset)
+        {
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * @param metrics  the listener to report metrics to.  If null, no
+         *                 metrics are gathered.
+         * @return  this builder
+         */
+        public Builder metrics(ProcessorMetrics metrics)
+        {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @param feedCapacity  the number of buffers written to a
+         *                      {@link Feed} that may wait to be parsed
+         *                      before the writer has to wait too
+         * @return  this builder
+         * @throws IllegalArgumentException  if the capacity is not positive
+         */
+        public Builder feedCapacity(int feedCapacity)
+        {
+            if(feedCapacity < 1)
+            {
+                throw new IllegalArgumentException("The feed capacity must " +
+                                                   "be positive (" +
+                                                   feedCapacity + ").");
+            }
+            this.feedCapacity = feedCapacity;
+            return this;
+        }
+
+        /**
+         * Reads and parses a stream to its end.
+         *
+         * @param input  the stream to read.  It is closed before this
+         *               returns.
+         * @return  the statistics of the stream
+         * @throws IOException  if the stream could not be read
+         */
+        public FileProcessor build(InputStream input) throws IOException
+        {
+            return new FileProcessor(name,
+                                     CompressedInput.open(input, name),
+                                     charset,
+                                     metrics,
+                                     new byte[LineReader.DEFAULT_BUFFER_SIZE]);
+        }
+
+        /**
+         * Reads and parses a channel to its end.
+         *
+         * @param channel  the channel to read.  It is closed before this
+         *                 returns.
+         * @return  the statistics of the channel's bytes
+         * @throws IOException  if the channel could not be read
+         */
+        public FileProcessor build(ReadableByteChannel channel)
+                throws IOException
+        {
+            return build(Channels.newInputStream(channel));
+        }
+
+        /**
+         * Parses lines that have already been read.  Each element is one
+         * line, without its line terminator.  The charset is not used, and
+         * no lines are counted as malformed.
+         *
+         * @param lines  the lines to parse.  The stream is consumed (in
+         *               order) but not closed.
+         * @return  the statistics of the lines
+         */
+        public FileProcessor build(Stream<String> lines)
+        {
+            return new FileProcessor(name, lines, metrics);
+        }
+
+        /**
+         * Starts parsing bytes that will be handed over a buffer at a time.
+         *
+         * @return  the feed to write the bytes to
+         */
+        public Feed open()
+        {
+            return new Feed(this);
+        }
+    }
+
+
+    /**
+     * Takes bytes a buffer at a time (as they arrive, say, off the network)
+     * and parses them on a background thread.  Only a fixed number of
+     * buffers may be waiting to be parsed; once that many are, writing
+     * waits for the parser to catch up, so a fast source cannot run the
+     * memory out.
+     *
+     * Write the bytes in order, then call {@link #complete()} to get the
+     * statistics.  Closing a feed that has not been completed abandons it.
+     */
+    public static final class Feed implements Closeable
+    {
+        /**
+         * The buffers waiting to be parsed.
+         */
+        private final PipelinedInputStream pipe;
+
+        /**
+         * The statistics, once the parser is done.
+         */
+        private final CompletableFuture<FileProcessor> result =
+                new CompletableFuture<>();
+
+        /**
+         * True once the end of the input has been queued.
+         */
+        private boolean ended = false;
+
+        /**
+         * Constructor
+         *
+         * @param builder  the settings to parse with
+         */
+        private Feed(Builder builder)
+        {
+            pipe = new PipelinedInputStream(builder.feedCapacity);
+            String name = builder.name;
+            Charset charset = builder.charset;
+            ProcessorMetrics metrics = builder.metrics;
+
+            // The parser must not close the pipe itself: its result has to
+            // be set first, so a writer that was waiting for room sees that
+            // it is done as soon as the pipe is closed (and emptied).
+            InputStream unclosed = new FilterInputStream(pipe)
+            {
+                @Override
+                public void close()
+                {
+                    // The parser thread closes the pipe.
+                }
+            };
+            Thread parser = new Thread(() ->
+            {
+                try
+                {
+                    result.complete(new FileProcessor(
+                            name,
+                            CompressedInput.open(unclosed, name),
+                            charset,
+                            metrics,
+                            new byte[LineReader.DEFAULT_BUFFER_SIZE]));
+                }
+                catch(IOException | RuntimeException | Error e)
+                {
+                    result.completeExceptionally(e);
+                }
+                finally
+                {
+                    pipe.close();
+                }
+            }, "file-processor-feed-" + name);
+            parser.setDaemon(true);
+            parser.start();
+        }
+
+        /**
+         * Hands over the remaining bytes of a buffer to be parsed.  The
+         * bytes are copied, so the buffer can be reused once this returns.
+         * If too many buffers are already waiting to be parsed, this waits.
+         *
+         * @param bytes  the bytes to parse.  Its position is moved to its
+         *               limit.
+         * @throws IOException  if the parser failed (or the feed has been
+         *          completed or closed), or if we were interrupted while
+         *          waiting
+         */
+        public void write(ByteBuffer bytes) throws IOException
+        {
+            checkOpen();
+            if(!bytes.hasRemaining())
+            {
+                return;
+            }
+
+            byte[] chunk = new byte[bytes.remaining()];
+            bytes.get(chunk);
+            try
+            {
+                pipe.put(chunk);
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting " +
+                                                 "for the parser.");
+            }
+        }
+
+        /**
+         * Marks the end of the input and waits for the parser to finish.
+         *
+         * @return  the statistics of all the bytes written
+         * @throws IOException  if the parser failed, or if we were
+         *          interrupted while waiting
+         */
+        public FileProcessor complete() throws IOException
+        {
+            if(!ended)
+            {
+                checkOpen();
+                ended = true;
+                try
+                {
+                    pipe.finish();
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while " +
+                                                     "waiting for the parser.");
+                }
+            }
+            return awaitResult();
+        }
+
+        /**
+         * Abandons the feed if it has not been completed.  The parser
+         * stops (once it has worked through the buffers already written),
+         * and no statistics are produced.
+         */
+        @Override
+        public void close()
+        {
+            if(!ended)
+            {
+                ended = true;
+                if(!result.isDone())
+                {
+                    try
+                    {
+                        pipe.fail(new IOException("The feed was closed " +
+                                                  "before it was completed."));
+                    }
+                    catch(InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        /**
+         * @throws IOException  if the feed can no longer be written to.  If
+         *          the parser failed, this is the reason why.
+         */
+        private void checkOpen() throws IOException
+        {
+            if(ended)
+            {
+                throw new IOException("The feed has already been completed " +
+                                      "or closed.");
+            }
+            if(result.isDone())
+            {
+                // The parser stopped before the end of the input.
+                awaitResult();
+                throw new IOException("The parser stopped before the end " +
+                                      "of the input.");
+            }
+        }
+
+        /**
+         * @return  the statistics, once the parser is done
+         * @throws IOException  if the parser failed, or if we were
+         *          interrupted while waiting
+         */
+        private FileProcessor awaitResult() throws IOException
+        {
+            try
+            {
+                return result.get();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting " +
+                                                 "for the parser.");
+            }
+            catch(ExecutionException e)
+            {
+                Throwable cause = e.getCause();
+                if(cause instanceof IOException)
+                {
+                    throw (IOException) cause;
+                }
+                if(cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException) cause;
+                }
+                throw (Error) cause;
+            }
+        }
+    }
 }
@@ -9,14 +9,38 @@
 
 package com.code42.inputAnalysis;
 
+import com.code42.output.OutputFormat;
+import com.code42.output.RecordWriter;
+
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
 
 /**
  * Created by ian on 5/12/16.
  */
 public class InputAnalysisDriver
 {
+    /**
+     * The option that switches the driver into batch mode.
+     */
+    private static final String BATCH_OPTION = "--batch";
+
+    /**
+     * The option that switches the driver to machine-readable output.
+     */
+    private static final String FORMAT_OPTION = "--format";
+
+    /**
+     * The option that analyzes every matching file under a directory.
+     */
+    private static final String DIRECTORY_OPTION = "--directory";
+
+
     /**
      * The main for the test driver that can be used to verify the
      * FileProcessor.
@@ -25,6 +49,21 @@ public class InputAnalysisDriver
      *              that should be analyzed.  All other arguments are
      *              strings that we will check if they are present in the
      *              parsed file.
+     *
+     *              Alternatively, pass "--batch" (optionally followed by
+     *              the number of worker threads) to read requests from
+     *              standard in until it is closed.  See
+     *              {@link BatchAnalyzer} for the request and result
+     *              formats.
+     *
+     *              To get machine-readable output, start the arguments
+     *              with "--format" and the name of an
+     *              {@link OutputFormat} ("json" or "csv").
+     *
+     *              To analyze every file under a directory, pass
+     *              "--directory", the path to the directory, and
+     *              (optionally) a pattern the file names must match.  See
+     *              {@link DirectoryAnalyzer}.
      */
     public static void main(String args[])
     {
@@ -33,8 +72,25 @@ public class InputAnalysisDriver
         {
             System.err.println("Invalid number of arguments (" + args.length +
                                        ").\n");
-            System.err.println("Usage:");
-            System.err.println("programName <path> [stringToFind1] [stringToFind2] ...");
+            printUsage();
+            return;
+        }
+
+        if(BATCH_OPTION.equals(args[0]))
+        {
+            runBatch(args);
+            return;
+        }
+
+        if(FORMAT_OPTION.equals(args[0]))
+        {
+            runStructured(args);
+            return;
+        }
+
+        if(DIRECTORY_OPTION.equals(args[0]))
+        {
+            runDirectory(args);
             return;
         }
 
@@ -92,4 +148,177 @@ public class InputAnalysisDriver
 
         System.out.println("\n\nDone!");
     }
+
+
+    /**
+     * Runs the driver in batch mode, reading requests from standard in and
+     * writing the results to standard out.  The throughput summary is
+     * written to standard error so it does not mix with the results.
+     *
+     * @param args  the command-line arguments, starting with "--batch"
+     */
+    private static void runBatch(String args[])
+    {
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        if(args.length > 2)
+        {
+            System.err.println("Invalid number of arguments (" + args.length +
+                                       ").\n");
+            printUsage();
+            return;
+        }
+        if(args.length == 2)
+        {
+            try
+            {
+                workerCount = Integer.parseInt(args[1]);
+            }
+            catch(NumberFormatException e)
+            {
+                System.err.println("ERROR: Invalid worker count \"" +
+                                           args[1] + "\".\n");
+                printUsage();
+                return;
+            }
+        }
+
+        try
+        {
+            BatchAnalyzer analyzer = new BatchAnalyzer(workerCount, null);
+            BufferedReader requests =
+                    new BufferedReader(new InputStreamReader(System.in));
+            analyzer.run(requests, System.out, System.err);
+        }
+        catch(IOException | InterruptedException | IllegalArgumentException e)
+        {
+            System.err.println("Error encountered running the batch.  " +
+                                       "Error details below:\n");
+            e.printStackTrace();
+
+            System.err.println("\n\nTerminating test driver...\n");
+        }
+    }
+
+
+    /**
+     * Runs the driver with machine-readable output.  This writes the
+     * records from {@link FileProcessor#writeRecords(RecordWriter)} followed
+     * by one "query" record (with the fields value and present) for each
+     * string to find.
+     *
+     * @param args  the command-line arguments, starting with "--format"
+     */
+    private static void runStructured(String args[])
+    {
+        if(args.length < 3)
+        {
+            System.err.println("Invalid number of arguments (" + args.length +
+                                       ").\n");
+            printUsage();
+            return;
+        }
+
+        OutputFormat format;
+        try
+        {
+            format = OutputFormat.fromName(args[1]);
+        }
+        catch(IllegalArgumentException e)
+        {
+            System.err.println("ERROR: " + e.getMessage() + "\n");
+            printUsage();
+            return;
+        }
+
+        // Write straight to standard out; the writer does its own
+        // buffering.
+        RecordWriter writer = format.newWriter(
+                new FileOutputStream(FileDescriptor.out));
+        try
+        {
+            FileProcessor processor = new FileProcessor(new File(args[2]));
+            processor.writeRecords(writer);
+
+            for(int k = 3; k < args.length; k++)
+            {
+                writer.beginRecord("query");
+                writer.field("value", args[k]);
+                writer.field("present", processor.contains(args[k]));
+                writer.endRecord();
+            }
+            writer.flush();
+        }
+        catch(IOException e)
+        {
+            System.err.println("Error encountered running the analysis.  " +
+                                       "Error details below:\n");
+            e.printStackTrace();
+
+            System.err.println("\n\nTerminating test driver...\n");
+        }
+    }
+
+
+    /**
+     * Analyzes every matching file under a directory, printing the
+     * statistics of each file followed by those of all of the files
+     * combined.  Files that could not be analyzed are listed on standard
+     * error.
+     *
+     * @param args  the command-line arguments, starting with "--directory"
+     */
+    private static void runDirectory(String args[])
+    {
+        if(args.length < 2 || args.length > 3)
+        {
+            System.err.println("Invalid number of arguments (" + args.length +
+                                       ").\n");
+            printUsage();
+            return;
+        }
+        String glob = (args.length == 3) ? args[2]
+                                         : DirectoryAnalyzer.DEFAULT_GLOB;
+
+        DirectoryAnalyzer.Result result;
+        try
+        {
+            DirectoryAnalyzer analyzer = new DirectoryAnalyzer(
+                    Runtime.getRuntime().availableProcessors(), null);
+            result = analyzer.analyze(Paths.get(args[1]), glob);
+        }
+        catch(IOException | InterruptedException | IllegalArgumentException e)
+        {
+            System.err.println("Error encountered running the analysis.  " +
+                                       "Error details below:\n");
+            e.printStackTrace();
+
+            System.err.println("\n\nTerminating test driver...\n");
+            return;
+        }
+
+        result.getFiles().forEach((path, processor) ->
+        {
+            System.out.println(path + ":");
+            processor.printFileStatistics();
+            System.out.println();
+        });
+        result.getErrors().forEach((path, error) ->
+                System.err.println("ERROR: " + path + ": " + error));
+
+        System.out.println("All " + result.getFiles().size() + " files:");
+        result.getSummary().printFileStatistics();
+    }
+
+
+    /**
+     * Prints how to run the driver to standard error.
+     */
+    private static void printUsage()
+    {
+        System.err.println("Usage:");
+        System.err.println("programName <path> [stringToFind1] [stringToFind2] ...");
+        System.err.println("programName --format <json|csv> <path> [stringToFind1] ...");
+        System.err.println("programName --batch [workerCount]");
+        System.err.println("programName --directory <path> [fileNamePattern]");
+    }
 }
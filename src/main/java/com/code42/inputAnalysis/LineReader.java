@@ -0,0 +1,605 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Splits a byte stream into lines using the same rules as
+ * {@link java.io.BufferedReader#readLine()}: a line ends at "\n", "\r", or
+ * "\r\n", and a trailing line without a terminator is only returned if it is
+ * non-empty.
+ *
+ * For charsets where every ASCII byte stands for itself (UTF-8, US-ASCII,
+ * and ISO-8859-1) the lines are split on the raw bytes and only lines that
+ * contain non-ASCII bytes go through a {@link CharsetDecoder}.  All other
+ * charsets are decoded in bulk and split on the decoded characters.
+ *
+ * Malformed or unmappable input never aborts the read.  The offending bytes
+ * are replaced (as {@link String#String(byte[], Charset)} would) and the
+ * line is counted so the caller can tell that it happened.
+ */
+final class LineReader implements Closeable
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The number of bytes to read from the stream at a time.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of characters to decode at a time for charsets that are
+     * not ASCII-compatible.
+     */
+    private static final int CHAR_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The smallest byte buffer we will accept.  The buffer must be able to
+     * hold at least one complete character in any charset.
+     */
+    private static final int MIN_BUFFER_SIZE = 16;
+
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The stream to read lines from.
+     */
+    private final InputStream input;
+
+    /**
+     * The charset used to decode the lines.
+     */
+    private final Charset charset;
+
+    /**
+     * Decodes (and validates) lines containing non-ASCII bytes.  It
+     * reports malformed input so we can count it.
+     */
+    private final CharsetDecoder decoder;
+
+    /**
+     * The bytes read from the stream.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Holds the start of a line that spans more than one read.
+     */
+    private byte[] pending = new byte[256];
+
+    /**
+     * The number of bytes in pending.
+     */
+    private int pendingLength = 0;
+
+    /**
+     * The total number of bytes read from the stream.
+     */
+    private long bytesRead = 0;
+
+    /**
+     * The number of lines that contained malformed or unmappable input.
+     */
+    private int malformedLineCount = 0;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor
+     *
+     * @param input  the stream to read.  This takes ownership of the stream
+     *               and closes it when this reader is closed.
+     * @param charset  the charset the stream is encoded with
+     */
+    LineReader(InputStream input, Charset charset)
+    {
+        this(input, charset, new byte[DEFAULT_BUFFER_SIZE]);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param input  the stream to read.  This takes ownership of the stream
+     *               and closes it when this reader is closed.
+     * @param charset  the charset the stream is encoded with
+     * @param buffer  the buffer to read into.  This lets callers reuse
+     *                buffers between files.
+     * @throws IllegalArgumentException  if the buffer is too small to hold
+     *              a character
+     */
+    LineReader(InputStream input, Charset charset, byte[] buffer)
+    {
+        if(buffer.length < MIN_BUFFER_SIZE)
+        {
+            throw new IllegalArgumentException("The buffer must hold at least " +
+                                               MIN_BUFFER_SIZE + " bytes.");
+        }
+        this.input = input;
+        this.charset = charset;
+        this.buffer = buffer;
+        this.decoder = charset.newDecoder()
+                              .onMalformedInput(CodingErrorAction.REPORT)
+                              .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * Reads the remainder of the stream, passing each line (without the
+     * line terminator) to the given action.
+     *
+     * @param action  the action to perform on each line
+     * @throws IOException  if the stream could not be read
+     */
+    void forEachLine(Consumer<String> action) throws IOException
+    {
+        forEachLine(null, action);
+    }
+
+
+    /**
+     * Reads the remainder of the stream, offering each line that is all
+     * ASCII to the raw handler before it is decoded.  Lines that the raw
+     * handler does not take (and all lines of charsets that are not
+     * ASCII-compatible) are decoded and passed to the action.
+     *
+     * @param rawHandler  takes lines straight from the read buffer, or null
+     * @param action  the action to perform on each remaining line
+     * @throws IOException  if the stream could not be read
+     */
+    void forEachLine(RawLineHandler rawHandler,
+                     Consumer<String> action) throws IOException
+    {
+        if(isAsciiCompatible(charset))
+        {
+            splitBytes(rawHandler, action);
+        }
+        else
+        {
+            splitChars(action);
+        }
+    }
+
+
+    /**
+     * @return  the number of bytes read from the stream so far
+     */
+    long getBytesRead()
+    {
+        return bytesRead;
+    }
+
+
+    /**
+     * @return  the number of lines that contained malformed or unmappable
+     *          input for the charset
+     */
+    int getMalformedLineCount()
+    {
+        return malformedLineCount;
+    }
+
+
+    @Override
+    public void close() throws IOException
+    {
+        input.close();
+    }
+
+
+    /**
+     * Checks if every ASCII byte in the charset stands for the matching
+     * ASCII character (and is never part of a multi-byte character).  Only
+     * these charsets can be split into lines before they are decoded.
+     *
+     * @param charset  the charset to check
+     * @return  true if lines can be split on the raw bytes
+     */
+    static boolean isAsciiCompatible(Charset charset)
+    {
+        return charset.equals(StandardCharsets.UTF_8) ||
+               charset.equals(StandardCharsets.US_ASCII) ||
+               charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Splits the stream into lines on the raw bytes.  This is the fast path
+     * for ASCII-compatible charsets.
+     *
+     * @param rawHandler  takes ASCII lines before they are decoded, or null
+     * @param action  the action to perform on each line
+     * @throws IOException  if the stream could not be read
+     */
+    private void splitBytes(RawLineHandler rawHandler,
+                            Consumer<String> action) throws IOException
+    {
+        boolean skipLF = false;
+        boolean pendingAscii = true;
+        int count;
+
+        while((count = input.read(buffer, 0, buffer.length)) != -1)
+        {
+            bytesRead += count;
+            int start = 0;
+
+            if(count == 0)
+            {
+                continue;
+            }
+
+            // Swallow the "\n" of a "\r\n" that straddles two reads.
+            if(skipLF && buffer[0] == LF)
+            {
+                start = 1;
+            }
+            skipLF = false;
+
+            // OR every byte in the line together; the sign bit tells us if
+            // any of them were non-ASCII.
+            int bits = 0;
+            for(int k = start; k < count; k++)
+            {
+                byte b = buffer[k];
+                if(b == LF || b == CR)
+                {
+                    boolean ascii = (bits >= 0) && pendingAscii;
+                    if(pendingLength == 0)
+                    {
+                        emit(buffer, start, k - start, ascii, rawHandler, action);
+                    }
+                    else
+                    {
+                        appendPending(buffer, start, k - start);
+                        emit(pending, 0, pendingLength, ascii, rawHandler, action);
+                        pendingLength = 0;
+                    }
+                    pendingAscii = true;
+                    bits = 0;
+
+                    if(b == CR)
+                    {
+                        if(k + 1 < count)
+                        {
+                            if(buffer[k + 1] == LF)
+                            {
+                                k++;
+                            }
+                        }
+                        else
+                        {
+                            skipLF = true;
+                        }
+                    }
+                    start = k + 1;
+                }
+                else
+                {
+                    bits |= b;
+                }
+            }
+
+            // Hold on to the start of the next line until we find its end.
+            if(start < count)
+            {
+                appendPending(buffer, start, count - start);
+                pendingAscii &= (bits >= 0);
+            }
+        }
+
+        // The last line may not have a terminator.
+        if(pendingLength > 0)
+        {
+            emit(pending, 0, pendingLength, pendingAscii, rawHandler, action);
+            pendingLength = 0;
+        }
+    }
+
+
+    /**
+     * Passes a line that was split on the raw bytes to the raw handler (if
+     * it is all ASCII) or decodes it and passes it to the action.
+     *
+     * @param bytes  the array holding the line
+     * @param offset  the index of the first byte of the line
+     * @param length  the number of bytes in the line
+     * @param ascii  true if all of the bytes are known to be ASCII
+     * @param rawHandler  takes ASCII lines before they are decoded, or null
+     * @param action  the action to perform on lines that are decoded
+     */
+    private void emit(byte[] bytes,
+                      int offset,
+                      int length,
+                      boolean ascii,
+                      RawLineHandler rawHandler,
+                      Consumer<String> action)
+    {
+        if(ascii &&
+           rawHandler != null &&
+           rawHandler.handle(bytes, offset, length))
+        {
+            return;
+        }
+        action.accept(decode(bytes, offset, length, ascii));
+    }
+
+
+    /**
+     * Decodes a single line that was split on the raw bytes.
+     *
+     * @param bytes  the array holding the line
+     * @param offset  the index of the first byte of the line
+     * @param length  the number of bytes in the line
+     * @param ascii  true if all of the bytes are known to be ASCII
+     * @return  the decoded line
+     */
+    private String decode(byte[] bytes, int offset, int length, boolean ascii)
+    {
+        // ISO-8859-1 maps each byte straight to a char, which is as cheap as
+        // decoding gets.  Since ASCII is a subset, use it for all ASCII
+        // lines too.
+        if(ascii || charset.equals(StandardCharsets.ISO_8859_1))
+        {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+
+        try
+        {
+            decoder.reset();
+            return decoder.decode(ByteBuffer.wrap(bytes, offset, length))
+                          .toString();
+        }
+        catch(CharacterCodingException e)
+        {
+            // Count it and decode it again, replacing the bad input.
+            malformedLineCount++;
+            return new String(bytes, offset, length, charset);
+        }
+    }
+
+
+    /**
+     * Appends bytes to the pending line, growing it if needed.
+     *
+     * @param bytes  the array holding the bytes to append
+     * @param offset  the index of the first byte to append
+     * @param length  the number of bytes to append
+     */
+    private void appendPending(byte[] bytes, int offset, int length)
+    {
+        int required = pendingLength + length;
+        if(required > pending.length)
+        {
+            pending = Arrays.copyOf(pending,
+                                    Math.max(required, pending.length * 2));
+        }
+        System.arraycopy(bytes, offset, pending, pendingLength, length);
+        pendingLength = required;
+    }
+
+
+    /**
+     * Decodes the whole stream and splits it into lines on the decoded
+     * characters.  This is used for charsets (such as UTF-16) where a
+     * newline byte may be part of some other character.
+     *
+     * @param action  the action to perform on each line
+     * @throws IOException  if the stream could not be read
+     */
+    private void splitChars(Consumer<String> action) throws IOException
+    {
+        CharSplitter splitter = new CharSplitter(action);
+        CharBuffer out = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        ByteBuffer in = ByteBuffer.wrap(buffer);
+        in.limit(0);
+        boolean endOfInput = false;
+
+        decoder.reset();
+        while(true)
+        {
+            // Refill the byte buffer, keeping any partial character left
+            // over from the last pass.
+            in.compact();
+            int count = input.read(buffer, in.position(), in.remaining());
+            if(count == -1)
+            {
+                endOfInput = true;
+            }
+            else
+            {
+                bytesRead += count;
+                in.position(in.position() + count);
+            }
+            in.flip();
+
+            // Decode everything we can, splitting as the output fills up.
+            CoderResult result = decoder.decode(in, out, endOfInput);
+            while(!result.isUnderflow())
+            {
+                splitter.drain(out);
+                if(result.isError())
+                {
+                    // Replace the bad input and note the line.
+                    splitter.markMalformed();
+                    in.position(in.position() + result.length());
+                    out.put(decoder.replacement());
+                }
+                result = decoder.decode(in, out, endOfInput);
+            }
+
+            if(endOfInput)
+            {
+                while(decoder.flush(out).isOverflow())
+                {
+                    splitter.drain(out);
+                }
+                splitter.drain(out);
+                splitter.finish();
+                return;
+            }
+            splitter.drain(out);
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Classes
+    //--------------------------------------------------------------------
+    /**
+     * Takes lines straight from the read buffer, before they are decoded,
+     * so that lines that can be handled as bytes never become Strings.
+     */
+    interface RawLineHandler
+    {
+        /**
+         * Handles a line, if it can.  The bytes are only valid until this
+         * returns.
+         *
+         * @param bytes  the array holding the line, which is all ASCII
+         * @param offset  the index of the first byte of the line
+         * @param length  the number of bytes in the line
+         * @return  true if the line was handled, false if it should be
+         *          decoded and passed on as a String
+         */
+        boolean handle(byte[] bytes, int offset, int length);
+    }
+
+
+    /**
+     * Splits decoded characters into lines.  Used for charsets that are
+     * not ASCII-compatible.
+     */
+    private final class CharSplitter
+    {
+        /**
+         * The action to perform on each line.
+         */
+        private final Consumer<String> action;
+
+        /**
+         * The characters of the current line.
+         */
+        private final StringBuilder line = new StringBuilder();
+
+        /**
+         * True if the last character was a "\r", so a "\n" should be
+         * ignored.
+         */
+        private boolean skipLF = false;
+
+        /**
+         * True if the current line contained malformed input.
+         */
+        private boolean malformed = false;
+
+        /**
+         * Constructor
+         *
+         * @param action  the action to perform on each line
+         */
+        CharSplitter(Consumer<String> action)
+        {
+            this.action = action;
+        }
+
+        /**
+         * Notes that the current line contained malformed input.
+         */
+        void markMalformed()
+        {
+            malformed = true;
+        }
+
+        /**
+         * Splits the decoded characters into lines and empties the buffer.
+         *
+         * @param out  the buffer of decoded characters (in write mode)
+         */
+        void drain(CharBuffer out)
+        {
+            out.flip();
+            while(out.hasRemaining())
+            {
+                char c = out.get();
+                if(skipLF)
+                {
+                    skipLF = false;
+                    if(c == LF)
+                    {
+                        continue;
+                    }
+                }
+
+                if(c == LF || c == CR)
+                {
+                    emit();
+                    skipLF = (c == CR);
+                }
+                else
+                {
+                    line.append(c);
+                }
+            }
+            out.clear();
+        }
+
+        /**
+         * Emits the last line if it did not have a terminator.
+         */
+        void finish()
+        {
+            if(line.length() > 0)
+            {
+                emit();
+            }
+        }
+
+        /**
+         * Passes the current line to the action and starts a new one.
+         */
+        private void emit()
+        {
+            if(malformed)
+            {
+                malformedLineCount++;
+                malformed = false;
+            }
+            action.accept(line.toString());
+            line.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * An input stream whose bytes are produced on another thread.  The producer
+ * hands over chunks of bytes through a bounded ring of slots, so it can run
+ * ahead of the reader by at most a fixed number of chunks.
+ *
+ * Each slot holds a {@link Future} rather than the bytes themselves.  That
+ * lets a producer farm the work for each chunk out to a thread pool (for
+ * instance, to decompress several gzip members at once) while the reader
+ * still sees the chunks in the order they were queued.
+ */
+final class PipelinedInputStream extends InputStream
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * Marks the end of the stream in the ring.
+     */
+    private static final Future<byte[]> END_OF_STREAM =
+            CompletableFuture.completedFuture(new byte[0]);
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The ring of chunks that have been queued but not yet read.
+     */
+    private final BlockingQueue<Future<byte[]>> ring;
+
+    /**
+     * The thread producing the chunks.  Set by {@link #start(Thread)}.
+     */
+    private Thread producer = null;
+
+    /**
+     * The chunk currently being read.
+     */
+    private byte[] current = new byte[0];
+
+    /**
+     * The index of the next byte to read from the current chunk.
+     */
+    private int position = 0;
+
+    /**
+     * True once the end of the stream has been reached.
+     */
+    private boolean finished = false;
+
+    /**
+     * True once the stream has been closed.
+     */
+    private volatile boolean closed = false;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor
+     *
+     * @param capacity  the number of chunks the producer may queue ahead of
+     *                  the reader
+     */
+    PipelinedInputStream(int capacity)
+    {
+        ring = new ArrayBlockingQueue<>(capacity);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Producer API
+    //--------------------------------------------------------------------
+    /**
+     * Starts the thread that produces the chunks.  The thread is
+     * interrupted if the stream is closed before it finishes.
+     *
+     * @param producer  the (not yet started) producer thread
+     */
+    void start(Thread producer)
+    {
+        this.producer = producer;
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+
+    /**
+     * Queues a chunk, waiting for a free slot if the ring is full.
+     *
+     * @param chunk  the chunk (or pending chunk) to queue
+     * @throws InterruptedException  if the stream was closed while waiting
+     */
+    void put(Future<byte[]> chunk) throws InterruptedException
+    {
+        ring.put(chunk);
+    }
+
+
+    /**
+     * Queues a chunk of bytes that is already available.
+     *
+     * @param chunk  the bytes to queue
+     * @throws InterruptedException  if the stream was closed while waiting
+     */
+    void put(byte[] chunk) throws InterruptedException
+    {
+        put(CompletableFuture.completedFuture(chunk));
+    }
+
+
+    /**
+     * Marks the end of the stream.  Nothing may be queued after this.
+     *
+     * @throws InterruptedException  if the stream was closed while waiting
+     */
+    void finish() throws InterruptedException
+    {
+        put(END_OF_STREAM);
+    }
+
+
+    /**
+     * Ends the stream with an error.  The reader will see the error once
+     * it has read everything queued before it.
+     *
+     * @param error  the error to report to the reader
+     * @throws InterruptedException  if the stream was closed while waiting
+     */
+    void fail(Throwable error) throws InterruptedException
+    {
+        CompletableFuture<byte[]> failure = new CompletableFuture<>();
+        failure.completeExceptionally(error);
+        put(failure);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  InputStream
+    //--------------------------------------------------------------------
+    @Override
+    public int read() throws IOException
+    {
+        if(!fill())
+        {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if(length == 0)
+        {
+            return 0;
+        }
+        if(!fill())
+        {
+            return -1;
+        }
+
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+
+    @Override
+    public int available()
+    {
+        return current.length - position;
+    }
+
+
+    @Override
+    public void close()
+    {
+        if(closed)
+        {
+            return;
+        }
+        closed = true;
+
+        // Stop the producer and drop whatever it has queued (cancelling any
+        // chunks that have not been produced yet).
+        if(producer != null)
+        {
+            producer.interrupt();
+        }
+        Future<byte[]> chunk;
+        while((chunk = ring.poll()) != null)
+        {
+            chunk.cancel(true);
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Makes sure there is at least one byte to read in the current chunk.
+     *
+     * @return  true if there is a byte to read or false at the end of the
+     *          stream
+     * @throws IOException  if the stream is closed, the producer failed, or
+     *          we were interrupted while waiting
+     */
+    private boolean fill() throws IOException
+    {
+        if(closed)
+        {
+            throw new IOException("The stream is closed.");
+        }
+
+        // Skip over any empty chunks.
+        while(position == current.length)
+        {
+            if(finished)
+            {
+                return false;
+            }
+
+            try
+            {
+                Future<byte[]> chunk = ring.take();
+                if(chunk == END_OF_STREAM)
+                {
+                    finished = true;
+                    return false;
+                }
+                current = chunk.get();
+                position = 0;
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while " +
+                                                 "waiting for input.");
+            }
+            catch(ExecutionException e)
+            {
+                // Pass I/O errors through as-is so the caller sees the
+                // same exception as if it read the data itself.
+                Throwable cause = e.getCause();
+                if(cause instanceof IOException)
+                {
+                    throw (IOException) cause;
+                }
+                if(cause instanceof Error)
+                {
+                    // Such as running out of memory; not an I/O problem.
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+/**
+ * A listener that is notified as a {@link FileProcessor} works through its
+ * phases.  This is the pluggable hook for gathering performance metrics;
+ * {@link ProcessorStatistics} is an implementation that aggregates the
+ * samples and exposes them over JMX.
+ *
+ * Listeners are only invoked if one is given to the {@link FileProcessor}.
+ * When none is given, the processor does not read the clock or count bytes,
+ * so there is no measurable overhead.  Both callbacks default to doing
+ * nothing so implementations only need to override the ones they care about.
+ */
+public interface ProcessorMetrics
+{
+    /**
+     * Called once the file has been read, parsed, and the numbers sorted.
+     *
+     * @param fileName  the name of the file that was processed
+     * @param bytesRead  the number of bytes read from the file
+     * @param lineCount  the number of lines parsed
+     * @param numericLineCount  the number of lines that were numbers
+     * @param parseFailureCount  the number of lines that failed to parse as
+     *                           a number (and so were counted as strings)
+     * @param parseNanos  the time (in ns) spent reading and parsing lines
+     * @param sortNanos  the time (in ns) spent sorting the numbers
+     */
+    default void fileProcessed(String fileName,
+                               long bytesRead,
+                               int lineCount,
+                               int numericLineCount,
+                               int parseFailureCount,
+                               long parseNanos,
+                               long sortNanos)
+    {
+        // Nothing by default.
+    }
+
+
+    /**
+     * Called each time the statistics report is rendered (see
+     * {@link FileProcessor#toString()}).
+     *
+     * @param fileName  the name of the file the report is for
+     * @param renderNanos  the time (in ns) spent sorting the strings and
+     *                     formatting the report
+     */
+    default void reportRendered(String fileName, long renderNanos)
+    {
+        // Nothing by default.
+    }
+}
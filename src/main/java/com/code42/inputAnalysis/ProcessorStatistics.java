@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ProcessorMetrics} listener that keeps running totals of every
+ * sample it receives.  The totals can be read directly or through JMX once
+ * the object has been registered with {@link #register(String)}.
+ *
+ * This is thread-safe, so one instance may be shared by many processors.
+ */
+public class ProcessorStatistics implements ProcessorMetrics,
+                                            ProcessorStatisticsMBean
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The JMX domain the statistics are registered under.
+     */
+    private static final String JMX_DOMAIN = "com.code42.inputAnalysis";
+
+    /**
+     * Conversion factor between nanoseconds and milliseconds.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    // The running totals backing each of the MBean attributes.  Times are
+    // kept in nanoseconds and converted on the way out.
+    private final AtomicLong filesProcessed = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong linesRead = new AtomicLong();
+    private final AtomicLong numericLines = new AtomicLong();
+    private final AtomicLong parseFailures = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong sortNanos = new AtomicLong();
+    private final AtomicLong reportsRendered = new AtomicLong();
+    private final AtomicLong renderNanos = new AtomicLong();
+
+
+    //--------------------------------------------------------------------
+    //  ProcessorMetrics
+    //--------------------------------------------------------------------
+    @Override
+    public void fileProcessed(String fileName,
+                              long bytesRead,
+                              int lineCount,
+                              int numericLineCount,
+                              int parseFailureCount,
+                              long parseNanos,
+                              long sortNanos)
+    {
+        this.filesProcessed.incrementAndGet();
+        this.bytesRead.addAndGet(bytesRead);
+        this.linesRead.addAndGet(lineCount);
+        this.numericLines.addAndGet(numericLineCount);
+        this.parseFailures.addAndGet(parseFailureCount);
+        this.parseNanos.addAndGet(parseNanos);
+        this.sortNanos.addAndGet(sortNanos);
+    }
+
+
+    @Override
+    public void reportRendered(String fileName, long renderNanos)
+    {
+        this.reportsRendered.incrementAndGet();
+        this.renderNanos.addAndGet(renderNanos);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  ProcessorStatisticsMBean
+    //--------------------------------------------------------------------
+    @Override
+    public long getFilesProcessed()
+    {
+        return filesProcessed.get();
+    }
+
+    @Override
+    public long getBytesRead()
+    {
+        return bytesRead.get();
+    }
+
+    @Override
+    public long getLinesRead()
+    {
+        return linesRead.get();
+    }
+
+    @Override
+    public long getNumericLines()
+    {
+        return numericLines.get();
+    }
+
+    @Override
+    public long getStringLines()
+    {
+        return linesRead.get() - numericLines.get();
+    }
+
+    @Override
+    public long getParseFailures()
+    {
+        return parseFailures.get();
+    }
+
+    @Override
+    public double getLinesPerSecond()
+    {
+        long nanos = parseNanos.get();
+        if(nanos == 0)
+        {
+            return 0;
+        }
+        return linesRead.get() * 1e9 / nanos;
+    }
+
+    @Override
+    public double getTotalParseMillis()
+    {
+        return parseNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getTotalSortMillis()
+    {
+        return sortNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getReportsRendered()
+    {
+        return reportsRendered.get();
+    }
+
+    @Override
+    public double getTotalRenderMillis()
+    {
+        return renderNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void reset()
+    {
+        filesProcessed.set(0);
+        bytesRead.set(0);
+        linesRead.set(0);
+        numericLines.set(0);
+        parseFailures.set(0);
+        parseNanos.set(0);
+        sortNanos.set(0);
+        reportsRendered.set(0);
+        renderNanos.set(0);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  JMX Registration
+    //--------------------------------------------------------------------
+    /**
+     * Registers these statistics with the platform MBean server.
+     *
+     * @param name  the name to distinguish this instance from others (e.g.,
+     *              the name of the job using it)
+     * @return  the name the MBean was registered under.  Pass this to
+     *          {@link MBeanServer#unregisterMBean(ObjectName)} when done.
+     * @throws JMException  if the name is invalid or already registered
+     */
+    public ObjectName register(String name) throws JMException
+    {
+        ObjectName objectName = new ObjectName(JMX_DOMAIN +
+                                               ":type=ProcessorStatistics,name=" +
+                                               ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+}
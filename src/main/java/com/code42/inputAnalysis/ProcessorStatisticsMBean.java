@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+/**
+ * The JMX management interface for {@link ProcessorStatistics}.  All times
+ * are reported in milliseconds.
+ */
+public interface ProcessorStatisticsMBean
+{
+    /**
+     * @return  the number of files processed
+     */
+    long getFilesProcessed();
+
+    /**
+     * @return  the number of bytes read across all processed files
+     */
+    long getBytesRead();
+
+    /**
+     * @return  the number of lines read across all processed files
+     */
+    long getLinesRead();
+
+    /**
+     * @return  the number of lines that were parsed as numbers
+     */
+    long getNumericLines();
+
+    /**
+     * @return  the number of lines that were counted as strings
+     */
+    long getStringLines();
+
+    /**
+     * @return  the number of lines that failed to parse as numbers
+     */
+    long getParseFailures();
+
+    /**
+     * @return  the parse throughput (lines per second of parse time) or 0 if
+     *          nothing has been parsed
+     */
+    double getLinesPerSecond();
+
+    /**
+     * @return  the total time spent reading and parsing lines
+     */
+    double getTotalParseMillis();
+
+    /**
+     * @return  the total time spent sorting numbers
+     */
+    double getTotalSortMillis();
+
+    /**
+     * @return  the number of reports rendered
+     */
+    long getReportsRendered();
+
+    /**
+     * @return  the total time spent rendering reports
+     */
+    double getTotalRenderMillis();
+
+    /**
+     * Clears all of the counters.
+     */
+    void reset();
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Chooses how many bytes to read from a file at a time.
+ *
+ * The size is {@value LineReader#DEFAULT_BUFFER_SIZE} bytes unless the
+ * {@value #READ_SIZE_PROPERTY} system property gives another: a number of
+ * bytes (with an optional "k" or "m" suffix) from {@value #MIN_READ_SIZE}
+ * to {@value #MAX_READ_SIZE}, or "auto".  The property is read each time a
+ * file is opened by {@link FileProcessor#FileProcessor(java.io.File,
+ * java.nio.charset.Charset, ProcessorMetrics)} or by a {@link FileAnalyzer}
+ * that was not given a read size, so changing it affects the next file
+ * opened.  An invalid value is rejected rather than ignored.
+ *
+ * The "auto" size grows with the file (so that a large file is read in
+ * about {@value #AUTO_READS_PER_FILE} reads, within limits) and is at least
+ * the read-ahead and optimal I/O size that the device the file is on
+ * reports, where the platform tells us (Linux, through /sys/class/block).
+ * Large sequential reads let striped (RAID) and deep-queued (NVMe) devices
+ * work on many blocks at once.  A small file is never given a buffer much
+ * larger than itself.
+ */
+final class ReadSizes
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The system property that sets the read size.
+     */
+    static final String READ_SIZE_PROPERTY = "com.code42.inputAnalysis.readSize";
+
+    /**
+     * The read size that is chosen for each file.
+     */
+    static final int AUTO = 0;
+
+    /**
+     * The value of {@link #READ_SIZE_PROPERTY} that selects {@link #AUTO}.
+     */
+    private static final String AUTO_NAME = "auto";
+
+    /**
+     * The smallest read size.
+     */
+    static final int MIN_READ_SIZE = 4 * 1024;
+
+    /**
+     * The largest read size.
+     */
+    static final int MAX_READ_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The largest read size that is chosen automatically.
+     */
+    private static final int MAX_AUTO_READ_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The number of reads the automatic size aims for in a large file.
+     */
+    private static final int AUTO_READS_PER_FILE = 64;
+
+    /**
+     * Where Linux describes its block devices.
+     */
+    private static final Path SYS_BLOCK = Paths.get("/sys/class/block");
+
+    /**
+     * The preferred read size of each device we have looked up, by device
+     * name (0 if it is not known).
+     */
+    private static final ConcurrentMap<String, Integer> DEVICE_READ_SIZES =
+            new ConcurrentHashMap<>();
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor (private).
+     *
+     * This is a utility class, so it should not be instantiated.
+     */
+    private ReadSizes()
+    {
+        // Nothing needed here.
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Package API
+    //--------------------------------------------------------------------
+    /**
+     * @return  the read size that {@link #READ_SIZE_PROPERTY} sets (or
+     *          {@link #AUTO}), or the default size if it is not set
+     * @throws IllegalArgumentException  if the property is set but is not
+     *          a valid read size
+     */
+    static int configured()
+    {
+        String value = System.getProperty(READ_SIZE_PROPERTY);
+        if(null == value || value.trim().isEmpty())
+        {
+            return LineReader.DEFAULT_BUFFER_SIZE;
+        }
+
+        try
+        {
+            return parse(value);
+        }
+        catch(IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Invalid " + READ_SIZE_PROPERTY +
+                                               ": " + e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * Parses a read size.
+     *
+     * @param value  "auto", or a number of bytes (with an optional "k" or
+     *               "m" suffix) from {@value #MIN_READ_SIZE} to
+     *               {@value #MAX_READ_SIZE}
+     * @return  the number of bytes, or {@link #AUTO}
+     * @throws IllegalArgumentException  if the value is not a size, or is
+     *          outside the limits
+     */
+    static int parse(String value)
+    {
+        String size = value.trim().toLowerCase();
+        if(AUTO_NAME.equals(size))
+        {
+            return AUTO;
+        }
+
+        long multiplier = 1;
+        if(size.endsWith("k"))
+        {
+            multiplier = 1024;
+        }
+        else if(size.endsWith("m"))
+        {
+            multiplier = 1024 * 1024;
+        }
+        String digits = (multiplier == 1) ? size
+                                          : size.substring(0, size.length() - 1);
+
+        long bytes;
+        try
+        {
+            bytes = Math.multiplyExact(Long.parseLong(digits), multiplier);
+        }
+        catch(NumberFormatException | ArithmeticException e)
+        {
+            throw new IllegalArgumentException("\"" + value + "\" is not a " +
+                                               "read size.", e);
+        }
+        if(bytes < MIN_READ_SIZE || bytes > MAX_READ_SIZE)
+        {
+            throw new IllegalArgumentException("The read size must be from " +
+                                               MIN_READ_SIZE + " to " +
+                                               MAX_READ_SIZE + " bytes (" +
+                                               value + ").");
+        }
+        return (int) bytes;
+    }
+
+
+    /**
+     * Checks a read size given in code.
+     *
+     * @param readSize  a number of bytes, or {@link #AUTO}
+     * @return  the read size
+     * @throws IllegalArgumentException  if the read size is not
+     *          {@link #AUTO} and is outside {@value #MIN_READ_SIZE} to
+     *          {@value #MAX_READ_SIZE} bytes
+     */
+    static int check(int readSize)
+    {
+        if(readSize != AUTO &&
+           (readSize < MIN_READ_SIZE || readSize > MAX_READ_SIZE))
+        {
+            throw new IllegalArgumentException("The read size must be from " +
+                                               MIN_READ_SIZE + " to " +
+                                               MAX_READ_SIZE + " bytes (" +
+                                               readSize + ").");
+        }
+        return readSize;
+    }
+
+
+    /**
+     * Chooses the read size for a file.
+     *
+     * @param file  the file to read
+     * @param readSize  the size to use, or {@link #AUTO} to choose one
+     *                  from the file and its device
+     * @return  the number of bytes to read at a time
+     */
+    static int forFile(File file, int readSize)
+    {
+        if(readSize != AUTO)
+        {
+            return readSize;
+        }
+
+        long fileSize = file.length();
+        long size = Math.max(fileSize / AUTO_READS_PER_FILE,
+                             deviceReadSize(file.toPath()));
+        size = Math.max(LineReader.DEFAULT_BUFFER_SIZE,
+                        Math.min(MAX_AUTO_READ_SIZE, size));
+
+        // Don't give a small file a large buffer.
+        size = Math.min(size, Math.max(MIN_READ_SIZE, fileSize));
+        return roundUpToPowerOfTwo((int) size);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Finds the read size the device holding a file prefers: the larger of
+     * its read-ahead and its optimal I/O size.
+     *
+     * @param path  the file
+     * @return  the preferred read size, in bytes, or 0 if it is not known
+     */
+    private static int deviceReadSize(Path path)
+    {
+        String device;
+        try
+        {
+            FileStore store = Files.getFileStore(path);
+            device = store.name();
+        }
+        catch(IOException | SecurityException e)
+        {
+            return 0;
+        }
+        if(null == device || !device.startsWith("/dev/"))
+        {
+            // Not a block device (or not a platform we know).
+            return 0;
+        }
+        return DEVICE_READ_SIZES.computeIfAbsent(device, ReadSizes::lookUpDevice);
+    }
+
+
+    /**
+     * Reads a device's read-ahead and optimal I/O size from sysfs.
+     *
+     * @param device  the device, e.g., "/dev/nvme0n1p1"
+     * @return  the larger of the two, in bytes, or 0 if they are not known
+     */
+    private static int lookUpDevice(String device)
+    {
+        try
+        {
+            // Resolve names such as /dev/mapper/root to the kernel's
+            // (/dev/dm-0).
+            Path devicePath = Paths.get(device);
+            String name = devicePath.toRealPath().getFileName().toString();
+            Path block = SYS_BLOCK.resolve(name);
+            if(!Files.isDirectory(block))
+            {
+                return 0;
+            }
+
+            // A partition has no queue of its own; its disk's applies.
+            Path queue = block.resolve("queue");
+            if(!Files.isDirectory(queue))
+            {
+                queue = block.toRealPath().getParent().resolve("queue");
+            }
+
+            long readAhead = readLong(queue.resolve("read_ahead_kb")) * 1024;
+            long optimal = readLong(queue.resolve("optimal_io_size"));
+            return (int) Math.min(MAX_READ_SIZE, Math.max(readAhead, optimal));
+        }
+        catch(IOException | RuntimeException e)
+        {
+            return 0;
+        }
+    }
+
+
+    /**
+     * @param file  a sysfs file holding a number
+     * @return  the number, or 0 if it could not be read
+     */
+    private static long readLong(Path file)
+    {
+        try
+        {
+            return Long.parseLong(new String(Files.readAllBytes(file),
+                                             StandardCharsets.US_ASCII).trim());
+        }
+        catch(IOException | NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+
+    /**
+     * @param value  a positive number
+     * @return  the smallest power of two that is at least the number
+     */
+    private static int roundUpToPowerOfTwo(int value)
+    {
+        int power = Integer.highestOneBit(value);
+        return (power == value) ? value : power << 1;
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Visits the non-numeric strings of a file (with their counts) in reverse
+ * alphabetical order, ignoring case.
+ *
+ * Small tables are sorted in memory.  Once the estimated size of the table
+ * passes a threshold, the strings are instead sorted in runs that each fit
+ * within the threshold, the runs are spilled to temporary files, and the
+ * files are merged as the strings are visited.  The two approaches visit
+ * the strings in exactly the same order, including the order of strings
+ * that only differ by case.  Only the table (and not the report) needs to
+ * fit in memory as long as the visitor writes each string out rather than
+ * keeping it, as {@link FileProcessor#writeFileStatistics(Appendable)} does;
+ * {@link FileProcessor#toString()} still builds the whole report.
+ *
+ * Rather than folding the case of each character on every comparison (as
+ * {@link String#CASE_INSENSITIVE_ORDER} does), each string's case is folded
+ * once into a {@link SortKey}, and the keys are compared as plain arrays of
+ * chars.  The keys give exactly the same order as the String comparator.
+ *
+ * The threshold (in bytes) is read from the
+ * {@value #MEMORY_THRESHOLD_PROPERTY} system property each time we sort, and
+ * defaults to {@value #DEFAULT_MEMORY_THRESHOLD} bytes.
+ */
+final class ReportSorter
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The system property holding the memory threshold (in bytes).
+     */
+    static final String MEMORY_THRESHOLD_PROPERTY =
+            "com.code42.inputAnalysis.sortMemoryThreshold";
+
+    /**
+     * The memory threshold (in bytes) if the property is not set.
+     */
+    static final long DEFAULT_MEMORY_THRESHOLD = 256L * 1024 * 1024;
+
+    /**
+     * A rough estimate of the memory used per string in addition to its
+     * characters: the String, its sort key, and their array headers, the
+     * map entry, the boxed count, and the slot in the sort array.
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    /**
+     * The order the strings are visited in.
+     */
+    private static final Comparator<SortKey> ORDER =
+            Collections.<SortKey>reverseOrder();
+
+
+    //--------------------------------------------------------------------
+    //  Helper Interfaces
+    //--------------------------------------------------------------------
+    /**
+     * Receives the strings in sorted order.
+     */
+    interface Visitor
+    {
+        /**
+         * @param value  the string
+         * @param count  the number of times the string appeared
+         * @throws IOException  if the string could not be handled
+         */
+        void visit(String value, int count) throws IOException;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor (private).
+     *
+     * This is a utility class, so it should not be instantiated.
+     */
+    private ReportSorter()
+    {
+        // Nothing needed here.
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * Visits the strings in reverse alphabetical order, ignoring case.
+     *
+     * @param counts  the strings and the number of times each appeared
+     * @param visitor  receives each string and its count, in order
+     * @throws IOException  if the visitor fails or the strings could not be
+     *          spilled to disk
+     */
+    static void forEachSorted(Map<String, Integer> counts, Visitor visitor)
+            throws IOException
+    {
+        long threshold = Long.getLong(MEMORY_THRESHOLD_PROPERTY,
+                                      DEFAULT_MEMORY_THRESHOLD);
+        if(estimateSize(counts.keySet()) <= threshold)
+        {
+            sortInMemory(counts, visitor);
+        }
+        else
+        {
+            sortExternally(counts, visitor, threshold);
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * @param value  a string in the table
+     * @return  the estimated memory used to sort the string (in bytes)
+     */
+    private static long estimateSize(String value)
+    {
+        // The characters are held twice: once in the string and once in
+        // its sort key.
+        return ENTRY_OVERHEAD_BYTES + 4L * value.length();
+    }
+
+
+    /**
+     * @param values  the strings in the table
+     * @return  the estimated memory used to sort all of them (in bytes)
+     */
+    private static long estimateSize(Iterable<String> values)
+    {
+        long total = 0;
+        for(String value : values)
+        {
+            total += estimateSize(value);
+        }
+        return total;
+    }
+
+
+    /**
+     * Sorts all of the strings at once.
+     *
+     * @param counts  the strings and their counts
+     * @param visitor  receives each string and its count, in order
+     * @throws IOException  if the visitor fails
+     */
+    private static void sortInMemory(Map<String, Integer> counts,
+                                     Visitor visitor) throws IOException
+    {
+        SortKey[] keys = new SortKey[counts.size()];
+        int index = 0;
+        for(Map.Entry<String, Integer> entry : counts.entrySet())
+        {
+            keys[index++] = new SortKey(entry.getKey(), entry.getValue());
+        }
+
+        // This is a stable sort, so strings that only differ by case keep
+        // the order they had in the map (as they did when we sorted the
+        // strings themselves).
+        Arrays.sort(keys, ORDER);
+
+        for(SortKey key : keys)
+        {
+            visitor.visit(key.value, key.count);
+        }
+    }
+
+
+    /**
+     * Sorts the strings in runs that fit within the threshold, spills the
+     * runs to temporary files, and merges them.
+     *
+     * The sort is stable (equal strings keep the order they had in the
+     * map) and the runs are taken from the map in order, so breaking ties
+     * in the merge by run number gives the same order as one big stable
+     * sort.
+     *
+     * @param counts  the strings and their counts
+     * @param visitor  receives each string and its count, in order
+     * @param threshold  the memory (in bytes) each run may use
+     * @throws IOException  if the visitor fails or the runs could not be
+     *          written or read
+     */
+    private static void sortExternally(Map<String, Integer> counts,
+                                       Visitor visitor,
+                                       long threshold) throws IOException
+    {
+        List<Path> runFiles = new ArrayList<>();
+        List<RunReader> runs = new ArrayList<>();
+        try
+        {
+            // Write the sorted runs.
+            List<SortKey> run = new ArrayList<>();
+            long runSize = 0;
+            for(Map.Entry<String, Integer> entry : counts.entrySet())
+            {
+                long size = estimateSize(entry.getKey());
+                if(!run.isEmpty() && runSize + size > threshold)
+                {
+                    runFiles.add(writeRun(run));
+                    run.clear();
+                    runSize = 0;
+                }
+                run.add(new SortKey(entry.getKey(), entry.getValue()));
+                runSize += size;
+            }
+            if(!run.isEmpty())
+            {
+                runFiles.add(writeRun(run));
+            }
+            run = null;
+
+            // Merge them.
+            PriorityQueue<RunReader> heads = new PriorityQueue<>(
+                    Math.max(1, runFiles.size()),
+                    (a, b) ->
+                    {
+                        int order = ORDER.compare(a.current, b.current);
+                        return (order != 0) ? order
+                                            : Integer.compare(a.runNumber,
+                                                              b.runNumber);
+                    });
+            for(int k = 0; k < runFiles.size(); k++)
+            {
+                RunReader reader = new RunReader(runFiles.get(k), k);
+                runs.add(reader);
+                if(reader.next())
+                {
+                    heads.add(reader);
+                }
+            }
+
+            while(!heads.isEmpty())
+            {
+                RunReader head = heads.poll();
+                visitor.visit(head.current.value, head.current.count);
+                if(head.next())
+                {
+                    heads.add(head);
+                }
+            }
+        }
+        finally
+        {
+            for(RunReader reader : runs)
+            {
+                reader.close();
+            }
+            for(Path runFile : runFiles)
+            {
+                Files.deleteIfExists(runFile);
+            }
+        }
+    }
+
+
+    /**
+     * Sorts a run and writes it to a new temporary file.  The file starts
+     * with the number of entries.  Each entry is written as the count, the
+     * length of the string, and the string's UTF-16 characters, so any
+     * string survives the round trip unchanged.
+     *
+     * @param run  the strings (and their counts) in the run
+     * @return  the file holding the run
+     * @throws IOException  if the file could not be written
+     */
+    private static Path writeRun(List<SortKey> run) throws IOException
+    {
+        // List.sort on an ArrayList is a stable sort of the backing array.
+        run.sort(ORDER);
+
+        Path runFile = Files.createTempFile("code42-sort-", ".run");
+        try( DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(runFile))) )
+        {
+            output.writeInt(run.size());
+            for(SortKey key : run)
+            {
+                output.writeInt(key.count);
+                output.writeInt(key.value.length());
+                output.writeChars(key.value);
+            }
+        }
+        catch(IOException | RuntimeException e)
+        {
+            Files.deleteIfExists(runFile);
+            throw e;
+        }
+        return runFile;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Classes
+    //--------------------------------------------------------------------
+    /**
+     * A string, its count, and its case-folded characters, computed once so
+     * that comparisons do not have to fold the case again.
+     *
+     * {@link String#CASE_INSENSITIVE_ORDER} compares two chars by their
+     * upper-case forms and then by the lower-case forms of those.  Both
+     * steps are consistent with comparing
+     * {@code toLowerCase(toUpperCase(c))} alone, so comparing the folded
+     * chars as unsigned values (and then the lengths) gives the same order.
+     *
+     * Some JVMs compare strings containing surrogate pairs by code point
+     * instead, so those strings get no folded key and fall back to the
+     * String comparator.
+     */
+    private static final class SortKey implements Comparable<SortKey>
+    {
+        /**
+         * The string.
+         */
+        final String value;
+
+        /**
+         * The number of times the string appeared.
+         */
+        final int count;
+
+        /**
+         * The case-folded characters of the string, or null if the string
+         * contains surrogates.
+         */
+        private final char[] folded;
+
+        /**
+         * Constructor
+         *
+         * @param value  the string
+         * @param count  the number of times the string appeared
+         */
+        SortKey(String value, int count)
+        {
+            this.value = value;
+            this.count = count;
+            this.folded = fold(value);
+        }
+
+        /**
+         * Compares the strings ignoring case, exactly as
+         * {@link String#CASE_INSENSITIVE_ORDER} does.
+         *
+         * @param other  the key to compare to
+         * @return  negative, zero, or positive as this string comes before,
+         *          ties with, or comes after the other, ignoring case
+         */
+        @Override
+        public int compareTo(SortKey other)
+        {
+            if(null == folded || null == other.folded)
+            {
+                return String.CASE_INSENSITIVE_ORDER.compare(value,
+                                                             other.value);
+            }
+
+            char[] mine = folded;
+            char[] theirs = other.folded;
+            int length = Math.min(mine.length, theirs.length);
+            for(int k = 0; k < length; k++)
+            {
+                if(mine[k] != theirs[k])
+                {
+                    return mine[k] - theirs[k];
+                }
+            }
+            return mine.length - theirs.length;
+        }
+
+        /**
+         * @param value  the string to fold
+         * @return  the case-folded characters of the string, or null if it
+         *          contains surrogates
+         */
+        private static char[] fold(String value)
+        {
+            char[] chars = new char[value.length()];
+            for(int k = 0; k < chars.length; k++)
+            {
+                char c = value.charAt(k);
+                if(c < 0x80)
+                {
+                    // ASCII letters only fold to each other.
+                    if(c >= 'A' && c <= 'Z')
+                    {
+                        c += 'a' - 'A';
+                    }
+                }
+                else if(Character.isSurrogate(c))
+                {
+                    return null;
+                }
+                else
+                {
+                    c = Character.toLowerCase(Character.toUpperCase(c));
+                }
+                chars[k] = c;
+            }
+            return chars;
+        }
+    }
+
+
+    /**
+     * Reads the entries of a spilled run back in order.
+     */
+    private static final class RunReader implements Closeable
+    {
+        /**
+         * The run file.
+         */
+        private final DataInputStream input;
+
+        /**
+         * The position of the run, used to break ties.
+         */
+        final int runNumber;
+
+        /**
+         * The number of entries left to read.
+         */
+        private int remaining;
+
+        /**
+         * The current string and its count.
+         */
+        SortKey current = null;
+
+        /**
+         * Constructor
+         *
+         * @param runFile  the run to read
+         * @param runNumber  the position of the run
+         * @throws IOException  if the file could not be opened
+         */
+        RunReader(Path runFile, int runNumber) throws IOException
+        {
+            this.input = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(runFile)));
+            this.runNumber = runNumber;
+            try
+            {
+                this.remaining = input.readInt();
+            }
+            catch(IOException e)
+            {
+                input.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Moves to the next entry in the run.
+         *
+         * @return  true if there was another entry
+         * @throws IOException  if the file could not be read
+         */
+        boolean next() throws IOException
+        {
+            if(remaining == 0)
+            {
+                current = null;
+                return false;
+            }
+            remaining--;
+
+            int count = input.readInt();
+            char[] chars = new char[input.readInt()];
+            for(int k = 0; k < chars.length; k++)
+            {
+                chars[k] = input.readChar();
+            }
+            current = new SortKey(new String(chars), count);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.RandomAccess;
+
+/**
+ * A list of decimal numbers that all have the same scale, stored as their
+ * unscaled values in a long array.  Adding a number never allocates (once
+ * the array is large enough) and sorting sorts the longs, so this holds a
+ * file's numbers far more cheaply than a list of BigDecimals.
+ *
+ * A number with a larger scale than the list's raises the scale of every
+ * number in the list; one with a smaller scale is raised to the list's.
+ * Numbers that would not fit in a long at the list's scale are refused, so
+ * the caller can keep them some other way.
+ *
+ * The elements are read as BigDecimals (with the list's scale), which are
+ * created on demand.  The list can only be added to (through
+ * {@link #add(long, int)}, not {@link #add(Object)}), cleared, and sorted
+ * in the natural order; any other change throws an
+ * UnsupportedOperationException.
+ */
+final class ScaledLongList extends AbstractList<BigDecimal>
+                           implements RandomAccess
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The powers of 10 that fit in a long, indexed by exponent.
+     */
+    private static final long[] POWERS_OF_TEN = new long[19];
+    static
+    {
+        POWERS_OF_TEN[0] = 1;
+        for(int k = 1; k < POWERS_OF_TEN.length; k++)
+        {
+            POWERS_OF_TEN[k] = POWERS_OF_TEN[k - 1] * 10;
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The unscaled values.
+     */
+    private long[] values;
+
+    /**
+     * The number of values.
+     */
+    private int size = 0;
+
+    /**
+     * The scale of every value.
+     */
+    private int scale = 0;
+
+    /**
+     * The smallest value (used to check that the scale can be raised).
+     */
+    private long min = Long.MAX_VALUE;
+
+    /**
+     * The largest value.
+     */
+    private long max = Long.MIN_VALUE;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor
+     *
+     * @param capacity  the number of values to make room for
+     */
+    ScaledLongList(int capacity)
+    {
+        values = new long[Math.max(capacity, 16)];
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    @Override
+    public BigDecimal get(int index)
+    {
+        if(index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index +
+                                                ", Size: " + size);
+        }
+        return BigDecimal.valueOf(values[index], scale);
+    }
+
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+
+    @Override
+    public void clear()
+    {
+        size = 0;
+        scale = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+    }
+
+
+    /**
+     * Sorts the list.  Only the natural order (a null comparator) is
+     * supported, which sorts the longs in place.
+     *
+     * @param comparator  must be null
+     * @throws UnsupportedOperationException  if comparator is not null
+     */
+    @Override
+    public void sort(Comparator<? super BigDecimal> comparator)
+    {
+        if(comparator != null)
+        {
+            throw new UnsupportedOperationException("Only the natural order " +
+                                                    "is supported.");
+        }
+        Arrays.sort(values, 0, size);
+        modCount++;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Package API
+    //--------------------------------------------------------------------
+    /**
+     * Adds the number unscaledValue * 10^-valueScale to the list.
+     *
+     * @param unscaledValue  the number's unscaled value
+     * @param valueScale  the number's scale, from 0 to 18
+     * @return  true if the number was added, false if it (or the numbers
+     *          already in the list) would not fit at a common scale
+     */
+    boolean add(long unscaledValue, int valueScale)
+    {
+        if(valueScale > scale)
+        {
+            if(size == 0)
+            {
+                scale = valueScale;
+            }
+            else if(!rescale(valueScale))
+            {
+                return false;
+            }
+        }
+        else if(valueScale < scale)
+        {
+            long power = POWERS_OF_TEN[scale - valueScale];
+            if(!fits(unscaledValue, power))
+            {
+                return false;
+            }
+            unscaledValue *= power;
+        }
+
+        if(size == values.length)
+        {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = unscaledValue;
+        min = Math.min(min, unscaledValue);
+        max = Math.max(max, unscaledValue);
+        modCount++;
+        return true;
+    }
+
+
+    /**
+     * @return  a list holding the same numbers, which takes no more memory
+     *          than it needs
+     */
+    ScaledLongList copy()
+    {
+        ScaledLongList copy = new ScaledLongList(0);
+        copy.values = Arrays.copyOf(values, size);
+        copy.size = size;
+        copy.scale = scale;
+        copy.min = min;
+        copy.max = max;
+        return copy;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Raises the scale of every number in the list.
+     *
+     * @param newScale  the new scale, which is larger than the current one
+     * @return  true if it was raised, false if some number would no longer
+     *          fit in a long (in which case nothing is changed)
+     */
+    private boolean rescale(int newScale)
+    {
+        long power = POWERS_OF_TEN[newScale - scale];
+        if(!fits(min, power) || !fits(max, power))
+        {
+            return false;
+        }
+
+        for(int k = 0; k < size; k++)
+        {
+            values[k] *= power;
+        }
+        min *= power;
+        max *= power;
+        scale = newScale;
+        return true;
+    }
+
+
+    /**
+     * @param value  a value
+     * @param power  a power of 10
+     * @return  true if value * power fits in a long
+     */
+    private static boolean fits(long value, long power)
+    {
+        long limit = Long.MAX_VALUE / power;
+        return value <= limit && value >= -limit;
+    }
+}
@@ -0,0 +1,612 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the statistics of a continuous feed of lines over a sliding window:
+ * either the last N lines or the lines that arrived in the last T
+ * milliseconds.  Lines are parsed exactly as {@link FileProcessor} parses
+ * them, and {@link #toString()} reports the lines in the window in the same
+ * format, so a window holding every line of a file reports the same as the
+ * file.
+ *
+ * Adding a line and expiring one each take O(log n) time, where n is the
+ * number of lines in the window:
+ * <ul>
+ *   <li>the sum is kept exactly, adding and subtracting each number;</li>
+ *   <li>the median is kept with two ordered multisets, the lower half and
+ *       the upper half of the numbers, which are rebalanced after each
+ *       change;</li>
+ *   <li>each non-numeric string has a count that is decremented when it
+ *       expires (and dropped when it reaches 0).</li>
+ * </ul>
+ *
+ * This class is not thread-safe.
+ */
+public final class WindowedAnalyzer
+{
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The most lines to keep, or 0 if the window is by time.
+     */
+    private final int maxLines;
+
+    /**
+     * How long to keep each line (in ms), or 0 if the window is by count.
+     */
+    private final long windowMillis;
+
+    /**
+     * Tells the time (in ms) for windows by time.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * The lines in the window, oldest first.
+     */
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+    /**
+     * The lower half of the numbers in the window (the number of times each
+     * appears).  It holds the middle number when there is an odd number of
+     * them.
+     */
+    private final TreeMap<BigDecimal, Integer> lowerHalf = new TreeMap<>();
+
+    /**
+     * The upper half of the numbers in the window.
+     */
+    private final TreeMap<BigDecimal, Integer> upperHalf = new TreeMap<>();
+
+    /**
+     * The number of numbers in {@link #lowerHalf}.
+     */
+    private int lowerCount = 0;
+
+    /**
+     * The number of numbers in {@link #upperHalf}.
+     */
+    private int upperCount = 0;
+
+    /**
+     * The sum of the numbers in the window.
+     */
+    private BigDecimal sum = BigDecimal.ZERO;
+
+    /**
+     * The non-numeric strings in the window and the number of times each
+     * appears.
+     */
+    private final Map<String, Integer> nonNumericStrings = new HashMap<>();
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor (private).  Use {@link #ofLines(int)} or
+     * {@link #ofMillis(long, LongSupplier)}.
+     *
+     * @param maxLines  the most lines to keep, or 0 if the window is by time
+     * @param windowMillis  how long to keep each line, or 0 if the window is
+     *                      by count
+     * @param clock  tells the time (in ms)
+     */
+    private WindowedAnalyzer(int maxLines,
+                             long windowMillis,
+                             LongSupplier clock)
+    {
+        this.maxLines = maxLines;
+        this.windowMillis = windowMillis;
+        this.clock = clock;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * @param maxLines  the number of lines to keep
+     * @return  an analyzer of the last maxLines lines
+     * @throws IllegalArgumentException  if maxLines is not positive
+     */
+    public static WindowedAnalyzer ofLines(int maxLines)
+    {
+        if(maxLines <= 0)
+        {
+            throw new IllegalArgumentException("The window must hold at least " +
+                                               "one line.");
+        }
+        return new WindowedAnalyzer(maxLines, 0, System::currentTimeMillis);
+    }
+
+
+    /**
+     * @param windowMillis  how long to keep each line (in ms)
+     * @return  an analyzer of the lines that arrived in the last
+     *          windowMillis ms, by the system clock
+     * @throws IllegalArgumentException  if windowMillis is not positive
+     */
+    public static WindowedAnalyzer ofMillis(long windowMillis)
+    {
+        return ofMillis(windowMillis, System::currentTimeMillis);
+    }
+
+
+    /**
+     * @param windowMillis  how long to keep each line (in ms)
+     * @param clock  tells the time (in ms).  It must never go backwards.
+     * @return  an analyzer of the lines that arrived in the last
+     *          windowMillis ms, by the given clock
+     * @throws IllegalArgumentException  if windowMillis is not positive
+     */
+    public static WindowedAnalyzer ofMillis(long windowMillis,
+                                            LongSupplier clock)
+    {
+        if(windowMillis <= 0)
+        {
+            throw new IllegalArgumentException("The window must be at least " +
+                                               "1 ms long.");
+        }
+        if(null == clock)
+        {
+            throw new NullPointerException("clock");
+        }
+        return new WindowedAnalyzer(0, windowMillis, clock);
+    }
+
+
+    /**
+     * Adds a line to the window, expiring any lines that fall out of it.
+     *
+     * @param line  the line (without the newline characters)
+     */
+    public void accept(String line)
+    {
+        long now = (windowMillis > 0) ? clock.getAsLong() : 0;
+
+        // Parse the line the same way that FileProcessor does.
+        BigDecimal number = null;
+        try
+        {
+            number = new BigDecimal(line);
+        }
+        catch(NumberFormatException e)
+        {
+            // It is a string.
+        }
+
+        Entry entry = new Entry(line, number, now);
+        entries.addLast(entry);
+        if(null == number)
+        {
+            nonNumericStrings.merge(line, 1, Integer::sum);
+        }
+        else
+        {
+            sum = sum.add(number);
+            addNumber(number);
+        }
+
+        if(maxLines > 0)
+        {
+            while(entries.size() > maxLines)
+            {
+                remove(entries.removeFirst());
+            }
+        }
+        else
+        {
+            expire(now);
+        }
+    }
+
+
+    /**
+     * Adds each line of the stream to the window, in order, until the end
+     * of the stream.  The stream is then closed.
+     *
+     * @param input  the stream to read
+     * @param charset  the charset the stream is encoded with
+     * @throws IOException  if the stream could not be read
+     */
+    public void read(InputStream input, Charset charset) throws IOException
+    {
+        try(LineReader reader = new LineReader(input, charset))
+        {
+            reader.forEachLine(this::accept);
+        }
+    }
+
+
+    /**
+     * @return  the number of lines in the window
+     */
+    public int getLineCount()
+    {
+        expire();
+        return entries.size();
+    }
+
+
+    /**
+     * Gets the sum of the numbers in the window.
+     *
+     * @return  the sum of the numbers in the window.  If the sum is too
+     *          large/small to be represented as a double, it will be
+     *          returned as +/- infinity respectively.
+     */
+    public double getTotal()
+    {
+        expire();
+        return sum.setScale(FileProcessor.DECIMAL_PRECISION,
+                            FileProcessor.ROUNDING_MODE)
+                  .doubleValue();
+    }
+
+
+    /**
+     * @return  the number of lines in the window that contained numbers
+     */
+    public int getCountOfNumbers()
+    {
+        expire();
+        return lowerCount + upperCount;
+    }
+
+
+    /**
+     * Checks if the window contains the non-numeric string.
+     *
+     * @param src  the string to find
+     * @return  true if a line in the window is the string
+     */
+    public boolean contains(String src)
+    {
+        if(null == src)
+        {
+            return false;
+        }
+        expire();
+        return nonNumericStrings.containsKey(src);
+    }
+
+
+    /**
+     * Gets the most frequent non-numeric strings in the window, most
+     * frequent first.  Strings that appear equally often are given in
+     * alphabetical order.
+     *
+     * @param k  the most strings to return
+     * @return  the (at most) k most frequent strings
+     */
+    public List<String> getTopStrings(int k)
+    {
+        expire();
+        if(k <= 0 || nonNumericStrings.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+
+        // Keep the k best seen so far, with the worst of them at the head.
+        Comparator<Map.Entry<String, Integer>> byFrequency =
+                Map.Entry.<String, Integer>comparingByValue()
+                         .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder()));
+        PriorityQueue<Map.Entry<String, Integer>> best =
+                new PriorityQueue<>(Math.min(k, nonNumericStrings.size()),
+                                    byFrequency);
+        for(Map.Entry<String, Integer> string : nonNumericStrings.entrySet())
+        {
+            if(best.size() < k)
+            {
+                best.add(string);
+            }
+            else if(byFrequency.compare(string, best.peek()) > 0)
+            {
+                best.poll();
+                best.add(string);
+            }
+        }
+
+        List<String> top = new ArrayList<>(best.size());
+        while(!best.isEmpty())
+        {
+            top.add(best.poll().getKey());
+        }
+        Collections.reverse(top);
+        return top;
+    }
+
+
+    /**
+     * Prints out the window's statistics to standard out as specified by
+     * {@link #toString()}, without holding all of them in memory.
+     *
+     * @throws java.io.UncheckedIOException  if the statistics could not be
+     *          written, or the strings had to be sorted on disk and the
+     *          temporary files could not be written or read
+     */
+    public void printStatistics()
+    {
+        FileProcessor.printReport(this::writeStatistics);
+    }
+
+
+    /**
+     * Writes the window's statistics as specified by {@link #toString()},
+     * without holding all of them in memory.
+     *
+     * @param output  where to write the statistics
+     * @throws IOException  if the statistics could not be written, or the
+     *          strings had to be sorted on disk and the temporary files
+     *          could not be written or read
+     */
+    public void writeStatistics(Appendable output) throws IOException
+    {
+        expire();
+        int numberCount = lowerCount + upperCount;
+        FileProcessor.writeReport(output,
+                                  sum,
+                                  numberCount,
+                                  averageOf(numberCount),
+                                  median(numberCount),
+                                  entries.size(),
+                                  nonNumericStrings);
+    }
+
+
+    /**
+     * Gets the statistics of the lines in the window, in the format of
+     * {@link FileProcessor#toString()}.
+     *
+     * @return  the statistics of the window
+     * @throws java.io.UncheckedIOException  if the strings had to be sorted
+     *          on disk and the temporary files could not be written or read
+     */
+    @Override
+    public String toString()
+    {
+        expire();
+
+        int numberCount = lowerCount + upperCount;
+        return FileProcessor.formatReport(sum,
+                                          numberCount,
+                                          averageOf(numberCount),
+                                          median(numberCount),
+                                          entries.size(),
+                                          nonNumericStrings);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * @param numberCount  the number of numbers in the window
+     * @return  the (rounded) average of the numbers in the window, or null
+     *          if there are none
+     */
+    private BigDecimal averageOf(int numberCount)
+    {
+        return (numberCount == 0) ? null
+                                  : FileProcessor.averageOf(sum, numberCount);
+    }
+
+
+    /**
+     * @param numberCount  the number of numbers in the window
+     * @return  the (rounded) median of the numbers in the window, or null
+     *          if there are none
+     */
+    private BigDecimal median(int numberCount)
+    {
+        if(numberCount == 0)
+        {
+            return null;
+        }
+        return (lowerCount > upperCount)
+               ? FileProcessor.round(lowerHalf.lastKey())
+               : FileProcessor.medianOf(lowerHalf.lastKey(), upperHalf.firstKey());
+    }
+
+
+    /**
+     * Expires the lines that have fallen out of a window by time.
+     */
+    private void expire()
+    {
+        if(windowMillis > 0)
+        {
+            expire(clock.getAsLong());
+        }
+    }
+
+
+    /**
+     * Expires the lines that arrived windowMillis or more before now.
+     *
+     * @param now  the current time (in ms)
+     */
+    private void expire(long now)
+    {
+        while(!entries.isEmpty() &&
+              now - entries.peekFirst().arrivalMillis >= windowMillis)
+        {
+            remove(entries.removeFirst());
+        }
+    }
+
+
+    /**
+     * Removes an expired line from the statistics.
+     *
+     * @param entry  the line
+     */
+    private void remove(Entry entry)
+    {
+        if(null == entry.number)
+        {
+            nonNumericStrings.computeIfPresent(entry.line,
+                                               (line, count) -> (count > 1) ? count - 1 : null);
+        }
+        else
+        {
+            sum = sum.subtract(entry.number);
+            removeNumber(entry.number);
+        }
+    }
+
+
+    /**
+     * Adds a number to the halves.
+     *
+     * @param number  the number
+     */
+    private void addNumber(BigDecimal number)
+    {
+        if(lowerHalf.isEmpty() || number.compareTo(lowerHalf.lastKey()) <= 0)
+        {
+            increment(lowerHalf, number);
+            lowerCount++;
+        }
+        else
+        {
+            increment(upperHalf, number);
+            upperCount++;
+        }
+        rebalance();
+    }
+
+
+    /**
+     * Removes a number from the halves.  Equal numbers are interchangeable,
+     * so if the number is in both halves it does not matter which it is
+     * removed from.
+     *
+     * @param number  the number, which must be in one of the halves
+     */
+    private void removeNumber(BigDecimal number)
+    {
+        if(number.compareTo(lowerHalf.lastKey()) <= 0)
+        {
+            decrement(lowerHalf, number);
+            lowerCount--;
+        }
+        else
+        {
+            decrement(upperHalf, number);
+            upperCount--;
+        }
+        rebalance();
+    }
+
+
+    /**
+     * Moves a number between the halves so that the lower half holds the
+     * same number of numbers as the upper half, or one more.
+     */
+    private void rebalance()
+    {
+        if(lowerCount > upperCount + 1)
+        {
+            BigDecimal largest = lowerHalf.lastKey();
+            decrement(lowerHalf, largest);
+            increment(upperHalf, largest);
+            lowerCount--;
+            upperCount++;
+        }
+        else if(upperCount > lowerCount)
+        {
+            BigDecimal smallest = upperHalf.firstKey();
+            decrement(upperHalf, smallest);
+            increment(lowerHalf, smallest);
+            upperCount--;
+            lowerCount++;
+        }
+    }
+
+
+    /**
+     * @param half  the half to add to
+     * @param number  the number to add
+     */
+    private static void increment(TreeMap<BigDecimal, Integer> half,
+                                  BigDecimal number)
+    {
+        half.merge(number, 1, Integer::sum);
+    }
+
+
+    /**
+     * @param half  the half to remove from
+     * @param number  the number to remove, which must be in the half
+     */
+    private static void decrement(TreeMap<BigDecimal, Integer> half,
+                                  BigDecimal number)
+    {
+        half.computeIfPresent(number, (key, count) -> (count > 1) ? count - 1 : null);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Classes
+    //--------------------------------------------------------------------
+    /**
+     * A line in the window.
+     */
+    private static final class Entry
+    {
+        /**
+         * The line.
+         */
+        final String line;
+
+        /**
+         * The line's value, or null if it is not a number.
+         */
+        final BigDecimal number;
+
+        /**
+         * When the line arrived (in ms), for windows by time.
+         */
+        final long arrivalMillis;
+
+        /**
+         * Constructor
+         *
+         * @param line  the line
+         * @param number  the line's value, or null if it is not a number
+         * @param arrivalMillis  when the line arrived
+         */
+        Entry(String line, BigDecimal number, long arrivalMillis)
+        {
+            this.line = line;
+            this.number = number;
+            this.arrivalMillis = arrivalMillis;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes each record as a line of comma-separated values (RFC 4180).  The
+ * first column is the type of the record and the field names are not
+ * written, so the columns are identified by their position.  For example:
+ * <pre>
+ *   string,foo,2
+ * </pre>
+ * Empty values and values containing commas, quotes, or line breaks are
+ * quoted, and missing values are left empty.
+ */
+final class CsvRecordWriter extends RecordWriter
+{
+    /**
+     * Constructor
+     *
+     * @param output  the stream to write the records to
+     */
+    CsvRecordWriter(OutputStream output)
+    {
+        super(output);
+    }
+
+
+    @Override
+    public void beginRecord(String type) throws IOException
+    {
+        writeText(type);
+    }
+
+
+    @Override
+    public void endRecord() throws IOException
+    {
+        writeAscii("\r\n");
+    }
+
+
+    @Override
+    protected void beginField(String name) throws IOException
+    {
+        writeByte(',');
+    }
+
+
+    @Override
+    protected void writeText(CharSequence value) throws IOException
+    {
+        if(!needsQuotes(value))
+        {
+            writeUtf8(value, 0, value.length());
+            return;
+        }
+
+        // Quote the value, doubling any quotes within it.
+        writeByte('"');
+        int runStart = 0;
+        for(int k = 0; k < value.length(); k++)
+        {
+            if(value.charAt(k) == '"')
+            {
+                writeUtf8(value, runStart, k + 1);
+                writeByte('"');
+                runStart = k + 1;
+            }
+        }
+        writeUtf8(value, runStart, value.length());
+        writeByte('"');
+    }
+
+
+    @Override
+    protected void writeNull() throws IOException
+    {
+        // Missing values are left empty.
+    }
+
+
+    /**
+     * @param value  the value to check
+     * @return  true if the value must be quoted
+     */
+    private static boolean needsQuotes(CharSequence value)
+    {
+        // Quote empty strings so they are not mistaken for missing values.
+        if(value.length() == 0)
+        {
+            return true;
+        }
+        for(int k = 0; k < value.length(); k++)
+        {
+            char c = value.charAt(k);
+            if(c == ',' || c == '"' || c == '\r' || c == '\n')
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes each record as a JSON object on its own line, starting with a
+ * "type" member.  For example:
+ * <pre>
+ *   {"type":"string","value":"foo","count":2}
+ * </pre>
+ */
+final class JsonLinesRecordWriter extends RecordWriter
+{
+    /**
+     * The hex digits, for writing unicode escapes.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
+    /**
+     * Constructor
+     *
+     * @param output  the stream to write the records to
+     */
+    JsonLinesRecordWriter(OutputStream output)
+    {
+        super(output);
+    }
+
+
+    @Override
+    public void beginRecord(String type) throws IOException
+    {
+        writeAscii("{\"type\":");
+        writeText(type);
+    }
+
+
+    @Override
+    public void endRecord() throws IOException
+    {
+        writeAscii("}\n");
+    }
+
+
+    @Override
+    protected void beginField(String name) throws IOException
+    {
+        writeByte(',');
+        writeText(name);
+        writeByte(':');
+    }
+
+
+    @Override
+    protected void writeText(CharSequence value) throws IOException
+    {
+        writeByte('"');
+
+        // Write runs of characters that need no escaping in one go.
+        int runStart = 0;
+        for(int k = 0; k < value.length(); k++)
+        {
+            char c = value.charAt(k);
+            if(c == '"' || c == '\\' || c < 0x20)
+            {
+                writeUtf8(value, runStart, k);
+                writeEscaped(c);
+                runStart = k + 1;
+            }
+        }
+        writeUtf8(value, runStart, value.length());
+
+        writeByte('"');
+    }
+
+
+    @Override
+    protected void writeNull() throws IOException
+    {
+        writeAscii("null");
+    }
+
+
+    /**
+     * Writes a character that must be escaped in a JSON string.
+     *
+     * @param c  the character to escape
+     * @throws IOException  if the output could not be written
+     */
+    private void writeEscaped(char c) throws IOException
+    {
+        writeByte('\\');
+        switch(c)
+        {
+            case '"':
+            case '\\':
+                writeByte(c);
+                break;
+            case '\n':
+                writeByte('n');
+                break;
+            case '\r':
+                writeByte('r');
+                break;
+            case '\t':
+                writeByte('t');
+                break;
+            default:
+                writeByte('u');
+                writeByte(HEX_DIGITS[(c >> 12) & 0xF]);
+                writeByte(HEX_DIGITS[(c >> 8) & 0xF]);
+                writeByte(HEX_DIGITS[(c >> 4) & 0xF]);
+                writeByte(HEX_DIGITS[c & 0xF]);
+                break;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.output;
+
+import java.io.OutputStream;
+
+/**
+ * The machine-readable formats that results can be written in.
+ */
+public enum OutputFormat
+{
+    /**
+     * One JSON object per line (see http://jsonlines.org).  Each object has
+     * a "type" member naming the kind of record followed by its fields.
+     */
+    JSON_LINES("json"),
+
+    /**
+     * Comma-separated values (RFC 4180).  The first column names the kind
+     * of record and the remaining columns are its fields, in order.
+     */
+    CSV("csv");
+
+
+    /**
+     * The name used to select the format on the command line.
+     */
+    private final String name;
+
+
+    /**
+     * Constructor
+     *
+     * @param name  the name used to select the format on the command line
+     */
+    OutputFormat(String name)
+    {
+        this.name = name;
+    }
+
+
+    /**
+     * @return  the name used to select the format on the command line
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+
+    /**
+     * Creates a writer for this format.
+     *
+     * @param output  the stream to write the records to.  It is not
+     *                buffered further, so it should not be buffered already.
+     * @return  a new record writer
+     */
+    public RecordWriter newWriter(OutputStream output)
+    {
+        switch(this)
+        {
+            case CSV:
+                return new CsvRecordWriter(output);
+            case JSON_LINES:
+            default:
+                return new JsonLinesRecordWriter(output);
+        }
+    }
+
+
+    /**
+     * Finds the format with the given command-line name.
+     *
+     * @param name  the name of the format (case insensitive)
+     * @return  the format
+     * @throws IllegalArgumentException  if there is no format with that name
+     */
+    public static OutputFormat fromName(String name)
+    {
+        for(OutputFormat format : values())
+        {
+            if(format.name.equalsIgnoreCase(name))
+            {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output format \"" +
+                                           name + "\".");
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.output;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+
+/**
+ * Streams flat records (a type plus a list of named fields) to an output
+ * stream in a machine-readable format.  Values are encoded as UTF-8
+ * straight into this writer's buffer, so writing a record does not build
+ * any intermediate Strings.
+ *
+ * A record is written by calling {@link #beginRecord(String)}, then one of
+ * the field methods for each field, then {@link #endRecord()}.  Records of
+ * the same type should always have the same fields in the same order.
+ *
+ * This is not thread-safe.
+ */
+public abstract class RecordWriter implements Closeable, Flushable
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The size of the output buffer.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Written in place of a lone (unpaired) surrogate, which cannot be
+     * encoded as UTF-8.
+     */
+    private static final byte UNENCODABLE = '?';
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The stream the records are written to.
+     */
+    private final OutputStream output;
+
+    /**
+     * Bytes waiting to be written to the stream.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * The number of bytes in the buffer.
+     */
+    private int count = 0;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor
+     *
+     * @param output  the stream to write the records to
+     */
+    protected RecordWriter(OutputStream output)
+    {
+        this.output = output;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * Starts a new record.
+     *
+     * @param type  the kind of record (e.g., "file")
+     * @throws IOException  if the record could not be written
+     */
+    public abstract void beginRecord(String type) throws IOException;
+
+
+    /**
+     * Ends the current record.
+     *
+     * @throws IOException  if the record could not be written
+     */
+    public abstract void endRecord() throws IOException;
+
+
+    /**
+     * Writes a text field.
+     *
+     * @param name  the name of the field
+     * @param value  the value of the field (may be null)
+     * @throws IOException  if the field could not be written
+     */
+    public void field(String name, CharSequence value) throws IOException
+    {
+        beginField(name);
+        if(value == null)
+        {
+            writeNull();
+        }
+        else
+        {
+            writeText(value);
+        }
+    }
+
+
+    /**
+     * Writes an integer field.
+     *
+     * @param name  the name of the field
+     * @param value  the value of the field
+     * @throws IOException  if the field could not be written
+     */
+    public void field(String name, long value) throws IOException
+    {
+        beginField(name);
+        writeLong(value);
+    }
+
+
+    /**
+     * Writes a decimal field.  The value is written in plain notation
+     * (never in scientific notation).
+     *
+     * @param name  the name of the field
+     * @param value  the value of the field (may be null)
+     * @throws IOException  if the field could not be written
+     */
+    public void field(String name, BigDecimal value) throws IOException
+    {
+        beginField(name);
+        if(value == null)
+        {
+            writeNull();
+        }
+        else
+        {
+            writeAscii(value.toPlainString());
+        }
+    }
+
+
+    /**
+     * Writes a boolean field.
+     *
+     * @param name  the name of the field
+     * @param value  the value of the field
+     * @throws IOException  if the field could not be written
+     */
+    public void field(String name, boolean value) throws IOException
+    {
+        beginField(name);
+        writeAscii(value ? "true" : "false");
+    }
+
+
+    @Override
+    public void flush() throws IOException
+    {
+        output.write(buffer, 0, count);
+        count = 0;
+        output.flush();
+    }
+
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Format-specific Hooks
+    //--------------------------------------------------------------------
+    /**
+     * Writes whatever precedes a field's value.
+     *
+     * @param name  the name of the field
+     * @throws IOException  if the output could not be written
+     */
+    protected abstract void beginField(String name) throws IOException;
+
+
+    /**
+     * Writes a text value, quoting and escaping it as the format requires.
+     *
+     * @param value  the value to write
+     * @throws IOException  if the output could not be written
+     */
+    protected abstract void writeText(CharSequence value) throws IOException;
+
+
+    /**
+     * Writes a missing value.
+     *
+     * @throws IOException  if the output could not be written
+     */
+    protected abstract void writeNull() throws IOException;
+
+
+    //--------------------------------------------------------------------
+    //  Encoding Helpers
+    //--------------------------------------------------------------------
+    /**
+     * Writes a single byte.
+     *
+     * @param b  the byte to write
+     * @throws IOException  if the output could not be written
+     */
+    protected final void writeByte(int b) throws IOException
+    {
+        if(count == buffer.length)
+        {
+            drain();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+
+    /**
+     * Writes a string that is known to contain only ASCII characters.
+     *
+     * @param value  the string to write
+     * @throws IOException  if the output could not be written
+     */
+    protected final void writeAscii(String value) throws IOException
+    {
+        for(int k = 0; k < value.length(); k++)
+        {
+            writeByte(value.charAt(k));
+        }
+    }
+
+
+    /**
+     * Writes part of a character sequence as UTF-8, exactly as given.
+     *
+     * @param value  the characters to write
+     * @param start  the index of the first character to write
+     * @param end  the index after the last character to write
+     * @throws IOException  if the output could not be written
+     */
+    protected final void writeUtf8(CharSequence value, int start, int end)
+            throws IOException
+    {
+        for(int k = start; k < end; k++)
+        {
+            char c = value.charAt(k);
+            if(c < 0x80)
+            {
+                writeByte(c);
+            }
+            else if(c < 0x800)
+            {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            }
+            else if(Character.isHighSurrogate(c) && k + 1 < end &&
+                    Character.isLowSurrogate(value.charAt(k + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, value.charAt(++k));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            }
+            else if(Character.isSurrogate(c))
+            {
+                writeByte(UNENCODABLE);
+            }
+            else
+            {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+
+    /**
+     * Writes an integer in decimal without going through a String.
+     *
+     * @param value  the value to write
+     * @throws IOException  if the output could not be written
+     */
+    protected final void writeLong(long value) throws IOException
+    {
+        if(value == Long.MIN_VALUE)
+        {
+            // Cannot be negated, and it is rare enough to not matter.
+            writeAscii(Long.toString(value));
+            return;
+        }
+        if(value < 0)
+        {
+            writeByte('-');
+            value = -value;
+        }
+
+        // Find the most significant digit, then write them in order.
+        long divisor = 1;
+        while(value / divisor >= 10)
+        {
+            divisor *= 10;
+        }
+        while(divisor > 0)
+        {
+            writeByte('0' + (int) (value / divisor));
+            value %= divisor;
+            divisor /= 10;
+        }
+    }
+
+
+    /**
+     * Hands the buffered bytes to the output stream.
+     *
+     * @throws IOException  if the output could not be written
+     */
+    private void drain() throws IOException
+    {
+        output.write(buffer, 0, count);
+        count = 0;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.scanning;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+/**
+ * Extracts the device and inode numbers from the file keys returned by
+ * {@link java.nio.file.attribute.BasicFileAttributes#fileKey()}.
+ *
+ * On Unix-like systems, the JDK's file key holds the device and inode
+ * numbers from the stat call it already made, but only exposes them through
+ * its string form, "(dev=&lt;hex&gt;,ino=&lt;decimal&gt;)".  Parsing that lets
+ * us identify files without a second stat (as reading the "unix:dev" and
+ * "unix:ino" attributes would need).  Keys in any other form are left to the
+ * caller to handle as opaque objects.
+ *
+ * That string form belongs to the JDK, not to its API, so when this class
+ * is loaded it checks that the key of the first filesystem root parses.
+ * If the root has a key that does not (the JDK has changed the form), a
+ * warning is logged once, and {@link #isParsingSupported()} tells callers
+ * that every key will take the slower opaque path.
+ */
+final class FileKeys
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The index of the device number in a parsed identity.
+     */
+    static final int DEVICE = 0;
+
+    /**
+     * The index of the inode number in a parsed identity.
+     */
+    static final int INODE = 1;
+
+    /**
+     * The start of a Unix file key.
+     */
+    private static final String DEVICE_PREFIX = "(dev=";
+
+    /**
+     * The separator before the inode number in a Unix file key.
+     */
+    private static final String INODE_PREFIX = ",ino=";
+
+    /**
+     * Whether the key of the first filesystem root could be parsed (or
+     * there was no key to check).
+     */
+    private static final boolean PARSING_SUPPORTED = checkRootKey();
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor (private).
+     *
+     * This is a utility class, so it should not be instantiated.
+     */
+    private FileKeys()
+    {
+        // Nothing needed here.
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Package API
+    //--------------------------------------------------------------------
+    /**
+     * @return  false if this JDK's file keys are not in the form this class
+     *          parses, so that every key will be handled as an opaque
+     *          object
+     */
+    static boolean isParsingSupported()
+    {
+        return PARSING_SUPPORTED;
+    }
+
+
+    /**
+     * Parses the device and inode numbers out of a file key.
+     *
+     * @param fileKey  the file key (may be null)
+     * @param identity  where to put the device (at {@link #DEVICE}) and
+     *                  inode (at {@link #INODE}) numbers.  Must hold at
+     *                  least two values.
+     * @return  true if the key was parsed, false if it is null or not in
+     *          the Unix form
+     */
+    static boolean parse(Object fileKey, long[] identity)
+    {
+        if(null == fileKey)
+        {
+            return false;
+        }
+
+        String key = fileKey.toString();
+        int inodeStart = key.indexOf(INODE_PREFIX, DEVICE_PREFIX.length());
+        if(!key.startsWith(DEVICE_PREFIX) ||
+           inodeStart < 0 ||
+           key.charAt(key.length() - 1) != ')')
+        {
+            return false;
+        }
+
+        try
+        {
+            identity[DEVICE] = Long.parseUnsignedLong(
+                    key.substring(DEVICE_PREFIX.length(), inodeStart), 16);
+            identity[INODE] = Long.parseLong(
+                    key.substring(inodeStart + INODE_PREFIX.length(),
+                                  key.length() - 1));
+            return true;
+        }
+        catch(NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Parses the key of the first filesystem root, and logs a warning if
+     * it has one that cannot be parsed.
+     *
+     * @return  false if the root's key could not be parsed, true if it
+     *          could (or if the root has no key, or could not be read, so
+     *          there is nothing to judge the form by)
+     */
+    private static boolean checkRootKey()
+    {
+        Iterator<Path> roots = FileSystems.getDefault()
+                                          .getRootDirectories().iterator();
+        if(!roots.hasNext())
+        {
+            return true;
+        }
+
+        Object fileKey;
+        try
+        {
+            fileKey = Files.readAttributes(roots.next(),
+                                           BasicFileAttributes.class).fileKey();
+        }
+        catch(IOException | SecurityException e)
+        {
+            return true;
+        }
+        if(null == fileKey || parse(fileKey, new long[2]))
+        {
+            return true;
+        }
+
+        Logger.getLogger(FileKeys.class.getName()).warning(
+                "File keys such as \"" + fileKey + "\" could not be parsed " +
+                "into device and inode numbers.  Scans will deduplicate " +
+                "hard links and directories more slowly, and checkpoints " +
+                "will not remember the entries already seen.");
+        return false;
+    }
+}
@@ -9,18 +9,23 @@
 
 package com.code42.scanning;
 
-import java.io.File;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * Scan all files and directories below a specified path on a local filesystem.
  *
- * Questions:
- *   * Do I follow symlinks?  I'm assuming no for now.
+ * Symlinks are not followed unless the {@link ScanOptions} ask for it.
  */
 public class FileScanner
 {
@@ -34,26 +39,106 @@ public class FileScanner
      *      walking the tree
      */
     public static ScanResult scan(String path) throws IOException
+    {
+        return scan(path, ScanOptions.DEFAULTS, null);
+    }
+
+
+    /**
+     * Scan all files and directories below a specified path on a local
+     * filesystem exactly as {@link #scan(String)} does, timing the scan and
+     * reporting it to the given listener.
+     *
+     * @param path  the path to scan for files.
+     * @param metrics  the listener to report metrics to.  If null, no
+     *                 metrics are gathered.
+     * @return a summary of the results of the scan.
+     * @throws NoSuchFileException  if the file path is null
+     * @throws IOException  if there is a problem reading the path info or
+     *      walking the tree
+     */
+    public static ScanResult scan(String path, ScanMetrics metrics)
+            throws IOException
+    {
+        return scan(path, ScanOptions.DEFAULTS, metrics);
+    }
+
+
+    /**
+     * Scan the files and directories below a specified path on a local
+     * filesystem, counting only those the options accept.  Excluded
+     * directories are never listed, so skipping large subtrees is cheap.
+     *
+     * If the options name a checkpoint file that holds a checkpoint of this
+     * path, the scan resumes from it rather than starting over.
+     *
+     * @param path  the path to scan for files.
+     * @param options  what to count.  If null, everything is counted.
+     * @return a summary of the results of the scan.
+     * @throws NoSuchFileException  if the file path is null
+     * @throws IOException  if there is a problem reading the path info or
+     *      walking the tree
+     */
+    public static ScanResult scan(String path, ScanOptions options)
+            throws IOException
+    {
+        return scan(path, options, null);
+    }
+
+
+    /**
+     * Scan the files and directories below a specified path exactly as
+     * {@link #scan(String, ScanOptions)} does, timing the scan and reporting
+     * it to the given listener.
+     *
+     * @param path  the path to scan for files.
+     * @param options  what to count.  If null, everything is counted.
+     * @param metrics  the listener to report metrics to.  If null, no
+     *                 metrics are gathered.
+     * @return a summary of the results of the scan.
+     * @throws NoSuchFileException  if the file path is null
+     * @throws IOException  if there is a problem reading the path info or
+     *      walking the tree
+     */
+    public static ScanResult scan(String path,
+                                  ScanOptions options,
+                                  ScanMetrics metrics) throws IOException
     {
         if(null == path)
         {
             // No file to process.  Throw an exception.
             throw new NoSuchFileException("The file name cannot be null.");
         }
+        if(null == options)
+        {
+            options = ScanOptions.DEFAULTS;
+        }
 
+        long start = (metrics != null) ? System.nanoTime() : 0;
         ScanResult result = new ScanResult();
+        LatencyHistogram entryLatency = (metrics != null)
+                ? new LatencyHistogram()
+                : null;
         Path root = Paths.get(path);
 
         // Walk the directory tree and process each encountered path.
-        // This will ignore symlinks, thus we have no cycles!
-
-        // There is no good reason why I should do the map here rather than
-        // as part of the addToCount.  AFAIK, either should be as efficient
-        // since Java 8 optimizes functional calls.
-        Files.walk(root)
-             .map(Path::toFile)
-             .forEach( result::addToCount );
+        // Unless we were asked to follow symlinks, we have no cycles!  If we
+        // do follow them, the visitor skips any directory it has already
+        // seen.
+        ScanVisitor visitor = new ScanVisitor(root,
+                                              options,
+                                              result,
+                                              entryLatency);
+        visitor.walk();
 
+        if(metrics != null)
+        {
+            metrics.scanCompleted(path,
+                                  result,
+                                  System.nanoTime() - start,
+                                  entryLatency,
+                                  visitor.getMaxDepth());
+        }
         return result;
     }
 
@@ -81,6 +166,53 @@ public class FileScanner
          */
         long totalBytesInFiles = 0;
 
+        /**
+         * The sum of the number of bytes in each of the scanned files,
+         * counting files with several hard links only once
+         */
+        long uniqueBytesInFiles = 0;
+
+        /**
+         * The number of scanned files that were hard links to a file that
+         * had already been scanned
+         */
+        int numberOfDuplicateLinks = 0;
+
+        /**
+         * The number of times a followed symlink led to a directory that had
+         * already been scanned
+         */
+        int numberOfRevisitedDirectories = 0;
+
+        /**
+         * The number of directories, files, and links that were skipped
+         * because they were on a different filesystem from the scanned path
+         */
+        int numberOfSkippedMounts = 0;
+
+        /**
+         * The number of files and directories whose file keys could not be
+         * parsed into device and inode numbers, and so were deduplicated
+         * by their keys as opaque objects
+         */
+        int numberOfUnparsedFileKeys = 0;
+
+        /**
+         * The first errors recorded while scanning
+         */
+        private final List<ScanError> errors = new ArrayList<>();
+
+        /**
+         * The number of errors of each type, indexed by ordinal
+         */
+        private final int[] errorCounts = new int[ScanError.Type.values().length];
+
+        /**
+         * The totals of each directory directly beneath the scanned path, by
+         * name, if they are being tracked
+         */
+        private final SortedMap<String, ScanResult> subtrees = new TreeMap<>();
+
 
         //----------------------------------------------------------------
         //  CONSTRUCTORS
@@ -130,6 +262,131 @@ public class FileScanner
             return totalBytesInFiles;
         }
 
+        /**
+         * Gets the sum of the sizes of all scanned files, counting each file
+         * only once no matter how many hard links it has.  Hard links are
+         * only detected if the scan was asked to
+         * {@link ScanOptions.Builder#deduplicateHardLinks(boolean)
+         * deduplicate them}; otherwise this is the same as
+         * {@link #getTotalBytes()}.
+         *
+         * @return the total number of bytes in the distinct scanned files.
+         */
+        public long getUniqueBytes()
+        {
+            return uniqueBytesInFiles;
+        }
+
+        /**
+         * Gets the number of scanned files that were hard links to a file
+         * that had already been scanned.
+         *
+         * @return the number of duplicate hard links (0 if hard links were
+         *         not deduplicated)
+         */
+        public int getNumDuplicateLinks()
+        {
+            return numberOfDuplicateLinks;
+        }
+
+        /**
+         * Gets the number of times a followed symlink led to a directory
+         * that had already been scanned (including links that form a
+         * cycle).  Those directories are not scanned or counted again.
+         *
+         * @return the number of directories that were reached more than once
+         *         (0 if symlinks were not followed)
+         */
+        public int getNumRevisitedDirectories()
+        {
+            return numberOfRevisitedDirectories;
+        }
+
+        /**
+         * Gets the number of entries that were skipped because they were
+         * on a different filesystem from the scanned path, if the scan was
+         * asked to {@link ScanOptions.Builder#sameFileSystem(boolean) stay
+         * on its filesystem}.  A skipped directory is not counted, and
+         * neither is anything beneath it.
+         *
+         * @return the number of skipped mount points and links to other
+         *         filesystems (0 if the scan could leave its filesystem)
+         */
+        public int getNumSkippedMounts()
+        {
+            return numberOfSkippedMounts;
+        }
+
+        /**
+         * Gets the number of files and directories that were deduplicated
+         * by an opaque file key, because their keys could not be parsed
+         * into device and inode numbers.  This is 0 on Unix-like systems
+         * unless the JDK has changed the form of its file keys.  Such
+         * entries are deduplicated more slowly, and a checkpointed scan
+         * that is resumed does not remember them.
+         *
+         * @return the number of entries whose file keys were not parsed
+         */
+        public int getNumUnparsedFileKeys()
+        {
+            return numberOfUnparsedFileKeys;
+        }
+
+        /**
+         * Gets the details of the errors recorded while scanning, if the
+         * scan was allowed to continue past errors.  Only the first
+         * {@link ScanOptions#getMaxRecordedErrors()} are kept.
+         *
+         * @return the recorded errors, in the order they were found
+         */
+        public List<ScanError> getErrors()
+        {
+            return Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * Gets the number of entries that could not be counted.
+         *
+         * @return the number of errors (including those whose details were
+         *         not kept)
+         */
+        public int getNumErrors()
+        {
+            int total = 0;
+            for(int count : errorCounts)
+            {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * Gets the number of entries that could not be counted because of
+         * a particular kind of error.
+         *
+         * @param type  the kind of error
+         * @return the number of errors of that type
+         */
+        public int getNumErrors(ScanError.Type type)
+        {
+            return errorCounts[type.ordinal()];
+        }
+
+        /**
+         * Gets the totals of each directory directly beneath the scanned
+         * path (including the directory itself), if the scan was asked to
+         * {@link ScanOptions.Builder#trackSubtrees(boolean) track them}.
+         * Only the files, directories, and bytes are tracked; errors are
+         * only counted in the scan's totals.
+         *
+         * @return the totals of each top-level directory, by name (empty if
+         *         subtrees were not tracked)
+         */
+        public SortedMap<String, ScanResult> getSubtrees()
+        {
+            return Collections.unmodifiableSortedMap(subtrees);
+        }
+
         // TODO -- I'd like to have this throw an exception, but I don't want
         //   to change the signature and I'm not sure if the target group is
         //   ok with extending RuntimeException and throwing those.  For now,
@@ -157,32 +414,198 @@ public class FileScanner
         //  PACKAGE METHODS (MODIFIERS)
         //----------------------------------------------------------------
         /**
-         * Process a file and adds it to the scanner's counts/totals.
+         * Adds a file to the scanner's counts/totals.
+         *
+         * This should only be used while scanning, hence why we've made it
+         * package-private.
+         *
+         * @param size  the size of the file (in bytes)
+         */
+        void addFile(long size)
+        {
+            numberOfFiles++;
+            totalBytesInFiles += size;
+            uniqueBytesInFiles += size;
+        }
+
+        /**
+         * Adds a hard link to a file that has already been added to the
+         * scanner's counts/totals.
+         *
+         * This should only be used while scanning, hence why we've made it
+         * package-private.
+         *
+         * @param size  the size of the file (in bytes)
+         */
+        void addDuplicateLink(long size)
+        {
+            numberOfFiles++;
+            totalBytesInFiles += size;
+            numberOfDuplicateLinks++;
+        }
+
+        /**
+         * Notes that a directory was reached again (and skipped).
+         *
+         * This should only be used while scanning, hence why we've made it
+         * package-private.
+         */
+        void addRevisitedDirectory()
+        {
+            numberOfRevisitedDirectories++;
+        }
+
+        /**
+         * Notes that an entry on another filesystem was skipped.
+         *
+         * This should only be used while scanning, hence why we've made it
+         * package-private.
+         */
+        void addSkippedMount()
+        {
+            numberOfSkippedMounts++;
+        }
+
+        /**
+         * Notes that an entry's file key could not be parsed.
+         *
+         * This should only be used while scanning, hence why we've made it
+         * package-private.
+         */
+        void addUnparsedFileKey()
+        {
+            numberOfUnparsedFileKeys++;
+        }
+
+        /**
+         * Records an entry that could not be counted.
+         *
+         * This should only be used while scanning, hence why we've made it
+         * package-private.
+         *
+         * @param error  the error
+         * @param maxRecordedErrors  the most errors to keep the details of
+         */
+        void addError(ScanError error, int maxRecordedErrors)
+        {
+            errorCounts[error.getType().ordinal()]++;
+            if(errors.size() < maxRecordedErrors)
+            {
+                errors.add(error);
+            }
+        }
+
+        /**
+         * Adds a directory to the scanner's counts.
+         *
+         * This should only be used while scanning, hence why we've made it
+         * package-private.
+         */
+        void addDirectory()
+        {
+            numberOfDirectories++;
+        }
+
+        /**
+         * Gets the totals of a directory directly beneath the scanned path,
+         * starting them if this is the first time it has been seen.
+         *
+         * This should only be used while scanning, hence why we've made it
+         * package-private.
+         *
+         * @param name  the name of the directory
+         * @return the totals of the directory
+         */
+        ScanResult addSubtree(String name)
+        {
+            ScanResult subtree = subtrees.get(name);
+            if(null == subtree)
+            {
+                subtree = new ScanResult();
+                subtrees.put(name, subtree);
+            }
+            return subtree;
+        }
+
+        /**
+         * Gets the totals of a directory directly beneath the scanned path.
+         *
+         * @param name  the name of the directory
+         * @return the totals of the directory, or null if it is not being
+         *         tracked
+         */
+        ScanResult getSubtree(String name)
+        {
+            return subtrees.get(name);
+        }
+
+        /**
+         * Writes the counts/totals (for a scan checkpoint).
          *
-         * This should only be used by the {@link FileScanner#scan(String)}
-         * method, hence why we've made it private.
+         * @param output  where to write the totals
+         * @throws IOException  if the totals could not be written
+         */
+        void writeTo(DataOutput output) throws IOException
+        {
+            output.writeInt(numberOfFiles);
+            output.writeInt(numberOfDirectories);
+            output.writeLong(totalBytesInFiles);
+            output.writeLong(uniqueBytesInFiles);
+            output.writeInt(numberOfDuplicateLinks);
+            output.writeInt(numberOfRevisitedDirectories);
+            output.writeInt(numberOfSkippedMounts);
+            output.writeInt(numberOfUnparsedFileKeys);
+            for(int count : errorCounts)
+            {
+                output.writeInt(count);
+            }
+            output.writeInt(errors.size());
+            for(ScanError error : errors)
+            {
+                output.writeUTF(error.getPath().toString());
+                output.writeUTF(error.getType().name());
+                output.writeUTF(error.getMessage());
+            }
+            output.writeInt(subtrees.size());
+            for(Map.Entry<String, ScanResult> subtree : subtrees.entrySet())
+            {
+                output.writeUTF(subtree.getKey());
+                subtree.getValue().writeTo(output);
+            }
+        }
+
+        /**
+         * Replaces the counts/totals with those written by
+         * {@link #writeTo(DataOutput)}, to resume a scan.
          *
-         * @param file  the file object to add to the counts.
+         * @param input  where to read the totals from
+         * @throws IOException  if the totals could not be read
          */
-        private void addToCount(File file)
+        void readFrom(DataInput input) throws IOException
         {
-            if (file.isFile())
+            numberOfFiles = input.readInt();
+            numberOfDirectories = input.readInt();
+            totalBytesInFiles = input.readLong();
+            uniqueBytesInFiles = input.readLong();
+            numberOfDuplicateLinks = input.readInt();
+            numberOfRevisitedDirectories = input.readInt();
+            numberOfSkippedMounts = input.readInt();
+            numberOfUnparsedFileKeys = input.readInt();
+            for(int k = 0; k < errorCounts.length; k++)
             {
-                numberOfFiles++;
-                totalBytesInFiles += file.length();
+                errorCounts[k] = input.readInt();
             }
-            else if(file.isDirectory())
+            errors.clear();
+            for(int count = input.readInt(); count > 0; count--)
             {
-                numberOfDirectories++;
+                Path path = Paths.get(input.readUTF());
+                ScanError.Type type = ScanError.Type.valueOf(input.readUTF());
+                errors.add(new ScanError(path, type, input.readUTF()));
             }
-            else
+            subtrees.clear();
+            for(int count = input.readInt(); count > 0; count--)
             {
-                // It is possible that we encounter something that is neither
-                // a file or directory (since files are defined by the OS).
-                // If this is the case, our assertion that we have only files
-                // and directories failed.  Throw an error so we don't
-                // silently ignore it.
-                throw new AssertionError("Unknown File: " + file.toString());
+                addSubtree(input.readUTF()).readFrom(input);
             }
         }
 
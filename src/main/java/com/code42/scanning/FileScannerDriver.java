@@ -9,6 +9,11 @@
 
 package com.code42.scanning;
 
+import com.code42.output.OutputFormat;
+import com.code42.output.RecordWriter;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Formatter;
 
@@ -17,24 +22,45 @@ import java.util.Formatter;
  */
 public class FileScannerDriver
 {
+    /**
+     * The option that switches the driver to machine-readable output.
+     */
+    private static final String FORMAT_OPTION = "--format";
+
+
     /**
      * A test driver for the FileScanner
      * @param args  the command line arguments.  This expects one argument,
      *              the path to the directory/file to be scanned.  This path
      *              may be absolute or relative (do not include special
-     *              symbols like "..").
+     *              symbols like "..").  For machine-readable output, put
+     *              "--format" and the name of an {@link OutputFormat}
+     *              ("json" or "csv") before the path.
      */
     public static void main(String[] args)
     {
         // Check the command-line arguments.
-        if(args.length != 1)
+        OutputFormat format = null;
+        if(args.length == 3 && FORMAT_OPTION.equals(args[0]))
+        {
+            try
+            {
+                format = OutputFormat.fromName(args[1]);
+            }
+            catch(IllegalArgumentException e)
+            {
+                System.err.println("ERROR: " + e.getMessage());
+                return;
+            }
+        }
+        else if(args.length != 1)
         {
             System.err.println("Invalid number of arguments (" + args.length +
                                ").  Expected only the path as an argument.");
             return;
         }
 
-        String path = args[0];
+        String path = args[args.length - 1];
 
         FileScanner.ScanResult results;
         try
@@ -63,6 +89,12 @@ public class FileScannerDriver
             return;
         }
 
+        if(format != null)
+        {
+            writeRecord(format, path, results);
+            return;
+        }
+
         Formatter formatter = new Formatter(System.out);
         formatter.format("Number of files scanned: %d\n",
                          results.getNumFiles());
@@ -73,4 +105,41 @@ public class FileScannerDriver
         formatter.format("Average size (in B) of all scanned files: %d\n",
                          results.getAvgBytes());
     } //END main()
+
+
+    /**
+     * Writes the results of a scan as a single machine-readable "scan"
+     * record with the fields path, files, directories, totalBytes, and
+     * averageBytes.
+     *
+     * @param format  the format to write the record in
+     * @param path  the path that was scanned
+     * @param results  the results of the scan
+     */
+    private static void writeRecord(OutputFormat format,
+                                    String path,
+                                    FileScanner.ScanResult results)
+    {
+        // Write straight to standard out; the writer does its own
+        // buffering.
+        RecordWriter writer = format.newWriter(
+                new FileOutputStream(FileDescriptor.out));
+        try
+        {
+            writer.beginRecord("scan");
+            writer.field("path", path);
+            writer.field("files", results.getNumFiles());
+            writer.field("directories", results.getNumDirectories());
+            writer.field("totalBytes", results.getTotalBytes());
+            writer.field("averageBytes", results.getAvgBytes());
+            writer.endRecord();
+            writer.flush();
+        }
+        catch(IOException e)
+        {
+            System.err.println("Error encountered writing the results.  " +
+                               "Error details below:\n");
+            e.printStackTrace();
+        }
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.scanning;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size histogram of latencies (in nanoseconds).  Bucket k holds the
+ * samples in the range [2^(k-1), 2^k) ns (bucket 0 holds the 0 ns samples),
+ * so recording a sample is a couple of bit operations and an increment, and
+ * the histogram never allocates after construction.
+ *
+ * This is not thread-safe.
+ */
+public final class LatencyHistogram
+{
+    /**
+     * One bucket per possible bit length of a (non-negative) long.
+     */
+    public static final int BUCKET_COUNT = Long.SIZE;
+
+    /**
+     * The number of samples in each bucket.
+     */
+    private final long[] buckets = new long[BUCKET_COUNT];
+
+    /**
+     * The total number of samples recorded.
+     */
+    private long count = 0;
+
+
+    /**
+     * Records a single latency sample.
+     *
+     * @param nanos  the latency in nanoseconds.  Negative values (which can
+     *               only come from a misbehaving clock) are counted as 0.
+     */
+    public void record(long nanos)
+    {
+        int bucket = (nanos <= 0) ? 0 : BUCKET_COUNT - Long.numberOfLeadingZeros(nanos);
+        buckets[bucket]++;
+        count++;
+    }
+
+
+    /**
+     * Adds all of the samples from another histogram into this one.
+     *
+     * @param other  the histogram to add
+     */
+    public void add(LatencyHistogram other)
+    {
+        for(int k = 0; k < BUCKET_COUNT; k++)
+        {
+            buckets[k] += other.buckets[k];
+        }
+        count += other.count;
+    }
+
+
+    /**
+     * Removes all samples from the histogram.
+     */
+    public void clear()
+    {
+        Arrays.fill(buckets, 0);
+        count = 0;
+    }
+
+
+    /**
+     * @return  the total number of samples recorded
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+
+    /**
+     * @return  a copy of the per-bucket sample counts
+     */
+    public long[] getBuckets()
+    {
+        return buckets.clone();
+    }
+
+
+    /**
+     * Gets an upper bound on the given percentile.  Since the buckets are
+     * powers of two, this is accurate to within a factor of 2.
+     *
+     * @param percentile  the percentile to find, in the range [0, 100]
+     * @return  the exclusive upper bound (in ns) of the bucket containing
+     *          the percentile, or 0 if there are no samples
+     */
+    public long getPercentileUpperBound(double percentile)
+    {
+        if(count == 0)
+        {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for(int k = 0; k < BUCKET_COUNT; k++)
+        {
+            seen += buckets[k];
+            if(seen >= target && seen > 0)
+            {
+                return (k == 0) ? 1 : upperBound(k);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+
+    /**
+     * @param bucket  the bucket index (at least 1)
+     * @return  the exclusive upper bound (in ns) of the bucket
+     */
+    private static long upperBound(int bucket)
+    {
+        return (bucket >= BUCKET_COUNT - 1) ? Long.MAX_VALUE : 1L << bucket;
+    }
+}
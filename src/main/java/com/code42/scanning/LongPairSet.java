@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.scanning;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A set of pairs of longs (such as device and inode numbers), stored in
+ * flat arrays with open addressing.  This takes a small fraction of the
+ * memory of a HashSet of boxed keys, which matters when a scan has to
+ * remember millions of files.
+ */
+final class LongPairSet
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The number of slots in a new set.  Must be a power of 2.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The first value of the pair in each slot.
+     */
+    private long[] firsts = new long[INITIAL_CAPACITY];
+
+    /**
+     * The second value of the pair in each slot.
+     */
+    private long[] seconds = new long[INITIAL_CAPACITY];
+
+    /**
+     * Whether each slot holds a pair.
+     */
+    private boolean[] used = new boolean[INITIAL_CAPACITY];
+
+    /**
+     * The number of pairs in the set.
+     */
+    private int size = 0;
+
+
+    //--------------------------------------------------------------------
+    //  Package API
+    //--------------------------------------------------------------------
+    /**
+     * Adds a pair to the set.
+     *
+     * @param first  the first value of the pair
+     * @param second  the second value of the pair
+     * @return  true if the pair was added, false if it was already present
+     */
+    boolean add(long first, long second)
+    {
+        int mask = used.length - 1;
+        int slot = hash(first, second) & mask;
+        while(used[slot])
+        {
+            if(firsts[slot] == first && seconds[slot] == second)
+            {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        used[slot] = true;
+        firsts[slot] = first;
+        seconds[slot] = second;
+        size++;
+
+        // Keep the table at most half full so probes stay short.
+        if(size * 2 > used.length)
+        {
+            grow();
+        }
+        return true;
+    }
+
+
+    /**
+     * @return  the number of pairs in the set
+     */
+    int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * Writes the pairs in the set (for a scan checkpoint).
+     *
+     * @param output  where to write the pairs
+     * @throws IOException  if the pairs could not be written
+     */
+    void writeTo(DataOutput output) throws IOException
+    {
+        output.writeInt(size);
+        for(int k = 0; k < used.length; k++)
+        {
+            if(used[k])
+            {
+                output.writeLong(firsts[k]);
+                output.writeLong(seconds[k]);
+            }
+        }
+    }
+
+
+    /**
+     * Adds the pairs written by {@link #writeTo(DataOutput)} to the set.
+     *
+     * @param input  where to read the pairs from
+     * @throws IOException  if the pairs could not be read
+     */
+    void readFrom(DataInput input) throws IOException
+    {
+        for(int count = input.readInt(); count > 0; count--)
+        {
+            add(input.readLong(), input.readLong());
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Doubles the number of slots.
+     */
+    private void grow()
+    {
+        long[] oldFirsts = firsts;
+        long[] oldSeconds = seconds;
+        boolean[] oldUsed = used;
+
+        int capacity = oldUsed.length * 2;
+        firsts = new long[capacity];
+        seconds = new long[capacity];
+        used = new boolean[capacity];
+
+        int mask = capacity - 1;
+        for(int k = 0; k < oldUsed.length; k++)
+        {
+            if(oldUsed[k])
+            {
+                int slot = hash(oldFirsts[k], oldSeconds[k]) & mask;
+                while(used[slot])
+                {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                firsts[slot] = oldFirsts[k];
+                seconds[slot] = oldSeconds[k];
+            }
+        }
+    }
+
+
+    /**
+     * @param first  the first value of the pair
+     * @param second  the second value of the pair
+     * @return  a well-mixed hash of the pair (inode numbers are often
+     *          sequential, so the low bits alone would cluster)
+     */
+    private static int hash(long first, long second)
+    {
+        long h = first * 0x9E3779B97F4A7C15L + second;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.scanning;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * An entry that a scan could not count, recorded when the scan is allowed
+ * to {@link ScanOptions.Builder#continueOnError(boolean) continue past
+ * errors}.
+ */
+public final class ScanError
+{
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The entry that could not be counted.
+     */
+    private final Path path;
+
+    /**
+     * The kind of error.
+     */
+    private final Type type;
+
+    /**
+     * A description of the error.
+     */
+    private final String message;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor
+     *
+     * @param path  the entry that could not be counted
+     * @param type  the kind of error
+     * @param message  a description of the error
+     */
+    ScanError(Path path, Type type, String message)
+    {
+        this.path = path;
+        this.type = type;
+        this.message = message;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * @return  the entry that could not be counted
+     */
+    public Path getPath()
+    {
+        return path;
+    }
+
+
+    /**
+     * @return  the kind of error
+     */
+    public Type getType()
+    {
+        return type;
+    }
+
+
+    /**
+     * @return  a description of the error
+     */
+    public String getMessage()
+    {
+        return message;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return type + ": " + path + " (" + message + ")";
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Classes
+    //--------------------------------------------------------------------
+    /**
+     * The kinds of errors a scan can run into.
+     */
+    public enum Type
+    {
+        /**
+         * We were not allowed to read the entry (or list the directory).
+         */
+        ACCESS_DENIED,
+
+        /**
+         * The entry disappeared while we were scanning.
+         */
+        NO_SUCH_FILE,
+
+        /**
+         * The entry is neither a file nor a directory (a socket, device,
+         * named pipe, and so on).
+         */
+        SPECIAL_FILE,
+
+        /**
+         * The entry is a symbolic link to something that does not exist.
+         */
+        BROKEN_LINK,
+
+        /**
+         * Any other I/O error.  These may be transient, so they are the
+         * ones that are retried.
+         */
+        OTHER;
+
+        /**
+         * @param e  the error
+         * @return  the type of the error
+         */
+        static Type of(IOException e)
+        {
+            if(e instanceof AccessDeniedException)
+            {
+                return ACCESS_DENIED;
+            }
+            if(e instanceof NoSuchFileException)
+            {
+                return NO_SUCH_FILE;
+            }
+            return OTHER;
+        }
+    }
+}
@@ -0,0 +1,867 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.scanning;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A local, append-only store of the results of scanning the same paths over
+ * time, for reporting how they grow.
+ *
+ * Each scanned path has its own file in the store's directory.  Each scan
+ * is stored as the difference from the previous scan of the path, with
+ * every number written as a variable-length integer.  A scan that changed
+ * little takes about a dozen bytes, so a year of hourly scans of a path
+ * takes around a hundred kilobytes.  The totals of the directories
+ * directly beneath the scanned path are stored the same way, when the scan
+ * {@link ScanOptions.Builder#trackSubtrees(boolean) tracked them}; the
+ * totals of a directory that did not change take no space at all.
+ *
+ * Records are only ever appended.  If recording a scan was interrupted, the
+ * partial record is ignored when reading and overwritten by the next scan
+ * recorded.  A store is not safe for use by several threads (or processes)
+ * at once.
+ */
+public final class ScanHistory
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * Identifies a history file ("C42H").
+     */
+    private static final int MAGIC = 0x43343248;
+
+    /**
+     * The version of the history format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The extension of the history files.
+     */
+    private static final String FILE_EXTENSION = ".history";
+
+    /**
+     * The number of measures stored for each scan (and subtree): files,
+     * directories, total bytes, and unique bytes.
+     */
+    private static final int MEASURES = 4;
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The directory holding the history files.
+     */
+    private final Path directory;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor
+     *
+     * @param directory  the directory holding the history files.  It is
+     *                   created when the first scan is recorded.
+     */
+    public ScanHistory(Path directory)
+    {
+        this.directory = directory;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * Records the result of scanning a path.
+     *
+     * @param path  the scanned path, as passed to {@link FileScanner}
+     * @param timeMillis  when the scan was run (in ms since the epoch).
+     *                    This cannot be earlier than the last scan of the
+     *                    path recorded.
+     * @param result  the result of the scan
+     * @throws IOException  if the history could not be read or written
+     * @throws IllegalArgumentException  if the scan is older than the last
+     *          scan recorded
+     */
+    public void record(String path,
+                       long timeMillis,
+                       FileScanner.ScanResult result) throws IOException
+    {
+        Path file = fileFor(path);
+        State state = new State();
+        long validLength = 0;
+        if(Files.exists(file))
+        {
+            validLength = read(file, path, state, Long.MIN_VALUE,
+                               Long.MAX_VALUE, null);
+        }
+        if(state.count > 0 && timeMillis < state.time)
+        {
+            throw new IllegalArgumentException("The scan (at " + timeMillis +
+                                               ") is older than the last " +
+                                               "scan recorded (at " +
+                                               state.time + ").");
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        state.encode(new Snapshot(timeMillis, result), payload);
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        if(0 == validLength)
+        {
+            writeHeader(path, record);
+        }
+        writeVarint(payload.size(), record);
+        payload.writeTo(record);
+
+        Files.createDirectories(directory);
+        try(FileChannel channel = FileChannel.open(file,
+                                                   StandardOpenOption.CREATE,
+                                                   StandardOpenOption.WRITE))
+        {
+            // Drop any partly written record.
+            channel.truncate(validLength);
+            channel.position(validLength);
+            ByteBuffer buffer = ByteBuffer.wrap(record.toByteArray());
+            while(buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+
+    /**
+     * Finds the recorded scans of a path within a range of times.
+     *
+     * @param path  the scanned path, as passed to {@link FileScanner}
+     * @param fromMillis  the earliest time (in ms since the epoch) to
+     *                    include
+     * @param toMillis  the latest time (in ms since the epoch) to include
+     * @return  the scans in the range, oldest first (empty if the path has
+     *          no history)
+     * @throws IOException  if the history could not be read
+     */
+    public List<Snapshot> query(String path, long fromMillis, long toMillis)
+            throws IOException
+    {
+        Path file = fileFor(path);
+        if(!Files.exists(file))
+        {
+            return Collections.emptyList();
+        }
+
+        List<Snapshot> snapshots = new ArrayList<>();
+        read(file, path, new State(), fromMillis, toMillis, snapshots);
+        return snapshots;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * @param path  the scanned path
+     * @return  the history file of the path.  Its name is a hash of the
+     *          path, so any path (however long) makes a valid name.
+     */
+    private Path fileFor(String path)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(path.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2 +
+                                                   FILE_EXTENSION.length());
+            for(byte b : hash)
+            {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+            }
+            return directory.resolve(name.append(FILE_EXTENSION).toString());
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            // Every JVM is required to support SHA-256.
+            throw new AssertionError(e);
+        }
+    }
+
+
+    /**
+     * Reads a history file, replaying each record into the state.
+     *
+     * @param file  the history file
+     * @param path  the scanned path it should hold the history of
+     * @param state  the state to replay the records into
+     * @param fromMillis  the earliest scan to collect
+     * @param toMillis  the latest scan to collect.  Reading stops after
+     *                  it, unless nothing is being collected.
+     * @param snapshots  where to collect the scans in the range, or null to
+     *                   read the whole file without collecting any
+     * @return  the length of the file up to the end of the last complete
+     *          record
+     * @throws IOException  if the file could not be read or is not the
+     *          history of the path
+     */
+    private static long read(Path file,
+                             String path,
+                             State state,
+                             long fromMillis,
+                             long toMillis,
+                             List<Snapshot> snapshots) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        try
+        {
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION ||
+               !path.equals(readString(buffer)))
+            {
+                throw new IOException(file + " is not the scan history of " +
+                                      path + ".");
+            }
+        }
+        catch(BufferUnderflowException e)
+        {
+            // The header itself was never completely written.
+            return 0;
+        }
+
+        while(buffer.hasRemaining())
+        {
+            int start = buffer.position();
+            int length;
+            try
+            {
+                length = (int) readVarint(buffer);
+            }
+            catch(BufferUnderflowException e)
+            {
+                return start;
+            }
+            if(length < 0 || length > buffer.remaining())
+            {
+                return start;
+            }
+
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            buffer.position(buffer.position() + length);
+            try
+            {
+                state.apply(record);
+            }
+            catch(BufferUnderflowException | IllegalArgumentException e)
+            {
+                throw new IOException(file + " is corrupt.", e);
+            }
+
+            if(snapshots != null)
+            {
+                if(state.time > toMillis)
+                {
+                    break;
+                }
+                if(state.time >= fromMillis)
+                {
+                    snapshots.add(state.toSnapshot());
+                }
+            }
+        }
+        return buffer.position();
+    }
+
+
+    /**
+     * Writes the header of a history file.
+     *
+     * @param path  the scanned path
+     * @param output  where to write the header
+     */
+    private static void writeHeader(String path, ByteArrayOutputStream output)
+    {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(MAGIC).putInt(VERSION);
+        output.write(header.array(), 0, header.capacity());
+        writeString(path, output);
+    }
+
+
+    /**
+     * Writes a string as its length (as a varint) followed by its UTF-8
+     * bytes.
+     *
+     * @param value  the string
+     * @param output  where to write it
+     */
+    private static void writeString(String value, ByteArrayOutputStream output)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length, output);
+        output.write(bytes, 0, bytes.length);
+    }
+
+
+    /**
+     * @param buffer  where to read the string from
+     * @return  a string written by {@link #writeString}
+     */
+    private static String readString(ByteBuffer buffer)
+    {
+        int length = (int) readVarint(buffer);
+        if(length < 0 || length > buffer.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(),
+                                  buffer.arrayOffset() + buffer.position(),
+                                  length,
+                                  StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+
+    /**
+     * Writes an unsigned value 7 bits at a time, low bits first, with the
+     * top bit of each byte set if more bytes follow.
+     *
+     * @param value  the value (treated as unsigned)
+     * @param output  where to write it
+     */
+    private static void writeVarint(long value, ByteArrayOutputStream output)
+    {
+        while((value & ~0x7FL) != 0)
+        {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+
+    /**
+     * @param buffer  where to read the value from
+     * @return  a value written by {@link #writeVarint}
+     */
+    private static long readVarint(ByteBuffer buffer)
+    {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7)
+        {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0)
+            {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid varint.");
+    }
+
+
+    /**
+     * Writes a signed value as a varint, mapping small negative values to
+     * small unsigned ones (0, -1, 1, -2, ... become 0, 1, 2, 3, ...).
+     *
+     * @param value  the value
+     * @param output  where to write it
+     */
+    private static void writeSignedVarint(long value,
+                                          ByteArrayOutputStream output)
+    {
+        writeVarint((value << 1) ^ (value >> 63), output);
+    }
+
+
+    /**
+     * @param buffer  where to read the value from
+     * @return  a value written by {@link #writeSignedVarint}
+     */
+    private static long readSignedVarint(ByteBuffer buffer)
+    {
+        long value = readVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Classes
+    //--------------------------------------------------------------------
+    /**
+     * The recorded totals of one scan of a path (or of one of the
+     * directories directly beneath it).
+     */
+    public static final class Snapshot
+    {
+        /**
+         * When the scan was run (in ms since the epoch).
+         */
+        private final long timeMillis;
+
+        /**
+         * The files, directories, total bytes, and unique bytes.
+         */
+        private final long[] measures;
+
+        /**
+         * The totals of the directories directly beneath the scanned path.
+         */
+        private final SortedMap<String, Snapshot> subtrees;
+
+        /**
+         * Constructor
+         *
+         * @param timeMillis  when the scan was run
+         * @param result  the result of the scan
+         */
+        Snapshot(long timeMillis, FileScanner.ScanResult result)
+        {
+            this.timeMillis = timeMillis;
+            this.measures = measuresOf(result);
+            SortedMap<String, Snapshot> subtreeSnapshots = new TreeMap<>();
+            for(Map.Entry<String, FileScanner.ScanResult> subtree
+                    : result.getSubtrees().entrySet())
+            {
+                subtreeSnapshots.put(subtree.getKey(),
+                                     new Snapshot(timeMillis,
+                                                  measuresOf(subtree.getValue()),
+                                                  null));
+            }
+            this.subtrees = Collections.unmodifiableSortedMap(subtreeSnapshots);
+        }
+
+        /**
+         * Constructor
+         *
+         * @param timeMillis  when the scan was run
+         * @param measures  the files, directories, total bytes, and unique
+         *                  bytes
+         * @param subtrees  the totals of the directories directly beneath
+         *                  the scanned path, or null if there are none
+         */
+        Snapshot(long timeMillis,
+                 long[] measures,
+                 SortedMap<String, Snapshot> subtrees)
+        {
+            this.timeMillis = timeMillis;
+            this.measures = measures;
+            this.subtrees = (null == subtrees)
+                    ? Collections.<String, Snapshot>emptySortedMap()
+                    : Collections.unmodifiableSortedMap(subtrees);
+        }
+
+        /**
+         * @return  when the scan was run (in ms since the epoch)
+         */
+        public long getTimeMillis()
+        {
+            return timeMillis;
+        }
+
+        /**
+         * @return  the number of files scanned
+         */
+        public long getNumFiles()
+        {
+            return measures[0];
+        }
+
+        /**
+         * @return  the number of directories scanned
+         */
+        public long getNumDirectories()
+        {
+            return measures[1];
+        }
+
+        /**
+         * @return  the sum of the sizes of the scanned files
+         */
+        public long getTotalBytes()
+        {
+            return measures[2];
+        }
+
+        /**
+         * @return  the sum of the sizes of the distinct scanned files (see
+         *          {@link FileScanner.ScanResult#getUniqueBytes()})
+         */
+        public long getUniqueBytes()
+        {
+            return measures[3];
+        }
+
+        /**
+         * @return  the totals of each directory directly beneath the scanned
+         *          path, by name (empty if they were not tracked, or for a
+         *          subtree's own snapshot)
+         */
+        public SortedMap<String, Snapshot> getSubtrees()
+        {
+            return subtrees;
+        }
+
+        /**
+         * @param result  the result of a scan
+         * @return  the measures stored for the result
+         */
+        private static long[] measuresOf(FileScanner.ScanResult result)
+        {
+            return new long[] {result.getNumFiles(),
+                               result.getNumDirectories(),
+                               result.getTotalBytes(),
+                               result.getUniqueBytes()};
+        }
+    }
+
+
+    /**
+     * The growth of the total bytes of a path over a series of scans,
+     * fitted with a least-squares line.
+     */
+    public static final class Trend
+    {
+        /**
+         * The number of ms in a day.
+         */
+        private static final double MILLIS_PER_DAY = 24 * 60 * 60 * 1000.0;
+
+        /**
+         * The mean time of the scans (in ms since the epoch).
+         */
+        private final double meanTime;
+
+        /**
+         * The fitted total bytes at the mean time.
+         */
+        private final double meanBytes;
+
+        /**
+         * The fitted growth (in bytes per ms).
+         */
+        private final double slope;
+
+        /**
+         * Constructor (private).  Use {@link #of(List)}.
+         *
+         * @param meanTime  the mean time of the scans
+         * @param meanBytes  the fitted total bytes at the mean time
+         * @param slope  the fitted growth (in bytes per ms)
+         */
+        private Trend(double meanTime, double meanBytes, double slope)
+        {
+            this.meanTime = meanTime;
+            this.meanBytes = meanBytes;
+            this.slope = slope;
+        }
+
+        /**
+         * Fits a trend to a series of scans.
+         *
+         * @param snapshots  the scans (for example, from
+         *                   {@link ScanHistory#query})
+         * @return  the trend
+         * @throws IllegalArgumentException  if the scans were not run at
+         *          (at least two) different times
+         */
+        public static Trend of(List<Snapshot> snapshots)
+        {
+            double meanTime = 0;
+            double meanBytes = 0;
+            for(Snapshot snapshot : snapshots)
+            {
+                meanTime += snapshot.getTimeMillis();
+                meanBytes += snapshot.getTotalBytes();
+            }
+            meanTime /= snapshots.size();
+            meanBytes /= snapshots.size();
+
+            // Work relative to the means so the sums stay precise.
+            double covariance = 0;
+            double variance = 0;
+            for(Snapshot snapshot : snapshots)
+            {
+                double time = snapshot.getTimeMillis() - meanTime;
+                covariance += time * (snapshot.getTotalBytes() - meanBytes);
+                variance += time * time;
+            }
+            if(!(variance > 0))
+            {
+                throw new IllegalArgumentException("A trend needs scans from " +
+                                                   "at least two different " +
+                                                   "times.");
+            }
+            return new Trend(meanTime, meanBytes, covariance / variance);
+        }
+
+        /**
+         * @return  the growth of the total bytes, in bytes per day (negative
+         *          if the path is shrinking)
+         */
+        public double getBytesPerDay()
+        {
+            return slope * MILLIS_PER_DAY;
+        }
+
+        /**
+         * @param timeMillis  a time (in ms since the epoch)
+         * @return  the total bytes the trend predicts at that time
+         */
+        public double forecastBytes(long timeMillis)
+        {
+            return meanBytes + slope * (timeMillis - meanTime);
+        }
+    }
+
+
+    /**
+     * The totals of the last scan read from (or written to) a history file,
+     * which the next record is the difference from.
+     *
+     * Each record holds the change in time and in each measure, the names
+     * of any subtrees seen for the first time (which are numbered in the
+     * order they were first seen), the changes to the subtrees whose totals
+     * changed (or that were not in the previous scan), and the subtrees
+     * that were in the previous scan but not in this one.
+     */
+    private static final class State
+    {
+        /**
+         * The number of records read (or written).
+         */
+        int count = 0;
+
+        /**
+         * When the last scan was run.
+         */
+        long time = 0;
+
+        /**
+         * The measures of the last scan.
+         */
+        final long[] measures = new long[MEASURES];
+
+        /**
+         * The name of each subtree seen so far, by number.
+         */
+        final List<String> names = new ArrayList<>();
+
+        /**
+         * The number of each subtree seen so far, by name.
+         */
+        final Map<String, Integer> numbers = new TreeMap<>();
+
+        /**
+         * The measures of each subtree in the last scan, by number, or null
+         * for subtrees that were not in the last scan.
+         */
+        final List<long[]> subtrees = new ArrayList<>();
+
+        /**
+         * Writes a scan as the difference from this state, and updates the
+         * state to the scan.
+         *
+         * @param snapshot  the scan
+         * @param output  where to write the record
+         */
+        void encode(Snapshot snapshot, ByteArrayOutputStream output)
+        {
+            writeSignedVarint(snapshot.getTimeMillis() - time, output);
+            writeDifferences(measures, snapshot.measures, output);
+            time = snapshot.getTimeMillis();
+
+            List<String> newNames = new ArrayList<>();
+            for(String name : snapshot.getSubtrees().keySet())
+            {
+                if(!numbers.containsKey(name))
+                {
+                    numbers.put(name, names.size());
+                    names.add(name);
+                    subtrees.add(null);
+                    newNames.add(name);
+                }
+            }
+            writeVarint(newNames.size(), output);
+            for(String name : newNames)
+            {
+                writeString(name, output);
+            }
+
+            ByteArrayOutputStream changes = new ByteArrayOutputStream();
+            int changed = 0;
+            boolean[] present = new boolean[names.size()];
+            for(Map.Entry<String, Snapshot> subtree
+                    : snapshot.getSubtrees().entrySet())
+            {
+                int number = numbers.get(subtree.getKey());
+                present[number] = true;
+                long[] previous = subtrees.get(number);
+                long[] current = subtree.getValue().measures;
+                if(null == previous || !Arrays.equals(previous, current))
+                {
+                    writeVarint(number, changes);
+                    writeDifferences((null == previous)
+                                             ? new long[MEASURES]
+                                             : previous,
+                                     current,
+                                     changes);
+                    subtrees.set(number, current.clone());
+                    changed++;
+                }
+            }
+            writeVarint(changed, output);
+            output.write(changes.toByteArray(), 0, changes.size());
+
+            List<Integer> removed = new ArrayList<>();
+            for(int number = 0; number < present.length; number++)
+            {
+                if(!present[number] && subtrees.get(number) != null)
+                {
+                    removed.add(number);
+                    subtrees.set(number, null);
+                }
+            }
+            writeVarint(removed.size(), output);
+            for(int number : removed)
+            {
+                writeVarint(number, output);
+            }
+            count++;
+        }
+
+        /**
+         * Updates the state with a record written by
+         * {@link #encode(Snapshot, ByteArrayOutputStream)}.
+         *
+         * @param record  the record
+         */
+        void apply(ByteBuffer record)
+        {
+            time += readSignedVarint(record);
+            readDifferences(measures, record);
+
+            for(long newNames = readVarint(record); newNames > 0; newNames--)
+            {
+                String name = readString(record);
+                numbers.put(name, names.size());
+                names.add(name);
+                subtrees.add(null);
+            }
+            for(long changed = readVarint(record); changed > 0; changed--)
+            {
+                int number = checkNumber(readVarint(record));
+                long[] values = subtrees.get(number);
+                if(null == values)
+                {
+                    values = new long[MEASURES];
+                    subtrees.set(number, values);
+                }
+                readDifferences(values, record);
+            }
+            for(long removed = readVarint(record); removed > 0; removed--)
+            {
+                subtrees.set(checkNumber(readVarint(record)), null);
+            }
+            count++;
+        }
+
+        /**
+         * @return  the last scan
+         */
+        Snapshot toSnapshot()
+        {
+            SortedMap<String, Snapshot> subtreeSnapshots = new TreeMap<>();
+            for(int number = 0; number < names.size(); number++)
+            {
+                long[] values = subtrees.get(number);
+                if(values != null)
+                {
+                    subtreeSnapshots.put(names.get(number),
+                                         new Snapshot(time,
+                                                      values.clone(),
+                                                      null));
+                }
+            }
+            return new Snapshot(time, measures.clone(), subtreeSnapshots);
+        }
+
+        /**
+         * @param number  a subtree number read from a record
+         * @return  the number
+         * @throws IllegalArgumentException  if no subtree has the number
+         */
+        private int checkNumber(long number)
+        {
+            if(number < 0 || number >= names.size())
+            {
+                throw new IllegalArgumentException("Unknown subtree " +
+                                                   number + ".");
+            }
+            return (int) number;
+        }
+
+        /**
+         * Writes the differences between two sets of measures, and updates
+         * the old measures to the new ones.
+         *
+         * @param previous  the old measures (updated in place)
+         * @param current  the new measures
+         * @param output  where to write the differences
+         */
+        private static void writeDifferences(long[] previous,
+                                             long[] current,
+                                             ByteArrayOutputStream output)
+        {
+            for(int k = 0; k < MEASURES; k++)
+            {
+                writeSignedVarint(current[k] - previous[k], output);
+                previous[k] = current[k];
+            }
+        }
+
+        /**
+         * Adds the differences written by {@link #writeDifferences} to a
+         * set of measures.
+         *
+         * @param values  the measures (updated in place)
+         * @param record  where to read the differences from
+         */
+        private static void readDifferences(long[] values, ByteBuffer record)
+        {
+            for(int k = 0; k < MEASURES; k++)
+            {
+                values[k] += readSignedVarint(record);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.scanning;
+
+/**
+ * A listener that is notified when a {@link FileScanner} scan completes.
+ * This is the pluggable hook for gathering performance metrics;
+ * {@link ScanStatistics} is an implementation that aggregates the samples
+ * and exposes them over JMX.
+ *
+ * The scanner only times its work when a listener is given, so there is no
+ * measurable overhead when metrics are disabled.
+ */
+public interface ScanMetrics
+{
+    /**
+     * Called once a scan has completed successfully.
+     *
+     * @param path  the path that was scanned
+     * @param result  the result of the scan
+     * @param elapsedNanos  the wall-clock time (in ns) the scan took
+     * @param statLatency  the time taken to reach each entry, covering
+     *                     listing its directory and querying its type and
+     *                     size
+     * @param maxDepth  the deepest level visited, where the scanned path is
+     *                  at depth 0
+     */
+    void scanCompleted(String path,
+                       FileScanner.ScanResult result,
+                       long elapsedNanos,
+                       LatencyHistogram statLatency,
+                       int maxDepth);
+}
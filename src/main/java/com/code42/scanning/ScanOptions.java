@@ -0,0 +1,799 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.scanning;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The (immutable) options that limit what a {@link FileScanner} counts.
+ * Create them with a {@link Builder}:
+ * <pre>
+ *   ScanOptions options = ScanOptions.builder()
+ *                                    .maxDepth(3)
+ *                                    .include("*.txt")
+ *                                    .excludeDirectory(".git")
+ *                                    .build();
+ * </pre>
+ *
+ * Glob patterns use the syntax of {@link FileSystem#getPathMatcher(String)}
+ * and match if they match either the entry's name or its path relative to
+ * the scanned path, so both "*.txt" and "src/**&#47;*.java" work as
+ * expected.
+ *
+ * The include, exclude, and size filters only apply to files; a file is
+ * counted if it matches at least one include pattern (or there are none),
+ * matches no exclude pattern, and its size is within the limits.  Excluded
+ * directories are neither counted nor listed, so nothing beneath them is
+ * visited at all.  The scanned path itself is never excluded.
+ *
+ * By default, symbolic links are not followed (a link counts as whatever
+ * it points to, but a linked directory's contents are not visited).  When
+ * links are followed, each directory is only visited once, however many
+ * links lead to it, so cycles and aliased trees are not counted twice.
+ * The scan can also be kept to the filesystem of the scanned path, as with
+ * "du -x"; directories, files, and links on other filesystems are then
+ * skipped, and counted in {@link FileScanner.ScanResult#getNumSkippedMounts()}.
+ *
+ * By default, the first entry that cannot be read (or that is neither a
+ * file nor a directory) ends the scan.  A scan that continues past errors
+ * instead records them in the {@link FileScanner.ScanResult} and carries
+ * on; errors that may be transient can also be retried with exponential
+ * backoff.
+ *
+ * A long scan can write periodic checkpoints to a file.  If the scan is
+ * interrupted, scanning the same path with the same options resumes from
+ * the last checkpoint, and the totals match those of an uninterrupted scan.
+ * The checkpoint is deleted once the scan completes.  Resuming with
+ * different options that affect what is counted or recorded (everything
+ * but the retry and checkpoint settings) is refused.
+ *
+ * The totals can also be kept separately for each directory directly
+ * beneath the scanned path (see
+ * {@link FileScanner.ScanResult#getSubtrees()}).
+ *
+ * When hard links are deduplicated, every link to a file is still counted
+ * as a file (and in {@link FileScanner.ScanResult#getTotalBytes()}), but
+ * only the first one found is counted in
+ * {@link FileScanner.ScanResult#getUniqueBytes()}.
+ */
+public final class ScanOptions
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The options that count everything (the behavior of
+     * {@link FileScanner#scan(String)}).
+     */
+    public static final ScanOptions DEFAULTS = builder().build();
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The deepest level to visit, where the scanned path is at depth 0.
+     */
+    private final int maxDepth;
+
+    /**
+     * The patterns of the files to count.  If empty, all files are counted.
+     */
+    private final List<PathMatcher> includes;
+
+    /**
+     * The patterns of the files not to count.
+     */
+    private final List<PathMatcher> excludes;
+
+    /**
+     * The patterns of the directories to skip.
+     */
+    private final List<PathMatcher> excludedDirectories;
+
+    /**
+     * The size (in bytes) of the smallest file to count.
+     */
+    private final long minSize;
+
+    /**
+     * The size (in bytes) of the largest file to count.
+     */
+    private final long maxSize;
+
+    /**
+     * True if files with more than one hard link are only counted once in
+     * the unique bytes.
+     */
+    private final boolean deduplicateHardLinks;
+
+    /**
+     * True if symbolic links are followed.
+     */
+    private final boolean followLinks;
+
+    /**
+     * True if directories on other filesystems are skipped.
+     */
+    private final boolean sameFileSystem;
+
+    /**
+     * True if errors are recorded rather than ending the scan.
+     */
+    private final boolean continueOnError;
+
+    /**
+     * The most errors to keep the details of.
+     */
+    private final int maxRecordedErrors;
+
+    /**
+     * The number of times to retry an entry after a transient error.
+     */
+    private final int retryCount;
+
+    /**
+     * The time (in ms) to wait before the first retry.  This doubles for
+     * each retry after it.
+     */
+    private final long retryBackoffMillis;
+
+    /**
+     * The file to write checkpoints to, or null if the scan is not
+     * checkpointed.
+     */
+    private final Path checkpointFile;
+
+    /**
+     * The time (in ms) between checkpoints.
+     */
+    private final long checkpointIntervalMillis;
+
+    /**
+     * True if totals are kept for each directory directly beneath the
+     * scanned path.
+     */
+    private final boolean trackSubtrees;
+
+    /**
+     * The options that affect what is counted or recorded, encoded so that
+     * a checkpoint can tell whether it was written with the same ones.
+     */
+    private final byte[] countingOptions;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor (private).
+     *
+     * @param builder  the builder holding the options
+     */
+    private ScanOptions(Builder builder)
+    {
+        this.maxDepth = builder.maxDepth;
+        this.includes = compile(builder.includes);
+        this.excludes = compile(builder.excludes);
+        this.excludedDirectories = compile(builder.excludedDirectories);
+        this.minSize = builder.minSize;
+        this.maxSize = builder.maxSize;
+        this.deduplicateHardLinks = builder.deduplicateHardLinks;
+        this.followLinks = builder.followLinks;
+        this.sameFileSystem = builder.sameFileSystem;
+        this.continueOnError = builder.continueOnError;
+        this.maxRecordedErrors = builder.maxRecordedErrors;
+        this.retryCount = builder.retryCount;
+        this.retryBackoffMillis = builder.retryBackoffMillis;
+        this.checkpointFile = builder.checkpointFile;
+        this.checkpointIntervalMillis = builder.checkpointIntervalMillis;
+        this.trackSubtrees = builder.trackSubtrees;
+        this.countingOptions = encodeCountingOptions(builder);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Public API
+    //--------------------------------------------------------------------
+    /**
+     * @return  a builder with the default options
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+
+    /**
+     * @return  the deepest level to visit, where the scanned path is at
+     *          depth 0
+     */
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+
+    /**
+     * @return  the size (in bytes) of the smallest file to count
+     */
+    public long getMinSize()
+    {
+        return minSize;
+    }
+
+
+    /**
+     * @return  the size (in bytes) of the largest file to count
+     */
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+
+    /**
+     * @return  true if files with more than one hard link are only counted
+     *          once in the unique bytes
+     */
+    public boolean isDeduplicatingHardLinks()
+    {
+        return deduplicateHardLinks;
+    }
+
+
+    /**
+     * @return  true if symbolic links are followed
+     */
+    public boolean isFollowingLinks()
+    {
+        return followLinks;
+    }
+
+
+    /**
+     * @return  true if directories on filesystems other than the scanned
+     *          path's are skipped
+     */
+    public boolean isStayingOnFileSystem()
+    {
+        return sameFileSystem;
+    }
+
+
+    /**
+     * @return  true if errors are recorded rather than ending the scan
+     */
+    public boolean isContinuingOnError()
+    {
+        return continueOnError;
+    }
+
+
+    /**
+     * @return  the most errors to keep the details of (all errors are
+     *          counted)
+     */
+    public int getMaxRecordedErrors()
+    {
+        return maxRecordedErrors;
+    }
+
+
+    /**
+     * @return  the number of times to retry an entry after a transient
+     *          error
+     */
+    public int getRetryCount()
+    {
+        return retryCount;
+    }
+
+
+    /**
+     * @return  the time (in ms) to wait before the first retry
+     */
+    public long getRetryBackoffMillis()
+    {
+        return retryBackoffMillis;
+    }
+
+
+    /**
+     * @return  the file to write checkpoints to (and resume from), or null
+     *          if the scan is not checkpointed
+     */
+    public Path getCheckpointFile()
+    {
+        return checkpointFile;
+    }
+
+
+    /**
+     * @return  the time (in ms) between checkpoints
+     */
+    public long getCheckpointIntervalMillis()
+    {
+        return checkpointIntervalMillis;
+    }
+
+
+    /**
+     * @return  true if totals are kept for each directory directly beneath
+     *          the scanned path
+     */
+    public boolean isTrackingSubtrees()
+    {
+        return trackSubtrees;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Package API
+    //--------------------------------------------------------------------
+    /**
+     * Checks whether a file should be counted.
+     *
+     * @param relativePath  the path of the file relative to the scanned path
+     * @param size  the size of the file (in bytes)
+     * @return  true if the file should be counted
+     */
+    boolean acceptsFile(Path relativePath, long size)
+    {
+        if(size < minSize || size > maxSize)
+        {
+            return false;
+        }
+        if(!includes.isEmpty() && !matchesAny(includes, relativePath))
+        {
+            return false;
+        }
+        return !matchesAny(excludes, relativePath);
+    }
+
+
+    /**
+     * Checks whether a directory (and everything beneath it) should be
+     * skipped.
+     *
+     * @param relativePath  the path of the directory relative to the scanned
+     *                      path
+     * @return  true if the directory should be skipped
+     */
+    boolean excludesDirectory(Path relativePath)
+    {
+        return !excludedDirectories.isEmpty() &&
+               matchesAny(excludedDirectories, relativePath);
+    }
+
+
+    /**
+     * Gets the options that affect what is counted or recorded: all of
+     * them but the retry and checkpoint settings.  A scan may only be
+     * resumed from a checkpoint written with the same ones.
+     *
+     * @return  the options, encoded.  Equal arrays mean equal options.
+     *          The caller must not change the array.
+     */
+    byte[] getCountingOptions()
+    {
+        return countingOptions;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * @param globs  the glob patterns
+     * @return  the matchers for the patterns
+     */
+    private static List<PathMatcher> compile(List<String> globs)
+    {
+        FileSystem fileSystem = FileSystems.getDefault();
+        List<PathMatcher> matchers = new ArrayList<>(globs.size());
+        for(String glob : globs)
+        {
+            matchers.add(fileSystem.getPathMatcher("glob:" + glob));
+        }
+        return Collections.unmodifiableList(matchers);
+    }
+
+
+    /**
+     * @param builder  the builder holding the options
+     * @return  the options that affect what is counted or recorded,
+     *          encoded (see {@link #getCountingOptions()})
+     */
+    private static byte[] encodeCountingOptions(Builder builder)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream output = new DataOutputStream(bytes))
+        {
+            output.writeInt(builder.maxDepth);
+            writeGlobs(output, builder.includes);
+            writeGlobs(output, builder.excludes);
+            writeGlobs(output, builder.excludedDirectories);
+            output.writeLong(builder.minSize);
+            output.writeLong(builder.maxSize);
+            output.writeBoolean(builder.deduplicateHardLinks);
+            output.writeBoolean(builder.followLinks);
+            output.writeBoolean(builder.sameFileSystem);
+            output.writeBoolean(builder.continueOnError);
+            output.writeInt(builder.maxRecordedErrors);
+            output.writeBoolean(builder.trackSubtrees);
+        }
+        catch(IOException e)
+        {
+            // Writing to memory never fails.
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * @param output  where to write the patterns
+     * @param globs  the glob patterns
+     * @throws IOException  if the patterns could not be written
+     */
+    private static void writeGlobs(DataOutputStream output, List<String> globs)
+            throws IOException
+    {
+        output.writeInt(globs.size());
+        for(String glob : globs)
+        {
+            output.writeUTF(glob);
+        }
+    }
+
+
+    /**
+     * @param matchers  the patterns to check
+     * @param relativePath  the path relative to the scanned path
+     * @return  true if any pattern matches the path or its last element
+     */
+    private static boolean matchesAny(List<PathMatcher> matchers,
+                                      Path relativePath)
+    {
+        Path name = relativePath.getFileName();
+        for(PathMatcher matcher : matchers)
+        {
+            if(matcher.matches(relativePath) ||
+               (name != null && matcher.matches(name)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Classes
+    //--------------------------------------------------------------------
+    /**
+     * Builds {@link ScanOptions}.  By default, everything is counted.
+     */
+    public static final class Builder
+    {
+        /**
+         * The deepest level to visit.
+         */
+        private int maxDepth = Integer.MAX_VALUE;
+
+        /**
+         * The patterns of the files to count.
+         */
+        private final List<String> includes = new ArrayList<>();
+
+        /**
+         * The patterns of the files not to count.
+         */
+        private final List<String> excludes = new ArrayList<>();
+
+        /**
+         * The patterns of the directories to skip.
+         */
+        private final List<String> excludedDirectories = new ArrayList<>();
+
+        /**
+         * The size (in bytes) of the smallest file to count.
+         */
+        private long minSize = 0;
+
+        /**
+         * The size (in bytes) of the largest file to count.
+         */
+        private long maxSize = Long.MAX_VALUE;
+
+        /**
+         * True if hard links are deduplicated.
+         */
+        private boolean deduplicateHardLinks = false;
+
+        /**
+         * True if symbolic links are followed.
+         */
+        private boolean followLinks = false;
+
+        /**
+         * True if directories on other filesystems are skipped.
+         */
+        private boolean sameFileSystem = false;
+
+        /**
+         * True if errors are recorded rather than ending the scan.
+         */
+        private boolean continueOnError = false;
+
+        /**
+         * The most errors to keep the details of.
+         */
+        private int maxRecordedErrors = 100;
+
+        /**
+         * The number of times to retry after a transient error.
+         */
+        private int retryCount = 0;
+
+        /**
+         * The time (in ms) to wait before the first retry.
+         */
+        private long retryBackoffMillis = 100;
+
+        /**
+         * The file to write checkpoints to.
+         */
+        private Path checkpointFile = null;
+
+        /**
+         * The time (in ms) between checkpoints.
+         */
+        private long checkpointIntervalMillis = 60000;
+
+        /**
+         * True if totals are kept for each top-level directory.
+         */
+        private boolean trackSubtrees = false;
+
+        /**
+         * Constructor (private).  Use {@link ScanOptions#builder()}.
+         */
+        private Builder()
+        {
+            // Nothing needed here.
+        }
+
+        /**
+         * @param maxDepth  the deepest level to visit, where the scanned
+         *                  path is at depth 0
+         * @return  this builder
+         * @throws IllegalArgumentException  if maxDepth is negative
+         */
+        public Builder maxDepth(int maxDepth)
+        {
+            if(maxDepth < 0)
+            {
+                throw new IllegalArgumentException("The maximum depth cannot " +
+                                                   "be negative (" + maxDepth + ").");
+            }
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Only count files matching the pattern (or one of the other
+         * include patterns).
+         *
+         * @param glob  the pattern of the files to count
+         * @return  this builder
+         */
+        public Builder include(String glob)
+        {
+            includes.add(glob);
+            return this;
+        }
+
+        /**
+         * Do not count files matching the pattern.
+         *
+         * @param glob  the pattern of the files not to count
+         * @return  this builder
+         */
+        public Builder exclude(String glob)
+        {
+            excludes.add(glob);
+            return this;
+        }
+
+        /**
+         * Skip directories matching the pattern, along with everything
+         * beneath them.
+         *
+         * @param glob  the pattern of the directories to skip
+         * @return  this builder
+         */
+        public Builder excludeDirectory(String glob)
+        {
+            excludedDirectories.add(glob);
+            return this;
+        }
+
+        /**
+         * @param minSize  the size (in bytes) of the smallest file to count
+         * @return  this builder
+         */
+        public Builder minSize(long minSize)
+        {
+            this.minSize = minSize;
+            return this;
+        }
+
+        /**
+         * @param maxSize  the size (in bytes) of the largest file to count
+         * @return  this builder
+         */
+        public Builder maxSize(long maxSize)
+        {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param deduplicateHardLinks  true to only count each file once in
+         *                              the unique bytes, however many hard
+         *                              links it has
+         * @return  this builder
+         */
+        public Builder deduplicateHardLinks(boolean deduplicateHardLinks)
+        {
+            this.deduplicateHardLinks = deduplicateHardLinks;
+            return this;
+        }
+
+        /**
+         * @param followLinks  true to visit the contents of directories
+         *                     reached through symbolic links.  Each
+         *                     directory is still only visited once.
+         * @return  this builder
+         */
+        public Builder followLinks(boolean followLinks)
+        {
+            this.followLinks = followLinks;
+            return this;
+        }
+
+        /**
+         * @param sameFileSystem  true to skip directories (and everything
+         *                        beneath them), files, and links that are
+         *                        on a different filesystem from the
+         *                        scanned path
+         * @return  this builder
+         */
+        public Builder sameFileSystem(boolean sameFileSystem)
+        {
+            this.sameFileSystem = sameFileSystem;
+            return this;
+        }
+
+        /**
+         * @param continueOnError  true to record entries that cannot be
+         *                         counted (see {@link ScanError.Type}) and
+         *                         carry on, rather than ending the scan.  The
+         *                         scanned path itself must still be readable.
+         * @return  this builder
+         */
+        public Builder continueOnError(boolean continueOnError)
+        {
+            this.continueOnError = continueOnError;
+            return this;
+        }
+
+        /**
+         * @param maxRecordedErrors  the most errors to keep the details of
+         *                           when continuing past errors.  Every
+         *                           error is still counted.
+         * @return  this builder
+         */
+        public Builder maxRecordedErrors(int maxRecordedErrors)
+        {
+            this.maxRecordedErrors = maxRecordedErrors;
+            return this;
+        }
+
+        /**
+         * Retries entries that fail with an error that may be transient
+         * (type {@link ScanError.Type#OTHER}) when continuing past errors.
+         *
+         * @param retryCount  the number of times to retry an entry
+         * @param backoffMillis  the time (in ms) to wait before the first
+         *                       retry.  This doubles for each retry after
+         *                       it.
+         * @return  this builder
+         */
+        public Builder retry(int retryCount, long backoffMillis)
+        {
+            this.retryCount = retryCount;
+            this.retryBackoffMillis = backoffMillis;
+            return this;
+        }
+
+        /**
+         * Writes the scan's progress to a file every so often, so that an
+         * interrupted scan can resume where it left off.  If the file
+         * already holds a checkpoint of the same scanned path, the scan
+         * resumes from it, and fails with an IOException if the
+         * checkpoint was written with options that count differently.
+         *
+         * Checkpoints hold the directories still to be scanned and the
+         * totals so far (along with the files and directories seen, when
+         * hard links are deduplicated or links are followed), so they are
+         * small unless the scan has to remember what it has seen.
+         *
+         * @param checkpointFile  the file to write checkpoints to, or null
+         *                        to not checkpoint the scan
+         * @param intervalMillis  the time (in ms) between checkpoints
+         * @return  this builder
+         */
+        public Builder checkpoint(Path checkpointFile, long intervalMillis)
+        {
+            this.checkpointFile = checkpointFile;
+            this.checkpointIntervalMillis = intervalMillis;
+            return this;
+        }
+
+        /**
+         * @param trackSubtrees  true to also keep the totals of each
+         *                       directory directly beneath the scanned path
+         * @return  this builder
+         */
+        public Builder trackSubtrees(boolean trackSubtrees)
+        {
+            this.trackSubtrees = trackSubtrees;
+            return this;
+        }
+
+        /**
+         * @return  the options
+         * @throws IllegalArgumentException  if the size limits are negative
+         *          or the minimum is larger than the maximum, if the error,
+         *          retry, or checkpoint settings are negative, or if a
+         *          pattern is not a valid glob
+         */
+        public ScanOptions build()
+        {
+            if(maxRecordedErrors < 0 || retryCount < 0 ||
+               retryBackoffMillis < 0 || checkpointIntervalMillis < 0)
+            {
+                throw new IllegalArgumentException("The error, retry, and " +
+                                                   "checkpoint settings " +
+                                                   "cannot be negative.");
+            }
+            if(minSize < 0 || minSize > maxSize)
+            {
+                throw new IllegalArgumentException("Invalid size limits (" +
+                                                   minSize + " to " +
+                                                   maxSize + ").");
+            }
+            return new ScanOptions(this);
+        }
+    }
+}
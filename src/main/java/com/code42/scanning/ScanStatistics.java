@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.scanning;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * A {@link ScanMetrics} listener that keeps running totals of every scan it
+ * is told about.  The totals can be read directly or through JMX once the
+ * object has been registered with {@link #register(String)}.
+ *
+ * This is thread-safe, so one instance may be shared by many scans.
+ */
+public class ScanStatistics implements ScanMetrics, ScanStatisticsMBean
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The JMX domain the statistics are registered under.
+     */
+    private static final String JMX_DOMAIN = "com.code42.scanning";
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS (guarded by this)
+    //--------------------------------------------------------------------
+    /**
+     * The number of scans completed.
+     */
+    private long scansCompleted = 0;
+
+    /**
+     * The number of files and directories scanned.
+     */
+    private long entriesScanned = 0;
+
+    /**
+     * The total wall-clock time (in ns) of all scans.
+     */
+    private long elapsedNanos = 0;
+
+    /**
+     * The deepest level visited.
+     */
+    private int maxDepth = 0;
+
+    /**
+     * The combined stat latencies of all scans.
+     */
+    private final LatencyHistogram statLatency = new LatencyHistogram();
+
+
+    //--------------------------------------------------------------------
+    //  ScanMetrics
+    //--------------------------------------------------------------------
+    @Override
+    public synchronized void scanCompleted(String path,
+                                           FileScanner.ScanResult result,
+                                           long elapsedNanos,
+                                           LatencyHistogram statLatency,
+                                           int maxDepth)
+    {
+        this.scansCompleted++;
+        this.entriesScanned += result.getNumFiles() +
+                               result.getNumDirectories();
+        this.elapsedNanos += elapsedNanos;
+        this.maxDepth = Math.max(this.maxDepth, maxDepth);
+        this.statLatency.add(statLatency);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  ScanStatisticsMBean
+    //--------------------------------------------------------------------
+    @Override
+    public synchronized long getScansCompleted()
+    {
+        return scansCompleted;
+    }
+
+    @Override
+    public synchronized long getEntriesScanned()
+    {
+        return entriesScanned;
+    }
+
+    @Override
+    public synchronized double getEntriesPerSecond()
+    {
+        if(elapsedNanos == 0)
+        {
+            return 0;
+        }
+        return entriesScanned * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public synchronized int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    @Override
+    public synchronized long[] getStatLatencyBuckets()
+    {
+        return statLatency.getBuckets();
+    }
+
+    @Override
+    public synchronized long getStatLatencyMedianNanos()
+    {
+        return statLatency.getPercentileUpperBound(50);
+    }
+
+    @Override
+    public synchronized long getStatLatency99thPercentileNanos()
+    {
+        return statLatency.getPercentileUpperBound(99);
+    }
+
+    @Override
+    public synchronized void reset()
+    {
+        scansCompleted = 0;
+        entriesScanned = 0;
+        elapsedNanos = 0;
+        maxDepth = 0;
+        statLatency.clear();
+    }
+
+
+    //--------------------------------------------------------------------
+    //  JMX Registration
+    //--------------------------------------------------------------------
+    /**
+     * Registers these statistics with the platform MBean server.
+     *
+     * @param name  the name to distinguish this instance from others (e.g.,
+     *              the name of the job using it)
+     * @return  the name the MBean was registered under.  Pass this to
+     *          {@link MBeanServer#unregisterMBean(ObjectName)} when done.
+     * @throws JMException  if the name is invalid or already registered
+     */
+    public ObjectName register(String name) throws JMException
+    {
+        ObjectName objectName = new ObjectName(JMX_DOMAIN +
+                                               ":type=ScanStatistics,name=" +
+                                               ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+}
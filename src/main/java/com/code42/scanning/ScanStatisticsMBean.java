@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.scanning;
+
+/**
+ * The JMX management interface for {@link ScanStatistics}.
+ */
+public interface ScanStatisticsMBean
+{
+    /**
+     * @return  the number of scans completed
+     */
+    long getScansCompleted();
+
+    /**
+     * @return  the number of entries (files and directories) scanned
+     */
+    long getEntriesScanned();
+
+    /**
+     * @return  the scan throughput (entries per second of scan time) or 0
+     *          if nothing has been scanned
+     */
+    double getEntriesPerSecond();
+
+    /**
+     * @return  the deepest level visited by any scan
+     */
+    int getMaxDepth();
+
+    /**
+     * @return  the per-entry stat latency histogram (see
+     *          {@link LatencyHistogram} for the bucket bounds)
+     */
+    long[] getStatLatencyBuckets();
+
+    /**
+     * @return  an upper bound on the median stat latency (in ns)
+     */
+    long getStatLatencyMedianNanos();
+
+    /**
+     * @return  an upper bound on the 99th percentile stat latency (in ns)
+     */
+    long getStatLatency99thPercentileNanos();
+
+    /**
+     * Clears all of the counters.
+     */
+    void reset();
+}
@@ -0,0 +1,838 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.scanning;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Visits the entries beneath a scanned path, adding the ones the
+ * {@link ScanOptions} accept to a {@link FileScanner.ScanResult}.
+ *
+ * As with the original scanner, symbolic links are not followed by default,
+ * but they are counted as whatever they point to: a link to a file counts
+ * as a file (of the target's size) and a link to a directory counts as a
+ * directory whose contents are not visited.  When links are followed, every
+ * directory visited is remembered by its file key, and a directory reached
+ * a second time is skipped, which also breaks cycles.
+ *
+ * When the scan continues past errors, failed entries are recorded in the
+ * result.  Entries that failed with an error that may be transient are
+ * retried by walking them again from the failed entry down.
+ *
+ * A checkpointed scan does not walk the tree recursively.  Instead, it
+ * keeps a frontier of the directories still to be listed and lists them
+ * one at a time, so that between directories, the frontier and the totals
+ * describe exactly what is left to do.  That is what a checkpoint holds.
+ * (On platforms whose file keys are not device and inode numbers, the
+ * files and directories seen before a checkpoint are not remembered by a
+ * resumed scan.  The result counts such entries; see
+ * {@link FileScanner.ScanResult#getNumUnparsedFileKeys()}.)
+ */
+class ScanVisitor extends SimpleFileVisitor<Path>
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * Identifies a checkpoint file ("C42S").
+     */
+    private static final int CHECKPOINT_MAGIC = 0x43343253;
+
+    /**
+     * The version of the checkpoint format.
+     */
+    private static final int CHECKPOINT_VERSION = 4;
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * The scanned path.
+     */
+    private final Path root;
+
+    /**
+     * The number of elements in the scanned path.
+     */
+    private final int rootDepth;
+
+    /**
+     * What to count.
+     */
+    private final ScanOptions options;
+
+    /**
+     * The totals of what has been counted.
+     */
+    private final FileScanner.ScanResult result;
+
+    /**
+     * The time taken to reach each entry, or null if the scan is not being
+     * timed.
+     */
+    private final LatencyHistogram entryLatency;
+
+    /**
+     * The time (from {@link System#nanoTime()}) of the last callback.
+     */
+    private long lastEntryTime;
+
+    /**
+     * The deepest level visited, where the scanned path is at depth 0.
+     */
+    private int maxDepth = 0;
+
+    /**
+     * The device and inode numbers of the files counted so far, or null if
+     * hard links are not being deduplicated.
+     */
+    private final LongPairSet seenFiles;
+
+    /**
+     * The keys of the files counted so far whose keys could not be parsed
+     * into device and inode numbers (only used on unusual platforms).
+     */
+    private final Set<Object> seenFileKeys;
+
+    /**
+     * The device and inode numbers of the directories visited so far, or
+     * null if symlinks are not being followed.
+     */
+    private final LongPairSet seenDirectories;
+
+    /**
+     * The keys of the directories visited so far whose keys could not be
+     * parsed into device and inode numbers.
+     */
+    private final Set<Object> seenDirectoryKeys;
+
+    /**
+     * The device number of the scanned path, or null if it is not known.
+     * Only used when staying on the scanned path's filesystem.
+     */
+    private Long rootDevice = null;
+
+    /**
+     * The filesystem of the scanned path, for directories whose device
+     * number cannot be found from their file keys.  Looked up when first
+     * needed.
+     */
+    private FileStore rootStore = null;
+
+    /**
+     * Scratch space for parsing file keys.
+     */
+    private final long[] identity = new long[2];
+
+    /**
+     * The entry being retried, or null if there is none.  Errors for this
+     * entry go back to the retry loop rather than being handled again.
+     */
+    private Path retrying = null;
+
+    /**
+     * The directories still to be listed, or null if the scan is not
+     * checkpointed (and so walks the tree recursively).
+     */
+    private final Deque<Path> frontier;
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor
+     *
+     * @param root  the scanned path
+     * @param options  what to count
+     * @param result  where to add the counts
+     * @param entryLatency  where to record the time taken to reach each
+     *                      entry.  If null, the scan is not timed.
+     */
+    ScanVisitor(Path root,
+                ScanOptions options,
+                FileScanner.ScanResult result,
+                LatencyHistogram entryLatency)
+    {
+        this.root = root;
+        this.rootDepth = root.getNameCount();
+        this.options = options;
+        this.result = result;
+        this.entryLatency = entryLatency;
+        this.lastEntryTime = (entryLatency != null) ? System.nanoTime() : 0;
+        if(options.isDeduplicatingHardLinks())
+        {
+            this.seenFiles = new LongPairSet();
+            this.seenFileKeys = new HashSet<>();
+        }
+        else
+        {
+            this.seenFiles = null;
+            this.seenFileKeys = null;
+        }
+        if(options.isFollowingLinks())
+        {
+            this.seenDirectories = new LongPairSet();
+            this.seenDirectoryKeys = new HashSet<>();
+        }
+        else
+        {
+            this.seenDirectories = null;
+            this.seenDirectoryKeys = null;
+        }
+        this.frontier = (options.getCheckpointFile() != null)
+                ? new ArrayDeque<Path>()
+                : null;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Package API
+    //--------------------------------------------------------------------
+    /**
+     * Walks the tree beneath the scanned path.  If the scan is
+     * checkpointed, this resumes from the checkpoint file if it holds one,
+     * and deletes the file once the walk is complete.
+     *
+     * @throws IOException  if the scanned path could not be read, if an
+     *          entry beneath it could not be read and the scan is not
+     *          continuing past errors, or if the checkpoint file could not
+     *          be read or written (or is for a different scanned path)
+     */
+    void walk() throws IOException
+    {
+        if(null == frontier)
+        {
+            walk(root);
+            return;
+        }
+
+        Path checkpointFile = options.getCheckpointFile();
+        if(!Files.exists(checkpointFile))
+        {
+            frontier.push(root);
+        }
+        else
+        {
+            readCheckpoint(checkpointFile);
+        }
+
+        long interval = options.getCheckpointIntervalMillis();
+        long lastCheckpoint = System.currentTimeMillis();
+        while(!frontier.isEmpty())
+        {
+            walk(frontier.pop());
+
+            long now = System.currentTimeMillis();
+            if(now - lastCheckpoint >= interval && !frontier.isEmpty())
+            {
+                writeCheckpoint(checkpointFile);
+                lastCheckpoint = now;
+            }
+        }
+        Files.deleteIfExists(checkpointFile);
+    }
+
+
+    /**
+     * @return  the deepest level visited, where the scanned path is at
+     *          depth 0
+     */
+    int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  FileVisitor
+    //--------------------------------------------------------------------
+    @Override
+    public FileVisitResult preVisitDirectory(Path directory,
+                                             BasicFileAttributes attributes)
+            throws IOException
+    {
+        recordEntry(directory);
+        if(directory.equals(root))
+        {
+            if(FileKeys.parse(attributes.fileKey(), identity))
+            {
+                rootDevice = identity[FileKeys.DEVICE];
+            }
+        }
+        else
+        {
+            if(options.excludesDirectory(relativize(directory)))
+            {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            if(options.isStayingOnFileSystem() &&
+               !isOnRootFileSystem(directory, attributes))
+            {
+                result.addSkippedMount();
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+        }
+
+        if(!isFirstVisit(attributes))
+        {
+            result.addRevisitedDirectory();
+            return FileVisitResult.SKIP_SUBTREE;
+        }
+
+        result.addDirectory();
+        FileScanner.ScanResult subtree = subtreeOf(directory, true);
+        if(subtree != null)
+        {
+            subtree.addDirectory();
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+            throws IOException
+    {
+        if(frontier != null && attributes.isDirectory() &&
+           depthOf(file) < options.getMaxDepth())
+        {
+            // A checkpointed scan lists subdirectories later, and counts
+            // them then.
+            frontier.push(file);
+            return FileVisitResult.CONTINUE;
+        }
+        recordEntry(file);
+
+        // Count links as whatever they point to.
+        boolean isLink = attributes.isSymbolicLink();
+        if(isLink)
+        {
+            try
+            {
+                attributes = Files.readAttributes(file,
+                                                  BasicFileAttributes.class);
+            }
+            catch(IOException e)
+            {
+                // A broken link is neither a file nor a directory.
+                attributes = null;
+            }
+        }
+
+        // Links (followed or not) and directories at the maximum depth can
+        // lead to another filesystem without passing preVisitDirectory.
+        // Other files are checked too when that is cheap, which catches
+        // files that are mount points themselves.
+        if(attributes != null &&
+           options.isStayingOnFileSystem() &&
+           !file.equals(root) &&
+           (isLink || attributes.isDirectory() || rootDevice != null) &&
+           !isOnRootFileSystem(file, attributes))
+        {
+            result.addSkippedMount();
+            return FileVisitResult.CONTINUE;
+        }
+
+        if(attributes != null && attributes.isRegularFile())
+        {
+            if(options.acceptsFile(relativize(file), attributes.size()))
+            {
+                FileScanner.ScanResult subtree = subtreeOf(file, false);
+                if(isFirstLink(attributes))
+                {
+                    result.addFile(attributes.size());
+                    if(subtree != null)
+                    {
+                        subtree.addFile(attributes.size());
+                    }
+                }
+                else
+                {
+                    result.addDuplicateLink(attributes.size());
+                    if(subtree != null)
+                    {
+                        subtree.addDuplicateLink(attributes.size());
+                    }
+                }
+            }
+        }
+        else if(attributes != null && attributes.isDirectory())
+        {
+            // A link to a directory, or a directory at the maximum depth.
+            if(file.equals(root) ||
+               !options.excludesDirectory(relativize(file)))
+            {
+                if(isFirstVisit(attributes))
+                {
+                    result.addDirectory();
+                    FileScanner.ScanResult subtree = subtreeOf(file, true);
+                    if(subtree != null)
+                    {
+                        subtree.addDirectory();
+                    }
+                }
+                else
+                {
+                    result.addRevisitedDirectory();
+                }
+            }
+        }
+        else if(options.isContinuingOnError())
+        {
+            ScanError.Type type = (null == attributes)
+                    ? ScanError.Type.BROKEN_LINK
+                    : ScanError.Type.SPECIAL_FILE;
+            result.addError(new ScanError(file, type, "Unknown File"),
+                            options.getMaxRecordedErrors());
+        }
+        else
+        {
+            // It is possible that we encounter something that is neither
+            // a file or directory (since files are defined by the OS).
+            // If this is the case, our assertion that we have only files
+            // and directories failed.  Throw an error so we don't
+            // silently ignore it.
+            throw new AssertionError("Unknown File: " + file.toString());
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException e)
+            throws IOException
+    {
+        if(e instanceof FileSystemLoopException)
+        {
+            // A followed link back to one of the directory's ancestors.  We
+            // have already counted it.
+            recordEntry(file);
+            result.addRevisitedDirectory();
+            return FileVisitResult.CONTINUE;
+        }
+        if(!options.isContinuingOnError() ||
+           file.equals(root) ||
+           file.equals(retrying))
+        {
+            throw e;
+        }
+
+        if(ScanError.Type.of(e) == ScanError.Type.OTHER &&
+           options.getRetryCount() > 0)
+        {
+            e = retry(file, e);
+        }
+        if(e != null)
+        {
+            result.addError(new ScanError(file, ScanError.Type.of(e),
+                                          String.valueOf(e.getMessage())),
+                            options.getMaxRecordedErrors());
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path directory, IOException e)
+            throws IOException
+    {
+        if(e != null)
+        {
+            // The directory could only be partly listed.  What was listed
+            // has been counted, so record the error rather than retrying.
+            if(!options.isContinuingOnError())
+            {
+                throw e;
+            }
+            result.addError(new ScanError(directory, ScanError.Type.of(e),
+                                          String.valueOf(e.getMessage())),
+                            options.getMaxRecordedErrors());
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Walks the tree beneath an entry with this visitor, down to the
+     * maximum depth.  If the scan is checkpointed, this only lists the
+     * entry (if it is a directory) and adds its subdirectories to the
+     * frontier.
+     *
+     * @param start  the entry to start from
+     * @throws IOException  if the walk failed
+     */
+    private void walk(Path start) throws IOException
+    {
+        int maxDepth = options.getMaxDepth() - depthOf(start);
+        if(frontier != null)
+        {
+            maxDepth = Math.min(maxDepth, 1);
+        }
+        SecureTreeWalker.walkFileTree(start,
+                                      options.isFollowingLinks(),
+                                      maxDepth,
+                                      this);
+    }
+
+
+    /**
+     * Retries an entry that failed, waiting longer before each attempt.  A
+     * successful retry walks the entry (and anything beneath it) as if it
+     * had never failed.
+     *
+     * @param entry  the entry that failed
+     * @param e  the error it failed with
+     * @return  null if a retry succeeded, or the last error otherwise
+     */
+    private IOException retry(Path entry, IOException e)
+    {
+        Path previous = retrying;
+        retrying = entry;
+        try
+        {
+            long backoff = options.getRetryBackoffMillis();
+            for(int attempt = 0; attempt < options.getRetryCount(); attempt++)
+            {
+                try
+                {
+                    Thread.sleep(backoff);
+                }
+                catch(InterruptedException interrupted)
+                {
+                    Thread.currentThread().interrupt();
+                    return e;
+                }
+                backoff *= 2;
+
+                try
+                {
+                    walk(entry);
+                    return null;
+                }
+                catch(IOException again)
+                {
+                    e = again;
+                    if(ScanError.Type.of(again) != ScanError.Type.OTHER)
+                    {
+                        // Not worth retrying any more.
+                        return e;
+                    }
+                }
+            }
+            return e;
+        }
+        finally
+        {
+            retrying = previous;
+        }
+    }
+
+
+    /**
+     * Records the depth of an entry and, if the scan is being timed, the
+     * time taken to reach it.  That time covers listing the directory and
+     * reading the entry's attributes.
+     *
+     * @param entry  the entry being visited
+     */
+    private void recordEntry(Path entry)
+    {
+        maxDepth = Math.max(maxDepth, depthOf(entry));
+
+        if(entryLatency != null)
+        {
+            long now = System.nanoTime();
+            entryLatency.record(now - lastEntryTime);
+            lastEntryTime = now;
+        }
+    }
+
+
+    /**
+     * Checks whether a file is being counted for the first time.  The file
+     * is identified by the key the walker already read, so this does not
+     * touch the filesystem.
+     *
+     * @param attributes  the attributes of the file
+     * @return  true if this is the first link to the file that was found,
+     *          or if hard links are not being deduplicated
+     */
+    private boolean isFirstLink(BasicFileAttributes attributes)
+    {
+        if(null == seenFiles)
+        {
+            return true;
+        }
+
+        Object fileKey = attributes.fileKey();
+        if(FileKeys.parse(fileKey, identity))
+        {
+            return seenFiles.add(identity[FileKeys.DEVICE],
+                                 identity[FileKeys.INODE]);
+        }
+
+        // Without a key, we cannot tell links apart.
+        if(null == fileKey)
+        {
+            return true;
+        }
+        result.addUnparsedFileKey();
+        return seenFileKeys.add(fileKey);
+    }
+
+
+    /**
+     * Checks whether a directory is being visited for the first time.
+     *
+     * @param attributes  the attributes of the directory
+     * @return  true if the directory has not been visited before, or if
+     *          symlinks are not being followed
+     */
+    private boolean isFirstVisit(BasicFileAttributes attributes)
+    {
+        if(null == seenDirectories)
+        {
+            return true;
+        }
+
+        Object fileKey = attributes.fileKey();
+        if(FileKeys.parse(fileKey, identity))
+        {
+            return seenDirectories.add(identity[FileKeys.DEVICE],
+                                       identity[FileKeys.INODE]);
+        }
+        if(null == fileKey)
+        {
+            return true;
+        }
+        result.addUnparsedFileKey();
+        return seenDirectoryKeys.add(fileKey);
+    }
+
+
+    /**
+     * Checks whether an entry is on the same filesystem as the scanned
+     * path.  A link is checked by what it points to.
+     *
+     * @param entry  the directory or file
+     * @param attributes  the attributes of the entry (or of what it links
+     *                    to)
+     * @return  true if the entry is on the scanned path's filesystem
+     * @throws IOException  if the filesystem could not be found
+     */
+    private boolean isOnRootFileSystem(Path entry,
+                                       BasicFileAttributes attributes)
+            throws IOException
+    {
+        if(rootDevice != null && FileKeys.parse(attributes.fileKey(), identity))
+        {
+            return identity[FileKeys.DEVICE] == rootDevice;
+        }
+
+        // Fall back to asking for the filesystems (slower).
+        if(null == rootStore)
+        {
+            rootStore = Files.getFileStore(root);
+        }
+        return rootStore.equals(Files.getFileStore(entry));
+    }
+
+
+    /**
+     * @param entry  an entry beneath the scanned path
+     * @return  the depth of the entry, where the scanned path is at depth 0
+     */
+    private int depthOf(Path entry)
+    {
+        return entry.getNameCount() - rootDepth;
+    }
+
+
+    /**
+     * Finds the totals of the top-level directory (the directory directly
+     * beneath the scanned path) that an entry is in.
+     *
+     * @param entry  an entry beneath the scanned path
+     * @param isDirectory  true if the entry is a directory, in which case
+     *                     its totals are started if it is itself a
+     *                     top-level directory
+     * @return  the totals of the entry's top-level directory, or null if it
+     *          is not in one or subtrees are not being tracked
+     */
+    private FileScanner.ScanResult subtreeOf(Path entry, boolean isDirectory)
+    {
+        int depth = depthOf(entry);
+        if(!options.isTrackingSubtrees() || depth < 1)
+        {
+            return null;
+        }
+
+        String name = entry.getName(rootDepth).toString();
+        return (depth == 1 && isDirectory)
+                ? result.addSubtree(name)
+                : result.getSubtree(name);
+    }
+
+
+    /**
+     * Writes the frontier and the totals so far to a checkpoint file.  The
+     * checkpoint is written to a temporary file first and then moved into
+     * place, so an interruption never leaves a partial checkpoint behind.
+     *
+     * @param checkpointFile  the file to write
+     * @throws IOException  if the checkpoint could not be written
+     */
+    private void writeCheckpoint(Path checkpointFile) throws IOException
+    {
+        Path temporaryFile = checkpointFile.resolveSibling(
+                checkpointFile.getFileName() + ".tmp");
+        try(DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporaryFile))))
+        {
+            output.writeInt(CHECKPOINT_MAGIC);
+            output.writeInt(CHECKPOINT_VERSION);
+            output.writeUTF(root.toAbsolutePath().toString());
+            byte[] countingOptions = options.getCountingOptions();
+            output.writeInt(countingOptions.length);
+            output.write(countingOptions);
+            output.writeBoolean(rootDevice != null);
+            output.writeLong((rootDevice != null) ? rootDevice : 0);
+            output.writeInt(maxDepth);
+            result.writeTo(output);
+            if(seenFiles != null)
+            {
+                seenFiles.writeTo(output);
+            }
+            if(seenDirectories != null)
+            {
+                seenDirectories.writeTo(output);
+            }
+
+            output.writeInt(frontier.size());
+            for(Path directory : frontier)
+            {
+                output.writeUTF(root.relativize(directory).toString());
+            }
+        }
+
+        try
+        {
+            Files.move(temporaryFile, checkpointFile,
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(temporaryFile, checkpointFile,
+                       StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+
+    /**
+     * Restores the frontier and the totals from a checkpoint file.
+     *
+     * @param checkpointFile  the file to read
+     * @throws IOException  if the checkpoint could not be read, or is for a
+     *          different scanned path
+     */
+    private void readCheckpoint(Path checkpointFile) throws IOException
+    {
+        try(DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(checkpointFile))))
+        {
+            if(input.readInt() != CHECKPOINT_MAGIC ||
+               input.readInt() != CHECKPOINT_VERSION)
+            {
+                throw new IOException(checkpointFile +
+                                      " is not a scan checkpoint.");
+            }
+            String checkpointRoot = input.readUTF();
+            if(!checkpointRoot.equals(root.toAbsolutePath().toString()))
+            {
+                throw new IOException(checkpointFile + " is a checkpoint " +
+                                      "of a scan of " + checkpointRoot +
+                                      ", not " + root + ".");
+            }
+            // Options that change what is counted would make the totals
+            // a mix of two different scans.
+            byte[] countingOptions = options.getCountingOptions();
+            byte[] checkpointOptions = new byte[countingOptions.length];
+            boolean sameOptions = (input.readInt() == checkpointOptions.length);
+            if(sameOptions)
+            {
+                input.readFully(checkpointOptions);
+                sameOptions = Arrays.equals(checkpointOptions, countingOptions);
+            }
+            if(!sameOptions)
+            {
+                throw new IOException(checkpointFile + " is a checkpoint " +
+                                      "of a scan with different options.");
+            }
+            boolean hasRootDevice = input.readBoolean();
+            long device = input.readLong();
+            rootDevice = hasRootDevice ? device : null;
+            maxDepth = input.readInt();
+            result.readFrom(input);
+            if(seenFiles != null)
+            {
+                seenFiles.readFrom(input);
+            }
+            if(seenDirectories != null)
+            {
+                seenDirectories.readFrom(input);
+            }
+
+            for(int count = input.readInt(); count > 0; count--)
+            {
+                frontier.addLast(root.resolve(input.readUTF()));
+            }
+        }
+    }
+
+
+    /**
+     * @param entry  an entry beneath the scanned path
+     * @return  the entry's path relative to the scanned path.  For the
+     *          scanned path itself, this is its name.
+     */
+    private Path relativize(Path entry)
+    {
+        if(entry.equals(root))
+        {
+            Path name = root.getFileName();
+            return (name == null) ? root : name;
+        }
+        return root.relativize(entry);
+    }
+}
@@ -0,0 +1,524 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.scanning;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SecureDirectoryStream;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
+
+/**
+ * Walks a file tree exactly as {@link Files#walkFileTree(Path, java.util.Set,
+ * int, FileVisitor)} does, but reads each entry's attributes relative to its
+ * open directory.
+ *
+ * {@link Files#walkFileTree} reads the attributes of each entry by its full
+ * path, so the OS looks up every directory in the path again for every
+ * entry, which adds up in deep trees.  Where the platform supports a
+ * {@link SecureDirectoryStream} (Linux, Solaris, and other Unix systems),
+ * this walker keeps each directory on the way down open, reads its entries'
+ * attributes with fstatat, and opens its subdirectories with openat, so each
+ * lookup is a single step from an open directory.  Elsewhere, it simply
+ * calls {@link Files#walkFileTree}.
+ *
+ * The walk is iterative, so deep trees need no more stack than shallow ones.
+ * The fast path can be turned off by setting the
+ * {@value #ENABLED_PROPERTY} system property to false; it is read at the
+ * start of each walk.
+ */
+final class SecureTreeWalker
+{
+    //--------------------------------------------------------------------
+    //  CONSTANTS
+    //--------------------------------------------------------------------
+    /**
+     * The system property that turns the fast path on or off.
+     */
+    static final String ENABLED_PROPERTY =
+            "com.code42.scanning.directoryRelativeWalk";
+
+
+    //--------------------------------------------------------------------
+    //  DATA MEMBERS
+    //--------------------------------------------------------------------
+    /**
+     * True if symbolic links are followed.
+     */
+    private final boolean followLinks;
+
+    /**
+     * The options for opening directories and reading attributes.
+     */
+    private final LinkOption[] linkOptions;
+
+    /**
+     * The number of levels below the start to visit.
+     */
+    private final int maxDepth;
+
+    /**
+     * Receives the entries.
+     */
+    private final FileVisitor<? super Path> visitor;
+
+    /**
+     * The open directories from the start down to the one being listed.
+     */
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+
+    //--------------------------------------------------------------------
+    //  Constructor
+    //--------------------------------------------------------------------
+    /**
+     * Constructor (private).  Use {@link #walkFileTree}.
+     *
+     * @param followLinks  true to follow symbolic links
+     * @param maxDepth  the number of levels below the start to visit
+     * @param visitor  receives the entries
+     */
+    private SecureTreeWalker(boolean followLinks,
+                             int maxDepth,
+                             FileVisitor<? super Path> visitor)
+    {
+        this.followLinks = followLinks;
+        this.linkOptions = followLinks
+                ? new LinkOption[0]
+                : new LinkOption[] {LinkOption.NOFOLLOW_LINKS};
+        this.maxDepth = maxDepth;
+        this.visitor = visitor;
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Package API
+    //--------------------------------------------------------------------
+    /**
+     * Walks a file tree, calling the visitor exactly as
+     * {@link Files#walkFileTree(Path, java.util.Set, int, FileVisitor)}
+     * would.
+     *
+     * @param start  the entry to start from
+     * @param followLinks  true to follow symbolic links
+     * @param maxDepth  the number of levels below the start to visit
+     * @param visitor  receives the entries
+     * @throws IOException  if the visitor throws it
+     */
+    static void walkFileTree(Path start,
+                             boolean followLinks,
+                             int maxDepth,
+                             FileVisitor<? super Path> visitor)
+            throws IOException
+    {
+        if(Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true")))
+        {
+            new SecureTreeWalker(followLinks, maxDepth, visitor).walk(start);
+        }
+        else
+        {
+            walkWithFiles(start, followLinks, maxDepth, visitor);
+        }
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Methods
+    //--------------------------------------------------------------------
+    /**
+     * Walks the tree beneath the start, falling back to
+     * {@link Files#walkFileTree} if its directory stream is not secure.
+     *
+     * @param start  the entry to start from
+     * @throws IOException  if the visitor throws it
+     */
+    private void walk(Path start) throws IOException
+    {
+        BasicFileAttributes attributes;
+        try
+        {
+            attributes = readAttributes(start);
+        }
+        catch(IOException e)
+        {
+            visitor.visitFileFailed(start, e);
+            return;
+        }
+        if(maxDepth <= 0 || !attributes.isDirectory())
+        {
+            visitor.visitFile(start, attributes);
+            return;
+        }
+
+        DirectoryStream<Path> stream;
+        try
+        {
+            stream = Files.newDirectoryStream(start);
+        }
+        catch(IOException e)
+        {
+            visitor.visitFileFailed(start, e);
+            return;
+        }
+        if(!(stream instanceof SecureDirectoryStream))
+        {
+            // Nothing has been visited yet, so let the JDK do it all.
+            stream.close();
+            walkWithFiles(start, followLinks, maxDepth, visitor);
+            return;
+        }
+
+        try
+        {
+            if(enter(start, attributes, (SecureDirectoryStream<Path>) stream)
+               == FileVisitResult.TERMINATE)
+            {
+                return;
+            }
+
+            while(!frames.isEmpty())
+            {
+                Frame frame = frames.peek();
+                Path entry = null;
+                IOException failure = null;
+                try
+                {
+                    if(!frame.skipping && frame.entries.hasNext())
+                    {
+                        entry = frame.entries.next();
+                    }
+                }
+                catch(DirectoryIteratorException e)
+                {
+                    failure = e.getCause();
+                }
+
+                FileVisitResult result;
+                if(entry != null)
+                {
+                    result = visit(frame, entry);
+                }
+                else
+                {
+                    frames.pop();
+                    try
+                    {
+                        frame.stream.close();
+                    }
+                    catch(IOException e)
+                    {
+                        if(null == failure)
+                        {
+                            failure = e;
+                        }
+                    }
+                    result = visitor.postVisitDirectory(frame.directory,
+                                                        failure);
+                    frame = frames.peek();
+                }
+
+                if(result == FileVisitResult.TERMINATE)
+                {
+                    return;
+                }
+                if(result == FileVisitResult.SKIP_SIBLINGS && frame != null)
+                {
+                    frame.skipping = true;
+                }
+            }
+        }
+        finally
+        {
+            while(!frames.isEmpty())
+            {
+                frames.pop().stream.close();
+            }
+        }
+    }
+
+
+    /**
+     * Visits an entry of the directory being listed.
+     *
+     * @param parent  the directory being listed
+     * @param entry  the entry
+     * @return  what to do next
+     * @throws IOException  if the visitor throws it
+     */
+    private FileVisitResult visit(Frame parent, Path entry) throws IOException
+    {
+        Path name = entry.getFileName();
+        BasicFileAttributes attributes;
+        try
+        {
+            attributes = readAttributes(parent.stream, name);
+        }
+        catch(IOException e)
+        {
+            return visitor.visitFileFailed(entry, e);
+        }
+        if(frames.size() >= maxDepth || !attributes.isDirectory())
+        {
+            return visitor.visitFile(entry, attributes);
+        }
+        if(followLinks && isAncestor(entry, attributes.fileKey()))
+        {
+            return visitor.visitFileFailed(
+                    entry, new FileSystemLoopException(entry.toString()));
+        }
+
+        SecureDirectoryStream<Path> stream;
+        try
+        {
+            stream = parent.stream.newDirectoryStream(name, linkOptions);
+        }
+        catch(IOException e)
+        {
+            return visitor.visitFileFailed(entry, e);
+        }
+        return enter(entry, attributes, stream);
+    }
+
+
+    /**
+     * Starts visiting a directory.  Unless the visitor skips it, the
+     * directory is listed next.
+     *
+     * @param directory  the directory
+     * @param attributes  the attributes of the directory
+     * @param stream  the open directory, which is closed if the visitor
+     *                skips it
+     * @return  what to do next
+     * @throws IOException  if the visitor throws it
+     */
+    private FileVisitResult enter(Path directory,
+                                  BasicFileAttributes attributes,
+                                  SecureDirectoryStream<Path> stream)
+            throws IOException
+    {
+        FileVisitResult result;
+        try
+        {
+            result = visitor.preVisitDirectory(directory, attributes);
+        }
+        catch(IOException | RuntimeException | Error e)
+        {
+            stream.close();
+            throw e;
+        }
+
+        if(result == FileVisitResult.CONTINUE)
+        {
+            frames.push(new Frame(directory, attributes.fileKey(), stream));
+        }
+        else
+        {
+            stream.close();
+        }
+        return result;
+    }
+
+
+    /**
+     * Reads the attributes of the start of the walk.
+     *
+     * @param start  the entry to start from
+     * @return  its attributes (or those of a broken link itself)
+     * @throws IOException  if the attributes could not be read
+     */
+    private BasicFileAttributes readAttributes(Path start) throws IOException
+    {
+        try
+        {
+            return Files.readAttributes(start,
+                                        BasicFileAttributes.class,
+                                        linkOptions);
+        }
+        catch(IOException e)
+        {
+            if(!followLinks)
+            {
+                throw e;
+            }
+            try
+            {
+                return Files.readAttributes(start,
+                                            BasicFileAttributes.class,
+                                            LinkOption.NOFOLLOW_LINKS);
+            }
+            catch(IOException ignored)
+            {
+                throw e;
+            }
+        }
+    }
+
+
+    /**
+     * Reads the attributes of an entry relative to its open directory.
+     *
+     * @param directory  the open directory
+     * @param name  the name of the entry
+     * @return  its attributes (or those of a broken link itself)
+     * @throws IOException  if the attributes could not be read
+     */
+    private BasicFileAttributes readAttributes(
+            SecureDirectoryStream<Path> directory, Path name)
+            throws IOException
+    {
+        try
+        {
+            return directory.getFileAttributeView(name,
+                                                  BasicFileAttributeView.class,
+                                                  linkOptions)
+                            .readAttributes();
+        }
+        catch(IOException e)
+        {
+            if(!followLinks)
+            {
+                throw e;
+            }
+            try
+            {
+                return directory.getFileAttributeView(name,
+                                                      BasicFileAttributeView.class,
+                                                      LinkOption.NOFOLLOW_LINKS)
+                                .readAttributes();
+            }
+            catch(IOException ignored)
+            {
+                throw e;
+            }
+        }
+    }
+
+
+    /**
+     * Checks whether a directory is one of the directories being listed
+     * (so that following it would loop forever).
+     *
+     * @param directory  the directory
+     * @param fileKey  its file key (may be null)
+     * @return  true if the directory is an ancestor of itself
+     */
+    private boolean isAncestor(Path directory, Object fileKey)
+    {
+        for(Frame frame : frames)
+        {
+            if(fileKey != null && frame.fileKey != null)
+            {
+                if(fileKey.equals(frame.fileKey))
+                {
+                    return true;
+                }
+            }
+            else
+            {
+                try
+                {
+                    if(Files.isSameFile(directory, frame.directory))
+                    {
+                        return true;
+                    }
+                }
+                catch(IOException e)
+                {
+                    // Treat it as a different directory, as the JDK does.
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * @param start  the entry to start from
+     * @param followLinks  true to follow symbolic links
+     * @param maxDepth  the number of levels below the start to visit
+     * @param visitor  receives the entries
+     * @throws IOException  if the visitor throws it
+     */
+    private static void walkWithFiles(Path start,
+                                      boolean followLinks,
+                                      int maxDepth,
+                                      FileVisitor<? super Path> visitor)
+            throws IOException
+    {
+        Files.walkFileTree(start,
+                           followLinks
+                                   ? EnumSet.of(FileVisitOption.FOLLOW_LINKS)
+                                   : EnumSet.noneOf(FileVisitOption.class),
+                           maxDepth,
+                           visitor);
+    }
+
+
+    //--------------------------------------------------------------------
+    //  Helper Classes
+    //--------------------------------------------------------------------
+    /**
+     * A directory being listed.
+     */
+    private static final class Frame
+    {
+        /**
+         * The path of the directory.
+         */
+        final Path directory;
+
+        /**
+         * The file key of the directory (may be null).
+         */
+        final Object fileKey;
+
+        /**
+         * The open directory.
+         */
+        final SecureDirectoryStream<Path> stream;
+
+        /**
+         * The entries not yet visited.
+         */
+        final Iterator<Path> entries;
+
+        /**
+         * True if the visitor asked to skip the remaining entries.
+         */
+        boolean skipping = false;
+
+        /**
+         * Constructor
+         *
+         * @param directory  the path of the directory
+         * @param fileKey  the file key of the directory (may be null)
+         * @param stream  the open directory
+         */
+        Frame(Path directory, Object fileKey, SecureDirectoryStream<Path> stream)
+        {
+            this.directory = directory;
+            this.fileKey = fileKey;
+            this.stream = stream;
+            this.entries = stream.iterator();
+        }
+    }
+}
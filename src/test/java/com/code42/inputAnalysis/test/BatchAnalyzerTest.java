@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis.test;
+
+import com.code42.inputAnalysis.BatchAnalyzer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+/**
+ * The automated tests for the {@link BatchAnalyzer}.
+ */
+public class BatchAnalyzerTest
+{
+    /**
+     * The root of the test resources.
+     */
+    private static final String TEST_RESOURCES_PATH = "src" + File.separator +
+                                                      "test" + File.separator +
+                                                      "resources" + File.separator +
+                                                      "fileProcessor";
+
+
+    /**
+     * Runs a batch with good, bad, and blank requests and checks that each
+     * non-blank request gets exactly one result, in order.
+     *
+     * @throws Exception  fail if this is thrown
+     */
+    @Test
+    public void testResultsAreInRequestOrder() throws Exception
+    {
+        String givenSample = TEST_RESOURCES_PATH + File.separator +
+                             "givenSampleInput.txt";
+        String missing = TEST_RESOURCES_PATH + File.separator +
+                         "nonexistentFile";
+        String empty = TEST_RESOURCES_PATH + File.separator +
+                       "emptySampleInput.txt";
+        String requests = givenSample + "\tfoo\tbar\n" +
+                          "\n" +
+                          missing + "\n" +
+                          empty + "\n" +
+                          givenSample + "\n";
+
+        // When
+        ByteArrayOutputStream results = new ByteArrayOutputStream();
+        ByteArrayOutputStream summary = new ByteArrayOutputStream();
+        new BatchAnalyzer(3, null).run(
+                new BufferedReader(new StringReader(requests)),
+                new PrintStream(results, true),
+                new PrintStream(summary, true));
+
+        // Then
+        String[] lines = results.toString().split("\n");
+        Assert.assertEquals(4, lines.length);
+        Assert.assertEquals("1\tOK\t" + givenSample + "\t16.2\t3\tfoo=true\tbar=false",
+                            lines[0]);
+        Assert.assertTrue(lines[1].startsWith("2\tERROR\t" + missing + "\t"));
+        Assert.assertEquals("3\tOK\t" + empty + "\t0.0\t0", lines[2]);
+        Assert.assertEquals("4\tOK\t" + givenSample + "\t16.2\t3", lines[3]);
+
+        Assert.assertTrue(summary.toString().startsWith("Requests: 4 (1 failed)\n"));
+    }
+
+
+    /**
+     * Checks that a batch needs at least one worker.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoWorkers()
+    {
+        new BatchAnalyzer(0, null);
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis.test;
+
+import com.code42.inputAnalysis.DirectoryAnalyzer;
+import com.code42.inputAnalysis.FileProcessor;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipException;
+
+/**
+ * The automated tests for the {@link DirectoryAnalyzer}.
+ */
+public class DirectoryAnalyzerTest
+{
+    /**
+     * The directory tree to analyze.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Analyzes a tree with a file large enough to be split into many
+     * chunks, small and empty files, a file that does not match the
+     * pattern, and a file that cannot be read.  Each file must get the same
+     * statistics as analyzing it on its own, and the summary must match
+     * analyzing all of the files concatenated together.
+     *
+     * @throws Exception  fail if this is thrown
+     */
+    @Test
+    public void testMatchesAnalyzingEachFile() throws Exception
+    {
+        // Given
+        File root = temporaryFolder.getRoot();
+        File subdirectory = temporaryFolder.newFolder("sub");
+        byte[] large = generateLines(20000, 1);
+        byte[] small = generateLines(50, 2);
+        Path largeFile = write(new File(root, "large.txt"), large);
+        Path smallFile = write(new File(subdirectory, "small.txt"), small);
+        Path emptyFile = write(new File(subdirectory, "empty.txt"), new byte[0]);
+        write(new File(root, "ignored.dat"), small);
+        Path badFile = write(new File(subdirectory, "bad.txt"),
+                             new byte[] {0x28, (byte) 0xB5, 0x2F, (byte) 0xFD});
+
+        // When
+        DirectoryAnalyzer.Result result =
+                new DirectoryAnalyzer(4, StandardCharsets.UTF_8, 4096)
+                        .analyze(root.toPath(), "*.txt");
+
+        // Then
+        Assert.assertEquals(Arrays.asList(largeFile, emptyFile, smallFile),
+                            Arrays.asList(result.getFiles().keySet().toArray()));
+        for(Path path : result.getFiles().keySet())
+        {
+            FileProcessor expected = new FileProcessor(path.toFile(),
+                                                       StandardCharsets.UTF_8);
+            FileProcessor actual = result.getFiles().get(path);
+            Assert.assertEquals(path.toString(),
+                                expected.toString(), actual.toString());
+            Assert.assertEquals(expected.getCountOfNumbers(),
+                                actual.getCountOfNumbers());
+        }
+
+        Assert.assertEquals(1, result.getErrors().size());
+        Assert.assertTrue(result.getErrors().get(badFile) instanceof ZipException);
+
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        all.write(small);
+        all.write(large);
+        File combined = write(temporaryFolder.newFile("combined"),
+                              all.toByteArray()).toFile();
+        FileProcessor expectedSummary = new FileProcessor(combined,
+                                                          StandardCharsets.UTF_8);
+        Assert.assertEquals(expectedSummary.toString(),
+                            result.getSummary().toString());
+        Assert.assertEquals(expectedSummary.getTotal(),
+                            result.getSummary().getTotal(),
+                            0.0);
+    }
+
+
+    /**
+     * Analyzes files of random numbers (values whose sums overflow a long,
+     * values longer than a long, negative scales, and scales above 18) in
+     * small chunks, so that the sums of many chunks, and then of the files,
+     * are merged.  Each file's sum and the summary's must be the exact
+     * BigDecimal sum.
+     *
+     * @throws Exception  fail if this is thrown
+     */
+    @Test
+    public void testMergedSumsAreExact() throws Exception
+    {
+        // Given
+        File root = temporaryFolder.getRoot();
+        Random random = new Random(43);
+        Map<Path, BigDecimal> expected = new HashMap<>();
+        BigDecimal expectedTotal = BigDecimal.ZERO;
+        for(int k = 0; k < 3; k++)
+        {
+            StringBuilder lines = new StringBuilder();
+            BigDecimal sum = BigDecimal.ZERO;
+            for(int count = 0; count < 3000; count++)
+            {
+                String number = generateNumber(random);
+                lines.append(number).append('\n');
+                sum = sum.add(new BigDecimal(number));
+            }
+            Path file = write(new File(root, "numbers" + k + ".txt"),
+                              lines.toString().getBytes(StandardCharsets.US_ASCII));
+            expected.put(file, sum);
+            expectedTotal = expectedTotal.add(sum);
+        }
+
+        // When
+        DirectoryAnalyzer.Result result =
+                new DirectoryAnalyzer(4, StandardCharsets.US_ASCII, 1024)
+                        .analyze(root.toPath(), "*.txt");
+
+        // Then
+        Assert.assertEquals(expected.keySet(), result.getFiles().keySet());
+        for(Map.Entry<Path, BigDecimal> file : expected.entrySet())
+        {
+            Assert.assertEquals(file.getKey().toString(),
+                                String.format("  Sum of Numbers: %.2f",
+                                              file.getValue()),
+                                sumOf(result.getFiles().get(file.getKey())));
+        }
+        Assert.assertEquals(String.format("  Sum of Numbers: %.2f", expectedTotal),
+                            sumOf(result.getSummary()));
+    }
+
+
+    /**
+     * Checks that symbolic links to files, inside or outside the tree, are
+     * not analyzed.
+     *
+     * @throws Exception  fail if this is thrown
+     */
+    @Test
+    public void testSymbolicLinksAreNotFollowed() throws Exception
+    {
+        // Given
+        File root = temporaryFolder.newFolder("root");
+        File outside = temporaryFolder.newFolder("outside");
+        Path file = write(new File(root, "file.txt"), generateLines(50, 3));
+        Path outsideFile = write(new File(outside, "outside.txt"),
+                                 generateLines(50, 4));
+        try
+        {
+            Files.createSymbolicLink(root.toPath().resolve("inside-link.txt"),
+                                     file);
+            Files.createSymbolicLink(root.toPath().resolve("outside-link.txt"),
+                                     outsideFile);
+        }
+        catch(UnsupportedOperationException | IOException e)
+        {
+            Assume.assumeNoException(e);
+        }
+
+        // When
+        DirectoryAnalyzer.Result result =
+                new DirectoryAnalyzer(2, StandardCharsets.UTF_8)
+                        .analyze(root.toPath(), "*.txt");
+
+        // Then
+        Assert.assertEquals(Collections.singleton(file),
+                            result.getFiles().keySet());
+        Assert.assertEquals(new FileProcessor(file.toFile(),
+                                              StandardCharsets.UTF_8).toString(),
+                            result.getSummary().toString());
+    }
+
+
+    /**
+     * Checks that a subdirectory that cannot be listed is recorded as an
+     * error, and that the rest of the tree is still analyzed.
+     *
+     * @throws Exception  fail if this is thrown
+     */
+    @Test
+    public void testUnreadableDirectoryIsRecorded() throws Exception
+    {
+        // Given
+        File root = temporaryFolder.getRoot();
+        Path file = write(new File(root, "file.txt"), generateLines(50, 5));
+        File locked = temporaryFolder.newFolder("locked");
+        write(new File(locked, "hidden.txt"), generateLines(50, 6));
+        File after = temporaryFolder.newFolder("zzz");
+        Path afterFile = write(new File(after, "after.txt"), generateLines(50, 7));
+        boolean canLock = locked.setReadable(false) && !locked.canRead();
+        try
+        {
+            // Permissions don't stop the superuser.
+            Assume.assumeTrue(canLock);
+
+            // When
+            DirectoryAnalyzer.Result result =
+                    new DirectoryAnalyzer(2, StandardCharsets.UTF_8)
+                            .analyze(root.toPath(), "*.txt");
+
+            // Then
+            Assert.assertEquals(Arrays.asList(file, afterFile),
+                                Arrays.asList(result.getFiles().keySet().toArray()));
+            Assert.assertEquals(Collections.singleton(locked.toPath()),
+                                result.getErrors().keySet());
+            Assert.assertTrue(result.getErrors().get(locked.toPath())
+                                      instanceof AccessDeniedException);
+        }
+        finally
+        {
+            locked.setReadable(true);
+        }
+    }
+
+
+    /**
+     * Checks that the analyzer needs at least one worker.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoWorkers()
+    {
+        new DirectoryAnalyzer(0, null);
+    }
+
+
+    /**
+     * Generates a reproducible mix of numeric and non-numeric lines, with a
+     * mix of line breaks.  The last line always ends with '\n'.
+     *
+     * @param lineCount  the number of lines to generate
+     * @param seed  the seed for the random numbers
+     * @return  the lines, encoded as UTF-8
+     */
+    private static byte[] generateLines(int lineCount, long seed)
+    {
+        String[] lineBreaks = {"\n", "\n", "\r\n", "\r"};
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder();
+        for(int k = 0; k < lineCount; k++)
+        {
+            if(random.nextBoolean())
+            {
+                builder.append(random.nextInt(100000) / 100.0);
+            }
+            else
+            {
+                builder.append("line\u00e9").append(random.nextInt(500));
+            }
+            builder.append(lineBreaks[random.nextInt(lineBreaks.length)]);
+        }
+        builder.append("last\n");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * @param random  the random number generator
+     * @return  a random number: usually a few digits at a small scale, but
+     *          sometimes near the limits of a long, longer than a long, or
+     *          with a negative or very large scale
+     */
+    private static String generateNumber(Random random)
+    {
+        BigDecimal number;
+        switch(random.nextInt(8))
+        {
+            case 0:
+                // 18 digits, positive and at one of a few scales, so that
+                // sums of plain numbers overflow.
+                return BigDecimal.valueOf(999999999999999999L - random.nextInt(1000),
+                                          random.nextInt(3)).toPlainString();
+            case 1:
+                // More digits than a long holds.
+                number = new BigDecimal(new BigInteger(64 + random.nextInt(64), random),
+                                        random.nextInt(30));
+                break;
+            case 2:
+                // A negative scale, written with an exponent.
+                return (random.nextBoolean() ? "-" : "") +
+                       new BigDecimal(BigInteger.valueOf(random.nextInt(1000) + 1),
+                                      -random.nextInt(6) - 1);
+            case 3:
+                // A large scale, with enough digits to show in the sum.
+                number = new BigDecimal(new BigInteger(100, random),
+                                        19 + random.nextInt(10));
+                break;
+            default:
+                number = BigDecimal.valueOf(random.nextInt(2000000) - 1000000,
+                                            random.nextInt(4));
+                break;
+        }
+        if(random.nextBoolean())
+        {
+            number = number.negate();
+        }
+        return number.toPlainString();
+    }
+
+
+    /**
+     * @param processor  the statistics of a file
+     * @return  the line of the report that holds the sum
+     */
+    private static String sumOf(FileProcessor processor)
+    {
+        String report = processor.toString();
+        return report.substring(0, report.indexOf('\n'));
+    }
+
+
+    /**
+     * @param file  the file to write
+     * @param content  the content of the file
+     * @return  the path of the file
+     * @throws IOException  if the file could not be written
+     */
+    private static Path write(File file, byte[] content) throws IOException
+    {
+        return Files.write(file.toPath(), content);
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis.test;
+
+import com.code42.inputAnalysis.FileAnalyzer;
+import com.code42.inputAnalysis.FileProcessor;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The automated tests for the {@link FileAnalyzer}.
+ */
+public class FileAnalyzerTest
+{
+    /**
+     * The most bytes that may be allocated per numeric line.  The result's
+     * copy of the numbers takes 8 bytes per number; everything else is per
+     * file.
+     */
+    private static final double MAX_BYTES_PER_NUMERIC_LINE = 16;
+
+    /**
+     * The system property that sets the read size.
+     */
+    private static final String READ_SIZE_PROPERTY = "com.code42.inputAnalysis.readSize";
+
+    /**
+     * The number of files of random numbers whose sums are checked.
+     */
+    private static final int SUM_FILE_COUNT = 50;
+
+    /**
+     * Holds the test files.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Analyzes several different files, one after another, with the same
+     * analyzer and checks that each matches a {@link FileProcessor} of the
+     * same file.  The files include numbers that do not fit the fast path
+     * (exponents, more than 18 digits, scales that cannot be shared),
+     * things that are almost numbers, a compressed file, and one in a
+     * charset that is not ASCII-compatible.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testReusedAnalyzerMatchesFileProcessor() throws IOException
+    {
+        String edgeCases = "1\n2.5\n+.5\n5.\n-0\n-0.000\n.\n-\n+\n\n1 \n" +
+                           "1E+3\n1e-2\n0x10\n1.2.3\n--1\n" +
+                           "123456789012345678\n1234567890123456789\n" +
+                           "-999999999999999999\n0.000000000000000001\n" +
+                           "99999999999999999.9\nNaN\nInfinity\nabc\n" +
+                           "caf\u00e9\n12\u0663\n";
+        File[] files = {
+                write("mixed.txt", generateLines(new Random(1), 5000),
+                      StandardCharsets.UTF_8),
+                write("edges.txt", edgeCases, StandardCharsets.UTF_8),
+                write("numbers.txt", generateLines(new Random(2), 20000),
+                      StandardCharsets.UTF_8),
+                write("utf16.txt", edgeCases, StandardCharsets.UTF_16),
+                gzip("mixed.txt.gz", generateLines(new Random(3), 3000)),
+                temporaryFolder.newFile("empty.txt")
+        };
+
+        FileAnalyzer utf8Analyzer = new FileAnalyzer(StandardCharsets.UTF_8, null);
+        FileAnalyzer utf16Analyzer = new FileAnalyzer(StandardCharsets.UTF_16, null);
+        for(int pass = 0; pass < 2; pass++)
+        {
+            for(File file : files)
+            {
+                boolean utf16 = file.getName().startsWith("utf16");
+                Charset charset = utf16 ? StandardCharsets.UTF_16
+                                        : StandardCharsets.UTF_8;
+                FileProcessor expected = new FileProcessor(file, charset);
+                FileProcessor actual = (utf16 ? utf16Analyzer : utf8Analyzer)
+                                               .analyze(file);
+
+                Assert.assertEquals(file.getName(),
+                                    expected.toString(), actual.toString());
+                Assert.assertEquals(expected.getCountOfNumbers(),
+                                    actual.getCountOfNumbers());
+                Assert.assertEquals(expected.getTotal(), actual.getTotal(), 0);
+                Assert.assertEquals(expected.getMalformedLineCount(),
+                                    actual.getMalformedLineCount());
+                Assert.assertEquals(expected.contains("abc"),
+                                    actual.contains("abc"));
+            }
+        }
+    }
+
+
+    /**
+     * Checks that the read size (the smallest, the default, and chosen per
+     * file) does not change the results, including for lines that span
+     * reads.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testReadSizeDoesNotChangeResults() throws IOException
+    {
+        // Given
+        File small = write("small.txt", generateLines(new Random(5), 10),
+                           StandardCharsets.UTF_8);
+        File large = write("large.txt", generateLines(new Random(6), 50000),
+                           StandardCharsets.UTF_8);
+        int[] readSizes = { 4 * 1024, 64 * 1024, FileAnalyzer.AUTO_READ_SIZE };
+
+        for(File file : new File[] { large, small, large })
+        {
+            FileProcessor expected = new FileProcessor(file, StandardCharsets.UTF_8);
+            for(int readSize : readSizes)
+            {
+                // When
+                FileProcessor actual = new FileAnalyzer(StandardCharsets.UTF_8,
+                                                        null,
+                                                        readSize).analyze(file);
+
+                // Then
+                Assert.assertEquals(file.getName() + " read " + readSize,
+                                    expected.toString(), actual.toString());
+            }
+        }
+    }
+
+
+    /**
+     * Checks that an analyzer that was not given a read size reads the
+     * read size property as it opens each file, so that a change after the
+     * analyzer is created applies to its next file, and that an invalid
+     * value is rejected.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testReadSizePropertyIsReadPerFile() throws IOException
+    {
+        // Given
+        String property = READ_SIZE_PROPERTY;
+        File file = write("lines.txt", generateLines(new Random(7), 5000),
+                          StandardCharsets.UTF_8);
+        String expected = new FileProcessor(file, StandardCharsets.UTF_8).toString();
+        FileAnalyzer analyzer = new FileAnalyzer(StandardCharsets.UTF_8, null);
+
+        try
+        {
+            // When
+            System.setProperty(property, "not a size");
+            try
+            {
+                analyzer.analyze(file);
+                Assert.fail("An invalid read size should be rejected.");
+            }
+            catch(IllegalArgumentException e)
+            {
+                // Then
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains(property));
+            }
+
+            // When
+            System.setProperty(property, "4k");
+
+            // Then
+            Assert.assertEquals(expected, analyzer.analyze(file).toString());
+        }
+        finally
+        {
+            System.clearProperty(property);
+        }
+    }
+
+
+    /**
+     * Checks the values of the read size property that are accepted (and
+     * give the same results), and that values that are not sizes, are out
+     * of range, or overflow when multiplied out are rejected by both the
+     * {@link FileAnalyzer} and the {@link FileProcessor}, rather than
+     * replaced by the default.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testReadSizePropertyValues() throws IOException
+    {
+        // Given
+        File file = write("lines.txt", generateLines(new Random(8), 5000),
+                          StandardCharsets.UTF_8);
+        String expected = new FileProcessor(file, StandardCharsets.UTF_8).toString();
+        String[] valid = {"4096", "64k", " 1M ", "8m", "Auto", ""};
+        String[] invalid = {"k", "abc", "64kb", "1.5m", "-64k", "4095", "9m",
+                            "9223372036854775807k", "99999999999999999999"};
+
+        try
+        {
+            for(String value : valid)
+            {
+                // When
+                System.setProperty(READ_SIZE_PROPERTY, value);
+
+                // Then
+                Assert.assertEquals(value, expected,
+                                    new FileAnalyzer(StandardCharsets.UTF_8, null)
+                                            .analyze(file).toString());
+                Assert.assertEquals(value, expected,
+                                    new FileProcessor(file, StandardCharsets.UTF_8)
+                                            .toString());
+            }
+
+            for(String value : invalid)
+            {
+                // When
+                System.setProperty(READ_SIZE_PROPERTY, value);
+
+                // Then
+                try
+                {
+                    new FileAnalyzer(StandardCharsets.UTF_8, null).analyze(file);
+                    Assert.fail("\"" + value + "\" should be rejected.");
+                }
+                catch(IllegalArgumentException e)
+                {
+                    Assert.assertTrue(e.getMessage(),
+                                      e.getMessage().contains(READ_SIZE_PROPERTY));
+                }
+                try
+                {
+                    new FileProcessor(file, StandardCharsets.UTF_8);
+                    Assert.fail("\"" + value + "\" should be rejected.");
+                }
+                catch(IllegalArgumentException e)
+                {
+                    Assert.assertTrue(e.getMessage(),
+                                      e.getMessage().contains(READ_SIZE_PROPERTY));
+                }
+            }
+        }
+        finally
+        {
+            System.clearProperty(READ_SIZE_PROPERTY);
+        }
+    }
+
+
+    /**
+     * Checks that an invalid read size is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooSmallReadSizeIsRejected()
+    {
+        new FileAnalyzer(StandardCharsets.UTF_8, null, 16);
+    }
+
+
+    /**
+     * Checks the limits of the read size given to the constructor.
+     */
+    @Test
+    public void testReadSizeLimits()
+    {
+        int[] valid = {4 * 1024, 8 * 1024 * 1024, FileAnalyzer.AUTO_READ_SIZE};
+        for(int readSize : valid)
+        {
+            new FileAnalyzer(StandardCharsets.UTF_8, null, readSize);
+        }
+
+        int[] invalid = {4 * 1024 - 1, 8 * 1024 * 1024 + 1, -1};
+        for(int readSize : invalid)
+        {
+            try
+            {
+                new FileAnalyzer(StandardCharsets.UTF_8, null, readSize);
+                Assert.fail(readSize + " should be rejected.");
+            }
+            catch(IllegalArgumentException e)
+            {
+                // Expected.
+            }
+        }
+    }
+
+
+    /**
+     * Sums files of random numbers that mix small and huge values, values
+     * whose sums overflow a long, negative scales, and scales above 18,
+     * both as plain numbers (which are parsed straight into longs) and in
+     * forms that are not.  The sum must be the exact BigDecimal sum.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testSumsAreExact() throws IOException
+    {
+        Random random = new Random(43);
+        FileAnalyzer analyzer = new FileAnalyzer(StandardCharsets.US_ASCII, null);
+        for(int k = 0; k < SUM_FILE_COUNT; k++)
+        {
+            // Given
+            StringBuilder lines = new StringBuilder();
+            BigDecimal expected = BigDecimal.ZERO;
+            for(int count = random.nextInt(400); count > 0; count--)
+            {
+                String number = generateNumber(random);
+                lines.append(number).append('\n');
+                expected = expected.add(new BigDecimal(number));
+            }
+            File file = write("sum" + k + ".txt", lines.toString(),
+                              StandardCharsets.US_ASCII);
+
+            // When
+            FileProcessor analyzed = analyzer.analyze(file);
+            FileProcessor processed = new FileProcessor(file,
+                                                        StandardCharsets.US_ASCII);
+
+            // Then
+            String expectedSum = String.format("  Sum of Numbers: %.2f", expected);
+            Assert.assertEquals(file.getName(), expectedSum, sumOf(analyzed));
+            Assert.assertEquals(file.getName(), expectedSum, sumOf(processed));
+        }
+    }
+
+
+    /**
+     * Checks that analyzing a file of numbers allocates next to nothing per
+     * line once the analyzer's arrays have grown to fit.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testNumericLinesDoNotAllocate() throws IOException
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations =
+                (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        // Given
+        int lineCount = 200000;
+        Random random = new Random(4);
+        StringBuilder lines = new StringBuilder();
+        for(int k = 0; k < lineCount; k++)
+        {
+            lines.append(random.nextInt(2000000) - 1000000);
+            if(random.nextBoolean())
+            {
+                lines.append('.').append(random.nextInt(100));
+            }
+            lines.append('\n');
+        }
+        File file = write("numbers.txt", lines.toString(), StandardCharsets.US_ASCII);
+        FileAnalyzer analyzer = new FileAnalyzer(StandardCharsets.US_ASCII, null);
+        for(int k = 0; k < 3; k++)
+        {
+            analyzer.analyze(file);
+        }
+
+        // When
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        FileProcessor processor = analyzer.analyze(file);
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        // Then
+        Assert.assertEquals(lineCount, processor.getCountOfNumbers());
+        double bytesPerLine = (double) allocated / lineCount;
+        Assert.assertTrue("Allocated " + bytesPerLine + " bytes per line.",
+                          bytesPerLine < MAX_BYTES_PER_NUMERIC_LINE);
+    }
+
+
+    /**
+     * @param random  the random number generator
+     * @param count  the number of lines to generate
+     * @return  mostly numbers (with varying scales), with some repeated
+     *          strings
+     */
+    private static String generateLines(Random random, int count)
+    {
+        StringBuilder lines = new StringBuilder();
+        for(int k = 0; k < count; k++)
+        {
+            switch(random.nextInt(6))
+            {
+                case 0:
+                    lines.append("word").append(random.nextInt(50));
+                    break;
+                case 1:
+                    lines.append(random.nextInt(1000)).append('.')
+                         .append(random.nextInt(1000));
+                    break;
+                case 2:
+                    lines.append(random.nextLong());
+                    break;
+                default:
+                    lines.append(random.nextInt(200) - 100);
+                    break;
+            }
+            lines.append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+        return lines.toString();
+    }
+
+
+    /**
+     * @param random  the random number generator
+     * @return  a random number: usually a few digits at a small scale, but
+     *          sometimes near the limits of a long, longer than a long, or
+     *          with a negative or very large scale
+     */
+    private static String generateNumber(Random random)
+    {
+        BigDecimal number;
+        switch(random.nextInt(8))
+        {
+            case 0:
+                // 18 digits, positive and at one of a few scales, so that
+                // sums of plain numbers overflow.
+                return BigDecimal.valueOf(999999999999999999L - random.nextInt(1000),
+                                          random.nextInt(3)).toPlainString();
+            case 1:
+                // More digits than a long holds.
+                number = new BigDecimal(new BigInteger(64 + random.nextInt(64), random),
+                                        random.nextInt(30));
+                break;
+            case 2:
+                // A negative scale, written with an exponent.
+                return (random.nextBoolean() ? "-" : "") +
+                       new BigDecimal(BigInteger.valueOf(random.nextInt(1000) + 1),
+                                      -random.nextInt(6) - 1);
+            case 3:
+                // A large scale, with enough digits to show in the sum.
+                number = new BigDecimal(new BigInteger(100, random),
+                                        19 + random.nextInt(10));
+                break;
+            default:
+                number = BigDecimal.valueOf(random.nextInt(2000000) - 1000000,
+                                            random.nextInt(4));
+                break;
+        }
+        if(random.nextBoolean())
+        {
+            number = number.negate();
+        }
+        return number.toPlainString();
+    }
+
+
+    /**
+     * @param processor  the statistics of a file
+     * @return  the line of the report that holds the sum
+     */
+    private static String sumOf(FileProcessor processor)
+    {
+        String report = processor.toString();
+        return report.substring(0, report.indexOf('\n'));
+    }
+
+
+    /**
+     * @param name  the name of the file to create
+     * @param content  the lines to write to it
+     * @param charset  the charset to encode them with
+     * @return  the file
+     * @throws IOException  if the file could not be written
+     */
+    private File write(String name, String content, Charset charset)
+            throws IOException
+    {
+        File file = temporaryFolder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(charset));
+        return file;
+    }
+
+
+    /**
+     * @param name  the name of the file to create
+     * @param content  the lines to compress into it (as UTF-8)
+     * @return  the file
+     * @throws IOException  if the file could not be written
+     */
+    private File gzip(String name, String content) throws IOException
+    {
+        File file = temporaryFolder.newFile(name);
+        try( OutputStream output =
+                     new GZIPOutputStream(Files.newOutputStream(file.toPath())) )
+        {
+            output.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+}
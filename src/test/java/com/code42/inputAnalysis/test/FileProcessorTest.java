@@ -10,13 +10,39 @@
 package com.code42.inputAnalysis.test;
 
 import com.code42.inputAnalysis.FileProcessor;
+import com.code42.inputAnalysis.ProcessorStatistics;
+import com.code42.output.OutputFormat;
+import com.code42.output.RecordWriter;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
 
 /**
  * The automated tests for the {@link FileProcessor}.  This focuses primarily
@@ -41,6 +67,12 @@ public class FileProcessorTest
      */
     private static final double ALLOWED_DELTA = 1e-15;
 
+    /**
+     * A scratch directory for tests that need to generate their input.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 
 
     /**
@@ -218,4 +250,798 @@ public class FileProcessorTest
         // Check for an empty string
         Assert.assertEquals(false, processor.contains(""));
     }
+
+
+    /**
+     * Checks that the metrics listener is told about the lines and bytes
+     * in the given sample input.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testMetricsWithGivenSampleInput() throws IOException
+    {
+        String testFileName = "givenSampleInput.txt";
+
+        // Given
+        File inputFile = new File(TEST_RESOURCES_PATH +
+                                          File.separator +
+                                          testFileName);
+        ProcessorStatistics statistics = new ProcessorStatistics();
+        FileProcessor processor = new FileProcessor(inputFile, statistics);
+
+        // Then -- the file has 3 numbers out of 7 lines.
+        Assert.assertEquals(1, statistics.getFilesProcessed());
+        Assert.assertEquals(inputFile.length(), statistics.getBytesRead());
+        Assert.assertEquals(7, statistics.getLinesRead());
+        Assert.assertEquals(3, statistics.getNumericLines());
+        Assert.assertEquals(4, statistics.getStringLines());
+        Assert.assertEquals(4, statistics.getParseFailures());
+        Assert.assertEquals(0, statistics.getReportsRendered());
+
+        // Rendering the report is counted each time.
+        processor.toString();
+        processor.toString();
+        Assert.assertEquals(2, statistics.getReportsRendered());
+    }
+
+
+    /**
+     * Checks that UTF-8 input with every newline format is split and
+     * decoded correctly.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testUtf8WithMixedNewlines() throws IOException
+    {
+        // Given -- "\r\n", "\r", and "\n" endings with no final newline.
+        File inputFile = temporaryFolder.newFile("mixedNewlines.txt");
+        String content = "1\r\nh\u00e9llo\r2.5\n\u65e5\u672c\r\n\r\nh\u00e9llo";
+        Files.write(inputFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+        FileProcessor processor = new FileProcessor(inputFile,
+                                                    StandardCharsets.UTF_8);
+
+        // Then
+        String expectedOutput = "  Sum of Numbers: 3.50\n" +
+                "  Average of Numbers: 1.75\n" +
+                "  Median of Numbers: 1.75\n" +
+                "  Percent of lines that are numbers: 33.33\n" +
+                "  Non-numeric strings in file (with count):\n" +
+                "    \u65e5\u672c:1\n" +
+                "    h\u00e9llo:2\n" +
+                "    :1\n";
+        Assert.assertEquals(expectedOutput, processor.toString());
+        Assert.assertEquals(0, processor.getMalformedLineCount());
+    }
+
+
+    /**
+     * Checks that bytes that are not valid UTF-8 are counted rather than
+     * aborting the parse or being silently replaced.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testMalformedUtf8IsCounted() throws IOException
+    {
+        // Given -- 0xFF can never appear in UTF-8.
+        File inputFile = temporaryFolder.newFile("malformed.txt");
+        byte[] content = {'4', '\n', 'a', (byte) 0xFF, 'b', '\n', 'c', '\n'};
+        Files.write(inputFile.toPath(), content);
+
+        FileProcessor processor = new FileProcessor(inputFile,
+                                                    StandardCharsets.UTF_8);
+
+        // Then
+        Assert.assertEquals(1, processor.getMalformedLineCount());
+        Assert.assertEquals(1, processor.getCountOfNumbers());
+        Assert.assertEquals(true, processor.contains("a\ufffdb"));
+        Assert.assertEquals(true, processor.contains("c"));
+    }
+
+
+    /**
+     * Checks that a charset that is not ASCII-compatible (UTF-16) gives the
+     * same statistics as the same text in UTF-8.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testUtf16MatchesUtf8() throws IOException
+    {
+        String content = "7\r\nfoo\r\n\u00fcber\n-3\rfoo";
+
+        File utf8File = temporaryFolder.newFile("utf8.txt");
+        Files.write(utf8File.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        File utf16File = temporaryFolder.newFile("utf16.txt");
+        Files.write(utf16File.toPath(),
+                    content.getBytes(StandardCharsets.UTF_16));
+
+        FileProcessor utf8 = new FileProcessor(utf8File,
+                                               StandardCharsets.UTF_8);
+        FileProcessor utf16 = new FileProcessor(utf16File,
+                                                StandardCharsets.UTF_16);
+
+        Assert.assertEquals(utf8.toString(), utf16.toString());
+        Assert.assertEquals(0, utf16.getMalformedLineCount());
+    }
+
+
+    /**
+     * Checks that lines longer than the read buffer, and a "\r\n" that is
+     * split between two reads, are handled.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testLinesSpanningReads() throws IOException
+    {
+        // Given -- a line that ends with the "\r" as the last byte of the
+        // first 64K read.
+        char[] longLine = new char[64 * 1024 - 1];
+        Arrays.fill(longLine, 'x');
+        String content = new String(longLine) + "\r\n5\n" +
+                         new String(longLine) + new String(longLine);
+        File inputFile = temporaryFolder.newFile("longLines.txt");
+        Files.write(inputFile.toPath(),
+                    content.getBytes(StandardCharsets.US_ASCII));
+
+        FileProcessor processor = new FileProcessor(inputFile,
+                                                    StandardCharsets.US_ASCII);
+
+        // Then -- if the "\n" were treated as its own line, we would see an
+        // empty string.
+        Assert.assertEquals(true, processor.contains(new String(longLine)));
+        Assert.assertEquals(true, processor.contains(new String(longLine) +
+                                                     new String(longLine)));
+        Assert.assertEquals(false, processor.contains(""));
+        Assert.assertEquals(1, processor.getCountOfNumbers());
+    }
+
+
+    /**
+     * Checks that a gzip-compressed copy of the given sample input gives
+     * exactly the same statistics as the original.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testGzipMatchesUncompressed() throws IOException
+    {
+        File inputFile = new File(TEST_RESOURCES_PATH +
+                                          File.separator +
+                                          "givenSampleInput.txt");
+        byte[] content = Files.readAllBytes(inputFile.toPath());
+
+        File gzipFile = temporaryFolder.newFile("givenSampleInput.txt.gz");
+        try( OutputStream output = new GZIPOutputStream(
+                Files.newOutputStream(gzipFile.toPath())) )
+        {
+            output.write(content);
+        }
+
+        FileProcessor plain = new FileProcessor(inputFile);
+        FileProcessor compressed = new FileProcessor(gzipFile);
+        Assert.assertEquals(plain.toString(), compressed.toString());
+        Assert.assertEquals(true, compressed.contains("foo"));
+    }
+
+
+    /**
+     * Checks that gzip files made of several members (including members that
+     * split a line in two) give the same statistics as the original.  This
+     * covers both concatenated gzip files and BGZF files, whose members are
+     * decompressed in parallel.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testMultiMemberGzipMatchesUncompressed() throws IOException
+    {
+        // Given -- enough lines that there are many members.
+        byte[] content = generateMixedLines(20000);
+        File plainFile = temporaryFolder.newFile("mixed.txt");
+        Files.write(plainFile.toPath(), content);
+
+        // Concatenated members, split every 10000 bytes.
+        ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        for(int start = 0; start < content.length; start += 10000)
+        {
+            GZIPOutputStream member = new GZIPOutputStream(concatenated);
+            member.write(content, start,
+                         Math.min(10000, content.length - start));
+            member.finish();
+        }
+        File concatenatedFile = temporaryFolder.newFile("concatenated.gz");
+        Files.write(concatenatedFile.toPath(), concatenated.toByteArray());
+
+        File bgzfFile = temporaryFolder.newFile("mixed.bgz");
+        Files.write(bgzfFile.toPath(), toBgzf(content, 30000));
+
+        // Then
+        String expectedOutput = new FileProcessor(plainFile).toString();
+        Assert.assertEquals(expectedOutput,
+                            new FileProcessor(concatenatedFile).toString());
+        Assert.assertEquals(expectedOutput,
+                            new FileProcessor(bgzfFile).toString());
+    }
+
+
+    /**
+     * Checks that a corrupt BGZF member is reported rather than silently
+     * dropped.
+     *
+     * @throws IOException  we expect a ZipException
+     */
+    @Test(expected = ZipException.class)
+    public void testCorruptBgzfIsReported() throws IOException
+    {
+        byte[] compressed = toBgzf(generateMixedLines(1000), 4000);
+
+        // Flip a bit in the CRC of the first member.
+        int firstMemberSize = ((compressed[16] & 0xFF) |
+                               ((compressed[17] & 0xFF) << 8)) + 1;
+        compressed[firstMemberSize - 8] ^= 1;
+
+        File bgzfFile = temporaryFolder.newFile("corrupt.bgz");
+        Files.write(bgzfFile.toPath(), compressed);
+        new FileProcessor(bgzfFile);
+    }
+
+
+    /**
+     * Checks that a BGZF member whose trailer claims more data than a BGZF
+     * member can hold (here, a negative size) is reported as corrupt
+     * before anything is allocated for it.
+     *
+     * @throws IOException  we expect a ZipException
+     */
+    @Test(expected = ZipException.class)
+    public void testOversizedBgzfIsReported() throws IOException
+    {
+        byte[] compressed = toBgzf(generateMixedLines(1000), 4000);
+
+        // Set the uncompressed size of the first member to 0xFFFFFFFF.
+        int firstMemberSize = ((compressed[16] & 0xFF) |
+                               ((compressed[17] & 0xFF) << 8)) + 1;
+        for(int k = firstMemberSize - 4; k < firstMemberSize; k++)
+        {
+            compressed[k] = (byte) 0xFF;
+        }
+
+        File bgzfFile = temporaryFolder.newFile("oversized.bgz");
+        Files.write(bgzfFile.toPath(), compressed);
+        new FileProcessor(bgzfFile);
+    }
+
+
+    /**
+     * Checks that a BGZF member whose header claims a block too small to
+     * hold the header and trailer is reported as corrupt.
+     *
+     * @throws IOException  we expect a ZipException
+     */
+    @Test(expected = ZipException.class)
+    public void testUndersizedBgzfIsReported() throws IOException
+    {
+        byte[] compressed = toBgzf(generateMixedLines(1000), 4000);
+
+        // Set the block size of the first member to 1 (BSIZE is the size
+        // less 1).
+        compressed[16] = 0;
+        compressed[17] = 0;
+
+        File bgzfFile = temporaryFolder.newFile("undersized.bgz");
+        Files.write(bgzfFile.toPath(), compressed);
+        new FileProcessor(bgzfFile);
+    }
+
+
+    /**
+     * Generates a reproducible mix of numeric and non-numeric lines.
+     *
+     * @param lineCount  the number of lines to generate
+     * @return  the lines, encoded as ASCII
+     */
+    private static byte[] generateMixedLines(int lineCount)
+    {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+        for(int k = 0; k < lineCount; k++)
+        {
+            if(random.nextBoolean())
+            {
+                builder.append(random.nextInt(100000) / 100.0);
+            }
+            else
+            {
+                builder.append("line").append(random.nextInt(500));
+            }
+            builder.append(random.nextInt(10) == 0 ? "\r\n" : "\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    /**
+     * Compresses data as BGZF: a series of gzip members, each carrying its
+     * own compressed size in a "BC" extra field.
+     *
+     * @param content  the data to compress
+     * @param blockSize  the number of uncompressed bytes per member
+     * @return  the compressed data
+     */
+    private static byte[] toBgzf(byte[] content, int blockSize)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] deflated = new byte[blockSize * 2 + 64];
+        for(int start = 0; start < content.length; start += blockSize)
+        {
+            int length = Math.min(blockSize, content.length - start);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(content, start, length);
+            deflater.finish();
+            int deflatedLength = deflater.deflate(deflated);
+            deflater.end();
+
+            CRC32 crc = new CRC32();
+            crc.update(content, start, length);
+
+            int memberSize = 18 + deflatedLength + 8;
+            byte[] header = {0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF,
+                             6, 0, 'B', 'C', 2, 0,
+                             (byte) (memberSize - 1), (byte) ((memberSize - 1) >> 8)};
+            output.write(header, 0, header.length);
+            output.write(deflated, 0, deflatedLength);
+            writeIntLittleEndian(output, (int) crc.getValue());
+            writeIntLittleEndian(output, length);
+        }
+        return output.toByteArray();
+    }
+
+
+    /**
+     * @param output  the stream to write to
+     * @param value  the value to write as 4 little-endian bytes
+     */
+    private static void writeIntLittleEndian(ByteArrayOutputStream output,
+                                             int value)
+    {
+        for(int k = 0; k < 4; k++)
+        {
+            output.write(value >>> (8 * k));
+        }
+    }
+
+
+    /**
+     * Checks the machine-readable records for the given sample input.  The
+     * strings must come out in the same order as in the printed report.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testRecordsWithGivenSampleInput() throws IOException
+    {
+        String testFileName = "givenSampleInput.txt";
+        String expectedOutput = "file,givenSampleInput.txt,7,3,0,16.20,5.40,5.00,42.86,3\r\n" +
+                "string,givenSampleInput.txt,The quick brown fox,1\r\n" +
+                "string,givenSampleInput.txt,jumped over the lazy dog.,1\r\n" +
+                "string,givenSampleInput.txt,foo,2\r\n";
+
+        // Given
+        File inputFile = new File(TEST_RESOURCES_PATH +
+                                          File.separator +
+                                          testFileName);
+        FileProcessor processor = new FileProcessor(inputFile);
+
+        // When
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RecordWriter writer = OutputFormat.CSV.newWriter(output);
+        processor.writeRecords(writer);
+        writer.close();
+
+        // Then
+        Assert.assertEquals(expectedOutput,
+                            new String(output.toByteArray(),
+                                       StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * Checks that the records for an empty file leave the undefined
+     * statistics empty.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testRecordsWithEmptyFile() throws IOException
+    {
+        File inputFile = new File(TEST_RESOURCES_PATH +
+                                          File.separator +
+                                          "emptySampleInput.txt");
+        FileProcessor processor = new FileProcessor(inputFile);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RecordWriter writer = OutputFormat.JSON_LINES.newWriter(output);
+        processor.writeRecords(writer);
+        writer.close();
+
+        Assert.assertEquals("{\"type\":\"file\",\"name\":\"emptySampleInput.txt\"," +
+                            "\"lines\":0,\"numbers\":0,\"malformedLines\":0," +
+                            "\"sum\":0.00,\"average\":null,\"median\":null," +
+                            "\"percentNumbers\":null,\"distinctStrings\":0}\n",
+                            new String(output.toByteArray(),
+                                       StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * Checks that the percent of lines that are numbers is rounded the same
+     * way in the records as in the printed report.  201 of 20000 is 1.005,
+     * which as a double is just below 1.005.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testRecordPercentMatchesReport() throws IOException
+    {
+        // Given
+        String[] lines = new String[20000];
+        for(int k = 0; k < lines.length; k++)
+        {
+            lines[k] = (k < 201) ? Integer.toString(k) : "word";
+        }
+        FileProcessor processor = FileProcessor.builder()
+                                               .build(Arrays.stream(lines));
+
+        // When
+        String records = new String(toRecords(processor), StandardCharsets.UTF_8);
+
+        // Then
+        Assert.assertTrue(processor.toString(),
+                          processor.toString().contains(
+                                  "Percent of lines that are numbers: 1.01\n"));
+        Assert.assertTrue(records, records.contains("\"percentNumbers\":1.01,"));
+    }
+
+
+    /**
+     * Checks that sorting the strings on disk (forced with a tiny memory
+     * threshold) gives exactly the same report and records as sorting them
+     * in memory, including for strings that only differ by case, and that
+     * streaming the report gives the same report as formatting it.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testSpilledSortMatchesInMemorySort() throws IOException
+    {
+        // Given
+        Random random = new Random(7);
+        StringBuilder builder = new StringBuilder();
+        for(int k = 0; k < 5000; k++)
+        {
+            String value = "Value" + random.nextInt(2000);
+            builder.append(random.nextBoolean() ? value.toUpperCase() : value)
+                   .append('\n');
+        }
+        File inputFile = temporaryFolder.newFile("manyStrings.txt");
+        Files.write(inputFile.toPath(),
+                    builder.toString().getBytes(StandardCharsets.US_ASCII));
+        FileProcessor processor = new FileProcessor(inputFile);
+
+        String expectedReport = processor.toString();
+        byte[] expectedRecords = toRecords(processor);
+
+        // When
+        String property = "com.code42.inputAnalysis.sortMemoryThreshold";
+        int spillFileCount = countSpillFiles();
+        System.setProperty(property, "4096");
+        String report;
+        byte[] records;
+        StringWriter streamedReport = new StringWriter();
+        try
+        {
+            report = processor.toString();
+            records = toRecords(processor);
+            processor.writeFileStatistics(streamedReport);
+        }
+        finally
+        {
+            System.clearProperty(property);
+        }
+
+        // Then
+        Assert.assertEquals(expectedReport, report);
+        Assert.assertEquals(expectedReport, streamedReport.toString());
+        Assert.assertArrayEquals(expectedRecords, records);
+        Assert.assertEquals("The spilled runs should be deleted.",
+                            spillFileCount, countSpillFiles());
+    }
+
+
+    /**
+     * Checks that a failure of the output a report is streamed to is
+     * reported rather than lost (as a Formatter would).
+     *
+     * @throws IOException  we expect this
+     */
+    @Test(expected = IOException.class)
+    public void testStreamedReportFailureIsReported() throws IOException
+    {
+        // Given
+        File inputFile = new File(TEST_RESOURCES_PATH +
+                                          File.separator +
+                                          "givenSampleInput.txt");
+        FileProcessor processor = new FileProcessor(inputFile);
+        Writer failingOutput = new Writer()
+        {
+            @Override
+            public void write(char[] buffer, int offset, int length)
+                    throws IOException
+            {
+                throw new IOException("The output is full.");
+            }
+
+            @Override
+            public void flush()
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+
+        // When
+        processor.writeFileStatistics(failingOutput);
+
+        // Then -- we never get here.
+    }
+
+
+    /**
+     * @return  the number of spilled sort runs in the temporary directory
+     * @throws IOException  if the directory could not be listed
+     */
+    private static int countSpillFiles() throws IOException
+    {
+        File tempDirectory = new File(System.getProperty("java.io.tmpdir"));
+        String[] names = tempDirectory.list((directory, name) ->
+                name.startsWith("code42-sort-"));
+        if(null == names)
+        {
+            throw new IOException("Could not list " + tempDirectory);
+        }
+        return names.length;
+    }
+
+
+    /**
+     * @param processor  the processor to write
+     * @return  the processor's records, as JSON Lines
+     * @throws IOException  if the records could not be written
+     */
+    private static byte[] toRecords(FileProcessor processor) throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RecordWriter writer = OutputFormat.JSON_LINES.newWriter(output);
+        processor.writeRecords(writer);
+        writer.close();
+        return output.toByteArray();
+    }
+
+
+    /**
+     * Checks that the report orders strings exactly as sorting them with
+     * {@link String#CASE_INSENSITIVE_ORDER} would, both in memory and on
+     * disk.  The strings mix characters whose case folding is unusual
+     * (dotted and dotless i, long s, micro sign, final sigma) and
+     * supplementary characters.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testReportOrderMatchesCaseInsensitiveOrder() throws IOException
+    {
+        // Given
+        String[] alphabet = {"a", "A", "i", "I", "\u0131", "\u0130", "s", "S",
+                             "\u017f", "\u00b5", "\u03bc", "\u039c", "\u00e9",
+                             "\u00c9", "\u03c3", "\u03c2", "\u03a3", "_", "~",
+                             "\ud801\udc00", "\ud801\udc28"};
+        Random random = new Random(11);
+        Map<String, Integer> counts = new HashMap<>();
+        StringBuilder builder = new StringBuilder();
+        for(int k = 0; k < 3000; k++)
+        {
+            StringBuilder line = new StringBuilder();
+            int length = 1 + random.nextInt(4);
+            for(int c = 0; c < length; c++)
+            {
+                line.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            counts.merge(line.toString(), 1, Integer::sum);
+            builder.append(line).append('\n');
+        }
+        File inputFile = temporaryFolder.newFile("folding.txt");
+        Files.write(inputFile.toPath(),
+                    builder.toString().getBytes(StandardCharsets.UTF_8));
+
+        String[] keys = counts.keySet().toArray(new String[0]);
+        Arrays.sort(keys,
+                    Collections.reverseOrder(String.CASE_INSENSITIVE_ORDER));
+        StringBuilder expected = new StringBuilder(
+                "  Non-numeric strings in file (with count):\n");
+        for(String key : keys)
+        {
+            expected.append("    ").append(key).append(':')
+                    .append(counts.get(key)).append('\n');
+        }
+
+        // When
+        FileProcessor processor = new FileProcessor(inputFile,
+                                                    StandardCharsets.UTF_8);
+        String report = processor.toString();
+
+        String property = "com.code42.inputAnalysis.sortMemoryThreshold";
+        System.setProperty(property, "4096");
+        String spilledReport;
+        try
+        {
+            spilledReport = processor.toString();
+        }
+        finally
+        {
+            System.clearProperty(property);
+        }
+
+        // Then
+        String strings = "  Non-numeric strings";
+        Assert.assertEquals(expected.toString(),
+                            report.substring(report.indexOf(strings)));
+        Assert.assertEquals(expected.toString(),
+                            spilledReport.substring(spilledReport.indexOf(strings)));
+    }
+
+
+    /**
+     * Processes the same bytes from each kind of source the builder accepts
+     * (a stream, a channel, lines, and a feed written in uneven pieces that
+     * split lines and "\r\n" pairs) and checks they all match processing
+     * the file.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testBuilderSourcesMatchFile() throws IOException
+    {
+        // Given
+        byte[] content = generateMixedLines(20000);
+        File inputFile = temporaryFolder.newFile("mixed.txt");
+        Files.write(inputFile.toPath(), content);
+        FileProcessor expected = new FileProcessor(inputFile,
+                                                   StandardCharsets.UTF_8);
+        FileProcessor.Builder builder = FileProcessor.builder()
+                                                     .name("mixed")
+                                                     .charset(StandardCharsets.UTF_8)
+                                                     .feedCapacity(2);
+
+        // When
+        FileProcessor fromStream = builder.build(new ByteArrayInputStream(content));
+        FileProcessor fromChannel = builder.build(FileChannel.open(inputFile.toPath()));
+        FileProcessor fromLines;
+        try( Stream<String> lines = Files.lines(inputFile.toPath(),
+                                                StandardCharsets.UTF_8) )
+        {
+            fromLines = builder.build(lines);
+        }
+
+        FileProcessor fromFeed;
+        Random random = new Random(7);
+        ByteBuffer piece = ByteBuffer.allocate(4096);
+        try( FileProcessor.Feed feed = builder.open() )
+        {
+            for(int start = 0; start < content.length; )
+            {
+                int length = Math.min(1 + random.nextInt(piece.capacity()),
+                                      content.length - start);
+                piece.clear();
+                piece.put(content, start, length).flip();
+                feed.write(piece);
+                Assert.assertFalse(piece.hasRemaining());
+                start += length;
+            }
+            fromFeed = feed.complete();
+        }
+
+        // Then
+        for(FileProcessor actual : Arrays.asList(fromStream, fromChannel,
+                                                 fromLines, fromFeed))
+        {
+            Assert.assertEquals(expected.toString(), actual.toString());
+            Assert.assertEquals(expected.getCountOfNumbers(),
+                                actual.getCountOfNumbers());
+            Assert.assertEquals(expected.getTotal(), actual.getTotal(),
+                                ALLOWED_DELTA);
+        }
+    }
+
+
+    /**
+     * Checks that gzip-compressed bytes written to a feed are decompressed,
+     * and that a feed whose input cannot be parsed reports why.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testFeedDecompressesAndReportsFailures() throws IOException
+    {
+        byte[] content = generateMixedLines(5000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try( OutputStream output = new GZIPOutputStream(compressed) )
+        {
+            output.write(content);
+        }
+
+        FileProcessor expected = FileProcessor.builder()
+                                              .build(new ByteArrayInputStream(content));
+        try( FileProcessor.Feed feed = FileProcessor.builder().open() )
+        {
+            byte[] bytes = compressed.toByteArray();
+            for(int start = 0; start < bytes.length; start += 1000)
+            {
+                feed.write(ByteBuffer.wrap(bytes, start,
+                                           Math.min(1000, bytes.length - start)));
+            }
+            Assert.assertEquals(expected.toString(), feed.complete().toString());
+        }
+
+        // zstd is recognized but not supported.
+        try( FileProcessor.Feed feed = FileProcessor.builder().open() )
+        {
+            feed.write(ByteBuffer.wrap(new byte[] {0x28, (byte) 0xB5, 0x2F,
+                                                   (byte) 0xFD, 0, 0}));
+            feed.complete();
+            Assert.fail("zstd input should be rejected.");
+        }
+        catch(ZipException e)
+        {
+            // Expected.
+        }
+    }
+
+
+    /**
+     * Sums numbers of very different magnitudes and scales (including ones
+     * that overflow a long, whose sum overflows a long, and with negative
+     * and very large scales) and checks that the sum is exactly the
+     * BigDecimal sum.
+     */
+    @Test
+    public void testMixedMagnitudeSumIsExact()
+    {
+        String[] lines = {"999999999999999999", "999999999999999999",
+                          "-0.005", "12345678901234567890123.45", "1E+3",
+                          "0.00000000000000000000125", "7", "-3.1",
+                          "9223372036854775807.9", "0.004"};
+        BigDecimal expectedSum = BigDecimal.ZERO;
+        for(String line : lines)
+        {
+            expectedSum = expectedSum.add(new BigDecimal(line));
+        }
+
+        FileProcessor processor = FileProcessor.builder()
+                                               .build(Arrays.stream(lines));
+
+        Assert.assertEquals(expectedSum.setScale(2, RoundingMode.HALF_UP)
+                                       .doubleValue(),
+                            processor.getTotal(),
+                            0);
+        Assert.assertTrue(processor.toString().startsWith(
+                String.format("  Sum of Numbers: %.2f\n", expectedSum)));
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.inputAnalysis.test;
+
+import com.code42.inputAnalysis.FileProcessor;
+import com.code42.inputAnalysis.WindowedAnalyzer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The automated tests for the {@link WindowedAnalyzer}.
+ */
+public class WindowedAnalyzerTest
+{
+    /**
+     * Feeds random lines (with many repeated numbers and strings) to a
+     * window of lines and checks that after each line it reports exactly
+     * what a {@link FileProcessor} reports for the same lines.
+     */
+    @Test
+    public void testLineWindowMatchesFileProcessor()
+    {
+        Random random = new Random(42);
+        for(int windowSize : new int[] {1, 2, 7, 50})
+        {
+            WindowedAnalyzer window = WindowedAnalyzer.ofLines(windowSize);
+            List<String> lines = new ArrayList<>();
+            for(int k = 0; k < 300; k++)
+            {
+                String line = randomLine(random);
+                lines.add(line);
+                window.accept(line);
+
+                List<String> expected =
+                        lines.subList(Math.max(0, lines.size() - windowSize),
+                                      lines.size());
+                FileProcessor processor = FileProcessor.builder()
+                                                       .build(expected.stream());
+                Assert.assertEquals(processor.toString(), window.toString());
+                Assert.assertEquals(expected.size(), window.getLineCount());
+                Assert.assertEquals(processor.getCountOfNumbers(),
+                                    window.getCountOfNumbers());
+                Assert.assertEquals(processor.getTotal(), window.getTotal(), 0);
+            }
+        }
+    }
+
+
+    /**
+     * Checks that lines expire once they are as old as the window.
+     */
+    @Test
+    public void testTimeWindowExpiresLines()
+    {
+        AtomicLong now = new AtomicLong(0);
+        WindowedAnalyzer window = WindowedAnalyzer.ofMillis(1000, now::get);
+
+        window.accept("1");
+        window.accept("apple");
+        now.set(500);
+        window.accept("3");
+        Assert.assertEquals(3, window.getLineCount());
+        Assert.assertEquals(2.0, window.getTotal() / window.getCountOfNumbers(), 0);
+
+        now.set(1000);
+        Assert.assertEquals(1, window.getLineCount());
+        Assert.assertFalse(window.contains("apple"));
+        Assert.assertEquals(FileProcessor.builder()
+                                         .build(Arrays.asList("3").stream())
+                                         .toString(),
+                            window.toString());
+
+        now.set(1500);
+        Assert.assertEquals(0, window.getLineCount());
+        Assert.assertEquals(FileProcessor.builder()
+                                         .build(new ArrayList<String>().stream())
+                                         .toString(),
+                            window.toString());
+    }
+
+
+    /**
+     * Checks that the most frequent strings are reported in order, that
+     * expired strings are no longer counted, and that lines can be read
+     * from a stream.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testTopStrings() throws IOException
+    {
+        WindowedAnalyzer window = WindowedAnalyzer.ofLines(6);
+        window.read(new ByteArrayInputStream(
+                            "a\nb\n5\nc\nb\nc\nb\n".getBytes(StandardCharsets.UTF_8)),
+                    StandardCharsets.UTF_8);
+
+        // The window holds b, 5, c, b, c, b.
+        Assert.assertEquals(Arrays.asList("b", "c"), window.getTopStrings(5));
+        Assert.assertEquals(Arrays.asList("b"), window.getTopStrings(1));
+        Assert.assertFalse(window.contains("a"));
+
+        window.accept("c");
+        window.accept("a");
+        window.accept("a");
+        // The window holds b, c, b, c, a, a.
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), window.getTopStrings(3));
+        Assert.assertTrue(window.getTopStrings(0).isEmpty());
+    }
+
+
+    /**
+     * @param random  the random number generator
+     * @return  a number (often repeated, and with varying scales) or a
+     *          string
+     */
+    private static String randomLine(Random random)
+    {
+        switch(random.nextInt(5))
+        {
+            case 0:
+                return "word" + random.nextInt(4);
+            case 1:
+                return Integer.toString(random.nextInt(5));
+            case 2:
+                return random.nextInt(5) + ".0";
+            default:
+                return Integer.toString(random.nextInt(2001) - 1000);
+        }
+    }
+}
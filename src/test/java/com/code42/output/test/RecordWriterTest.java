@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.output.test;
+
+import com.code42.output.OutputFormat;
+import com.code42.output.RecordWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The automated tests for the {@link RecordWriter}s.
+ */
+public class RecordWriterTest
+{
+    /**
+     * Writes a record with every kind of field (including values that need
+     * escaping and non-ASCII text) in the given format.
+     *
+     * @param format  the format to write
+     * @return  the output, decoded as UTF-8
+     * @throws IOException  shouldn't happen
+     */
+    private static String writeSampleRecord(OutputFormat format)
+            throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RecordWriter writer = format.newWriter(output);
+
+        writer.beginRecord("sample");
+        writer.field("text", "say \"hi\",\n\tthen \\ go");
+        writer.field("unicode", "caf\u00e9 \u65e5 \ud83d\ude00");
+        writer.field("empty", "");
+        writer.field("missing", (String) null);
+        writer.field("negative", -1234567890123L);
+        writer.field("zero", 0L);
+        writer.field("decimal", new BigDecimal("1E+3"));
+        writer.field("flag", true);
+        writer.endRecord();
+        writer.close();
+
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Checks the JSON Lines encoding.
+     *
+     * @throws IOException  shouldn't happen
+     */
+    @Test
+    public void testJsonLines() throws IOException
+    {
+        String expected = "{\"type\":\"sample\"," +
+                "\"text\":\"say \\\"hi\\\",\\n\\tthen \\\\ go\"," +
+                "\"unicode\":\"caf\u00e9 \u65e5 \ud83d\ude00\"," +
+                "\"empty\":\"\"," +
+                "\"missing\":null," +
+                "\"negative\":-1234567890123," +
+                "\"zero\":0," +
+                "\"decimal\":1000," +
+                "\"flag\":true}\n";
+        Assert.assertEquals(expected, writeSampleRecord(OutputFormat.JSON_LINES));
+    }
+
+
+    /**
+     * Checks the CSV encoding.
+     *
+     * @throws IOException  shouldn't happen
+     */
+    @Test
+    public void testCsv() throws IOException
+    {
+        String expected = "sample," +
+                "\"say \"\"hi\"\",\n\tthen \\ go\"," +
+                "caf\u00e9 \u65e5 \ud83d\ude00," +
+                "\"\"," +
+                "," +
+                "-1234567890123," +
+                "0," +
+                "1000," +
+                "true\r\n";
+        Assert.assertEquals(expected, writeSampleRecord(OutputFormat.CSV));
+    }
+
+
+    /**
+     * Checks that formats are looked up by their command-line names.
+     */
+    @Test
+    public void testFromName()
+    {
+        Assert.assertEquals(OutputFormat.JSON_LINES, OutputFormat.fromName("json"));
+        Assert.assertEquals(OutputFormat.CSV, OutputFormat.fromName("CSV"));
+    }
+
+
+    /**
+     * Checks that an unknown format name is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromUnknownName()
+    {
+        OutputFormat.fromName("xml");
+    }
+}
@@ -10,12 +10,22 @@
 package com.code42.scanning.test;
 
 import com.code42.scanning.FileScanner;
+import com.code42.scanning.ScanError;
+import com.code42.scanning.ScanOptions;
+import com.code42.scanning.ScanStatistics;
 import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by ian on 5/11/16.
@@ -30,6 +40,12 @@ public class FileScannerTest
                                                       "resources" + File.separator +
                                                       "scanning";
 
+    /**
+     * A scratch directory for tests that need to build their own trees.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 
     /**
      * Attempts to scan an invalid path.
@@ -185,4 +201,648 @@ public class FileScannerTest
         Assert.assertEquals(0, result.getTotalBytes());
         Assert.assertEquals(-1, result.getAvgBytes());
     }
+
+
+    /**
+     * Scans a directory with multiple subdirectories while gathering
+     * metrics to ensure every entry is timed and the depth is tracked.
+     *
+     * @throws IOException  shouldn't happen.
+     */
+    @Test
+    public void testScanWithMetrics() throws IOException
+    {
+        // Filename: "src/test/resources/scanning/dirA"
+        String fileName = TEST_FILE_DIRECTORY + File.separator + "dirA";
+        ScanStatistics statistics = new ScanStatistics();
+        FileScanner.ScanResult result = FileScanner.scan(fileName, statistics);
+
+        // The results are the same as without metrics.
+        Assert.assertEquals(3, result.getNumFiles());
+        Assert.assertEquals(3, result.getNumDirectories());
+        Assert.assertEquals(73974, result.getTotalBytes());
+
+        // dirA/dir1/lorem2055 is 2 levels below dirA.
+        Assert.assertEquals(1, statistics.getScansCompleted());
+        Assert.assertEquals(6, statistics.getEntriesScanned());
+        Assert.assertEquals(2, statistics.getMaxDepth());
+
+        long timedEntries = 0;
+        for(long bucketCount : statistics.getStatLatencyBuckets())
+        {
+            timedEntries += bucketCount;
+        }
+        Assert.assertEquals(6, timedEntries);
+    }
+
+
+    /**
+     * Scans a directory with multiple subdirectories, only going one level
+     * deep.  The subdirectories are counted, but not their files.
+     *
+     * @throws IOException  shouldn't happen.
+     */
+    @Test
+    public void testScanWithMaxDepth() throws IOException
+    {
+        // Filename: "src/test/resources/scanning/dirA"
+        String fileName = TEST_FILE_DIRECTORY + File.separator + "dirA";
+        ScanOptions options = ScanOptions.builder().maxDepth(1).build();
+        FileScanner.ScanResult result = FileScanner.scan(fileName, options);
+
+        Assert.assertEquals(0, result.getNumFiles());
+        Assert.assertEquals(3, result.getNumDirectories());
+        Assert.assertEquals(0, result.getTotalBytes());
+    }
+
+
+    /**
+     * Scans a directory with multiple subdirectories, counting only the
+     * files matching (or not matching) a pattern.  Patterns can match the
+     * name or the path relative to the scanned directory.
+     *
+     * @throws IOException  shouldn't happen.
+     */
+    @Test
+    public void testScanWithIncludeAndExclude() throws IOException
+    {
+        // Filename: "src/test/resources/scanning/dirA"
+        String fileName = TEST_FILE_DIRECTORY + File.separator + "dirA";
+
+        ScanOptions options = ScanOptions.builder().include("lorem*").build();
+        FileScanner.ScanResult result = FileScanner.scan(fileName, options);
+        Assert.assertEquals(2, result.getNumFiles());
+        Assert.assertEquals(3, result.getNumDirectories());
+        Assert.assertEquals(73974, result.getTotalBytes());
+
+        options = ScanOptions.builder().exclude("dir1/*").build();
+        result = FileScanner.scan(fileName, options);
+        Assert.assertEquals(1, result.getNumFiles());
+        Assert.assertEquals(71919, result.getTotalBytes());
+
+        options = ScanOptions.builder()
+                             .include("*.txt")
+                             .include("dir2/**")
+                             .exclude("*.txt")
+                             .build();
+        result = FileScanner.scan(fileName, options);
+        Assert.assertEquals(1, result.getNumFiles());
+        Assert.assertEquals(71919, result.getTotalBytes());
+    }
+
+
+    /**
+     * Scans a directory with multiple subdirectories, counting only the
+     * files within a range of sizes.
+     *
+     * @throws IOException  shouldn't happen.
+     */
+    @Test
+    public void testScanWithSizeLimits() throws IOException
+    {
+        // Filename: "src/test/resources/scanning/dirA"
+        String fileName = TEST_FILE_DIRECTORY + File.separator + "dirA";
+
+        ScanOptions options = ScanOptions.builder().minSize(1).build();
+        FileScanner.ScanResult result = FileScanner.scan(fileName, options);
+        Assert.assertEquals(2, result.getNumFiles());
+        Assert.assertEquals(73974, result.getTotalBytes());
+
+        options = ScanOptions.builder().minSize(1).maxSize(2055).build();
+        result = FileScanner.scan(fileName, options);
+        Assert.assertEquals(1, result.getNumFiles());
+        Assert.assertEquals(2055, result.getTotalBytes());
+    }
+
+
+    /**
+     * Scans a directory with multiple subdirectories, skipping one of
+     * them.  Neither the skipped directory nor anything in it is counted,
+     * or even visited.
+     *
+     * @throws IOException  shouldn't happen.
+     */
+    @Test
+    public void testScanWithExcludedDirectory() throws IOException
+    {
+        // Filename: "src/test/resources/scanning/dirA"
+        String fileName = TEST_FILE_DIRECTORY + File.separator + "dirA";
+        ScanOptions options = ScanOptions.builder()
+                                         .excludeDirectory("dir2")
+                                         .build();
+        ScanStatistics statistics = new ScanStatistics();
+        FileScanner.ScanResult result = FileScanner.scan(fileName,
+                                                         options,
+                                                         statistics);
+
+        Assert.assertEquals(2, result.getNumFiles());
+        Assert.assertEquals(2, result.getNumDirectories());
+        Assert.assertEquals(2055, result.getTotalBytes());
+
+        // dirA, dir1, its two files, and dir2 itself (but not its file).
+        long visitedEntries = 0;
+        for(long bucketCount : statistics.getStatLatencyBuckets())
+        {
+            visitedEntries += bucketCount;
+        }
+        Assert.assertEquals(5, visitedEntries);
+    }
+
+
+    /**
+     * Checks that the minimum size cannot be larger than the maximum.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSizeLimits()
+    {
+        ScanOptions.builder().minSize(10).maxSize(5).build();
+    }
+
+
+    /**
+     * Scans a directory holding files with several hard links each.  Every
+     * link counts as a file, but each file's bytes only count once in the
+     * unique total.
+     *
+     * @throws IOException  shouldn't happen.
+     */
+    @Test
+    public void testScanDeduplicatesHardLinks() throws IOException
+    {
+        // Enough files to make the set of seen files grow a few times.
+        File directory = temporaryFolder.getRoot();
+        int fileCount = 200;
+        for(int k = 0; k < fileCount; k++)
+        {
+            Path file = Files.write(new File(directory, "file" + k).toPath(),
+                                    new byte[k]);
+            Files.createLink(new File(directory, "link" + k + "a").toPath(),
+                             file);
+            Files.createLink(new File(directory, "link" + k + "b").toPath(),
+                             file);
+        }
+        long fileBytes = (long) fileCount * (fileCount - 1) / 2;
+
+        ScanOptions options = ScanOptions.builder()
+                                         .deduplicateHardLinks(true)
+                                         .build();
+        FileScanner.ScanResult result = FileScanner.scan(directory.getPath(),
+                                                         options);
+        Assert.assertEquals(3 * fileCount, result.getNumFiles());
+        Assert.assertEquals(3 * fileBytes, result.getTotalBytes());
+        Assert.assertEquals(fileBytes, result.getUniqueBytes());
+        Assert.assertEquals(2 * fileCount, result.getNumDuplicateLinks());
+
+        // This platform's file keys hold device and inode numbers.
+        Assert.assertEquals(0, result.getNumUnparsedFileKeys());
+
+        // Without deduplication, every link is unique.
+        result = FileScanner.scan(directory.getPath());
+        Assert.assertEquals(3 * fileBytes, result.getUniqueBytes());
+        Assert.assertEquals(0, result.getNumDuplicateLinks());
+    }
+
+
+    /**
+     * Scans a tree containing a symlink cycle and a second symlink to one
+     * of its directories.  Without following links, the links count as
+     * directories.  Following them, each real directory is only counted
+     * once and both links are reported as revisits.
+     *
+     * @throws IOException  shouldn't happen.
+     */
+    @Test
+    public void testScanFollowingLinksSkipsRevisitedDirectories()
+            throws IOException
+    {
+        File root = temporaryFolder.getRoot();
+        File real = temporaryFolder.newFolder("real");
+        File sub = temporaryFolder.newFolder("real", "sub");
+        Files.write(new File(real, "a").toPath(), new byte[10]);
+        Files.write(new File(sub, "b").toPath(), new byte[20]);
+        Files.createSymbolicLink(new File(sub, "loop").toPath(),
+                                 real.toPath());
+        Files.createSymbolicLink(new File(root, "alias").toPath(),
+                                 real.toPath());
+
+        FileScanner.ScanResult result = FileScanner.scan(root.getPath());
+        Assert.assertEquals(2, result.getNumFiles());
+        Assert.assertEquals(5, result.getNumDirectories());
+        Assert.assertEquals(30, result.getTotalBytes());
+        Assert.assertEquals(0, result.getNumRevisitedDirectories());
+
+        ScanOptions options = ScanOptions.builder().followLinks(true).build();
+        result = FileScanner.scan(root.getPath(), options);
+        Assert.assertEquals(2, result.getNumFiles());
+        Assert.assertEquals(3, result.getNumDirectories());
+        Assert.assertEquals(30, result.getTotalBytes());
+        Assert.assertEquals(2, result.getNumRevisitedDirectories());
+
+        // The directories are told apart by device and inode numbers.
+        Assert.assertEquals(0, result.getNumUnparsedFileKeys());
+    }
+
+
+    /**
+     * Follows symlinks to a directory and a file on another filesystem
+     * (/dev/shm, if it is a separate filesystem here), checking that they
+     * are only scanned when the scan may leave the starting filesystem, and
+     * that they are counted as skipped otherwise, including when the
+     * linked directory is at the maximum depth.
+     *
+     * @throws IOException  shouldn't happen.
+     */
+    @Test
+    public void testScanStayingOnFileSystem() throws IOException
+    {
+        Path otherFileSystem = new File("/dev/shm").toPath();
+        File root = temporaryFolder.getRoot();
+        Assume.assumeTrue(Files.isDirectory(otherFileSystem));
+        Assume.assumeFalse(Files.getFileStore(otherFileSystem)
+                                .equals(Files.getFileStore(root.toPath())));
+
+        Path other = Files.createTempDirectory(otherFileSystem, "scan");
+        try
+        {
+            Files.write(other.resolve("file"), new byte[5]);
+            Files.createSymbolicLink(new File(root, "mount").toPath(), other);
+            Files.createSymbolicLink(new File(root, "fileLink").toPath(),
+                                     other.resolve("file"));
+
+            ScanOptions options = ScanOptions.builder()
+                                             .followLinks(true)
+                                             .build();
+            FileScanner.ScanResult result = FileScanner.scan(root.getPath(),
+                                                             options);
+            Assert.assertEquals(2, result.getNumFiles());
+            Assert.assertEquals(2, result.getNumDirectories());
+            Assert.assertEquals(0, result.getNumSkippedMounts());
+
+            options = ScanOptions.builder()
+                                 .followLinks(true)
+                                 .sameFileSystem(true)
+                                 .build();
+            result = FileScanner.scan(root.getPath(), options);
+            Assert.assertEquals(0, result.getNumFiles());
+            Assert.assertEquals(1, result.getNumDirectories());
+            Assert.assertEquals(2, result.getNumSkippedMounts());
+
+            // The linked directory is at the maximum depth, so it is
+            // visited as a file rather than pre-visited.
+            options = ScanOptions.builder()
+                                 .followLinks(true)
+                                 .sameFileSystem(true)
+                                 .maxDepth(1)
+                                 .build();
+            result = FileScanner.scan(root.getPath(), options);
+            Assert.assertEquals(0, result.getNumFiles());
+            Assert.assertEquals(1, result.getNumDirectories());
+            Assert.assertEquals(2, result.getNumSkippedMounts());
+        }
+        finally
+        {
+            Files.deleteIfExists(new File(root, "fileLink").toPath());
+            Files.deleteIfExists(other.resolve("file"));
+            Files.deleteIfExists(other);
+        }
+    }
+
+
+    /**
+     * Scans a directory containing broken symlinks.  By default, the first
+     * one ends the scan; when continuing past errors, they are counted and
+     * the first few are recorded.
+     *
+     * @throws IOException  shouldn't happen.
+     */
+    @Test
+    public void testScanContinuesPastBrokenLinks() throws IOException
+    {
+        File root = temporaryFolder.getRoot();
+        Files.write(new File(root, "file").toPath(), new byte[7]);
+        for(int k = 0; k < 3; k++)
+        {
+            Files.createSymbolicLink(new File(root, "broken" + k).toPath(),
+                                     new File(root, "missing" + k).toPath());
+        }
+
+        try
+        {
+            FileScanner.scan(root.getPath());
+            Assert.fail("The broken links should end the scan.");
+        }
+        catch(AssertionError e)
+        {
+            Assert.assertTrue(e.getMessage().startsWith("Unknown File"));
+        }
+
+        ScanOptions options = ScanOptions.builder()
+                                         .continueOnError(true)
+                                         .maxRecordedErrors(2)
+                                         .build();
+        FileScanner.ScanResult result = FileScanner.scan(root.getPath(),
+                                                         options);
+        Assert.assertEquals(1, result.getNumFiles());
+        Assert.assertEquals(7, result.getTotalBytes());
+        Assert.assertEquals(3, result.getNumErrors());
+        Assert.assertEquals(3, result.getNumErrors(ScanError.Type.BROKEN_LINK));
+        Assert.assertEquals(2, result.getErrors().size());
+        Assert.assertEquals(ScanError.Type.BROKEN_LINK,
+                            result.getErrors().get(0).getType());
+    }
+
+
+    /**
+     * Scans a directory containing a named pipe (if this platform can make
+     * one) and a directory we cannot read (if we are not running with
+     * privileges that ignore permissions).
+     *
+     * @throws Exception  shouldn't happen.
+     */
+    @Test
+    public void testScanRecordsSpecialFilesAndUnreadableDirectories()
+            throws Exception
+    {
+        File root = temporaryFolder.getRoot();
+        File pipe = new File(root, "pipe");
+        Process mkfifo;
+        try
+        {
+            mkfifo = new ProcessBuilder("mkfifo", pipe.getPath()).start();
+        }
+        catch(IOException e)
+        {
+            mkfifo = null;
+        }
+        Assume.assumeTrue(mkfifo != null && mkfifo.waitFor() == 0);
+
+        File locked = temporaryFolder.newFolder("locked");
+        Files.write(new File(locked, "hidden").toPath(), new byte[3]);
+        boolean canLock = locked.setReadable(false) && !locked.canRead();
+        try
+        {
+            ScanOptions options = ScanOptions.builder()
+                                             .continueOnError(true)
+                                             .build();
+            FileScanner.ScanResult result = FileScanner.scan(root.getPath(),
+                                                             options);
+            Assert.assertEquals(1,
+                                result.getNumErrors(ScanError.Type.SPECIAL_FILE));
+            if(canLock)
+            {
+                Assert.assertEquals(1,
+                                    result.getNumErrors(ScanError.Type.ACCESS_DENIED));
+                Assert.assertEquals(0, result.getNumFiles());
+            }
+        }
+        finally
+        {
+            locked.setReadable(true);
+        }
+    }
+
+
+    /**
+     * Interrupts a checkpointed scan part way through (with a broken link,
+     * which ends the scan), fixes the tree, and scans it again.  The second
+     * scan must resume from the checkpoint rather than start over (so a
+     * file added to the already-scanned top directory is not counted), and
+     * its totals must match an uninterrupted scan.
+     *
+     * @throws IOException  shouldn't happen.
+     */
+    @Test
+    public void testScanResumesFromCheckpoint() throws IOException
+    {
+        File root = temporaryFolder.newFolder("tree");
+        File checkpoint = new File(temporaryFolder.getRoot(), "scan.checkpoint");
+        Files.write(new File(root, "top").toPath(), new byte[5]);
+        Files.write(new File(temporaryFolder.newFolder("tree", "a"),
+                             "f1").toPath(), new byte[10]);
+        Files.write(new File(temporaryFolder.newFolder("tree", "a", "b"),
+                             "f2").toPath(), new byte[20]);
+        File c = temporaryFolder.newFolder("tree", "c");
+        Files.write(new File(c, "f3").toPath(), new byte[30]);
+        Path broken = Files.createSymbolicLink(new File(c, "broken").toPath(),
+                                               new File(c, "missing").toPath());
+        Files.write(new File(temporaryFolder.newFolder("tree", "d", "e"),
+                             "f4").toPath(), new byte[40]);
+
+        ScanOptions options = ScanOptions.builder()
+                                         .checkpoint(checkpoint.toPath(), 0)
+                                         .build();
+        try
+        {
+            FileScanner.scan(root.getPath(), options);
+            Assert.fail("The broken link should end the scan.");
+        }
+        catch(AssertionError e)
+        {
+            Assert.assertTrue(checkpoint.exists());
+        }
+
+        Files.delete(broken);
+        FileScanner.ScanResult expected = FileScanner.scan(root.getPath());
+        Files.write(new File(root, "late").toPath(), new byte[1000]);
+
+        FileScanner.ScanResult resumed = FileScanner.scan(root.getPath(),
+                                                          options);
+        Assert.assertEquals(6, expected.getNumDirectories());
+        Assert.assertEquals(expected.getNumFiles(), resumed.getNumFiles());
+        Assert.assertEquals(expected.getNumDirectories(),
+                            resumed.getNumDirectories());
+        Assert.assertEquals(expected.getTotalBytes(), resumed.getTotalBytes());
+        Assert.assertFalse(checkpoint.exists());
+
+        // Without an interruption, a checkpointed scan counts the same.
+        FileScanner.ScanResult full = FileScanner.scan(root.getPath(), options);
+        Assert.assertEquals(expected.getNumFiles() + 1, full.getNumFiles());
+        Assert.assertEquals(expected.getNumDirectories(),
+                            full.getNumDirectories());
+        Assert.assertEquals(expected.getTotalBytes() + 1000,
+                            full.getTotalBytes());
+        Assert.assertFalse(checkpoint.exists());
+    }
+
+
+    /**
+     * Checks that a checkpoint of one path is not used to resume a scan of
+     * another.
+     *
+     * @throws IOException  expected.
+     */
+    @Test(expected = IOException.class)
+    public void testCheckpointOfAnotherPath() throws IOException
+    {
+        File first = temporaryFolder.newFolder("first");
+        File sub = temporaryFolder.newFolder("first", "sub");
+        Files.createSymbolicLink(new File(sub, "broken").toPath(),
+                                 new File(sub, "missing").toPath());
+        File checkpoint = new File(temporaryFolder.getRoot(), "scan.checkpoint");
+        ScanOptions options = ScanOptions.builder()
+                                         .checkpoint(checkpoint.toPath(), 0)
+                                         .build();
+        try
+        {
+            FileScanner.scan(first.getPath(), options);
+            Assert.fail("The broken link should end the scan.");
+        }
+        catch(AssertionError e)
+        {
+            Assert.assertTrue(checkpoint.exists());
+        }
+
+        FileScanner.scan(temporaryFolder.newFolder("second").getPath(),
+                         options);
+    }
+
+
+    /**
+     * Checks that a checkpoint is not used to resume a scan with options
+     * that count differently (and is kept for one that has the original
+     * options).
+     *
+     * @throws IOException  shouldn't happen.
+     */
+    @Test
+    public void testCheckpointWithOtherOptions() throws IOException
+    {
+        File root = temporaryFolder.newFolder("root");
+        File sub = temporaryFolder.newFolder("root", "sub");
+        Files.createSymbolicLink(new File(sub, "broken").toPath(),
+                                 new File(sub, "missing").toPath());
+        Path checkpoint = new File(temporaryFolder.getRoot(),
+                                   "scan.checkpoint").toPath();
+        try
+        {
+            FileScanner.scan(root.getPath(),
+                             ScanOptions.builder().checkpoint(checkpoint, 0)
+                                        .build());
+            Assert.fail("The broken link should end the scan.");
+        }
+        catch(AssertionError e)
+        {
+            // The scanner reports the broken link this way.
+            Assert.assertTrue(e.getMessage(),
+                              e.getMessage().startsWith("Unknown File"));
+            Assert.assertTrue(Files.exists(checkpoint));
+        }
+
+        List<ScanOptions.Builder> others = Arrays.asList(
+                ScanOptions.builder().maxDepth(1),
+                ScanOptions.builder().include("*.txt"),
+                ScanOptions.builder().exclude("*.txt"),
+                ScanOptions.builder().excludeDirectory("sub"),
+                ScanOptions.builder().minSize(1),
+                ScanOptions.builder().maxSize(1000),
+                ScanOptions.builder().deduplicateHardLinks(true),
+                ScanOptions.builder().sameFileSystem(true),
+                ScanOptions.builder().continueOnError(true),
+                ScanOptions.builder().trackSubtrees(true));
+        for(ScanOptions.Builder other : others)
+        {
+            try
+            {
+                FileScanner.scan(root.getPath(),
+                                 other.checkpoint(checkpoint, 0).build());
+                Assert.fail("The checkpoint should be refused.");
+            }
+            catch(IOException e)
+            {
+                Assert.assertTrue(e.getMessage(),
+                                  e.getMessage().contains("different options"));
+                Assert.assertTrue(Files.exists(checkpoint));
+            }
+        }
+
+        // The original options (with other retry and checkpoint settings)
+        // resume, and reach the broken link again.
+        try
+        {
+            FileScanner.scan(root.getPath(),
+                             ScanOptions.builder().checkpoint(checkpoint, 1000)
+                                        .retry(1, 0).build());
+            Assert.fail("The broken link should end the scan.");
+        }
+        catch(AssertionError e)
+        {
+            Assert.assertTrue(e.getMessage(),
+                              e.getMessage().startsWith("Unknown File"));
+        }
+    }
+
+
+    /**
+     * Scans trees with links, loops, and unreadable entries, with and
+     * without the directory-relative walk, with a variety of options.  Both
+     * walks must count exactly the same.
+     *
+     * @throws IOException  shouldn't happen.
+     */
+    @Test
+    public void testDirectoryRelativeWalkMatchesFilesWalk() throws IOException
+    {
+        File root = temporaryFolder.newFolder("tree");
+        File a = temporaryFolder.newFolder("tree", "a");
+        File b = temporaryFolder.newFolder("tree", "a", "b");
+        Files.write(new File(root, "top").toPath(), new byte[5]);
+        Files.write(new File(a, "f1").toPath(), new byte[10]);
+        Files.write(new File(b, "f2").toPath(), new byte[20]);
+        Files.createLink(new File(b, "hard").toPath(),
+                         new File(a, "f1").toPath());
+        Files.createSymbolicLink(new File(b, "loop").toPath(), a.toPath());
+        Files.createSymbolicLink(new File(root, "toB").toPath(), b.toPath());
+        Files.createSymbolicLink(new File(root, "toF2").toPath(),
+                                 new File(b, "f2").toPath());
+        Files.createSymbolicLink(new File(a, "broken").toPath(),
+                                 new File(a, "missing").toPath());
+
+        String[] paths = {root.getPath(),
+                          TEST_FILE_DIRECTORY,
+                          new File(root, "toB").getPath(),
+                          new File(root, "top").getPath()};
+        ScanOptions[] optionSets = {
+                ScanOptions.builder().continueOnError(true).build(),
+                ScanOptions.builder().continueOnError(true)
+                           .followLinks(true).build(),
+                ScanOptions.builder().continueOnError(true).followLinks(true)
+                           .deduplicateHardLinks(true).maxDepth(2).build(),
+                ScanOptions.builder().continueOnError(true).maxDepth(0).build(),
+                ScanOptions.builder().continueOnError(true)
+                           .excludeDirectory("b").build()};
+
+        String property = "com.code42.scanning.directoryRelativeWalk";
+        for(String path : paths)
+        {
+            for(ScanOptions options : optionSets)
+            {
+                FileScanner.ScanResult relative;
+                FileScanner.ScanResult expected;
+                try
+                {
+                    System.setProperty(property, "true");
+                    relative = FileScanner.scan(path, options);
+                    System.setProperty(property, "false");
+                    expected = FileScanner.scan(path, options);
+                }
+                finally
+                {
+                    System.clearProperty(property);
+                }
+
+                Assert.assertEquals(path, expected.getNumFiles(),
+                                    relative.getNumFiles());
+                Assert.assertEquals(path, expected.getNumDirectories(),
+                                    relative.getNumDirectories());
+                Assert.assertEquals(path, expected.getTotalBytes(),
+                                    relative.getTotalBytes());
+                Assert.assertEquals(path, expected.getUniqueBytes(),
+                                    relative.getUniqueBytes());
+                Assert.assertEquals(path, expected.getNumRevisitedDirectories(),
+                                    relative.getNumRevisitedDirectories());
+                Assert.assertEquals(path, expected.getNumErrors(),
+                                    relative.getNumErrors());
+            }
+        }
+    }
 }
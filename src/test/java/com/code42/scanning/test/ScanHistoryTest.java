@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2016, Ian J. De Silva
+ * All Rights Reserved
+ *
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as
+ * permitted by law.
+ */
+
+package com.code42.scanning.test;
+
+import com.code42.scanning.FileScanner;
+import com.code42.scanning.ScanHistory;
+import com.code42.scanning.ScanOptions;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The automated tests for the {@link ScanHistory}.
+ */
+public class ScanHistoryTest
+{
+    /**
+     * One hour, in ms.
+     */
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    /**
+     * The scanned tree and the history store.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Records scans of a tree as it changes, including a top-level
+     * directory that is removed and one that is added, and checks that they
+     * read back exactly, in full and by range.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testRecordAndQuery() throws IOException
+    {
+        // Given
+        File root = temporaryFolder.newFolder("tree");
+        File a = temporaryFolder.newFolder("tree", "a");
+        File b = temporaryFolder.newFolder("tree", "b");
+        write(new File(root, "top"), 5);
+        write(new File(a, "f1"), 10);
+        write(new File(b, "f2"), 20);
+        ScanHistory history =
+                new ScanHistory(temporaryFolder.getRoot().toPath().resolve("history"));
+
+        // When
+        List<FileScanner.ScanResult> results = new ArrayList<>();
+        results.add(scanAndRecord(history, root, 1000));
+        write(new File(a, "f3"), 300);
+        results.add(scanAndRecord(history, root, 1000 + HOUR));
+        Files.delete(new File(b, "f2").toPath());
+        Files.delete(b.toPath());
+        write(new File(temporaryFolder.newFolder("tree", "c"), "f4"), 4000);
+        results.add(scanAndRecord(history, root, 1000 + 2 * HOUR));
+
+        // Then
+        List<ScanHistory.Snapshot> snapshots =
+                history.query(root.getPath(), Long.MIN_VALUE, Long.MAX_VALUE);
+        Assert.assertEquals(3, snapshots.size());
+        for(int k = 0; k < snapshots.size(); k++)
+        {
+            ScanHistory.Snapshot snapshot = snapshots.get(k);
+            FileScanner.ScanResult result = results.get(k);
+            Assert.assertEquals(1000 + k * HOUR, snapshot.getTimeMillis());
+            assertMatches(result, snapshot);
+            Assert.assertEquals(result.getSubtrees().keySet(),
+                                snapshot.getSubtrees().keySet());
+            for(String name : result.getSubtrees().keySet())
+            {
+                assertMatches(result.getSubtrees().get(name),
+                              snapshot.getSubtrees().get(name));
+            }
+        }
+        Assert.assertEquals(Arrays.asList("a", "c"),
+                            new ArrayList<>(snapshots.get(2).getSubtrees().keySet()));
+        Assert.assertEquals(310,
+                            snapshots.get(1).getSubtrees().get("a").getTotalBytes());
+
+        List<ScanHistory.Snapshot> middle = history.query(root.getPath(),
+                                                          1000 + HOUR,
+                                                          1000 + HOUR);
+        Assert.assertEquals(1, middle.size());
+        assertMatches(results.get(1), middle.get(0));
+        Assert.assertTrue(history.query("not scanned", 0, Long.MAX_VALUE)
+                                 .isEmpty());
+    }
+
+
+    /**
+     * Records a year of hourly scans that did not change and checks that
+     * the history stays small.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testUnchangedScansAreCompact() throws IOException
+    {
+        File root = temporaryFolder.newFolder("tree");
+        write(new File(temporaryFolder.newFolder("tree", "a"), "f1"), 12345);
+        Path store = temporaryFolder.newFolder("history").toPath();
+        ScanHistory history = new ScanHistory(store);
+        FileScanner.ScanResult result =
+                FileScanner.scan(root.getPath(),
+                                 ScanOptions.builder().trackSubtrees(true).build());
+
+        int scans = 365 * 24;
+        for(int k = 0; k < scans; k++)
+        {
+            history.record(root.getPath(), k * HOUR, result);
+        }
+
+        Assert.assertTrue(historySize(store) < 16L * scans);
+        List<ScanHistory.Snapshot> snapshots =
+                history.query(root.getPath(), 0, Long.MAX_VALUE);
+        Assert.assertEquals(scans, snapshots.size());
+        assertMatches(result, snapshots.get(scans - 1));
+        Assert.assertEquals(12345,
+                            snapshots.get(scans - 1).getSubtrees().get("a")
+                                     .getTotalBytes());
+    }
+
+
+    /**
+     * Records a tree that grows by the same amount each day and checks the
+     * growth rate and forecast.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testTrend() throws IOException
+    {
+        File root = temporaryFolder.newFolder("tree");
+        ScanHistory history =
+                new ScanHistory(temporaryFolder.newFolder("history").toPath());
+        for(int day = 0; day < 5; day++)
+        {
+            write(new File(root, "day" + day), 1000);
+            history.record(root.getPath(), day * 24 * HOUR,
+                           FileScanner.scan(root.getPath()));
+        }
+
+        ScanHistory.Trend trend = ScanHistory.Trend.of(
+                history.query(root.getPath(), 0, Long.MAX_VALUE));
+        Assert.assertEquals(1000.0, trend.getBytesPerDay(), 1e-6);
+        Assert.assertEquals(10000.0, trend.forecastBytes(9 * 24 * HOUR), 1e-6);
+    }
+
+
+    /**
+     * Checks that a record that was only partly written is ignored, and
+     * replaced by the next scan recorded.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test
+    public void testPartialRecordIsIgnored() throws IOException
+    {
+        File root = temporaryFolder.newFolder("tree");
+        write(new File(root, "f1"), 10);
+        Path store = temporaryFolder.newFolder("history").toPath();
+        ScanHistory history = new ScanHistory(store);
+        FileScanner.ScanResult result = FileScanner.scan(root.getPath());
+        history.record(root.getPath(), 0, result);
+        history.record(root.getPath(), HOUR, result);
+
+        Path file = store.toFile().listFiles()[0].toPath();
+        Files.write(file, new byte[] {20, 1, 2}, StandardOpenOption.APPEND);
+        Assert.assertEquals(2, history.query(root.getPath(), 0, Long.MAX_VALUE)
+                                      .size());
+
+        history.record(root.getPath(), 2 * HOUR, result);
+        List<ScanHistory.Snapshot> snapshots =
+                history.query(root.getPath(), 0, Long.MAX_VALUE);
+        Assert.assertEquals(3, snapshots.size());
+        Assert.assertEquals(2 * HOUR, snapshots.get(2).getTimeMillis());
+        assertMatches(result, snapshots.get(2));
+    }
+
+
+    /**
+     * Checks that a scan older than the last one recorded is rejected.
+     *
+     * @throws IOException  fail if this is thrown
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutOfOrderScan() throws IOException
+    {
+        File root = temporaryFolder.newFolder("tree");
+        ScanHistory history =
+                new ScanHistory(temporaryFolder.newFolder("history").toPath());
+        FileScanner.ScanResult result = FileScanner.scan(root.getPath());
+        history.record(root.getPath(), HOUR, result);
+        history.record(root.getPath(), 0, result);
+    }
+
+
+    /**
+     * Scans a tree (tracking its subtrees) and records the result.
+     *
+     * @param history  where to record the scan
+     * @param root  the tree
+     * @param timeMillis  when the scan was run
+     * @return  the result of the scan
+     * @throws IOException  if the scan could not be run or recorded
+     */
+    private static FileScanner.ScanResult scanAndRecord(ScanHistory history,
+                                                        File root,
+                                                        long timeMillis)
+            throws IOException
+    {
+        FileScanner.ScanResult result =
+                FileScanner.scan(root.getPath(),
+                                 ScanOptions.builder().trackSubtrees(true).build());
+        history.record(root.getPath(), timeMillis, result);
+        return result;
+    }
+
+
+    /**
+     * @param expected  the result of a scan
+     * @param actual  the recorded scan
+     */
+    private static void assertMatches(FileScanner.ScanResult expected,
+                                      ScanHistory.Snapshot actual)
+    {
+        Assert.assertEquals(expected.getNumFiles(), actual.getNumFiles());
+        Assert.assertEquals(expected.getNumDirectories(),
+                            actual.getNumDirectories());
+        Assert.assertEquals(expected.getTotalBytes(), actual.getTotalBytes());
+        Assert.assertEquals(expected.getUniqueBytes(), actual.getUniqueBytes());
+    }
+
+
+    /**
+     * @param store  the history directory
+     * @return  the total size of its files
+     * @throws IOException  if they could not be listed
+     */
+    private static long historySize(Path store) throws IOException
+    {
+        long size = 0;
+        for(File file : store.toFile().listFiles())
+        {
+            size += file.length();
+        }
+        return size;
+    }
+
+
+    /**
+     * @param file  the file to write
+     * @param size  the number of bytes to write to it
+     * @throws IOException  if the file could not be written
+     */
+    private static void write(File file, int size) throws IOException
+    {
+        Files.write(file.toPath(), new byte[size]);
+    }
+}